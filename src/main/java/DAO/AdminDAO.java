@@ -0,0 +1,95 @@
+package DAO;
+
+import model.UserStats;
+import util.DBConnection;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage statistics of every user for the admin view.
+ * Totals are kept in the user_stats table. Triggers mark a user's row dirty when their entries,
+ * archived entries or blocks change, and {@link #refreshUserStats} recomputes only the dirty rows
+ * with aggregate queries, so reading the statistics never scans the entries.
+ */
+public class AdminDAO {
+    private final Connection conn;
+
+    public AdminDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public AdminDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /** READ: the cached statistics of every user, largest first */
+    public List<UserStats> getUserStats() throws SQLException {
+        List<UserStats> stats = new ArrayList<>();
+        String sql = "SELECT s.user_id, u.username, s.entry_count, s.archived_count, s.content_bytes, " +
+                "s.block_count, s.last_activity FROM user_stats s JOIN users u ON u.user_id=s.user_id " +
+                "ORDER BY s.content_bytes DESC, u.username";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                stats.add(new UserStats(
+                        rs.getString(1),
+                        rs.getString(2),
+                        rs.getInt(3),
+                        rs.getInt(4),
+                        rs.getLong(5),
+                        rs.getInt(6),
+                        rs.getString(7)
+                ));
+            }
+        }
+        return stats;
+    }
+
+    /** READ: how many users have statistics that are out of date */
+    public int countDirty() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM user_stats WHERE dirty=1")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * UPDATE: recomputes the statistics of users whose data changed since the last refresh.
+     * Each total is one correlated aggregate over the user's rows, using the per-user and per-entry indexes.
+     *
+     * @return The number of users refreshed
+     */
+    public int refreshUserStats() throws SQLException {
+        String sql = "UPDATE user_stats SET " +
+                "entry_count=(SELECT COUNT(*) FROM journal_entries e WHERE e.user_id=user_stats.user_id), " +
+                "archived_count=(SELECT COUNT(*) FROM archived_entries a WHERE a.user_id=user_stats.user_id), " +
+                "content_bytes=(SELECT COALESCE(SUM(LENGTH(CAST(e.content AS BLOB))), 0) FROM journal_entries e " +
+                "    WHERE e.user_id=user_stats.user_id) " +
+                "  + (SELECT COALESCE(SUM(LENGTH(CAST(c.content AS BLOB))), 0) FROM journal_entries e " +
+                "    JOIN chunk_data c ON c.entry_id=e.entry_id WHERE e.user_id=user_stats.user_id AND e.chunked=1), " +
+                "block_count=(SELECT COUNT(*) FROM journal_entries e JOIN blocks b ON b.entry_id=e.entry_id " +
+                "    WHERE e.user_id=user_stats.user_id), " +
+                "last_activity=NULLIF(MAX(" +
+                "    COALESCE((SELECT MAX(date_modified) FROM journal_entries e WHERE e.user_id=user_stats.user_id), ''), " +
+                "    COALESCE((SELECT MAX(date_modified) FROM archived_entries a WHERE a.user_id=user_stats.user_id), '')), ''), " +
+                "refreshed_at=?, dirty=0 " +
+                "WHERE dirty=1";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, LocalDateTime.now().toString());
+            int refreshed = ps.executeUpdate();
+            conn.commit();
+            return refreshed;
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error refreshing user statistics: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package DAO;
+
+import model.BlockNode;
+import model.JournalEntry;
+import util.ContentCipher;
+import util.DBConnection;
+import util.KeyRing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold storage for old entries.
+ * Entries are moved, with their blocks and chunks, into one SQLite file per year
+ * (archive/journal-archive-YYYY.db) with the content deflate-compressed. The file is
+ * attached to the connection only while it is read or written, so the hot tables and
+ * their indexes only hold entries that are still in use.
+ *
+ * A stub row in archived_entries keeps each archived entry listable and searchable
+ * by title and tags without opening any archive.
+ * Attachment references stay in the main database.
+ */
+public class ArchiveDAO {
+    private static final String ARCHIVE_FOLDER = "src/main/resources/archive";
+    private static final String ALIAS = "archive";
+    // Entries moved per transaction, so the write lock is never held for long
+    private static final int BATCH_SIZE = 50;
+
+    /** An archived entry read whole: the entry with its content, and its block tree */
+    public record ArchivedEntry(JournalEntry entry, List<BlockNode> blocks) { }
+
+    private final Connection conn;
+
+    public ArchiveDAO() throws SQLException {
+        this(DBConnection.getInstance().getConnection());
+    }
+
+    public ArchiveDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * ARCHIVE: moves every entry last modified before the cutoff into its year's archive.
+     *
+     * Each entry is checked again when it is moved, so one edited or opened since the candidates were
+     * listed stays where it is.
+     *
+     * @param cutoff Entries modified before this are moved
+     * @param skip The entry IDs to leave alone, e.g. the ones open in an editor; asked again for every batch
+     * @return The number of entries archived
+     */
+    public int archiveEntriesModifiedBefore(LocalDateTime cutoff, Supplier<Set<Integer>> skip) throws SQLException {
+        Map<Integer, List<Integer>> byYear = new TreeMap<>();
+        String sql = "SELECT entry_id, CAST(substr(date_modified,1,4) AS INTEGER) FROM journal_entries " +
+                "WHERE date_modified < ? ORDER BY entry_id";
+        Set<Integer> open = skip.get();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, cutoff.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int entryId = rs.getInt(1);
+                    if (!open.contains(entryId)) {
+                        byYear.computeIfAbsent(rs.getInt(2), y -> new ArrayList<>()).add(entryId);
+                    }
+                }
+            }
+        }
+
+        int archived = 0;
+        for (Map.Entry<Integer, List<Integer>> year : byYear.entrySet()) {
+            attach(year.getKey());
+            try {
+                List<Integer> ids = year.getValue();
+                for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                    archived += moveToArchive(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())), year.getKey(),
+                            cutoff, skip.get());
+                }
+            } finally {
+                detach();
+            }
+        }
+        if (archived > 0) {
+            System.out.println("Archived " + archived + " entries modified before " + cutoff);
+        }
+        return archived;
+    }
+
+    /**
+     * RESTORE: moves an archived entry back into the main tables.
+     *
+     * @param entryId The entry
+     * @return true if the entry was archived and has been restored
+     */
+    public boolean restoreEntry(int entryId) throws SQLException {
+        Integer year = null;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT archive_year FROM archived_entries WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) year = rs.getInt(1);
+            }
+        }
+        if (year == null) return false;
+
+        attach(year);
+        try {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                String select = "SELECT * FROM " + ALIAS + ".entries WHERE entry_id=?";
+                String insert = "INSERT INTO journal_entries(entry_id,user_id,title,content,date_created,date_modified,tags,version,chunked) " +
+                        "VALUES(?,?,?,?,?,?,?,?,?)";
+                try (PreparedStatement ps = conn.prepareStatement(select);
+                     PreparedStatement ins = conn.prepareStatement(insert)) {
+                    ps.setInt(1, entryId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("Entry " + entryId + " is missing from archive " + year);
+                        }
+                        ins.setInt(1, entryId);
+                        ins.setString(2, rs.getString("user_id"));
+                        ins.setString(3, rs.getString("title"));
+                        ins.setString(4, inflate(rs.getBytes("content")));
+                        ins.setString(5, rs.getString("date_created"));
+                        ins.setString(6, rs.getString("date_modified"));
+                        ins.setString(7, rs.getString("tags"));
+                        ins.setInt(8, rs.getInt("version"));
+                        ins.setInt(9, rs.getInt("chunked"));
+                    }
+                    ins.executeUpdate();
+                }
+
+                // Derived fields were kept on the stub, and tags may have been renamed there since archiving
+                String derived = "UPDATE journal_entries SET (tags,preview,word_count,char_count,todo_open,todo_done)=" +
+                        "(SELECT tags,preview,word_count,char_count,todo_open,todo_done FROM archived_entries WHERE entry_id=?) " +
+                        "WHERE entry_id=?";
+                try (PreparedStatement ps = conn.prepareStatement(derived)) {
+                    ps.setInt(1, entryId);
+                    ps.setInt(2, entryId);
+                    ps.executeUpdate();
+                }
+
+                copyBlocks(ALIAS, "main", entryId);
+                new BlockDAO(conn).migrateLegacyRows();
+                copyChunks(ALIAS, "main", entryId, false);
+                deleteBlocksAndChunks(ALIAS, entryId);
+                deleteRow(ALIAS + ".entries", entryId);
+                deleteRow("main.archived_entries", entryId);
+
+                conn.commit();
+                System.out.println("Restored entry " + entryId + " from archive " + year);
+                return true;
+            } catch (SQLException ex) {
+                conn.rollback();
+                System.err.println("Error restoring archived entry: " + ex.getMessage());
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } finally {
+            detach();
+        }
+    }
+
+    /** READ: stubs of a user's archived entries, newest first (content is not loaded) */
+    public List<JournalEntry> getArchivedEntriesByUserId(String userId) throws SQLException {
+        List<JournalEntry> list = new ArrayList<>();
+        String sql = "SELECT * FROM archived_entries WHERE user_id=? ORDER BY date_modified DESC";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapStub(rs));
+                }
+            }
+        } catch (SQLException ex) {
+            System.err.println("Error retrieving archived entries: " + ex.getMessage());
+            throw ex;
+        }
+        return list;
+    }
+
+    /**
+     * READ: an archived entry with its content and blocks, without restoring it (e.g. for an export).
+     * Rows an old archive still holds in the to-do and toggle tables come after the blocks,
+     * the way restoring the entry would place them.
+     *
+     * @param entryId The entry
+     * @return The entry and its blocks, or null if the entry is not archived
+     */
+    public ArchivedEntry readArchivedEntry(int entryId) throws SQLException {
+        JournalEntry entry = null;
+        int year = 0;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM archived_entries WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    entry = mapStub(rs);
+                    year = rs.getInt("archive_year");
+                }
+            }
+        }
+        if (entry == null) return null;
+
+        attach(year);
+        try {
+            String content = readArchivedContent(entryId, entry.getUserId());
+            if (content == null) {
+                throw new SQLException("Entry " + entryId + " is missing from archive " + year);
+            }
+            entry.setContent(content);
+
+            ContentCipher cipher = KeyRing.forUser(entry.getUserId());
+            List<BlockNode> blocks = new BlockDAO(conn).getBlockTree(ALIAS, entryId, cipher);
+            blocks.addAll(readLegacyBlocks(entryId, cipher));
+            return new ArchivedEntry(entry, blocks);
+        } finally {
+            detach();
+        }
+    }
+
+    /**
+     * SEARCH archived entries by keyword.
+     * Titles and tags are matched on the stubs; content is only read from the archives
+     * of years that still have unmatched entries for this user.
+     */
+    public List<JournalEntry> searchArchivedEntries(String userId, String keyword) throws SQLException {
+        String needle = keyword.toLowerCase(Locale.ROOT);
+        List<JournalEntry> matches = new ArrayList<>();
+        Map<Integer, Map<Integer, JournalEntry>> remainingByYear = new TreeMap<>();
+
+        String sql = "SELECT * FROM archived_entries WHERE user_id=? ORDER BY date_modified DESC";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    JournalEntry stub = mapStub(rs);
+                    if (containsIgnoreCase(stub.getTitle(), needle) || containsIgnoreCase(stub.getTags(), needle)) {
+                        matches.add(stub);
+                    } else {
+                        remainingByYear.computeIfAbsent(rs.getInt("archive_year"), y -> new LinkedHashMap<>())
+                                .put(stub.getEntryId(), stub);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Map<Integer, JournalEntry>> year : remainingByYear.entrySet()) {
+            attach(year.getKey());
+            try {
+                for (JournalEntry stub : year.getValue().values()) {
+                    if (containsIgnoreCase(readArchivedContent(stub.getEntryId(), userId), needle)) {
+                        matches.add(stub);
+                    }
+                }
+            } finally {
+                detach();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Helper method to move one batch of entries in a single transaction.
+     * An entry is only moved if it is still older than the cutoff and not open, checked in the same transaction.
+     */
+    private int moveToArchive(List<Integer> ids, int year, LocalDateTime cutoff, Set<Integer> open) throws SQLException {
+        String select = "SELECT * FROM journal_entries WHERE entry_id=? AND date_modified < ?";
+        String insert = "INSERT OR REPLACE INTO " + ALIAS + ".entries" +
+                "(entry_id,user_id,title,content,date_created,date_modified,tags,version,chunked) VALUES(?,?,?,?,?,?,?,?,?)";
+        String stub = "INSERT OR REPLACE INTO archived_entries(entry_id,user_id,title,tags,date_created,date_modified," +
+                "archive_year,archived_at,preview,word_count,char_count,todo_open,todo_done) VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
+        String now = LocalDateTime.now().toString();
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement sel = conn.prepareStatement(select);
+             PreparedStatement ins = conn.prepareStatement(insert);
+             PreparedStatement stb = conn.prepareStatement(stub)) {
+            int moved = 0;
+            for (int entryId : ids) {
+                if (open.contains(entryId)) continue;
+                sel.setInt(1, entryId);
+                sel.setString(2, cutoff.toString());
+                try (ResultSet rs = sel.executeQuery()) {
+                    // Deleted, edited or already archived since the candidates were listed
+                    if (!rs.next()) continue;
+
+                    ins.setInt(1, entryId);
+                    ins.setString(2, rs.getString("user_id"));
+                    ins.setString(3, rs.getString("title"));
+                    ins.setBytes(4, deflate(rs.getString("content")));
+                    ins.setString(5, rs.getString("date_created"));
+                    ins.setString(6, rs.getString("date_modified"));
+                    ins.setString(7, rs.getString("tags"));
+                    ins.setInt(8, rs.getInt("version"));
+                    ins.setInt(9, rs.getInt("chunked"));
+                    ins.executeUpdate();
+
+                    stb.setInt(1, entryId);
+                    stb.setString(2, rs.getString("user_id"));
+                    stb.setString(3, rs.getString("title"));
+                    stb.setString(4, rs.getString("tags"));
+                    stb.setString(5, rs.getString("date_created"));
+                    stb.setString(6, rs.getString("date_modified"));
+                    stb.setInt(7, year);
+                    stb.setString(8, now);
+                    stb.setString(9, rs.getString("preview"));
+                    stb.setInt(10, rs.getInt("word_count"));
+                    stb.setInt(11, rs.getInt("char_count"));
+                    stb.setInt(12, rs.getInt("todo_open"));
+                    stb.setInt(13, rs.getInt("todo_done"));
+                    stb.executeUpdate();
+                }
+
+                copyBlocks("main", ALIAS, entryId);
+                copyChunks("main", ALIAS, entryId, true);
+                deleteBlocksAndChunks("main", entryId);
+                deleteRow("main.journal_entries", entryId);
+                moved++;
+            }
+            conn.commit();
+            return moved;
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error archiving entries: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Helper method to copy an entry's blocks between the main and archive schemas.
+     * Archives written before the blocks table may still hold to-do and toggle rows, so those are copied too.
+     */
+    private void copyBlocks(String from, String to, int entryId) throws SQLException {
+        String todos = "INSERT OR REPLACE INTO " + to + ".todo_items(todo_id,entry_id,description,is_done,version) " +
+                "SELECT todo_id,entry_id,description,is_done,version FROM " + from + ".todo_items WHERE entry_id=?";
+        String toggles = "INSERT OR REPLACE INTO " + to + ".toggle_blocks(toggle_id,entry_id,title,content,is_expanded,version) " +
+                "SELECT toggle_id,entry_id,title,content,is_expanded,version FROM " + from + ".toggle_blocks WHERE entry_id=?";
+        String blocks = "INSERT OR REPLACE INTO " + to + ".blocks(block_id,entry_id,parent_id,sort_key,type,payload,detail,state,version) " +
+                "SELECT block_id,entry_id,parent_id,sort_key,type,payload,detail,state,version FROM " + from + ".blocks WHERE entry_id=?";
+        for (String sql : new String[] { todos, toggles, blocks }) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, entryId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /** Helper method to copy an entry's chunks, compressing or decompressing the chunk text */
+    private void copyChunks(String from, String to, int entryId, boolean compress) throws SQLException {
+        String index = "INSERT OR REPLACE INTO " + to + ".entry_chunks(entry_id,chunk_index,chunk_hash,length) " +
+                "SELECT entry_id,chunk_index,chunk_hash,length FROM " + from + ".entry_chunks WHERE entry_id=?";
+        try (PreparedStatement ps = conn.prepareStatement(index)) {
+            ps.setInt(1, entryId);
+            ps.executeUpdate();
+        }
+
+        String select = "SELECT chunk_hash, content FROM " + from + ".chunk_data WHERE entry_id=?";
+        String insert = "INSERT OR REPLACE INTO " + to + ".chunk_data(entry_id,chunk_hash,content) VALUES(?,?,?)";
+        try (PreparedStatement sel = conn.prepareStatement(select);
+             PreparedStatement ins = conn.prepareStatement(insert)) {
+            sel.setInt(1, entryId);
+            try (ResultSet rs = sel.executeQuery()) {
+                while (rs.next()) {
+                    ins.setInt(1, entryId);
+                    ins.setString(2, rs.getString(1));
+                    if (compress) {
+                        ins.setBytes(3, deflate(rs.getString(2)));
+                    } else {
+                        ins.setString(3, inflate(rs.getBytes(2)));
+                    }
+                    ins.addBatch();
+                }
+            }
+            ins.executeBatch();
+        }
+    }
+
+    /** Helper method to delete an entry's blocks and chunks from one schema */
+    private void deleteBlocksAndChunks(String schema, int entryId) throws SQLException {
+        for (String table : new String[] { "blocks", "todo_items", "toggle_blocks", "entry_chunks", "chunk_data" }) {
+            deleteRow(schema + "." + table, entryId);
+        }
+    }
+
+    private void deleteRow(String table, int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + table + " WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Helper method to read and decrypt an archived entry's full text; the year's archive must be attached */
+    private String readArchivedContent(int entryId, String userId) throws SQLException {
+        String sql = "SELECT content, chunked FROM " + ALIAS + ".entries WHERE entry_id=?";
+        boolean chunked;
+        String content;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                content = inflate(rs.getBytes(1));
+                chunked = rs.getInt(2) == 1;
+            }
+        }
+        if (!chunked) {
+            return KeyRing.open(KeyRing.forUser(userId), content);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        String chunks = "SELECT d.content FROM " + ALIAS + ".entry_chunks c JOIN " + ALIAS + ".chunk_data d " +
+                "ON d.entry_id=c.entry_id AND d.chunk_hash=c.chunk_hash WHERE c.entry_id=? ORDER BY c.chunk_index";
+        try (PreparedStatement ps = conn.prepareStatement(chunks)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sb.append(KeyRing.open(KeyRing.forUser(userId), inflate(rs.getBytes(1))));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Helper method to read an archived entry's old to-do and toggle rows as blocks, each to-do as a
+     * one-item to-do list, as {@link BlockDAO#migrateLegacyRows} would; the year's archive must be attached
+     */
+    private List<BlockNode> readLegacyBlocks(int entryId, ContentCipher cipher) throws SQLException {
+        List<BlockNode> blocks = new ArrayList<>();
+        String todos = "SELECT description, is_done FROM " + ALIAS + ".todo_items WHERE entry_id=? ORDER BY todo_id";
+        try (PreparedStatement ps = conn.prepareStatement(todos)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    BlockNode list = new BlockNode(entryId, 0, BlockNode.TODO_LIST, null, null, 0);
+                    list.getChildren().add(new BlockNode(entryId, 0, BlockNode.TODO,
+                            KeyRing.open(cipher, rs.getString(1)), null, rs.getInt(2)));
+                    blocks.add(list);
+                }
+            }
+        }
+        String toggles = "SELECT title, content, is_expanded FROM " + ALIAS + ".toggle_blocks WHERE entry_id=? ORDER BY toggle_id";
+        try (PreparedStatement ps = conn.prepareStatement(toggles)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    blocks.add(new BlockNode(entryId, 0, BlockNode.TOGGLE, KeyRing.open(cipher, rs.getString(1)),
+                            KeyRing.open(cipher, rs.getString(2)), rs.getInt(3)));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /** Helper method to attach a year's archive, creating the file and its tables on first use */
+    private void attach(int year) throws SQLException {
+        File folder = new File(ARCHIVE_FOLDER);
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new SQLException("Could not create archive folder: " + folder.getAbsolutePath());
+        }
+        File file = new File(folder, "journal-archive-" + year + ".db");
+        // A detach fails while another statement is still open on the connection; don't let that block later attaches
+        if (isAttached()) {
+            detach();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("ATTACH DATABASE ? AS " + ALIAS)) {
+            ps.setString(1, file.getAbsolutePath());
+            ps.execute();
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".entries (" +
+                    "  entry_id INTEGER PRIMARY KEY, user_id TEXT NOT NULL, title TEXT, content BLOB," +
+                    "  date_created TEXT, date_modified TEXT, tags TEXT, version INTEGER, chunked INTEGER)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".todo_items (" +
+                    "  todo_id INTEGER PRIMARY KEY, entry_id INTEGER NOT NULL, description TEXT," +
+                    "  is_done INTEGER, version INTEGER)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".toggle_blocks (" +
+                    "  toggle_id INTEGER PRIMARY KEY, entry_id INTEGER NOT NULL, title TEXT, content TEXT," +
+                    "  is_expanded INTEGER, version INTEGER)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".blocks (" +
+                    "  block_id INTEGER PRIMARY KEY, entry_id INTEGER NOT NULL, parent_id INTEGER, sort_key TEXT," +
+                    "  type TEXT NOT NULL, payload TEXT, detail TEXT, state INTEGER, version INTEGER)");
+            if (!hasArchiveColumn(stmt, "blocks", "sort_key")) {
+                // Archives written while blocks were ordered by position
+                stmt.execute("ALTER TABLE " + ALIAS + ".blocks ADD COLUMN sort_key TEXT");
+                stmt.execute("UPDATE " + ALIAS + ".blocks SET sort_key=printf('%010d1', position)");
+            }
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".entry_chunks (" +
+                    "  entry_id INTEGER NOT NULL, chunk_index INTEGER NOT NULL, chunk_hash TEXT NOT NULL," +
+                    "  length INTEGER NOT NULL, PRIMARY KEY(entry_id, chunk_index))");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".chunk_data (" +
+                    "  entry_id INTEGER NOT NULL, chunk_hash TEXT NOT NULL, content BLOB," +
+                    "  PRIMARY KEY(entry_id, chunk_hash))");
+            stmt.execute("CREATE INDEX IF NOT EXISTS " + ALIAS + ".idx_todo_items_entry ON todo_items(entry_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS " + ALIAS + ".idx_toggle_blocks_entry ON toggle_blocks(entry_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS " + ALIAS + ".idx_blocks_entry ON blocks(entry_id)");
+        } catch (SQLException ex) {
+            detach();
+            throw ex;
+        }
+    }
+
+    private static boolean hasArchiveColumn(Statement stmt, String table, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + ALIAS + ".table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAttached() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA database_list")) {
+            while (rs.next()) {
+                if (ALIAS.equals(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private void detach() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DETACH DATABASE " + ALIAS);
+        }
+    }
+
+    private JournalEntry mapStub(ResultSet rs) throws SQLException {
+        String created = rs.getString("date_created");
+        String modified = rs.getString("date_modified");
+        JournalEntry entry = new JournalEntry(
+                rs.getInt("entry_id"),
+                rs.getString("user_id"),
+                rs.getString("title"),
+                null,
+                rs.getString("tags"),
+                created == null || created.isEmpty() ? null : LocalDateTime.parse(created),
+                modified == null || modified.isEmpty() ? null : LocalDateTime.parse(modified)
+        );
+        entry.setArchived(true);
+        entry.setPreview(KeyRing.open(KeyRing.forUser(entry.getUserId()), rs.getString("preview")));
+        entry.setWordCount(rs.getInt("word_count"));
+        entry.setCharCount(rs.getInt("char_count"));
+        entry.setTodoOpen(rs.getInt("todo_open"));
+        entry.setTodoDone(rs.getInt("todo_done"));
+        return entry;
+    }
+
+    private static boolean containsIgnoreCase(String text, String needle) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    /** Compresses text for the archive (null stays null) */
+    private static byte[] deflate(String text) {
+        if (text == null) return null;
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, text.length() / 3));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Decompresses text written by {@link #deflate} */
+    private static String inflate(byte[] data) throws SQLException {
+        if (data == null) return null;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SQLException("Archived content is truncated");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new SQLException("Archived content is corrupted: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package DAO;
+
+import model.Attachment;
+import util.AttachmentStore;
+import util.DBConnection;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reference rows for entry attachments.
+ * attachment_blobs has one row per distinct hash with a reference count;
+ * entry_attachments links a hash to an entry under the user's file name.
+ * Blobs whose count drops to zero are garbage-collected from the store once the
+ * transaction that released them has committed.
+ */
+public class AttachmentDAO {
+    private final Connection conn;
+    private final AttachmentStore store;
+
+    public AttachmentDAO() throws SQLException {
+        this(DBConnection.getInstance().getConnection());
+    }
+
+    public AttachmentDAO(Connection conn) throws SQLException {
+        this.conn = conn;
+        try {
+            this.store = AttachmentStore.getInstance();
+        } catch (IOException e) {
+            throw new SQLException("Failed to open attachment store: " + e.getMessage(), e);
+        }
+    }
+
+    /** CREATE: copy a file into the store and attach it to an entry */
+    public Attachment addAttachment(int entryId, Path file) throws SQLException {
+        AttachmentStore.StoredBlob blob;
+        try {
+            // Stream the bytes first so the transaction below stays short
+            blob = store.store(file);
+        } catch (IOException e) {
+            throw new SQLException("Failed to store attachment: " + e.getMessage(), e);
+        }
+        try {
+            return addReference(entryId, file, blob);
+        } finally {
+            // The blob can be garbage-collected again once its reference is committed, or wasn't written
+            store.settle(blob.hash());
+        }
+    }
+
+    /** Helper method to write the reference rows of a blob just stored */
+    private Attachment addReference(int entryId, Path file, AttachmentStore.StoredBlob blob) throws SQLException {
+        String mimeType;
+        try {
+            mimeType = Files.probeContentType(file);
+        } catch (IOException e) {
+            throw new SQLException("Failed to store attachment: " + e.getMessage(), e);
+        }
+        String fileName = file.getFileName().toString();
+        LocalDateTime now = LocalDateTime.now();
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            String upsert = "INSERT INTO attachment_blobs(hash,size,ref_count) VALUES(?,?,1) " +
+                    "ON CONFLICT(hash) DO UPDATE SET ref_count=ref_count+1";
+            try (PreparedStatement ps = conn.prepareStatement(upsert)) {
+                ps.setString(1, blob.hash());
+                ps.setLong(2, blob.size());
+                ps.executeUpdate();
+            }
+
+            Attachment attachment = new Attachment(0, entryId, blob.hash(), fileName, mimeType, blob.size(), now);
+            String sql = "INSERT INTO entry_attachments(entry_id,hash,file_name,mime_type,date_added) VALUES(?,?,?,?,?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setInt(1, entryId);
+                ps.setString(2, blob.hash());
+                ps.setString(3, fileName);
+                ps.setString(4, mimeType);
+                ps.setString(5, now.toString());
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) attachment.setAttachmentId(rs.getInt(1));
+                }
+            }
+
+            conn.commit();
+            System.out.println("Attached " + fileName + " (" + blob.hash() + ") to entry " + entryId);
+            return attachment;
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error adding attachment: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** READ */
+    public List<Attachment> getAttachmentsByEntryId(int entryId) throws SQLException {
+        List<Attachment> list = new ArrayList<>();
+        String sql = "SELECT a.*, b.size FROM entry_attachments a " +
+                "JOIN attachment_blobs b ON b.hash = a.hash WHERE a.entry_id=? ORDER BY a.attachment_id";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+        }
+        return list;
+    }
+
+    /** READ: memory-map the attachment's bytes */
+    public MappedByteBuffer readAttachment(Attachment attachment) throws IOException {
+        return store.map(attachment.getHash());
+    }
+
+    /** READ: copy the attachment's bytes to a channel without going through the heap */
+    public long transferAttachment(Attachment attachment, WritableByteChannel target) throws IOException {
+        return store.transferTo(attachment.getHash(), target);
+    }
+
+    /** DELETE: remove one attachment from its entry */
+    public void deleteAttachment(int attachmentId) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            String release = "UPDATE attachment_blobs SET ref_count=ref_count-1 " +
+                    "WHERE hash=(SELECT hash FROM entry_attachments WHERE attachment_id=?)";
+            try (PreparedStatement ps = conn.prepareStatement(release)) {
+                ps.setInt(1, attachmentId);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM entry_attachments WHERE attachment_id=?")) {
+                ps.setInt(1, attachmentId);
+                ps.executeUpdate();
+            }
+            List<String> unreferenced = deleteUnreferencedBlobs();
+            conn.commit();
+            removeBlobs(unreferenced);
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error deleting attachment: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** DELETE: drop all attachments of an entry and garbage-collect blobs nobody references */
+    public void deleteAttachmentsByEntryId(int entryId) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            List<String> unreferenced = releaseAttachments(entryId);
+            conn.commit();
+            removeBlobs(unreferenced);
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error deleting attachments for entry: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * DELETE: drop all attachments of an entry inside the caller's transaction.
+     * The files of the blobs nobody references any more stay on disk until the caller
+     * has committed and passes the returned hashes to {@link #removeBlobs}.
+     *
+     * @return Hashes of the blobs whose rows were dropped
+     */
+    public List<String> releaseAttachments(int entryId) throws SQLException {
+        String release = "UPDATE attachment_blobs SET ref_count = ref_count - " +
+                "(SELECT COUNT(*) FROM entry_attachments a WHERE a.entry_id=? AND a.hash=attachment_blobs.hash) " +
+                "WHERE hash IN (SELECT hash FROM entry_attachments WHERE entry_id=?)";
+        try (PreparedStatement ps = conn.prepareStatement(release)) {
+            ps.setInt(1, entryId);
+            ps.setInt(2, entryId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM entry_attachments WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            ps.executeUpdate();
+        }
+        return deleteUnreferencedBlobs();
+    }
+
+    /**
+     * Helper method to drop blob rows whose reference count reached zero.
+     * Runs inside the caller's transaction; files are removed only after commit.
+     */
+    private List<String> deleteUnreferencedBlobs() throws SQLException {
+        List<String> hashes = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT hash FROM attachment_blobs WHERE ref_count<=0");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                hashes.add(rs.getString(1));
+            }
+        }
+        if (!hashes.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM attachment_blobs WHERE ref_count<=0")) {
+                ps.executeUpdate();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * DELETE: removes the files of blobs whose rows were dropped, once that is committed.
+     * Each blob's row is looked up again right before its file goes, under the store's lock,
+     * so a blob attached again in the meantime is kept.
+     */
+    public void removeBlobs(List<String> hashes) {
+        for (String hash : hashes) {
+            try {
+                if (store.deleteUnreferenced(hash, this::isReferenced)) {
+                    System.out.println("Garbage-collected attachment blob: " + hash);
+                }
+            } catch (IOException e) {
+                // An orphaned file wastes space but is harmless; it is reused if the same bytes come back
+                System.err.println("Could not delete attachment blob " + hash + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Helper method for {@link #removeBlobs}: whether a blob has a row again */
+    private boolean isReferenced(String hash) throws IOException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM attachment_blobs WHERE hash=? AND ref_count>0")) {
+            ps.setString(1, hash);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not check references: " + e.getMessage(), e);
+        }
+    }
+
+    private Attachment mapRow(ResultSet rs) throws SQLException {
+        LocalDateTime dateAdded = null;
+        String dateAddedStr = rs.getString("date_added");
+        if (dateAddedStr != null && !dateAddedStr.isEmpty()) {
+            dateAdded = LocalDateTime.parse(dateAddedStr);
+        }
+        return new Attachment(
+                rs.getInt("attachment_id"),
+                rs.getInt("entry_id"),
+                rs.getString("hash"),
+                rs.getString("file_name"),
+                rs.getString("mime_type"),
+                rs.getLong("size"),
+                dateAdded
+        );
+    }
+}
@@ -0,0 +1,465 @@
+package DAO;
+
+import model.BlockNode;
+import util.ContentCipher;
+import util.DBConnection;
+import util.EntryEventBus;
+import util.FractionalIndex;
+import util.KeyRing;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Persists an entry's block tree in the blocks table.
+ * A tree is loaded with one recursive query and saved by diffing it against the
+ * snapshot taken when it was loaded (or last saved): only blocks that were added,
+ * changed, moved or removed are written.
+ */
+public class BlockDAO {
+    private final Connection conn;
+
+    public BlockDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public BlockDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /** READ: an entry's whole block tree, top-level blocks in order with their children attached */
+    public List<BlockNode> getBlockTree(int entryId) throws SQLException {
+        return getBlockTree("main", entryId, KeyRing.forEntry(conn, entryId));
+    }
+
+    /**
+     * READ: an entry's block tree from one schema of the connection, e.g. an attached archive.
+     *
+     * @param schema The schema holding the blocks table
+     * @param entryId The entry
+     * @param cipher The owner's cipher (the entry may not be in the main tables to look the owner up)
+     */
+    public List<BlockNode> getBlockTree(String schema, int entryId, ContentCipher cipher) throws SQLException {
+        String blocks = schema + ".blocks";
+        String sql = "WITH RECURSIVE tree(block_id, depth) AS (" +
+                "  SELECT block_id, 0 FROM " + blocks + " WHERE entry_id=? AND parent_id IS NULL" +
+                "  UNION ALL" +
+                "  SELECT b.block_id, t.depth + 1 FROM " + blocks + " b JOIN tree t ON b.parent_id = t.block_id" +
+                ") SELECT b.*, t.depth FROM tree t JOIN " + blocks + " b ON b.block_id = t.block_id " +
+                "ORDER BY t.depth, b.parent_id, b.sort_key, b.block_id";
+        List<BlockNode> roots = new ArrayList<>();
+        Map<Integer, BlockNode> byId = new HashMap<>();
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                // Parents come before their children because rows are ordered by depth
+                while (rs.next()) {
+                    BlockNode node = mapRow(rs, cipher);
+                    byId.put(node.getBlockId(), node);
+                    if (node.getParentId() == null) {
+                        roots.add(node);
+                    } else {
+                        byId.get(node.getParentId()).getChildren().add(node);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            System.err.println("Error loading block tree: " + ex.getMessage());
+            throw ex;
+        }
+        System.out.println("Loaded " + byId.size() + " blocks for entry " + entryId);
+        return roots;
+    }
+
+    /**
+     * Takes the snapshot of every block in a tree, keyed by block ID.
+     * Pass the result to the next {@link #saveBlockTree} call as the persisted state.
+     */
+    public static Map<Integer, BlockNode.Snapshot> snapshotOf(List<BlockNode> roots) {
+        Map<Integer, BlockNode.Snapshot> snapshot = new HashMap<>();
+        Deque<BlockNode> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            BlockNode node = pending.pop();
+            if (node.getBlockId() != 0) {
+                snapshot.put(node.getBlockId(), node.snapshot());
+            }
+            pending.addAll(node.getChildren());
+        }
+        return snapshot;
+    }
+
+    /**
+     * SAVE: writes the differences between a tree and its last persisted snapshot in one transaction
+     * (the caller's, if one is open; the caller then commits).
+     * New blocks are inserted, blocks whose fields or place changed are updated (compare-and-swap on
+     * their version), and blocks in the snapshot that are no longer in the tree are deleted.
+     *
+     * @param entryId The entry the tree belongs to
+     * @param roots The top-level blocks, in order
+     * @param persisted The snapshot from the last load or save
+     * @return The snapshot of the tree as now persisted
+     * @throws StaleVersionException if a changed block was also saved elsewhere; nothing is written
+     */
+    public Map<Integer, BlockNode.Snapshot> saveBlockTree(int entryId, List<BlockNode> roots,
+                                                          Map<Integer, BlockNode.Snapshot> persisted) throws SQLException {
+        ContentCipher cipher = KeyRing.forEntry(conn, entryId);
+        Map<Integer, BlockNode.Snapshot> next = new HashMap<>();
+        List<BlockNode> inserted = new ArrayList<>();
+        List<BlockNode> updated = new ArrayList<>();
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            saveLevel(entryId, null, roots, persisted, next, inserted, updated, cipher);
+
+            int deleted = 0;
+            for (Integer blockId : persisted.keySet()) {
+                if (!next.containsKey(blockId)) {
+                    deleted += deleteBlockRow(blockId);
+                }
+            }
+            boolean todosChanged = !inserted.isEmpty() || deleted > 0
+                    || updated.stream().anyMatch(n -> BlockNode.TODO.equals(n.getType()));
+            if (todosChanged) {
+                refreshTodoCounts(entryId);
+            }
+
+            if (autoCommit) {
+                conn.commit();
+            }
+            if (todosChanged) {
+                EntryEventBus.todosChanged(entryId);
+            }
+            for (BlockNode node : updated) {
+                node.setVersion(node.getVersion() + 1);
+            }
+            if (!inserted.isEmpty() || !updated.isEmpty() || deleted > 0) {
+                System.out.println("Saved blocks of entry " + entryId + ": " + inserted.size() + " inserted, "
+                        + updated.size() + " updated, " + deleted + " deleted");
+            }
+            return next;
+        } catch (SQLException ex) {
+            if (autoCommit) {
+                conn.rollback();
+            }
+            // The inserts are rolled back, so those blocks are new again
+            for (BlockNode node : inserted) {
+                node.setBlockId(0);
+            }
+            System.err.println("Error saving block tree: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** Helper method to save one level of the tree, then recurse into each block's children */
+    private void saveLevel(int entryId, Integer parentId, List<BlockNode> level,
+                           Map<Integer, BlockNode.Snapshot> persisted, Map<Integer, BlockNode.Snapshot> next,
+                           List<BlockNode> inserted, List<BlockNode> updated, ContentCipher cipher) throws SQLException {
+        // Keys already in order are kept, so a moved or inserted block is the only one rewritten
+        List<String> keys = new ArrayList<>(level.size());
+        for (BlockNode node : level) {
+            keys.add(Objects.equals(node.getParentId(), parentId) ? node.getSortKey() : null);
+        }
+        keys = FractionalIndex.reorder(keys);
+
+        for (int i = 0; i < level.size(); i++) {
+            BlockNode node = level.get(i);
+            node.setEntryId(entryId);
+            node.setParentId(parentId);
+            node.setSortKey(keys.get(i));
+
+            if (node.getBlockId() == 0) {
+                insertBlock(node, cipher);
+                inserted.add(node);
+            } else if (!node.snapshot().equals(persisted.get(node.getBlockId()))) {
+                if (updateBlock(node, cipher)) {
+                    updated.add(node);
+                } else {
+                    // Deleted elsewhere while still open here: keep what the user sees
+                    node.setBlockId(0);
+                    insertBlock(node, cipher);
+                    inserted.add(node);
+                }
+            }
+
+            next.put(node.getBlockId(), node.snapshot());
+            saveLevel(entryId, node.getBlockId(), node.getChildren(), persisted, next, inserted, updated, cipher);
+        }
+    }
+
+    /** CREATE: inserts one block (without its children) and sets its ID */
+    public void insertBlock(BlockNode node, ContentCipher cipher) throws SQLException {
+        String sql = "INSERT INTO blocks(entry_id,parent_id,sort_key,type,payload,detail,state,version) VALUES(?,?,?,?,?,?,?,0)";
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, node.getEntryId());
+            ps.setObject(2, node.getParentId());
+            ps.setString(3, node.getSortKey());
+            ps.setString(4, node.getType());
+            ps.setString(5, KeyRing.seal(cipher, node.getPayload()));
+            ps.setString(6, KeyRing.seal(cipher, node.getDetail()));
+            ps.setInt(7, node.getState());
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) node.setBlockId(rs.getInt(1));
+            }
+        }
+        node.setVersion(0);
+    }
+
+    /**
+     * UPDATE: compare-and-swap on the version column. The caller bumps the in-memory version after commit.
+     *
+     * @return false if the block no longer exists
+     */
+    private boolean updateBlock(BlockNode node, ContentCipher cipher) throws SQLException {
+        String sql = "UPDATE blocks SET parent_id=?,sort_key=?,payload=?,detail=?,state=?,version=version+1 " +
+                "WHERE block_id=? AND version=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setObject(1, node.getParentId());
+            ps.setString(2, node.getSortKey());
+            ps.setString(3, KeyRing.seal(cipher, node.getPayload()));
+            ps.setString(4, KeyRing.seal(cipher, node.getDetail()));
+            ps.setInt(5, node.getState());
+            ps.setInt(6, node.getBlockId());
+            ps.setInt(7, node.getVersion());
+            if (ps.executeUpdate() == 1) return true;
+        }
+
+        Integer current = getVersion(node.getBlockId());
+        if (current != null) {
+            throw new StaleVersionException("blocks", node.getBlockId(), node.getVersion(), current);
+        }
+        return false;
+    }
+
+    /** READ: current version of a block, or null if it no longer exists */
+    public Integer getVersion(int blockId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT version FROM blocks WHERE block_id=?")) {
+            ps.setInt(1, blockId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /** READ: the entry a block of the given type belongs to, or null if there is no such block */
+    public Integer getEntryId(int blockId, String type) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT entry_id FROM blocks WHERE block_id=? AND type=?")) {
+            ps.setInt(1, blockId);
+            ps.setString(2, type);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /** READ: a sort key after the last top-level block of an entry */
+    public String nextRootKey(int entryId) throws SQLException {
+        String sql = "SELECT MAX(sort_key) FROM blocks WHERE entry_id=? AND parent_id IS NULL";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return FractionalIndex.between(rs.next() ? rs.getString(1) : null, null);
+            }
+        }
+    }
+
+    /** DELETE: a block and everything nested under it */
+    public int deleteSubtree(int blockId) throws SQLException {
+        String sql = "DELETE FROM blocks WHERE block_id IN (" +
+                "WITH RECURSIVE sub(id) AS (SELECT ? UNION ALL SELECT b.block_id FROM blocks b JOIN sub ON b.parent_id = sub.id) " +
+                "SELECT id FROM sub)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, blockId);
+            return ps.executeUpdate();
+        }
+    }
+
+    /** Helper method to delete a single block row; its children are deleted by the same diff */
+    private int deleteBlockRow(int blockId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM blocks WHERE block_id=?")) {
+            ps.setInt(1, blockId);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Recounts an entry's open and done to-dos into its derived columns.
+     * Doesn't touch the entry's version, so an editor holding the entry won't see a conflict.
+     */
+    public void refreshTodoCounts(int entryId) throws SQLException {
+        String sql = "UPDATE journal_entries SET " +
+                "todo_open=(SELECT COUNT(*) FROM blocks WHERE entry_id=? AND type='" + BlockNode.TODO + "' AND state=0), " +
+                "todo_done=(SELECT COUNT(*) FROM blocks WHERE entry_id=? AND type='" + BlockNode.TODO + "' AND state=1) " +
+                "WHERE entry_id=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, entryId);
+            ps.setInt(2, entryId);
+            ps.setInt(3, entryId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Gives fresh, short sort keys to every list of sibling blocks whose keys have grown longer
+     * than maxLength or that has blocks without a key. Each list is rewritten in its own
+     * transaction; the versions of its blocks are bumped so an editor holding old keys reloads.
+     *
+     * @param maxLength Rebalance lists with a key longer than this (0 rebalances every list)
+     * @param skipEntries Entries to leave alone, such as the one open in the editor
+     * @return The number of lists rebalanced
+     */
+    public int rebalanceSortKeys(int maxLength, Set<Integer> skipEntries) throws SQLException {
+        List<Object[]> lists = new ArrayList<>();
+        String find = "SELECT entry_id, parent_id FROM blocks GROUP BY entry_id, parent_id " +
+                "HAVING MAX(LENGTH(sort_key)) > ? OR SUM(sort_key IS NULL) > 0";
+        try (PreparedStatement ps = conn.prepareStatement(find)) {
+            ps.setInt(1, maxLength);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (!skipEntries.contains(rs.getInt(1))) {
+                        lists.add(new Object[] { rs.getInt(1), rs.getObject(2) });
+                    }
+                }
+            }
+        }
+
+        int rebalanced = 0;
+        for (Object[] list : lists) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                rebalanceList((Integer) list[0], (Integer) list[1]);
+                conn.commit();
+                rebalanced++;
+            } catch (SQLException ex) {
+                conn.rollback();
+                System.err.println("Error rebalancing block keys: " + ex.getMessage());
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        if (rebalanced > 0) {
+            System.out.println("Rebalanced sort keys of " + rebalanced + " block lists");
+        }
+        return rebalanced;
+    }
+
+    /** Helper method to give the children of one parent evenly spaced keys in their current order */
+    private void rebalanceList(int entryId, Integer parentId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        String select = "SELECT block_id FROM blocks WHERE entry_id=? AND parent_id IS ? ORDER BY sort_key, block_id";
+        try (PreparedStatement ps = conn.prepareStatement(select)) {
+            ps.setInt(1, entryId);
+            ps.setObject(2, parentId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+
+        List<String> keys = FractionalIndex.spread(ids.size());
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE blocks SET sort_key=?, version=version+1 WHERE block_id=?")) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(1, keys.get(i));
+                ps.setInt(2, ids.get(i));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Moves rows from the old todo_items and toggle_blocks tables into blocks.
+     * Each old to-do becomes a one-item to-do list and each toggle a top-level toggle, after the
+     * entry's existing blocks, which is how the editor used to show them. Values are copied as
+     * stored, so encrypted text stays encrypted. Runs in the caller's transaction.
+     *
+     * @return The number of rows moved
+     */
+    public int migrateLegacyRows() throws SQLException {
+        Map<Integer, String> nextKey = new HashMap<>();
+        int moved = 0;
+
+        String todos = "SELECT entry_id, description, is_done, version FROM todo_items ORDER BY entry_id, todo_id";
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(todos)) {
+            while (rs.next()) {
+                int entryId = rs.getInt("entry_id");
+                int listId = insertRaw(entryId, null, takeRootKey(nextKey, entryId), BlockNode.TODO_LIST, null, null, 0, 0);
+                insertRaw(entryId, listId, FractionalIndex.between(null, null), BlockNode.TODO, rs.getString("description"), null,
+                        rs.getInt("is_done"), rs.getInt("version"));
+                moved++;
+            }
+        }
+
+        String toggles = "SELECT entry_id, title, content, is_expanded, version FROM toggle_blocks ORDER BY entry_id, toggle_id";
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(toggles)) {
+            while (rs.next()) {
+                int entryId = rs.getInt("entry_id");
+                insertRaw(entryId, null, takeRootKey(nextKey, entryId), BlockNode.TOGGLE,
+                        rs.getString("title"), rs.getString("content"), rs.getInt("is_expanded"), rs.getInt("version"));
+                moved++;
+            }
+        }
+
+        if (moved > 0) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM todo_items");
+                stmt.executeUpdate("DELETE FROM toggle_blocks");
+            }
+            for (int entryId : nextKey.keySet()) {
+                refreshTodoCounts(entryId);
+            }
+            System.out.println("Moved " + moved + " to-do and toggle rows into blocks");
+        }
+        return moved;
+    }
+
+    private String takeRootKey(Map<Integer, String> nextKey, int entryId) throws SQLException {
+        String key = nextKey.get(entryId);
+        if (key == null) {
+            key = nextRootKey(entryId);
+        }
+        nextKey.put(entryId, FractionalIndex.between(key, null));
+        return key;
+    }
+
+    /** Helper method to insert a block row with values that are already in their stored form */
+    private int insertRaw(int entryId, Integer parentId, String sortKey, String type,
+                          String payload, String detail, int state, int version) throws SQLException {
+        String sql = "INSERT INTO blocks(entry_id,parent_id,sort_key,type,payload,detail,state,version) VALUES(?,?,?,?,?,?,?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, entryId);
+            ps.setObject(2, parentId);
+            ps.setString(3, sortKey);
+            ps.setString(4, type);
+            ps.setString(5, payload);
+            ps.setString(6, detail);
+            ps.setInt(7, state);
+            ps.setInt(8, version);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private BlockNode mapRow(ResultSet rs, ContentCipher cipher) throws SQLException {
+        BlockNode node = new BlockNode(
+                rs.getInt("entry_id"),
+                rs.getInt("block_id"),
+                rs.getString("type"),
+                KeyRing.open(cipher, rs.getString("payload")),
+                KeyRing.open(cipher, rs.getString("detail")),
+                rs.getInt("state")
+        );
+        int parentId = rs.getInt("parent_id");
+        node.setParentId(rs.wasNull() ? null : parentId);
+        node.setSortKey(rs.getString("sort_key"));
+        node.setVersion(rs.getInt("version"));
+        return node;
+    }
+}
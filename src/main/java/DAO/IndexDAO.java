@@ -0,0 +1,79 @@
+package DAO;
+
+import DAO.SyncDAO.Change;
+import util.DBConnection;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the progress of the background indexers (see {@link util.IndexingService}).
+ *
+ * index_state has one row per indexer and user:
+ *   version - the indexer's format when its data for the user was built; a different version means rebuild
+ *   seq     - the user's entry changes up to this position of the change feed (sync_rows) are indexed
+ */
+public class IndexDAO {
+    /** Where an indexer has got for one user */
+    public record State(int version, long seq) { }
+
+    private final Connection conn;
+
+    public IndexDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public IndexDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /** READ: an indexer's state for a user, or null if it has never run for them */
+    public State getState(String indexer, String userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT version, seq FROM index_state WHERE indexer=? AND user_id=?")) {
+            ps.setString(1, indexer);
+            ps.setString(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new State(rs.getInt(1), rs.getLong(2)) : null;
+            }
+        }
+    }
+
+    /** UPDATE: records that an indexer is current for a user up to a feed position */
+    public void setState(String indexer, String userId, int version, long seq) throws SQLException {
+        String sql = "INSERT INTO index_state(indexer,user_id,version,seq,built_at) VALUES(?,?,?,?,?) " +
+                "ON CONFLICT(indexer, user_id) DO UPDATE SET version=excluded.version, seq=excluded.seq, built_at=excluded.built_at";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, indexer);
+            ps.setString(2, userId);
+            ps.setInt(3, version);
+            ps.setLong(4, seq);
+            ps.setString(5, LocalDateTime.now().toString());
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * READ: a user's entry changes in a range of the feed, oldest first; block changes are left out.
+     * Tombstones are included unless only live entries are asked for, as for a rebuild.
+     */
+    public List<Change> getEntryChanges(String userId, long after, long upTo, boolean liveOnly) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        String sql = "SELECT uid, local_id, seq, stamp, deleted FROM sync_rows " +
+                "WHERE user_id=? AND kind='" + SyncDAO.ENTRY + "' AND seq>? AND seq<=? AND local_id IS NOT NULL" +
+                (liveOnly ? " AND deleted=0" : "") + " ORDER BY seq";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            ps.setLong(2, after);
+            ps.setLong(3, upTo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new Change(rs.getString(1), SyncDAO.ENTRY, rs.getInt(2), rs.getLong(3),
+                            rs.getString(4), rs.getInt(5) == 1));
+                }
+            }
+        }
+        return changes;
+    }
+}
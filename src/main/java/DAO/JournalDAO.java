@@ -1,12 +1,22 @@
 package DAO;
 
 import model.JournalEntry;
+import util.ContentChunker;
+import util.ContentCipher;
 import util.DBConnection;
+import util.EntryEventBus;
+import util.EntryStats;
+import util.KeyRing;
+import util.SearchIndexer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class JournalDAO {
     private final Connection conn;
@@ -15,16 +25,38 @@ public class JournalDAO {
         this.conn = DBConnection.getInstance().getConnection();
     }
 
-    /** CREATE */
+    public JournalDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * CREATE: large content goes to entry_chunks instead of the content column.
+     * Content is encrypted if the owner is unlocked in the {@link KeyRing}.
+     * Throws {@link QuotaExceededException} and saves nothing if the entry would take the owner over a quota.
+     * Runs in its own transaction, or in the caller's if one is open (the caller then commits or rolls back).
+     */
     public void saveEntry(JournalEntry e) throws SQLException {
-        String sql = "INSERT INTO journal_entries(user_id,title,content,date_created,date_modified,tags) VALUES(?,?,?,?,?,?)";
+        boolean chunked = ContentChunker.shouldChunk(e.getContent());
+        ContentCipher cipher = KeyRing.forUser(e.getUserId());
+        EntryStats stats = EntryStats.of(e.getContent());
+        String sql = "INSERT INTO journal_entries(user_id,title,content,date_created,date_modified,tags,chunked," +
+                "preview,word_count,char_count) VALUES(?,?,?,?,?,?,?,?,?,?)";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
         try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            UsageDAO usageDAO = new UsageDAO(conn);
+            long bytesBefore = usageDAO.getUsedBytes(e.getUserId());
+
             ps.setString(1, e.getUserId());
             ps.setString(2, e.getTitle());
-            ps.setString(3, e.getContent());
+            ps.setString(3, chunked ? "" : KeyRing.seal(cipher, e.getContent()));
             ps.setString(4, e.getDateCreated().toString());
             ps.setString(5, e.getDateModified().toString());
             ps.setString(6, e.getTags());
+            ps.setInt(7, chunked ? 1 : 0);
+            ps.setString(8, KeyRing.seal(cipher, stats.preview()));
+            ps.setInt(9, stats.wordCount());
+            ps.setInt(10, stats.charCount());
 
             int result = ps.executeUpdate();
             System.out.println("Rows inserted: " + result);
@@ -33,25 +65,49 @@ public class JournalDAO {
                 if (rs.next()) {
                     int generatedId = rs.getInt(1);
                     e.setEntryId(generatedId);
+                    e.setVersion(0);
                     System.out.println("Generated entry ID: " + generatedId);
                 } else {
                     System.out.println("No ID generated for journal entry");
                 }
             }
+
+            if (chunked) {
+                writeChunks(e.getEntryId(), e.getContent(), cipher);
+            }
+            // The usage triggers have counted the new rows; undo them if that went over a quota
+            usageDAO.checkQuota(e.getUserId(), bytesBefore, true);
+            if (autoCommit) {
+                conn.commit();
+            }
+            e.setChunked(chunked);
+            applyStats(e, stats);
+            EntryEventBus.entryChanged(e.getEntryId());
         } catch (SQLException ex) {
+            if (autoCommit) {
+                conn.rollback();
+            }
+            // Nothing is saved, so the entry stays new
+            e.setEntryId(0);
             System.err.println("Error saving journal entry: " + ex.getMessage());
             throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
     }
 
-    /** READ single */
+    /** READ single: chunked content is reassembled */
     public JournalEntry getEntryById(int entryId) throws SQLException {
         String sql = "SELECT * FROM journal_entries WHERE entry_id=?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, entryId);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return mapRow(rs);
+                    JournalEntry entry = mapRow(rs);
+                    if (entry.isChunked()) {
+                        entry.setContent(readChunks(entryId));
+                    }
+                    return entry;
                 } else {
                     System.out.println("No entry found with ID: " + entryId);
                     return null;
@@ -63,6 +119,29 @@ public class JournalDAO {
         }
     }
 
+    /**
+     * READ summaries for one user: every column except the content, which the dashboard doesn't need.
+     * Entries come back with null content; load one with {@link #getEntryById} to edit it.
+     */
+    public List<JournalEntry> getEntrySummariesByUserId(String userId) throws SQLException {
+        List<JournalEntry> list = new ArrayList<>();
+        String sql = "SELECT entry_id,user_id,title,NULL AS content,date_created,date_modified,tags,version,chunked," +
+                "preview,word_count,char_count,todo_open,todo_done FROM journal_entries " +
+                "WHERE user_id=? ORDER BY date_modified DESC";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException ex) {
+            System.err.println("Error retrieving entry summaries for user: " + ex.getMessage());
+            throw ex;
+        }
+        return list;
+    }
+
     /** READ all for one user */
     public List<JournalEntry> getEntriesByUserId(String userId) throws SQLException {
         List<JournalEntry> list = new ArrayList<>();
@@ -88,77 +167,437 @@ public class JournalDAO {
         return list;
     }
 
-    /** UPDATE */
+    /**
+     * UPDATE: compare-and-swap on the version column.
+     * Throws {@link StaleVersionException} if the row was saved by someone else since it was read.
+     * For chunked entries only the chunks whose text changed are written.
+     * Throws {@link QuotaExceededException} and saves nothing if growing the entry would take the owner over
+     * their storage quota; saves that don't add bytes always succeed.
+     * An entry archived while it was open is restored and then saved; one that was deleted throws,
+     * so the caller can keep the edits instead of losing them.
+     */
     public void updateEntry(JournalEntry e) throws SQLException {
-        String sql = "UPDATE journal_entries SET title=?,content=?,date_modified=?,tags=? WHERE entry_id=?";
+        if (writeEntry(e)) return;
+
+        // Restoring attaches the archive, which can't happen inside the update's transaction
+        if (new ArchiveDAO(conn).restoreEntry(e.getEntryId()) && writeEntry(e)) {
+            System.out.println("Restored archived entry " + e.getEntryId() + " to save it");
+            return;
+        }
+        throw new SQLException("Entry " + e.getEntryId() + " no longer exists; it was not saved");
+    }
+
+    /**
+     * Helper method for {@link #updateEntry}.
+     *
+     * @return false if the entry's row is not in journal_entries
+     */
+    private boolean writeEntry(JournalEntry e) throws SQLException {
+        boolean chunked = ContentChunker.shouldChunk(e.getContent());
+        ContentCipher cipher = e.getUserId() != null
+                ? KeyRing.forUser(e.getUserId())
+                : KeyRing.forEntry(conn, e.getEntryId());
+        EntryStats stats = EntryStats.of(e.getContent());
+        String sql = "UPDATE journal_entries SET title=?,content=?,date_modified=?,tags=?,chunked=?," +
+                "preview=?,word_count=?,char_count=?,version=version+1 WHERE entry_id=? AND version=?";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            UsageDAO usageDAO = new UsageDAO(conn);
+            String owner = e.getUserId() != null ? e.getUserId() : getOwnerId(e.getEntryId());
+            long bytesBefore = owner != null ? usageDAO.getUsedBytes(owner) : 0;
+
             ps.setString(1, e.getTitle());
-            ps.setString(2, e.getContent());
+            ps.setString(2, chunked ? "" : KeyRing.seal(cipher, e.getContent()));
             ps.setString(3, LocalDateTime.now().toString());
             ps.setString(4, e.getTags());
-            ps.setInt(5, e.getEntryId());
+            ps.setInt(5, chunked ? 1 : 0);
+            ps.setString(6, KeyRing.seal(cipher, stats.preview()));
+            ps.setInt(7, stats.wordCount());
+            ps.setInt(8, stats.charCount());
+            ps.setInt(9, e.getEntryId());
+            ps.setInt(10, e.getVersion());
 
             int result = ps.executeUpdate();
             System.out.println("Rows updated: " + result);
 
             if (result == 0) {
-                System.out.println("Warning: No rows updated for entry ID: " + e.getEntryId());
+                conn.rollback();
+                Integer current = getVersion(e.getEntryId());
+                if (current != null) {
+                    throw new StaleVersionException("journal_entries", e.getEntryId(), e.getVersion(), current);
+                }
+                return false;
             }
+
+            if (chunked) {
+                writeChunks(e.getEntryId(), e.getContent(), cipher);
+            } else {
+                // The content column holds it; drop chunks of an earlier, larger save (the in-memory flag may be stale)
+                deleteChunks(e.getEntryId());
+            }
+            if (owner != null) {
+                usageDAO.checkQuota(owner, bytesBefore, false);
+            }
+            conn.commit();
+            e.setVersion(e.getVersion() + 1);
+            e.setChunked(chunked);
+            applyStats(e, stats);
+            EntryEventBus.entryChanged(e.getEntryId());
+            return true;
         } catch (SQLException ex) {
+            conn.rollback();
             System.err.println("Error updating journal entry: " + ex.getMessage());
             throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
     }
 
-    /** DELETE */
-    public void deleteEntry(int entryId) throws SQLException {
-        // First delete related records in child tables
-        deleteTodoItems(entryId);
-        deleteToggleBlocks(entryId);
+    /** READ: the user_id of an entry's owner, or null if the entry doesn't exist (or is archived) */
+    public String getOwnerId(int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT user_id FROM journal_entries WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
 
-        // Then delete the journal entry
-        String sql = "DELETE FROM journal_entries WHERE entry_id=?";
+    /** READ: current version of an entry, or null if it no longer exists */
+    public Integer getVersion(int entryId) throws SQLException {
+        String sql = "SELECT version FROM journal_entries WHERE entry_id=?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, entryId);
-            int result = ps.executeUpdate();
-            System.out.println("Deleted journal entry: " + (result > 0));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /** DELETE: the entry, its blocks, chunks and attachments, in one transaction */
+    public void deleteEntry(int entryId) throws SQLException {
+        AttachmentDAO attachmentDAO = new AttachmentDAO(conn);
+        List<String> unreferenced;
+        int result;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            // First delete related records in child tables
+            deleteBlocks(entryId);
+            deleteChunks(entryId);
+
+            // Release attachment references; blobs nobody else uses are garbage-collected after commit
+            unreferenced = attachmentDAO.releaseAttachments(entryId);
+
+            // Then delete the journal entry
+            String sql = "DELETE FROM journal_entries WHERE entry_id=?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, entryId);
+                result = ps.executeUpdate();
+            }
+            conn.commit();
         } catch (SQLException ex) {
+            conn.rollback();
             System.err.println("Error deleting journal entry: " + ex.getMessage());
             throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        attachmentDAO.removeBlobs(unreferenced);
+        System.out.println("Deleted journal entry: " + (result > 0));
+        if (result > 0) {
+            EntryEventBus.entryChanged(entryId);
         }
     }
 
-    /** Helper method to delete todo items for an entry */
-    private void deleteTodoItems(int entryId) throws SQLException {
-        String sql = "DELETE FROM todo_items WHERE entry_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    /** Helper method to delete an entry's blocks, plus any rows still in the old to-do and toggle tables */
+    private void deleteBlocks(int entryId) throws SQLException {
+        for (String table : new String[] { "blocks", "todo_items", "toggle_blocks" }) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + table + " WHERE entry_id=?")) {
+                ps.setInt(1, entryId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /** Helper method to delete the chunks of an entry */
+    private void deleteChunks(int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM entry_chunks WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM chunk_data WHERE entry_id=?")) {
             ps.setInt(1, entryId);
             ps.executeUpdate();
         }
     }
 
-    /** Helper method to delete toggle blocks for an entry */
-    private void deleteToggleBlocks(int entryId) throws SQLException {
-        String sql = "DELETE FROM toggle_blocks WHERE entry_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    /**
+     * Helper method to store content as chunks, writing only what changed.
+     * entry_chunks is a small ordered list of (index, hash, length) rows and
+     * chunk_data holds the text once per distinct hash. Chunks shared with the
+     * previous save keep their chunk_data rows untouched; only the index rows
+     * from the first changed chunk onwards are rewritten, and those are tiny.
+     * Encrypted chunks are identified by a keyed fingerprint instead of a plain hash.
+     * Runs inside the caller's transaction.
+     */
+    private void writeChunks(int entryId, String content, ContentCipher cipher) throws SQLException {
+        List<String> chunks = ContentChunker.split(content);
+        List<String> hashes = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            hashes.add(cipher != null ? cipher.fingerprint(chunk) : ContentChunker.hash(chunk));
+        }
+
+        List<String> oldHashes = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT chunk_hash FROM entry_chunks WHERE entry_id=? ORDER BY chunk_index")) {
             ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    oldHashes.add(rs.getString(1));
+                }
+            }
+        }
+
+        // Common prefix and suffix are unchanged text
+        int prefix = 0;
+        int max = Math.min(hashes.size(), oldHashes.size());
+        while (prefix < max && hashes.get(prefix).equals(oldHashes.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && hashes.get(hashes.size() - 1 - suffix).equals(oldHashes.get(oldHashes.size() - 1 - suffix))) {
+            suffix++;
+        }
+        if (prefix == hashes.size() && prefix == oldHashes.size()) {
+            return;
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT OR IGNORE INTO chunk_data(entry_id,chunk_hash,content) VALUES(?,?,?)")) {
+            for (int i = prefix; i < chunks.size() - suffix; i++) {
+                ps.setInt(1, entryId);
+                ps.setString(2, hashes.get(i));
+                ps.setString(3, KeyRing.seal(cipher, chunks.get(i)));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        // Index rows are rewritten from the first change so later chunks can shift position
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM entry_chunks WHERE entry_id=? AND chunk_index>=?")) {
+            ps.setInt(1, entryId);
+            ps.setInt(2, prefix);
             ps.executeUpdate();
         }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO entry_chunks(entry_id,chunk_index,chunk_hash,length) VALUES(?,?,?,?)")) {
+            for (int i = prefix; i < chunks.size(); i++) {
+                ps.setInt(1, entryId);
+                ps.setInt(2, i);
+                ps.setString(3, hashes.get(i));
+                ps.setInt(4, chunks.get(i).length());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        if (oldHashes.size() - suffix > prefix) {
+            // Some old chunks were replaced; drop their text if nothing points at it anymore
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM chunk_data WHERE entry_id=? AND chunk_hash NOT IN " +
+                            "(SELECT chunk_hash FROM entry_chunks WHERE entry_id=?)")) {
+                ps.setInt(1, entryId);
+                ps.setInt(2, entryId);
+                ps.executeUpdate();
+            }
+        }
+        System.out.println("Wrote " + (chunks.size() - prefix - suffix) + " of " + chunks.size()
+                + " chunks for entry " + entryId);
     }
 
-    /** SEARCH by keyword */
+    /** Helper method to reassemble chunked content */
+    private String readChunks(int entryId) throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        try (Reader reader = openContentReader(entryId)) {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
+            }
+        } catch (IOException ex) {
+            throw new SQLException("Failed to read chunked content: " + ex.getMessage(), ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * READ: streams an entry's content one chunk at a time instead of building one big string.
+     * Works for small entries too, which are returned as a single piece.
+     *
+     * @param entryId The entry to read
+     * @return A reader over the content; the caller closes it
+     */
+    public Reader openContentReader(int entryId) throws SQLException {
+        if (!isStoredChunked(entryId)) {
+            return new StringReader(readUnchunkedContent(entryId));
+        }
+
+        List<Integer> indexes = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT chunk_index FROM entry_chunks WHERE entry_id=? ORDER BY chunk_index")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    indexes.add(rs.getInt(1));
+                }
+            }
+        }
+
+        return new Reader() {
+            private int next = 0;
+            private String current = "";
+            private int pos = 0;
+
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                while (pos >= current.length()) {
+                    if (next >= indexes.size()) return -1;
+                    try {
+                        current = readChunk(entryId, indexes.get(next++));
+                    } catch (SQLException ex) {
+                        throw new IOException(ex);
+                    }
+                    pos = 0;
+                }
+                int n = Math.min(len, current.length() - pos);
+                current.getChars(pos, pos + n, buf, off);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+                current = "";
+            }
+        };
+    }
+
+    /**
+     * READ: a range of an entry's content without loading the rest.
+     * Offsets count characters, matching {@link String#substring}.
+     *
+     * @param entryId The entry to read
+     * @param offset First character to return
+     * @param length Maximum number of characters to return
+     * @return The requested part of the content (shorter if it runs past the end)
+     * @throws IllegalArgumentException If offset or length is negative
+     */
+    public String readContentRange(int entryId, int offset, int length) throws SQLException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset " + offset + ", length " + length);
+        }
+        // offset + length can overflow; nothing is that long anyway
+        int end = (int) Math.min((long) offset + length, Integer.MAX_VALUE);
+
+        if (!isStoredChunked(entryId)) {
+            String content = readUnchunkedContent(entryId);
+            int from = Math.min(offset, content.length());
+            return content.substring(from, Math.min(end, content.length()));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int chunkStart = 0;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT chunk_index, length FROM entry_chunks WHERE entry_id=? ORDER BY chunk_index")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next() && chunkStart < end) {
+                    int chunkLength = rs.getInt("length");
+                    int chunkEnd = chunkStart + chunkLength;
+                    if (chunkEnd > offset) {
+                        // Only chunks that overlap the range are fetched
+                        String chunk = readChunk(entryId, rs.getInt("chunk_index"));
+                        sb.append(chunk, Math.max(0, offset - chunkStart), Math.min(chunkLength, end - chunkStart));
+                    }
+                    chunkStart = chunkEnd;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Helper method to read whether an entry's content is stored as chunks, from its row rather than from the chunk rows */
+    private boolean isStoredChunked(int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT chunked FROM journal_entries WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    /** Helper method to fetch one chunk's text */
+    private String readChunk(int entryId, int chunkIndex) throws SQLException {
+        String sql = "SELECT d.content FROM entry_chunks c " +
+                "JOIN chunk_data d ON d.entry_id=c.entry_id AND d.chunk_hash=c.chunk_hash " +
+                "WHERE c.entry_id=? AND c.chunk_index=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, entryId);
+            ps.setInt(2, chunkIndex);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? KeyRing.open(KeyRing.forEntry(conn, entryId), rs.getString(1)) : "";
+            }
+        }
+    }
+
+    /** Helper method to read the content column of a small entry */
+    private String readUnchunkedContent(int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT content FROM journal_entries WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                String content = rs.next() ? KeyRing.open(KeyRing.forEntry(conn, entryId), rs.getString(1)) : null;
+                return content == null ? "" : content;
+            }
+        }
+    }
+
+    /**
+     * SEARCH by keyword.
+     * Encrypted and chunked content can't be matched with LIKE, so those rows are
+     * fetched as candidates and their decrypted text is checked here. The search index
+     * (see {@link util.SearchIndexer}) rules out candidates that can't contain the keyword.
+     */
     public List<JournalEntry> searchEntriesByKeyword(String userId, String keyword) throws SQLException {
         List<JournalEntry> list = new ArrayList<>();
-        String sql = "SELECT * FROM journal_entries WHERE user_id=? AND (title LIKE ? OR content LIKE ? OR tags LIKE ?)";
+        long[] grams = SearchIndexer.queryGrams(userId, keyword);
+        String unreadable = "content LIKE '" + ContentCipher.PREFIX + "%' OR chunked=1";
+        if (grams != null) {
+            unreadable = "(" + unreadable + ") AND " + SearchIndexDAO.candidateCondition(grams.length);
+        }
+        String sql = "SELECT * FROM journal_entries WHERE user_id=? AND (title LIKE ? OR content LIKE ? OR tags LIKE ? " +
+                "OR (" + unreadable + "))";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userId);
             String kw = "%" + keyword + "%";
             ps.setString(2, kw);
             ps.setString(3, kw);
             ps.setString(4, kw);
+            for (int i = 0; grams != null && i < grams.length; i++) {
+                ps.setLong(5 + i, grams[i]);
+            }
             try (ResultSet rs = ps.executeQuery()) {
+                String needle = keyword.toLowerCase(Locale.ROOT);
                 while (rs.next()) {
-                    list.add(mapRow(rs));
+                    boolean plainRow = rs.getInt("chunked") == 0 && !ContentCipher.isEncrypted(rs.getString("content"));
+                    JournalEntry entry = mapRow(rs);
+                    if (plainRow || matchesKeyword(entry, needle)) {
+                        list.add(entry);
+                    }
                 }
             }
         } catch (SQLException ex) {
@@ -168,12 +607,48 @@ public class JournalDAO {
         return list;
     }
 
+    /** Helper method to check a candidate row's decrypted text for a lowercase keyword */
+    private boolean matchesKeyword(JournalEntry entry, String needle) throws SQLException {
+        if (containsIgnoreCase(entry.getTitle(), needle) || containsIgnoreCase(entry.getTags(), needle)) {
+            return true;
+        }
+        if (!entry.isChunked()) {
+            return containsIgnoreCase(entry.getContent(), needle);
+        }
+
+        // Scan chunk by chunk, carrying the tail of the previous chunk so matches across a boundary are found
+        String carry = "";
+        try (Reader reader = openContentReader(entry.getEntryId())) {
+            char[] buffer = new char[64 * 1024];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                String window = carry + new String(buffer, 0, n);
+                if (containsIgnoreCase(window, needle)) return true;
+                carry = window.substring(Math.max(0, window.length() - needle.length() + 1));
+            }
+        } catch (IOException ex) {
+            throw new SQLException("Failed to search chunked content: " + ex.getMessage(), ex);
+        }
+        return false;
+    }
+
+    private static boolean containsIgnoreCase(String text, String needle) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    private static void applyStats(JournalEntry e, EntryStats stats) {
+        e.setPreview(stats.preview());
+        e.setWordCount(stats.wordCount());
+        e.setCharCount(stats.charCount());
+    }
+
     private JournalEntry mapRow(ResultSet rs) throws SQLException {
         try {
             int entryId = rs.getInt("entry_id");
             String userId = rs.getString("user_id");
             String title = rs.getString("title");
-            String content = rs.getString("content");
+            ContentCipher cipher = KeyRing.forUser(userId);
+            String content = KeyRing.open(cipher, rs.getString("content"));
             String tags = rs.getString("tags");
 
             LocalDateTime dateCreated = null;
@@ -199,6 +674,17 @@ public class JournalDAO {
             }
 
             JournalEntry entry = new JournalEntry(entryId, userId, title, content, tags, dateCreated, dateModified);
+            entry.setVersion(rs.getInt("version"));
+            entry.setPreview(KeyRing.open(cipher, rs.getString("preview")));
+            entry.setWordCount(rs.getInt("word_count"));
+            entry.setCharCount(rs.getInt("char_count"));
+            entry.setTodoOpen(rs.getInt("todo_open"));
+            entry.setTodoDone(rs.getInt("todo_done"));
+            if (rs.getInt("chunked") == 1) {
+                // List queries don't pull chunk text; getEntryById reassembles it
+                entry.setChunked(true);
+                entry.setContent(null);
+            }
             return entry;
 
         } catch (SQLException e) {
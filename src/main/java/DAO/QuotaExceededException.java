@@ -0,0 +1,32 @@
+package DAO;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when saving an entry would take its owner past their storage or entry-count quota.
+ * The save is rolled back; editing or deleting other entries to free space lets it succeed.
+ */
+public class QuotaExceededException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    /** Which quota was exceeded */
+    public enum Kind { BYTES, ENTRIES }
+
+    private final Kind kind;
+    private final long used;
+    private final long limit;
+
+    public QuotaExceededException(Kind kind, long used, long limit) {
+        super((kind == Kind.BYTES ? "Storage quota exceeded: " : "Entry quota exceeded: ") + used + " of " + limit);
+        this.kind = kind;
+        this.used = used;
+        this.limit = limit;
+    }
+
+    public Kind getKind() { return kind; }
+
+    /** Usage the save would have reached */
+    public long getUsed() { return used; }
+
+    public long getLimit() { return limit; }
+}
@@ -0,0 +1,86 @@
+package DAO;
+
+import util.DBConnection;
+
+import java.sql.*;
+import java.util.Collections;
+
+/**
+ * Reads and writes the keyword search index built by {@link util.SearchIndexer}.
+ *
+ * search_grams holds, per entry, a keyed hash of every distinct three-character piece of its
+ * lowercased title, tags and content; an entry can only contain a keyword if it has all of the
+ * keyword's pieces. search_docs records the change feed position (sync_rows.seq) each entry was
+ * indexed at, so an entry changed since then is recognisably stale and is searched the slow way.
+ */
+public class SearchIndexDAO {
+    private final Connection conn;
+
+    public SearchIndexDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public SearchIndexDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * SQL condition on journal_entries for search candidates: entries the index says may contain the
+     * keyword, plus every entry the index can't vouch for. Binds one parameter per gram.
+     *
+     * @param gramCount The number of distinct keyword grams
+     */
+    public static String candidateCondition(int gramCount) {
+        return "(NOT EXISTS (SELECT 1 FROM search_docs d JOIN sync_rows s ON s.kind='" + SyncDAO.ENTRY + "' " +
+                "AND s.local_id=d.entry_id AND s.seq=d.seq WHERE d.entry_id=journal_entries.entry_id) " +
+                "OR entry_id IN (SELECT entry_id FROM search_grams WHERE gram IN (" +
+                String.join(",", Collections.nCopies(gramCount, "?")) + ") " +
+                "GROUP BY entry_id HAVING COUNT(*)=" + gramCount + "))";
+    }
+
+    /** UPDATE: replaces an entry's grams; runs inside the caller's transaction */
+    public void replace(int entryId, long seq, long[] grams) throws SQLException {
+        deleteGrams(entryId);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT OR IGNORE INTO search_grams(gram,entry_id) VALUES(?,?)")) {
+            for (long gram : grams) {
+                ps.setLong(1, gram);
+                ps.setInt(2, entryId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO search_docs(entry_id,seq) VALUES(?,?) ON CONFLICT(entry_id) DO UPDATE SET seq=excluded.seq")) {
+            ps.setInt(1, entryId);
+            ps.setLong(2, seq);
+            ps.executeUpdate();
+        }
+    }
+
+    /** DELETE: drops an entry from the index */
+    public void remove(int entryId) throws SQLException {
+        deleteGrams(entryId);
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM search_docs WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** DELETE: drops every entry of a user, including deleted ones, before a rebuild */
+    public void clear(String userId) throws SQLException {
+        String userEntries = "(SELECT local_id FROM sync_rows WHERE kind='" + SyncDAO.ENTRY + "' AND user_id=?)";
+        for (String table : new String[] { "search_grams", "search_docs" }) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + table + " WHERE entry_id IN " + userEntries)) {
+                ps.setString(1, userId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private void deleteGrams(int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM search_grams WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package DAO;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when an update loses a compare-and-swap on a row's version column:
+ * someone else saved the row after the caller read it.
+ * Callers can reload the row, merge, and retry with the current version.
+ */
+public class StaleVersionException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final String table;
+    private final int rowId;
+    private final int expectedVersion;
+    private final int currentVersion;
+
+    public StaleVersionException(String table, int rowId, int expectedVersion, int currentVersion) {
+        super("Row " + rowId + " in " + table + " was modified elsewhere (expected version "
+                + expectedVersion + ", found " + currentVersion + ")");
+        this.table = table;
+        this.rowId = rowId;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    public String getTable() { return table; }
+
+    public int getRowId() { return rowId; }
+
+    public int getExpectedVersion() { return expectedVersion; }
+
+    public int getCurrentVersion() { return currentVersion; }
+}
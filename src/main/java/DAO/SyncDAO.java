@@ -0,0 +1,329 @@
+package DAO;
+
+import model.BlockNode;
+import util.ContentCipher;
+import util.DBConnection;
+import util.KeyRing;
+
+import java.security.SecureRandom;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Reads and writes the change feed that {@link util.SyncEngine} exchanges between two databases.
+ *
+ * Every entry and block has a row in sync_rows, kept current by triggers (see SchemaManager):
+ *   uid     - the row's identity in every database it is synced to (local IDs differ between databases)
+ *   seq     - position in this database's change feed; a peer has seen everything up to its watermark
+ *   stamp   - hybrid logical clock of the last change, "mmmmmmmmmmmm-cccccc-site" (hex milliseconds,
+ *             hex counter, site ID), so comparing two stamps as strings orders the changes
+ *   deleted - set when the row is gone; the row stays as a tombstone so the deletion syncs too
+ *   origin  - the site of the peer this version was received from, or null if it was changed here;
+ *             a row is never sent back to the peer it came from
+ * sync_clock holds this database's site ID and clock; sync_peers the watermark per peer and user.
+ */
+public class SyncDAO {
+    public static final String ENTRY = "entry";
+    public static final String BLOCK = "block";
+
+    /** Milliseconds since the epoch, in SQL */
+    public static final String NOW_MS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    /** Advances the clock for one local change; the new seq and stamp are then read from sync_clock */
+    public static final String TICK = "UPDATE sync_clock SET seq=seq+1, " +
+            "counter=CASE WHEN " + NOW_MS + " > ms THEN 0 ELSE counter+1 END, ms=MAX(ms, " + NOW_MS + ");";
+    /** The stamp of the last tick, in SQL over sync_clock */
+    public static final String STAMP = "printf('%012x-%06x-%s', ms, counter, site)";
+    /** The identity of rows that existed before sync did, the same in copies of one database file (%1$s = entry row) */
+    public static final String LEGACY_UID = "'legacy-' || %1$s.user_id || '-' || %1$s.entry_id || '-' || IFNULL(%1$s.date_created, '')";
+
+    /** One row of the change feed */
+    public record Change(String uid, String kind, Integer localId, long seq, String stamp, boolean deleted) { }
+
+    private final Connection conn;
+
+    public SyncDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public SyncDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * CREATE: starts the clock with a new site ID and gives every existing entry and block a feed row
+     * (with seq 1, so the first sync with any peer sends them). Stamps come from date_modified, so
+     * when two copies of one file are synced for the first time, the more recently edited copy wins.
+     */
+    public void backfill() throws SQLException {
+        String legacyStamp = "printf('%%012x-%%06x-', IFNULL(CAST((julianday(%s.date_modified) - 2440587.5) * 86400000 AS INTEGER), 0))";
+        String entries = "INSERT OR IGNORE INTO sync_rows(uid,kind,local_id,user_id,seq,stamp) " +
+                "SELECT " + String.format(LEGACY_UID, "e") + ", '" + ENTRY + "', e.entry_id, e.user_id, 1, " +
+                String.format(legacyStamp, "e") + " FROM ";
+        String blocks = "INSERT OR IGNORE INTO sync_rows(uid,kind,local_id,user_id,seq,stamp) " +
+                "SELECT " + String.format(LEGACY_UID, "e") + " || '-' || b.block_id, '" + BLOCK + "', b.block_id, e.user_id, 1, " +
+                String.format(legacyStamp, "e") + " FROM blocks b JOIN journal_entries e ON e.entry_id=b.entry_id";
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement ps = conn.prepareStatement("INSERT INTO sync_clock(id,site,seq,ms,counter) VALUES(1,?,1,0,0)")) {
+            ps.setString(1, newSite());
+            ps.executeUpdate();
+            int rows = stmt.executeUpdate(entries + "journal_entries e");
+            rows += stmt.executeUpdate(entries + "archived_entries e");
+            rows += stmt.executeUpdate(blocks);
+            conn.commit();
+            System.out.println("Sync feed started with " + rows + " existing rows");
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error starting the sync feed: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** READ: this database's site ID */
+    public String getSite() throws SQLException {
+        return queryString("SELECT site FROM sync_clock WHERE id=1");
+    }
+
+    /**
+     * UPDATE: gives this database a new site ID, e.g. because it is a copy of its peer.
+     *
+     * @return The new ID
+     */
+    public String resetSite() throws SQLException {
+        String site = newSite();
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE sync_clock SET site=? WHERE id=1")) {
+            ps.setString(1, site);
+            ps.executeUpdate();
+        }
+        return site;
+    }
+
+    /** READ: the position of the latest change in this database's feed */
+    public long getSeq() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT seq FROM sync_clock WHERE id=1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * UPDATE: moves the clock past a stamp received from a peer, so later local changes are stamped after it.
+     */
+    public void observe(String stamp) throws SQLException {
+        long ms = Long.parseLong(stamp.substring(0, 12), 16);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE sync_clock SET counter=CASE WHEN ? > ms THEN 0 ELSE counter END, ms=MAX(ms, ?) WHERE id=1")) {
+            ps.setLong(1, ms);
+            ps.setLong(2, ms);
+            ps.executeUpdate();
+        }
+    }
+
+    /** READ: how far a user's changes have been sent to a peer */
+    public long getSentSeq(String peerSite, String userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT sent_seq FROM sync_peers WHERE site=? AND user_id=?")) {
+            ps.setString(1, peerSite);
+            ps.setString(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /** UPDATE: records that a user's changes up to seq are in a peer */
+    public void setSentSeq(String peerSite, String userId, long seq) throws SQLException {
+        String sql = "INSERT INTO sync_peers(site,user_id,sent_seq,synced_at) VALUES(?,?,?,datetime('now')) " +
+                "ON CONFLICT(site,user_id) DO UPDATE SET sent_seq=excluded.sent_seq, synced_at=excluded.synced_at";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, peerSite);
+            ps.setString(2, userId);
+            ps.setLong(3, seq);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * READ: a user's changes in a range of the feed to send to a peer, oldest first.
+     * Rows whose version was received from that peer are left out; it already has them.
+     *
+     * @param peerSite The peer the changes are for
+     * @param after Exclusive lower bound, usually the peer's watermark
+     * @param upTo Inclusive upper bound
+     */
+    public List<Change> getChanges(String userId, String peerSite, long after, long upTo) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        String sql = "SELECT * FROM sync_rows WHERE user_id=? AND seq>? AND seq<=? AND origin IS NOT ? ORDER BY seq";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            ps.setLong(2, after);
+            ps.setLong(3, upTo);
+            ps.setString(4, peerSite);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(mapRow(rs));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /** READ: the feed row of a uid, or null if this database has never seen it */
+    public Change getByUid(String uid) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM sync_rows WHERE uid=?")) {
+            ps.setString(1, uid);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapRow(rs) : null;
+            }
+        }
+    }
+
+    /** READ: the uid of a local entry or block, or null */
+    public String getUid(String kind, int localId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT uid FROM sync_rows WHERE kind=? AND local_id=?")) {
+            ps.setString(1, kind);
+            ps.setInt(2, localId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * UPDATE: after a change from a peer was written to a local row, gives that row the peer's uid and stamp.
+     * The triggers have already moved it to the end of the feed; the stamp tells the peer it has this version,
+     * and the origin keeps it from being sent back.
+     *
+     * @param origin The site of the peer the change came from
+     */
+    public void adopt(String kind, int localId, String uid, String stamp, boolean deleted, String origin) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM sync_rows WHERE uid=? AND NOT (kind=? AND local_id IS ?)")) {
+            ps.setString(1, uid);
+            ps.setString(2, kind);
+            ps.setInt(3, localId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE sync_rows SET uid=?, stamp=?, deleted=?, origin=? WHERE kind=? AND local_id=?")) {
+            ps.setString(1, uid);
+            ps.setString(2, stamp);
+            ps.setInt(3, deleted ? 1 : 0);
+            ps.setString(4, origin);
+            ps.setString(5, kind);
+            ps.setInt(6, localId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * CREATE/UPDATE: records a peer's deletion of a row that isn't here (any more), so it is passed on
+     * to further peers and a stale copy can't bring the row back.
+     *
+     * @param origin The site of the peer the deletion came from
+     */
+    public void recordTombstone(String uid, String kind, String userId, String stamp, String origin) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(TICK);
+        }
+        String sql = "INSERT INTO sync_rows(uid,kind,local_id,user_id,seq,stamp,deleted,origin) " +
+                "SELECT ?, ?, NULL, ?, seq, ?, 1, ? FROM sync_clock WHERE id=1 " +
+                "ON CONFLICT(uid) DO UPDATE SET seq=excluded.seq, stamp=excluded.stamp, deleted=1, origin=excluded.origin";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, uid);
+            ps.setString(2, kind);
+            ps.setString(3, userId);
+            ps.setString(4, stamp);
+            ps.setString(5, origin);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * READ: a block with its text decrypted, or null if it doesn't exist.
+     * Parent and entry are local IDs; the engine maps them through their uids.
+     */
+    public BlockNode getBlock(int blockId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM blocks WHERE block_id=?")) {
+            ps.setInt(1, blockId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                ContentCipher cipher = KeyRing.forEntry(conn, rs.getInt("entry_id"));
+                BlockNode node = new BlockNode(rs.getInt("entry_id"), blockId, rs.getString("type"),
+                        KeyRing.open(cipher, rs.getString("payload")), KeyRing.open(cipher, rs.getString("detail")),
+                        rs.getInt("state"));
+                int parentId = rs.getInt("parent_id");
+                node.setParentId(rs.wasNull() ? null : parentId);
+                node.setSortKey(rs.getString("sort_key"));
+                return node;
+            }
+        }
+    }
+
+    /**
+     * CREATE/UPDATE: writes a block received from a peer, inserting it if it has no block ID yet.
+     * Bumps the version, so an editor holding the old block sees the conflict.
+     */
+    public void writeBlock(BlockNode node) throws SQLException {
+        ContentCipher cipher = KeyRing.forEntry(conn, node.getEntryId());
+        if (node.getBlockId() == 0) {
+            new BlockDAO(conn).insertBlock(node, cipher);
+            return;
+        }
+        String sql = "UPDATE blocks SET entry_id=?,parent_id=?,sort_key=?,type=?,payload=?,detail=?,state=?,version=version+1 " +
+                "WHERE block_id=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, node.getEntryId());
+            ps.setObject(2, node.getParentId());
+            ps.setString(3, node.getSortKey());
+            ps.setString(4, node.getType());
+            ps.setString(5, KeyRing.seal(cipher, node.getPayload()));
+            ps.setString(6, KeyRing.seal(cipher, node.getDetail()));
+            ps.setInt(7, node.getState());
+            ps.setInt(8, node.getBlockId());
+            ps.executeUpdate();
+        }
+    }
+
+    /** UPDATE: keeps the dates of an entry received from a peer (saving sets the modification time to now) */
+    public void setDates(int entryId, String dateCreated, String dateModified) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE journal_entries SET date_created=?, date_modified=? WHERE entry_id=?")) {
+            ps.setString(1, dateCreated);
+            ps.setString(2, dateModified);
+            ps.setInt(3, entryId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** READ: whether an entry is in the archive rather than the main tables */
+    public boolean isArchived(int entryId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM archived_entries WHERE entry_id=?")) {
+            ps.setInt(1, entryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private String queryString(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static String newSite() {
+        byte[] bytes = new byte[6];
+        new SecureRandom().nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private Change mapRow(ResultSet rs) throws SQLException {
+        int localId = rs.getInt("local_id");
+        return new Change(rs.getString("uid"), rs.getString("kind"), rs.wasNull() ? null : localId,
+                rs.getLong("seq"), rs.getString("stamp"), rs.getInt("deleted") == 1);
+    }
+}
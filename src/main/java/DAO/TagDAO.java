@@ -0,0 +1,189 @@
+package DAO;
+
+import model.Tag;
+import util.DBConnection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rewrites the tag strings of many entries at once, for renaming, merging and recoloring tags.
+ * Live entries and the stubs of archived entries are both updated.
+ */
+public class TagDAO {
+    public static final int BATCH_SIZE = 200;
+
+    /**
+     * Receives progress while tags are rewritten.
+     */
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * @param done Entries processed so far
+         * @param total Entries that have one of the tags
+         */
+        void update(int done, int total);
+    }
+
+    private final Connection conn;
+
+    public TagDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public TagDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /** READ: every tag a user has, with the color of its most recent use */
+    public List<Tag> getTagsByUserId(String userId) throws SQLException {
+        Map<String, Tag> tags = new LinkedHashMap<>();
+        String sql = "SELECT tags FROM journal_entries WHERE user_id=? " +
+                "UNION ALL SELECT tags FROM archived_entries WHERE user_id=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            ps.setString(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    for (Tag tag : Tag.parseList(rs.getString(1))) {
+                        tags.put(tag.getName(), tag);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(tags.values());
+    }
+
+    /**
+     * READ: how many of a user's entries use each tag, for ranking autocomplete suggestions.
+     * Each tag carries the color of its most recently modified use.
+     */
+    public Map<Tag, Integer> getTagCounts(String userId) throws SQLException {
+        Map<String, Tag> latest = new LinkedHashMap<>();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        String sql = "SELECT tags, date_modified FROM journal_entries WHERE user_id=? AND tags IS NOT NULL AND tags<>'' " +
+                "UNION ALL SELECT tags, date_modified FROM archived_entries WHERE user_id=? AND tags IS NOT NULL AND tags<>'' " +
+                "ORDER BY 2";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            ps.setString(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    for (Tag tag : Tag.parseList(rs.getString(1))) {
+                        latest.put(tag.getName(), tag);
+                        counts.merge(tag.getName(), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        Map<Tag, Integer> result = new LinkedHashMap<>();
+        for (Tag tag : latest.values()) {
+            result.put(tag, counts.get(tag.getName()));
+        }
+        return result;
+    }
+
+    /**
+     * UPDATE: applies a change to the tags of every entry of a user that has one of the given tags.
+     * Entries are rewritten in transactions of {@link #BATCH_SIZE}. Modification dates and versions are
+     * left alone, so an editor that has one of the entries open can still save it; that save writes
+     * the tags the editor shows.
+     *
+     * @param userId The user whose entries change
+     * @param names Only entries with a tag of one of these names are changed
+     * @param change Turns an entry's tags into its new tags
+     * @param progress Told after each batch, may be null
+     * @return The number of entries whose tags changed
+     */
+    public int rewriteTags(String userId, Set<String> names, UnaryOperator<List<Tag>> change,
+                           Progress progress) throws SQLException {
+        List<Integer> live = findEntriesWithTags("journal_entries", userId, names);
+        List<Integer> archived = findEntriesWithTags("archived_entries", userId, names);
+        int total = live.size() + archived.size();
+        int done = 0;
+        int changed = 0;
+
+        String liveUpdate = "UPDATE journal_entries SET tags=? WHERE entry_id=?";
+        String stubUpdate = "UPDATE archived_entries SET tags=? WHERE entry_id=?";
+        for (int from = 0; from < live.size(); from += BATCH_SIZE) {
+            List<Integer> batch = live.subList(from, Math.min(from + BATCH_SIZE, live.size()));
+            changed += rewriteBatch("journal_entries", liveUpdate, batch, change);
+            done += batch.size();
+            if (progress != null) progress.update(done, total);
+        }
+        for (int from = 0; from < archived.size(); from += BATCH_SIZE) {
+            List<Integer> batch = archived.subList(from, Math.min(from + BATCH_SIZE, archived.size()));
+            changed += rewriteBatch("archived_entries", stubUpdate, batch, change);
+            done += batch.size();
+            if (progress != null) progress.update(done, total);
+        }
+
+        System.out.println("Rewrote tags of " + changed + " entries");
+        return changed;
+    }
+
+    /** Helper method to list a user's entries in a table that have one of the tags */
+    private List<Integer> findEntriesWithTags(String table, String userId, Set<String> names) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        String sql = "SELECT entry_id, tags FROM " + table + " WHERE user_id=? AND tags IS NOT NULL AND tags<>'' ORDER BY entry_id";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    for (Tag tag : Tag.parseList(rs.getString(2))) {
+                        if (names.contains(tag.getName())) {
+                            ids.add(rs.getInt(1));
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Helper method to rewrite one batch in a single transaction.
+     * Tags are read again inside the transaction so edits made since the scan aren't overwritten.
+     */
+    private int rewriteBatch(String table, String update, List<Integer> ids,
+                             UnaryOperator<List<Tag>> change) throws SQLException {
+        String select = "SELECT tags FROM " + table + " WHERE entry_id=?";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement sel = conn.prepareStatement(select);
+             PreparedStatement upd = conn.prepareStatement(update)) {
+            int changed = 0;
+            for (int entryId : ids) {
+                sel.setInt(1, entryId);
+                String before;
+                try (ResultSet rs = sel.executeQuery()) {
+                    // Deleted, archived or restored since the scan
+                    if (!rs.next()) continue;
+                    before = rs.getString(1);
+                }
+                String after = Tag.formatList(change.apply(Tag.parseList(before)));
+                if (after.equals(before)) continue;
+
+                upd.setString(1, after);
+                upd.setInt(2, entryId);
+                upd.addBatch();
+                changed++;
+            }
+            upd.executeBatch();
+            conn.commit();
+            return changed;
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error rewriting tags: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -1,70 +1,168 @@
 package DAO;
 
+import model.BlockNode;
 import model.ToDoItem;
+import model.TodoProgress;
+import util.ContentCipher;
 import util.DBConnection;
+import util.EntryEventBus;
+import util.FractionalIndex;
+import util.KeyRing;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
+/**
+ * Reads and writes to-do items, which are stored as todo blocks in the blocks table.
+ * The item ID is the block ID.
+ */
 public class ToDoDAO {
+    private static final int PROGRESS_BATCH_SIZE = 500;
+
     private final Connection conn;
 
     public ToDoDAO() throws SQLException {
         this.conn = DBConnection.getInstance().getConnection();
     }
 
-    /** CREATE */
+    public ToDoDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * CREATE: adds the item as a new one-item to-do list after the entry's other blocks.
+     * The description is encrypted if the entry's owner is unlocked.
+     */
     public void addToDo(ToDoItem item) throws SQLException {
-        String sql = "INSERT INTO todo_items(entry_id,description,is_done) VALUES(?,?,?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setInt(1, item.getEntryId());
-            ps.setString(2, item.getDescription());
-            ps.setInt(3, item.isDone() ? 1 : 0);
-            ps.executeUpdate();
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) item.setTodoId(rs.getInt(1));
-            }
-        }
+        ContentCipher cipher = KeyRing.forEntry(conn, item.getEntryId());
+        BlockDAO blocks = new BlockDAO(conn);
+
+        BlockNode list = new BlockNode(item.getEntryId(), 0, BlockNode.TODO_LIST, null, null, 0);
+        list.setSortKey(blocks.nextRootKey(item.getEntryId()));
+        blocks.insertBlock(list, cipher);
+
+        BlockNode todo = new BlockNode(item.getEntryId(), 0, BlockNode.TODO, item.getDescription(), null, item.isDone() ? 1 : 0);
+        todo.setParentId(list.getBlockId());
+        todo.setSortKey(FractionalIndex.between(null, null));
+        blocks.insertBlock(todo, cipher);
+
+        item.setTodoId(todo.getBlockId());
+        item.setVersion(0);
+        blocks.refreshTodoCounts(item.getEntryId());
+        EntryEventBus.todosChanged(item.getEntryId());
     }
 
-    /** READ */
+    /** READ: every to-do of an entry, list by list */
     public List<ToDoItem> getToDosByEntryId(int entryId) throws SQLException {
         List<ToDoItem> list = new ArrayList<>();
-        String sql = "SELECT * FROM todo_items WHERE entry_id=?";
+        String sql = "SELECT * FROM blocks WHERE entry_id=? AND type='" + BlockNode.TODO + "' ORDER BY parent_id, sort_key";
+        ContentCipher cipher = KeyRing.forEntry(conn, entryId);
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, entryId);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    list.add(new ToDoItem(
+                    ToDoItem item = new ToDoItem(
                             entryId,
-                            rs.getInt("todo_id"),
-                            rs.getString("description"),
-                            rs.getInt("is_done") == 1
-                    ));
+                            rs.getInt("block_id"),
+                            KeyRing.open(cipher, rs.getString("payload")),
+                            rs.getInt("state") == 1
+                    );
+                    item.setVersion(rs.getInt("version"));
+                    list.add(item);
                 }
             }
         }
         return list;
     }
 
-    /** UPDATE */
+    /**
+     * READ: open and done to-do counts for a page of entries, in one grouped query.
+     * Entries without to-dos are left out of the result.
+     *
+     * @param entryIds The entries, e.g. the rows shown in a table
+     * @return Counts by entry ID
+     */
+    public Map<Integer, TodoProgress> getTodoProgress(Collection<Integer> entryIds) throws SQLException {
+        Map<Integer, TodoProgress> progress = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(entryIds);
+
+        // Stay well under SQLite's limit on bound parameters
+        for (int from = 0; from < ids.size(); from += PROGRESS_BATCH_SIZE) {
+            List<Integer> batch = ids.subList(from, Math.min(from + PROGRESS_BATCH_SIZE, ids.size()));
+            String sql = "SELECT entry_id, SUM(state=0), SUM(state=1) FROM blocks " +
+                    "WHERE type='" + BlockNode.TODO + "' AND entry_id IN (" +
+                    String.join(",", Collections.nCopies(batch.size(), "?")) + ") GROUP BY entry_id";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setInt(i + 1, batch.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        progress.put(rs.getInt(1), new TodoProgress(rs.getInt(2), rs.getInt(3)));
+                    }
+                }
+            } catch (SQLException ex) {
+                System.err.println("Error counting to-dos: " + ex.getMessage());
+                throw ex;
+            }
+        }
+        return progress;
+    }
+
+    /** UPDATE: compare-and-swap on the version column */
     public void updateToDo(ToDoItem item) throws SQLException {
-        String sql = "UPDATE todo_items SET description=?,is_done=? WHERE todo_id=?";
+        ContentCipher cipher = KeyRing.forEntry(conn, item.getEntryId());
+        String sql = "UPDATE blocks SET payload=?,state=?,version=version+1 WHERE block_id=? AND version=?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, item.getDescription());
+            ps.setString(1, KeyRing.seal(cipher, item.getDescription()));
             ps.setInt(2, item.isDone() ? 1 : 0);
             ps.setInt(3, item.getTodoId());
-            ps.executeUpdate();
+            ps.setInt(4, item.getVersion());
+            if (ps.executeUpdate() == 1) {
+                item.setVersion(item.getVersion() + 1);
+                new BlockDAO(conn).refreshTodoCounts(item.getEntryId());
+                EntryEventBus.todosChanged(item.getEntryId());
+                return;
+            }
+        }
+
+        // Nothing updated: either the row is gone or someone else changed it
+        Integer current = new BlockDAO(conn).getVersion(item.getTodoId());
+        if (current != null) {
+            throw new StaleVersionException("blocks", item.getTodoId(), item.getVersion(), current);
         }
     }
 
-    /** DELETE */
+    /** DELETE: also removes the item's list if it was the last item in it */
     public void deleteToDoItem(int todoId) throws SQLException {
-        String sql = "DELETE FROM todo_items WHERE todo_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        Integer entryId = null;
+        Integer listId = null;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT entry_id, parent_id FROM blocks WHERE block_id=?")) {
+            ps.setInt(1, todoId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    entryId = rs.getInt(1);
+                    listId = (Integer) rs.getObject(2);
+                }
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM blocks WHERE block_id=?")) {
             ps.setInt(1, todoId);
             ps.executeUpdate();
         }
+        if (listId != null) {
+            String sql = "DELETE FROM blocks WHERE block_id=? AND type='" + BlockNode.TODO_LIST + "' " +
+                    "AND NOT EXISTS (SELECT 1 FROM blocks WHERE parent_id=?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, listId);
+                ps.setInt(2, listId);
+                ps.executeUpdate();
+            }
+        }
+        if (entryId != null) {
+            new BlockDAO(conn).refreshTodoCounts(entryId);
+            EntryEventBus.todosChanged(entryId);
+        }
     }
 }
@@ -1,12 +1,19 @@
 package DAO;
 
+import model.BlockNode;
 import model.ToggleBlock;
+import util.ContentCipher;
 import util.DBConnection;
+import util.KeyRing;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Reads and writes toggle blocks, which are stored as toggle blocks in the blocks table.
+ * The toggle ID is the block ID.
+ */
 public class ToggleDAO {
     private final Connection conn;
 
@@ -14,60 +21,73 @@ public class ToggleDAO {
         this.conn = DBConnection.getInstance().getConnection();
     }
 
-    /** CREATE */
+    public ToggleDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * CREATE: adds the toggle after the entry's other blocks.
+     * Title and content are encrypted if the entry's owner is unlocked.
+     */
     public void addToggle(ToggleBlock t) throws SQLException {
-        String sql = "INSERT INTO toggle_blocks(entry_id,title,content,is_expanded) VALUES(?,?,?,?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setInt(1, t.getEntryId());
-            ps.setString(2, t.getTitle());
-            ps.setString(3, t.getContent());
-            ps.setInt(4, t.isExpanded() ? 1 : 0);
-            ps.executeUpdate();
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) t.setToggleId(rs.getInt(1));
-            }
-        }
+        ContentCipher cipher = KeyRing.forEntry(conn, t.getEntryId());
+        BlockDAO blocks = new BlockDAO(conn);
+        BlockNode node = new BlockNode(t.getEntryId(), 0, BlockNode.TOGGLE, t.getTitle(), t.getContent(), t.isExpanded() ? 1 : 0);
+        node.setSortKey(blocks.nextRootKey(t.getEntryId()));
+        blocks.insertBlock(node, cipher);
+        t.setToggleId(node.getBlockId());
+        t.setVersion(0);
     }
 
-    /** READ */
+    /** READ: every toggle of an entry, including nested ones */
     public List<ToggleBlock> getTogglesByEntryId(int entryId) throws SQLException {
         List<ToggleBlock> list = new ArrayList<>();
-        String sql = "SELECT * FROM toggle_blocks WHERE entry_id=?";
+        String sql = "SELECT * FROM blocks WHERE entry_id=? AND type='" + BlockNode.TOGGLE + "' ORDER BY parent_id, sort_key";
+        ContentCipher cipher = KeyRing.forEntry(conn, entryId);
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, entryId);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    list.add(new ToggleBlock(
+                    ToggleBlock toggle = new ToggleBlock(
                             entryId,
-                            rs.getInt("toggle_id"),
-                            rs.getString("title"),
-                            rs.getString("content"),
-                            rs.getInt("is_expanded") == 1
-                    ));
+                            rs.getInt("block_id"),
+                            KeyRing.open(cipher, rs.getString("payload")),
+                            KeyRing.open(cipher, rs.getString("detail")),
+                            rs.getInt("state") == 1
+                    );
+                    toggle.setVersion(rs.getInt("version"));
+                    list.add(toggle);
                 }
             }
         }
         return list;
     }
 
-    /** UPDATE */
+    /** UPDATE: compare-and-swap on the version column */
     public void updateToggle(ToggleBlock t) throws SQLException {
-        String sql = "UPDATE toggle_blocks SET title=?,content=?,is_expanded=? WHERE toggle_id=?";
+        ContentCipher cipher = KeyRing.forEntry(conn, t.getEntryId());
+        String sql = "UPDATE blocks SET payload=?,detail=?,state=?,version=version+1 WHERE block_id=? AND version=?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, t.getTitle());
-            ps.setString(2, t.getContent());
+            ps.setString(1, KeyRing.seal(cipher, t.getTitle()));
+            ps.setString(2, KeyRing.seal(cipher, t.getContent()));
             ps.setInt(3, t.isExpanded() ? 1 : 0);
             ps.setInt(4, t.getToggleId());
-            ps.executeUpdate();
+            ps.setInt(5, t.getVersion());
+            if (ps.executeUpdate() == 1) {
+                t.setVersion(t.getVersion() + 1);
+                return;
+            }
+        }
+
+        // Nothing updated: either the row is gone or someone else changed it
+        Integer current = new BlockDAO(conn).getVersion(t.getToggleId());
+        if (current != null) {
+            throw new StaleVersionException("blocks", t.getToggleId(), t.getVersion(), current);
         }
     }
 
-    /** DELETE */
+    /** DELETE: the toggle and the blocks nested inside it */
     public void deleteToggle(int toggleId) throws SQLException {
-        String sql = "DELETE FROM toggle_blocks WHERE toggle_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, toggleId);
-            ps.executeUpdate();
-        }
+        new BlockDAO(conn).deleteSubtree(toggleId);
     }
 }
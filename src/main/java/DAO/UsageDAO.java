@@ -0,0 +1,161 @@
+package DAO;
+
+import util.DBConnection;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-user storage usage and quotas.
+ *
+ * Usage is the number of live entries and the bytes stored for them: title and content (or the
+ * chunks of chunked content) and the payload and detail of their blocks, as written to the database.
+ * The user_usage counters are adjusted by triggers in the same statement as every write to those
+ * tables, so checking a quota never scans a user's entries. Archived entries live in the archive
+ * files and don't count. {@link #reconcile} recomputes the counters from scratch to repair any drift.
+ *
+ * Quotas are stored per user; a NULL quota means the default.
+ */
+public class UsageDAO {
+    public static final long DEFAULT_QUOTA_BYTES = 200L * 1024 * 1024;
+    public static final int DEFAULT_QUOTA_ENTRIES = 50_000;
+
+    /** Stored bytes of one entry row, a chunk row and a block row, as used by the triggers and by reconcile */
+    public static final String ENTRY_BYTES = "IFNULL(LENGTH(CAST(%1$s.title AS BLOB)), 0) + IFNULL(LENGTH(CAST(%1$s.content AS BLOB)), 0)";
+    public static final String CHUNK_BYTES = "IFNULL(LENGTH(CAST(%1$s.content AS BLOB)), 0)";
+    public static final String BLOCK_BYTES = "IFNULL(LENGTH(CAST(%1$s.payload AS BLOB)), 0) + IFNULL(LENGTH(CAST(%1$s.detail AS BLOB)), 0)";
+
+    /** A user's usage and quotas */
+    public record Usage(String userId, long usedBytes, int entryCount, long quotaBytes, int quotaEntries) { }
+
+    private final Connection conn;
+
+    public UsageDAO() throws SQLException {
+        this.conn = DBConnection.getInstance().getConnection();
+    }
+
+    public UsageDAO(Connection conn) {
+        this.conn = conn;
+    }
+
+    /** READ: a user's usage and quotas; null if there is no such user */
+    public Usage getUsage(String userId) throws SQLException {
+        String sql = "SELECT IFNULL(g.used_bytes, 0), IFNULL(g.entry_count, 0), u.quota_bytes, u.quota_entries " +
+                "FROM users u LEFT JOIN user_usage g ON g.user_id=u.user_id WHERE u.user_id=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                long quotaBytes = rs.getLong(3);
+                if (rs.wasNull()) quotaBytes = DEFAULT_QUOTA_BYTES;
+                int quotaEntries = rs.getInt(4);
+                if (rs.wasNull()) quotaEntries = DEFAULT_QUOTA_ENTRIES;
+                return new Usage(userId, rs.getLong(1), rs.getInt(2), quotaBytes, quotaEntries);
+            }
+        }
+    }
+
+    /**
+     * READ: throws if a write just took a user over a quota.
+     * Meant to run inside the writing transaction, after the write, so the caller's rollback undoes it.
+     * A write that doesn't add bytes is allowed even over the quota, so users can always shrink entries.
+     *
+     * @param bytesBefore The user's used bytes before the write
+     * @param newEntry Whether the write created an entry
+     */
+    public void checkQuota(String userId, long bytesBefore, boolean newEntry) throws SQLException {
+        Usage usage = getUsage(userId);
+        if (usage == null) return;
+        if (newEntry && usage.entryCount() > usage.quotaEntries()) {
+            throw new QuotaExceededException(QuotaExceededException.Kind.ENTRIES, usage.entryCount(), usage.quotaEntries());
+        }
+        if (usage.usedBytes() > usage.quotaBytes() && usage.usedBytes() > bytesBefore) {
+            throw new QuotaExceededException(QuotaExceededException.Kind.BYTES, usage.usedBytes(), usage.quotaBytes());
+        }
+    }
+
+    /** READ: a user's used bytes (0 if nothing is counted yet) */
+    public long getUsedBytes(String userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT used_bytes FROM user_usage WHERE user_id=?")) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * UPDATE: sets a user's quotas.
+     *
+     * @param quotaBytes The byte quota, or null for the default
+     * @param quotaEntries The entry quota, or null for the default
+     * @return false if there is no user with that username
+     */
+    public boolean setQuota(String username, Long quotaBytes, Integer quotaEntries) throws SQLException {
+        String sql = "UPDATE users SET quota_bytes=?, quota_entries=? WHERE username=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setObject(1, quotaBytes);
+            ps.setObject(2, quotaEntries);
+            ps.setString(3, username);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * UPDATE: recomputes every user's counters from the tables, in one transaction.
+     *
+     * @return The number of users whose counters were wrong
+     */
+    public int reconcile() throws SQLException {
+        String select = "SELECT u.user_id, " +
+                "(SELECT IFNULL(SUM(" + String.format(ENTRY_BYTES, "e") + "), 0) FROM journal_entries e WHERE e.user_id=u.user_id) " +
+                "+ (SELECT IFNULL(SUM(" + String.format(CHUNK_BYTES, "c") + "), 0) FROM journal_entries e " +
+                "   JOIN chunk_data c ON c.entry_id=e.entry_id WHERE e.user_id=u.user_id) " +
+                "+ (SELECT IFNULL(SUM(" + String.format(BLOCK_BYTES, "b") + "), 0) FROM journal_entries e " +
+                "   JOIN blocks b ON b.entry_id=e.entry_id WHERE e.user_id=u.user_id), " +
+                "(SELECT COUNT(*) FROM journal_entries e WHERE e.user_id=u.user_id), " +
+                "g.used_bytes, g.entry_count " +
+                "FROM users u LEFT JOIN user_usage g ON g.user_id=u.user_id";
+        String upsert = "INSERT INTO user_usage(user_id, used_bytes, entry_count, reconciled_at) VALUES(?,?,?,?) " +
+                "ON CONFLICT(user_id) DO UPDATE SET used_bytes=excluded.used_bytes, entry_count=excluded.entry_count, " +
+                "reconciled_at=excluded.reconciled_at";
+        String now = LocalDateTime.now().toString();
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement ps = conn.prepareStatement(upsert)) {
+            List<String> drifted = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery(select)) {
+                while (rs.next()) {
+                    long bytes = rs.getLong(2);
+                    int entries = rs.getInt(3);
+                    long countedBytes = rs.getLong(4);
+                    boolean counted = !rs.wasNull();
+                    if (counted && (bytes != countedBytes || entries != rs.getInt(5))) {
+                        drifted.add(rs.getString(1));
+                    }
+                    ps.setString(1, rs.getString(1));
+                    ps.setLong(2, bytes);
+                    ps.setInt(3, entries);
+                    ps.setString(4, now);
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            conn.commit();
+            if (!drifted.isEmpty()) {
+                System.out.println("Usage counters corrected for " + drifted.size() + " users");
+            }
+            return drifted.size();
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error reconciling usage: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package DAO;
 
+import model.Admin;
 import model.User;
+import util.ContentCipher;
 import util.DBConnection;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class UserDAO {
     private final Connection conn;
@@ -16,6 +21,10 @@ public class UserDAO {
         this.conn = DBConnection.getInstance().getConnection();
     }
 
+    public UserDAO(Connection conn) {
+        this.conn = conn;
+    }
+
     /** CREATE: generate UUID for user_id, persist, and print it to console */
     public void createUser(String username, String password) throws SQLException {
         String userId = UUID.randomUUID().toString();
@@ -45,18 +54,53 @@ public class UserDAO {
         return userId;
     }
 
+    /**
+     * CREATE: insert many users in one transaction. Their user_ids must already be set.
+     * A username that is taken by the time of the insert is skipped rather than failing the batch.
+     *
+     * @return For each user, whether it was inserted
+     */
+    public boolean[] createUsers(List<User> users) throws SQLException {
+        String sql = "INSERT INTO users(user_id,username,password) VALUES(?,?,?) ON CONFLICT(username) DO NOTHING";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (User user : users) {
+                ps.setString(1, user.getUserID());
+                ps.setString(2, user.getName());
+                ps.setString(3, user.getPassword());
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            conn.commit();
+
+            boolean[] inserted = new boolean[users.size()];
+            for (int i = 0; i < inserted.length; i++) {
+                inserted[i] = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+            }
+            return inserted;
+        } catch (SQLException ex) {
+            conn.rollback();
+            System.err.println("Error creating users: " + ex.getMessage());
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
     /** READ: authenticate by username/password */
     public User authenticateUser(String username, String password) throws SQLException {
-        String sql = "SELECT user_id,username,password FROM users WHERE username=? AND password=?";
+        String sql = "SELECT user_id,username,password,is_admin FROM users WHERE username=? AND password=?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, username);
             ps.setString(2, password);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return new User(
+                    return newUser(
                             rs.getString("user_id"),
                             rs.getString("username"),
-                            rs.getString("password")
+                            rs.getString("password"),
+                            rs.getBoolean("is_admin")
                     );
                 }
             }
@@ -66,15 +110,16 @@ public class UserDAO {
 
     /** READ: by user_id */
     public User getUserById(String userId) throws SQLException {
-        String sql = "SELECT username,password FROM users WHERE user_id=?";
+        String sql = "SELECT username,password,is_admin FROM users WHERE user_id=?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userId);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return new User(
+                    return newUser(
                             userId,
                             rs.getString("username"),
-                            rs.getString("password")
+                            rs.getString("password"),
+                            rs.getBoolean("is_admin")
                     );
                 }
             }
@@ -82,6 +127,24 @@ public class UserDAO {
         return null;
     }
 
+    /** READ: number of registered users */
+    public int countUsers() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /** READ: pass every username to an action, one row at a time */
+    public void forEachUsername(Consumer<String> action) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT username FROM users")) {
+            while (rs.next()) {
+                action.accept(rs.getString(1));
+            }
+        }
+    }
+
     /** READ: check if a username already exists */
     public boolean usernameExists(String username) throws SQLException {
         String sql = "SELECT COUNT(*) FROM users WHERE username=?";
@@ -97,6 +160,44 @@ public class UserDAO {
     }
 
 
+    /**
+     * READ: the salt used to derive a user's encryption key, created on first use.
+     * Keys are derived from the password, so changing the password must re-encrypt the user's data.
+     * When another process stores a salt first, that one is returned, so every process derives the same key.
+     */
+    public String getOrCreateKeySalt(String userId) throws SQLException {
+        String stored = getKeySalt(userId);
+        if (stored != null) {
+            return stored;
+        }
+
+        String salt = ContentCipher.newSalt();
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE users SET key_salt=? WHERE user_id=? AND key_salt IS NULL")) {
+            ps.setString(1, salt);
+            ps.setString(2, userId);
+            if (ps.executeUpdate() == 1) {
+                return salt;
+            }
+        }
+
+        // Lost the race to another writer (e.g. the API server or the CLI): use the salt it stored
+        stored = getKeySalt(userId);
+        if (stored == null) {
+            throw new SQLException("No user with ID " + userId);
+        }
+        return stored;
+    }
+
+    /** Helper method to read a user's stored key salt, or null if there is none yet */
+    private String getKeySalt(String userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT key_salt FROM users WHERE user_id=?")) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
     /** UPDATE: username/password for given user_id */
     public void updateUser(User u) throws SQLException {
         String sql = "UPDATE users SET username=?, password=? WHERE user_id=?";
@@ -108,6 +209,20 @@ public class UserDAO {
         }
     }
 
+    /**
+     * UPDATE: grant or revoke admin rights
+     *
+     * @return false if there is no user with that username
+     */
+    public boolean setAdmin(String username, boolean admin) throws SQLException {
+        String sql = "UPDATE users SET is_admin=? WHERE username=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, admin ? 1 : 0);
+            ps.setString(2, username);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     /** DELETE: remove by user_id */
     public void deleteUser(String userId) throws SQLException {
         String sql = "DELETE FROM users WHERE user_id=?";
@@ -117,5 +232,8 @@ public class UserDAO {
         }
     }
 
-
-}
\ No newline at end of file
+    /** Helper method: admins are loaded as {@link Admin}, so the session knows what they may open */
+    private static User newUser(String userId, String username, String password, boolean admin) {
+        return admin ? new Admin(userId, username, password) : new User(userId, username, password);
+    }
+}
@@ -0,0 +1,167 @@
+package api;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load test for a running {@link ApiServer}. Logs in, creates a test entry and then keeps a number of
+ * virtual-thread clients busy for a while, mixing entry listings, single-entry reads and to-do
+ * listings. Prints throughput and latency percentiles.
+ *
+ * Usage: ApiLoadTest baseUrl username password [clients] [seconds]
+ * e.g.   ApiLoadTest http://127.0.0.1:8765 alice secret 64 30
+ */
+public class ApiLoadTest {
+    public record Report(long requests, long errors, double seconds, double p50Millis, double p99Millis, double maxMillis) {
+        public double throughput() {
+            return requests / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d errors) in %.1f s: %.0f req/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    requests, errors, seconds, throughput(), p50Millis, p99Millis, maxMillis);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: ApiLoadTest baseUrl username password [clients] [seconds]");
+            System.exit(1);
+        }
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        System.out.println(run(args[0], args[1], args[2], clients, Duration.ofSeconds(seconds)));
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param baseUrl The server's address, without the /api path
+     * @param clients The number of concurrent clients
+     * @param duration How long to keep them busy
+     * @return Counts and latencies of every request after the setup
+     */
+    public static Report run(String baseUrl, String username, String password, int clients, Duration duration)
+            throws Exception {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        String api = baseUrl.replaceAll("/+$", "") + "/api/";
+
+        Map<String, Object> login = JsonReader.parseObject(send(http, HttpRequest.newBuilder(URI.create(api + "login"))
+                .POST(HttpRequest.BodyPublishers.ofString(object("username", username, "password", password))), 200));
+        String token = (String) login.get("token");
+
+        Map<String, Object> entry = JsonReader.parseObject(send(http, authorized(api + "entries", token)
+                .POST(HttpRequest.BodyPublishers.ofString(object("title", "Load test", "content", "Load test entry"))), 201));
+        long entryId = (Long) entry.get("entryId");
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        long start = System.nanoTime();
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> client(http, api, token, entryId, deadline)));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // Each client returns its latencies, with failed requests as negative values
+        List<long[]> all = new ArrayList<>();
+        int total = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            all.add(latencies);
+            total += latencies.length;
+        }
+        long[] latencies = new long[total];
+        long errors = 0;
+        int n = 0;
+        for (long[] part : all) {
+            for (long latency : part) {
+                if (latency < 0) errors++;
+                latencies[n++] = Math.abs(latency);
+            }
+        }
+        Arrays.sort(latencies);
+
+        send(http, authorized(api + "entries/" + entryId, token).DELETE(), 204);
+        send(http, authorized(api + "logout", token).POST(HttpRequest.BodyPublishers.noBody()), 204);
+
+        return new Report(total, errors, elapsed, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                total == 0 ? 0 : latencies[total - 1] / 1e6);
+    }
+
+    /** Helper method for one simulated client: requests back to back until the deadline */
+    private static long[] client(HttpClient http, String api, String token, long entryId, long deadline) {
+        long[] latencies = new long[1024];
+        int n = 0;
+        while (System.nanoTime() < deadline) {
+            int pick = ThreadLocalRandom.current().nextInt(10);
+            HttpRequest.Builder request;
+            if (pick < 4) {
+                request = authorized(api + "entries", token).GET();
+            } else if (pick < 9) {
+                request = authorized(api + "entries/" + entryId, token).GET();
+            } else {
+                request = authorized(api + "entries/" + entryId + "/todos", token).GET();
+            }
+
+            long before = System.nanoTime();
+            boolean ok;
+            try {
+                HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+                ok = response.statusCode() == 200;
+            } catch (Exception e) {
+                ok = false;
+            }
+            long latency = Math.max(1, System.nanoTime() - before);
+
+            if (n == latencies.length) latencies = Arrays.copyOf(latencies, n * 2);
+            latencies[n++] = ok ? latency : -latency;
+        }
+        return Arrays.copyOf(latencies, n);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static HttpRequest.Builder authorized(String url, String token) {
+        return HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + token);
+    }
+
+    private static String send(HttpClient http, HttpRequest.Builder request, int expected) throws Exception {
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != expected) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    /** Helper method for a flat JSON object of string fields */
+    private static String object(String... namesAndValues) throws Exception {
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                json.name(namesAndValues[i]).value(namesAndValues[i + 1]);
+            }
+            json.endObject();
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package api;
+
+import DAO.QuotaExceededException;
+import DAO.StaleVersionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import util.SchemaManager;
+import util.Session;
+import util.SessionManager;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server exposing the journal as JSON (see {@link JournalApi} for the endpoints).
+ * Listens on the loopback interface only. Each request runs on its own virtual thread;
+ * the connection pool bounds how many of them use the database at once.
+ *
+ * Usage: ApiServer [port]
+ */
+public class ApiServer {
+    public static final int DEFAULT_PORT = 8765;
+    private static final int POOL_SIZE = 8;
+
+    private final JournalApi api = new JournalApi();
+    private final ConnectionPool pool;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+
+    static {
+        // Streamed (chunked) responses end in a small write; with Nagle's algorithm on, each request
+        // would wait for the client's delayed ACK, about 40 ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private ApiServer(int port) throws IOException, SQLException {
+        pool = new ConnectionPool(POOL_SIZE);
+        Connection conn = pool.take();
+        try {
+            // Readers don't block the writer (and the other way round) in WAL mode
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA journal_mode=WAL")) {
+                rs.next();
+            }
+            SchemaManager.initialize(conn);
+        } finally {
+            pool.release(conn);
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/api/", this::handle);
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(requestExecutor);
+    }
+
+    /**
+     * Starts a server on the given port (0 picks a free one).
+     *
+     * @return The running server
+     */
+    public static ApiServer start(int port) throws IOException, SQLException {
+        ApiServer apiServer = new ApiServer(port);
+        apiServer.server.start();
+        return apiServer;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, gives running ones a second to finish and closes the connections.
+     */
+    public void stop() {
+        server.stop(1);
+        requestExecutor.shutdown();
+        pool.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Connection conn = null;
+        try {
+            String[] path = Arrays.stream(exchange.getRequestURI().getPath().substring("/api/".length()).split("/"))
+                    .filter(s -> !s.isEmpty())
+                    .toArray(String[]::new);
+
+            boolean login = path.length == 1 && path[0].equals("login");
+            if (login && !exchange.getRequestMethod().equals("POST")) {
+                throw new ApiException(405, "Method not allowed");
+            }
+            Session session = login ? null : SessionManager.get(bearerToken(exchange));
+            if (!login && (session == null || session.getUser() == null)) {
+                throw new ApiException(401, "Missing or expired session token");
+            }
+
+            conn = pool.take();
+            if (login) {
+                api.login(exchange, conn);
+            } else {
+                api.handle(exchange, conn, session, path);
+            }
+        } catch (ApiException e) {
+            sendError(exchange, e.getStatus(), e.getMessage(), null);
+        } catch (StaleVersionException e) {
+            sendError(exchange, 409, e.getMessage(), e.getCurrentVersion());
+        } catch (QuotaExceededException e) {
+            sendError(exchange, 507, e.getMessage(), null);
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("API request failed: " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI() + ": " + e.getMessage());
+            sendError(exchange, 500, "Internal error", null);
+        } finally {
+            if (conn != null) pool.release(conn);
+            exchange.close();
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return header.substring(7).trim();
+    }
+
+    /** Helper method to answer with {"error": message}, unless the response has already started */
+    private static void sendError(HttpExchange exchange, int status, String message, Integer currentVersion) {
+        if (exchange.getResponseCode() != -1) return;
+        try (JsonWriter json = JournalApi.respond(exchange, status)) {
+            json.beginObject().name("error").value(message);
+            if (currentVersion != null) json.name("currentVersion").value(currentVersion);
+            json.endObject();
+        } catch (IOException e) {
+            // The client went away; nothing left to tell it
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ApiServer apiServer = start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::stop));
+        System.out.println("Journal API listening on http://127.0.0.1:" + apiServer.getPort() + "/api/");
+    }
+}
@@ -0,0 +1,64 @@
+package api;
+
+import util.DBConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed set of connections to the journal database, shared by the API's request threads.
+ * DAO transactions toggle auto-commit on their connection, so each request needs one to itself;
+ * opening a connection per request would cost more than most requests.
+ * The size also bounds how many requests run JDBC calls at once, which pin their carrier thread.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final List<Connection> all = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+
+    public ConnectionPool(int size) throws SQLException {
+        idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Connection conn = DBConnection.openConnection();
+            all.add(conn);
+            idle.add(conn);
+        }
+    }
+
+    /** Waits for a free connection */
+    public Connection take() throws SQLException {
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    /** Returns a connection, undoing a transaction a failed request may have left open */
+    public void release(Connection conn) {
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not reset pooled connection: " + e.getMessage());
+        }
+        idle.add(conn);
+    }
+
+    @Override
+    public void close() {
+        for (Connection conn : all) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Could not close pooled connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package api;
+
+import DAO.ArchiveDAO;
+import DAO.BlockDAO;
+import DAO.JournalDAO;
+import DAO.ToDoDAO;
+import DAO.ToggleDAO;
+import DAO.UserDAO;
+import com.sun.net.httpserver.HttpExchange;
+import model.BlockNode;
+import model.JournalEntry;
+import model.Tag;
+import model.ToDoItem;
+import model.ToggleBlock;
+import model.User;
+import util.ContentCipher;
+import util.IndexingService;
+import util.KeyRing;
+import util.Session;
+import util.SessionManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The API's endpoints, on top of the same DAOs the desktop app uses. Paths are relative to /api:
+ *
+ *   POST   /login                       {"username", "password"} (a user ID works as username) -> {"token", ...}
+ *   POST   /logout
+ *   GET    /entries[?q=text][&archived=true]   summaries, or search results when q is given
+ *   POST   /entries                     {"title", "content", "tags": [{"name", "color"}]}
+ *   GET    /entries/{id}                the full entry
+ *   PUT    /entries/{id}                changed fields plus the "version" read
+ *   DELETE /entries/{id}
+ *   GET    /entries/{id}/todos          POST to add {"description", "done"}
+ *   PUT    /entries/{id}/todos/{todoId} {"description", "done", "version"}; DELETE removes it
+ *   GET    /entries/{id}/toggles        POST to add {"title", "content", "expanded"}
+ *   PUT    /entries/{id}/toggles/{toggleId} {"title", "content", "expanded", "version"}; DELETE removes it
+ *
+ * Every endpoint but login needs an "Authorization: Bearer token" header. Entries of other users
+ * answer 404, like entries that don't exist.
+ */
+public class JournalApi {
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    /** POST /login */
+    public void login(HttpExchange exchange, Connection conn) throws IOException, SQLException, ApiException {
+        Map<String, Object> body = readBody(exchange);
+        String login = requireString(body, "username").trim();
+        String password = requireString(body, "password");
+
+        // Same rules as the login screen: by user ID first, then by username
+        UserDAO userDAO = new UserDAO(conn);
+        User user = userDAO.getUserById(login);
+        if (user == null || !user.getPassword().equals(password)) {
+            user = userDAO.authenticateUser(login, password);
+        }
+        if (user == null) {
+            throw new ApiException(401, "Invalid credentials");
+        }
+
+        String salt = userDAO.getOrCreateKeySalt(user.getUserID());
+        ContentCipher key = ContentCipher.derive(password, salt);
+        String token = SessionManager.open(user).getToken();
+        KeyRing.unlock(user.getUserID(), key);
+        IndexingService.open(user.getUserID());
+
+        try (JsonWriter json = respond(exchange, 200)) {
+            json.beginObject()
+                    .name("token").value(token)
+                    .name("userId").value(user.getUserID())
+                    .name("username").value(user.getName())
+                    .endObject();
+        }
+    }
+
+    /**
+     * Serves an authenticated request.
+     *
+     * @param path The path segments after /api
+     */
+    public void handle(HttpExchange exchange, Connection conn, Session session, String[] path)
+            throws IOException, SQLException, ApiException {
+        String method = exchange.getRequestMethod();
+        User user = session.getUser();
+
+        if (path.length == 1 && path[0].equals("logout")) {
+            requireMethod(method, "POST");
+            SessionManager.close(session.getToken());
+            respondEmpty(exchange);
+            return;
+        }
+        if (path.length == 0 || !path[0].equals("entries")) {
+            throw new ApiException(404, "No such endpoint");
+        }
+
+        if (path.length == 1) {
+            switch (method) {
+                case "GET" -> listEntries(exchange, conn, user);
+                case "POST" -> createEntry(exchange, conn, user);
+                default -> throw new ApiException(405, "Method not allowed");
+            }
+            return;
+        }
+
+        int entryId = parseId(path[1]);
+        JournalDAO journalDAO = new JournalDAO(conn);
+        if (!user.getUserID().equals(journalDAO.getOwnerId(entryId))) {
+            throw new ApiException(404, "No such entry");
+        }
+
+        if (path.length == 2) {
+            switch (method) {
+                case "GET" -> {
+                    // The last entry a client read counts as open, so background jobs leave it alone
+                    JournalEntry entry = journalDAO.getEntryById(entryId);
+                    session.setCurrentEntry(entry);
+                    writeEntry(exchange, 200, entry);
+                }
+                case "PUT" -> updateEntry(exchange, journalDAO, entryId);
+                case "DELETE" -> {
+                    journalDAO.deleteEntry(entryId);
+                    JournalEntry open = session.getCurrentEntry();
+                    if (open != null && open.getEntryId() == entryId) session.setCurrentEntry(null);
+                    respondEmpty(exchange);
+                }
+                default -> throw new ApiException(405, "Method not allowed");
+            }
+            return;
+        }
+
+        switch (path[2]) {
+            case "todos" -> handleTodos(exchange, conn, entryId, path);
+            case "toggles" -> handleToggles(exchange, conn, entryId, path);
+            default -> throw new ApiException(404, "No such endpoint");
+        }
+    }
+
+    private void listEntries(HttpExchange exchange, Connection conn, User user) throws IOException, SQLException {
+        Map<String, String> query = parseQuery(exchange);
+        String keyword = query.get("q");
+        boolean archived = "true".equals(query.get("archived"));
+        String userId = user.getUserID();
+
+        List<JournalEntry> entries;
+        if (keyword != null && !keyword.isBlank()) {
+            entries = new JournalDAO(conn).searchEntriesByKeyword(userId, keyword);
+            if (archived) entries.addAll(new ArchiveDAO(conn).searchArchivedEntries(userId, keyword));
+        } else {
+            entries = new JournalDAO(conn).getEntrySummariesByUserId(userId);
+            if (archived) entries.addAll(new ArchiveDAO(conn).getArchivedEntriesByUserId(userId));
+        }
+
+        // Written one entry at a time, without building the whole document first
+        try (JsonWriter json = respond(exchange, 200)) {
+            json.beginArray();
+            for (JournalEntry entry : entries) {
+                entryJson(json, entry, false);
+            }
+            json.endArray();
+        }
+    }
+
+    private void createEntry(HttpExchange exchange, Connection conn, User user)
+            throws IOException, SQLException, ApiException {
+        Map<String, Object> body = readBody(exchange);
+        JournalEntry entry = new JournalEntry();
+        entry.setUserId(user.getUserID());
+        entry.setTitle(optionalString(body, "title", "Untitled"));
+        entry.setContent(optionalString(body, "content", ""));
+        entry.setTags(tagsOf(body, ""));
+        entry.setDateCreated(LocalDateTime.now());
+        entry.setDateModified(LocalDateTime.now());
+        new JournalDAO(conn).saveEntry(entry);
+        writeEntry(exchange, 201, entry);
+    }
+
+    private void updateEntry(HttpExchange exchange, JournalDAO journalDAO, int entryId)
+            throws IOException, SQLException, ApiException {
+        Map<String, Object> body = readBody(exchange);
+        JournalEntry entry = journalDAO.getEntryById(entryId);
+        entry.setTitle(optionalString(body, "title", entry.getTitle()));
+        entry.setContent(optionalString(body, "content", entry.getContent()));
+        entry.setTags(tagsOf(body, entry.getTags()));
+        entry.setVersion(requireInt(body, "version"));
+        journalDAO.updateEntry(entry);
+        writeEntry(exchange, 200, journalDAO.getEntryById(entryId));
+    }
+
+    private void handleTodos(HttpExchange exchange, Connection conn, int entryId, String[] path)
+            throws IOException, SQLException, ApiException {
+        String method = exchange.getRequestMethod();
+        ToDoDAO toDoDAO = new ToDoDAO(conn);
+
+        if (path.length == 3) {
+            switch (method) {
+                case "GET" -> {
+                    try (JsonWriter json = respond(exchange, 200)) {
+                        json.beginArray();
+                        for (ToDoItem item : toDoDAO.getToDosByEntryId(entryId)) {
+                            todoJson(json, item);
+                        }
+                        json.endArray();
+                    }
+                }
+                case "POST" -> {
+                    Map<String, Object> body = readBody(exchange);
+                    ToDoItem item = new ToDoItem(entryId, 0, requireString(body, "description"),
+                            optionalBoolean(body, "done", false));
+                    toDoDAO.addToDo(item);
+                    try (JsonWriter json = respond(exchange, 201)) {
+                        todoJson(json, item);
+                    }
+                }
+                default -> throw new ApiException(405, "Method not allowed");
+            }
+            return;
+        }
+
+        int todoId = requireBlock(conn, path, entryId, BlockNode.TODO);
+        switch (method) {
+            case "PUT" -> {
+                Map<String, Object> body = readBody(exchange);
+                ToDoItem item = toDoDAO.getToDosByEntryId(entryId).stream()
+                        .filter(t -> t.getTodoId() == todoId).findFirst()
+                        .orElseThrow(() -> new ApiException(404, "No such to-do"));
+                item.setDescription(optionalString(body, "description", item.getDescription()));
+                item.setDone(optionalBoolean(body, "done", item.isDone()));
+                item.setVersion(requireInt(body, "version"));
+                toDoDAO.updateToDo(item);
+                try (JsonWriter json = respond(exchange, 200)) {
+                    todoJson(json, item);
+                }
+            }
+            case "DELETE" -> {
+                toDoDAO.deleteToDoItem(todoId);
+                respondEmpty(exchange);
+            }
+            default -> throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private void handleToggles(HttpExchange exchange, Connection conn, int entryId, String[] path)
+            throws IOException, SQLException, ApiException {
+        String method = exchange.getRequestMethod();
+        ToggleDAO toggleDAO = new ToggleDAO(conn);
+
+        if (path.length == 3) {
+            switch (method) {
+                case "GET" -> {
+                    try (JsonWriter json = respond(exchange, 200)) {
+                        json.beginArray();
+                        for (ToggleBlock toggle : toggleDAO.getTogglesByEntryId(entryId)) {
+                            toggleJson(json, toggle);
+                        }
+                        json.endArray();
+                    }
+                }
+                case "POST" -> {
+                    Map<String, Object> body = readBody(exchange);
+                    ToggleBlock toggle = new ToggleBlock(entryId, 0, optionalString(body, "title", "Toggle Title"),
+                            optionalString(body, "content", ""), optionalBoolean(body, "expanded", false));
+                    toggleDAO.addToggle(toggle);
+                    try (JsonWriter json = respond(exchange, 201)) {
+                        toggleJson(json, toggle);
+                    }
+                }
+                default -> throw new ApiException(405, "Method not allowed");
+            }
+            return;
+        }
+
+        int toggleId = requireBlock(conn, path, entryId, BlockNode.TOGGLE);
+        switch (method) {
+            case "PUT" -> {
+                Map<String, Object> body = readBody(exchange);
+                ToggleBlock toggle = toggleDAO.getTogglesByEntryId(entryId).stream()
+                        .filter(t -> t.getToggleId() == toggleId).findFirst()
+                        .orElseThrow(() -> new ApiException(404, "No such toggle"));
+                toggle.setTitle(optionalString(body, "title", toggle.getTitle()));
+                toggle.setContent(optionalString(body, "content", toggle.getContent()));
+                toggle.setExpanded(optionalBoolean(body, "expanded", toggle.isExpanded()));
+                toggle.setVersion(requireInt(body, "version"));
+                toggleDAO.updateToggle(toggle);
+                try (JsonWriter json = respond(exchange, 200)) {
+                    toggleJson(json, toggle);
+                }
+            }
+            case "DELETE" -> {
+                toggleDAO.deleteToggle(toggleId);
+                respondEmpty(exchange);
+            }
+            default -> throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    /** Helper method to check that path[3] is a block of the given type in the entry */
+    private static int requireBlock(Connection conn, String[] path, int entryId, String type)
+            throws SQLException, ApiException {
+        if (path.length != 4) throw new ApiException(404, "No such endpoint");
+        int blockId = parseId(path[3]);
+        Integer owner = new BlockDAO(conn).getEntryId(blockId, type);
+        if (owner == null || owner != entryId) {
+            throw new ApiException(404, "No such " + (type.equals(BlockNode.TODO) ? "to-do" : "toggle"));
+        }
+        return blockId;
+    }
+
+    // ---- JSON of the models
+
+    private static void writeEntry(HttpExchange exchange, int status, JournalEntry entry) throws IOException {
+        try (JsonWriter json = respond(exchange, status)) {
+            entryJson(json, entry, true);
+        }
+    }
+
+    private static void entryJson(JsonWriter json, JournalEntry entry, boolean withContent) throws IOException {
+        json.beginObject()
+                .name("entryId").value(entry.getEntryId())
+                .name("title").value(entry.getTitle());
+        if (withContent) {
+            json.name("content").value(entry.getContent());
+        } else {
+            json.name("preview").value(entry.getPreview());
+        }
+        json.name("tags").beginArray();
+        for (Tag tag : Tag.parseList(entry.getTags())) {
+            json.beginObject().name("name").value(tag.getName()).name("color").value(tag.getColor()).endObject();
+        }
+        json.endArray()
+                .name("dateCreated").value(entry.getDateCreated() == null ? null : entry.getDateCreated().toString())
+                .name("dateModified").value(entry.getDateModified() == null ? null : entry.getDateModified().toString())
+                .name("version").value(entry.getVersion())
+                .name("wordCount").value(entry.getWordCount())
+                .name("todoOpen").value(entry.getTodoOpen())
+                .name("todoDone").value(entry.getTodoDone())
+                .name("archived").value(entry.isArchived())
+                .endObject();
+    }
+
+    private static void todoJson(JsonWriter json, ToDoItem item) throws IOException {
+        json.beginObject()
+                .name("todoId").value(item.getTodoId())
+                .name("description").value(item.getDescription())
+                .name("done").value(item.isDone())
+                .name("version").value(item.getVersion())
+                .endObject();
+    }
+
+    private static void toggleJson(JsonWriter json, ToggleBlock toggle) throws IOException {
+        json.beginObject()
+                .name("toggleId").value(toggle.getToggleId())
+                .name("title").value(toggle.getTitle())
+                .name("content").value(toggle.getContent())
+                .name("expanded").value(toggle.isExpanded())
+                .name("version").value(toggle.getVersion())
+                .endObject();
+    }
+
+    // ---- Request and response helpers
+
+    /** Starts a JSON response; the body is streamed, so its length isn't known up front */
+    static JsonWriter respond(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192));
+    }
+
+    static void respondEmpty(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException, ApiException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body too large");
+        }
+        try {
+            return JsonReader.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return query;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void requireMethod(String method, String expected) throws ApiException {
+        if (!method.equals(expected)) throw new ApiException(405, "Method not allowed");
+    }
+
+    private static int parseId(String segment) throws ApiException {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "Not an ID: " + segment);
+        }
+    }
+
+    private static String requireString(Map<String, Object> body, String name) throws ApiException {
+        if (!(body.get(name) instanceof String value)) {
+            throw new ApiException(400, "Missing string field \"" + name + "\"");
+        }
+        return value;
+    }
+
+    private static String optionalString(Map<String, Object> body, String name, String fallback) throws ApiException {
+        Object value = body.get(name);
+        if (value == null) return fallback;
+        if (!(value instanceof String s)) throw new ApiException(400, "Field \"" + name + "\" must be a string");
+        return s;
+    }
+
+    private static boolean optionalBoolean(Map<String, Object> body, String name, boolean fallback) throws ApiException {
+        Object value = body.get(name);
+        if (value == null) return fallback;
+        if (!(value instanceof Boolean b)) throw new ApiException(400, "Field \"" + name + "\" must be true or false");
+        return b;
+    }
+
+    private static int requireInt(Map<String, Object> body, String name) throws ApiException {
+        if (!(body.get(name) instanceof Long value)) {
+            throw new ApiException(400, "Missing integer field \"" + name + "\"");
+        }
+        return value.intValue();
+    }
+
+    /** Helper method to read the "tags" array into the stored tag string */
+    private static String tagsOf(Map<String, Object> body, String fallback) throws ApiException {
+        Object value = body.get("tags");
+        if (value == null) return fallback;
+        if (!(value instanceof List<?> list)) throw new ApiException(400, "Field \"tags\" must be an array");
+        List<Tag> tags = new ArrayList<>();
+        for (Object item : list) {
+            if (!(item instanceof Map<?, ?> tag) || !(tag.get("name") instanceof String name)) {
+                throw new ApiException(400, "Each tag needs a \"name\"");
+            }
+            String color = tag.get("color") instanceof String c ? c : "#5599ff";
+            if (name.isBlank() || name.contains(",") || name.contains(":")) {
+                throw new ApiException(400, "Invalid tag name: " + name);
+            }
+            if (!Tag.isValidColor(color)) {
+                throw new ApiException(400, "Invalid tag color: " + color + " (expected #rrggbb)");
+            }
+            tags.add(new Tag(name.trim(), color));
+        }
+        return Tag.formatList(tags);
+    }
+}
@@ -0,0 +1,135 @@
+package controller;
+
+import DAO.AdminDAO;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import model.Admin;
+import model.UserStats;
+import util.DBConnection;
+import util.LanguageManager;
+import util.SessionManager;
+import util.ViewLoader;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Shows how much storage each user takes. The cached totals are shown right away;
+ * totals of users whose data changed since the last visit are recomputed in the background.
+ */
+public class AdminController {
+    @FXML private Label titleLabel;
+    @FXML private Label statusLabel;
+    @FXML private Button backButton;
+    @FXML private Button refreshButton;
+    @FXML private TableView<UserStats> statsTableView;
+    @FXML private TableColumn<UserStats, String> userColumn;
+    @FXML private TableColumn<UserStats, Number> entriesColumn;
+    @FXML private TableColumn<UserStats, Number> archivedColumn;
+    @FXML private TableColumn<UserStats, Number> sizeColumn;
+    @FXML private TableColumn<UserStats, Number> blocksColumn;
+    @FXML private TableColumn<UserStats, String> lastActivityColumn;
+
+    private final LanguageManager languageManager = LanguageManager.getInstance();
+
+    @FXML
+    public void initialize() {
+        if (!(SessionManager.getCurrentUser() instanceof Admin)) {
+            System.err.println("Admin view opened without admin rights");
+            Platform.runLater(() -> ViewLoader.load("view/DashboardView.fxml"));
+            return;
+        }
+
+        userColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().username()));
+        entriesColumn.setCellValueFactory(cellData -> new ReadOnlyLongWrapper(cellData.getValue().entryCount()));
+        archivedColumn.setCellValueFactory(cellData -> new ReadOnlyLongWrapper(cellData.getValue().archivedCount()));
+        sizeColumn.setCellValueFactory(cellData -> new ReadOnlyLongWrapper(cellData.getValue().contentBytes()));
+        sizeColumn.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(Number item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : formatBytes(item.longValue()));
+            }
+        });
+        blocksColumn.setCellValueFactory(cellData -> new ReadOnlyLongWrapper(cellData.getValue().blockCount()));
+        lastActivityColumn.setCellValueFactory(cellData -> {
+            String date = cellData.getValue().lastActivity();
+            // Only show up to minutes
+            return new ReadOnlyStringWrapper(date == null ? "" : date.replace("T", " ").substring(0, Math.min(16, date.length())));
+        });
+
+        updateUILanguage();
+
+        // Cached totals first, so the view opens instantly
+        try {
+            statsTableView.setItems(FXCollections.observableArrayList(new AdminDAO().getUserStats()));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            statusLabel.setText(languageManager.getString("admin.error.load", e.getMessage()));
+        }
+        handleRefresh();
+    }
+
+    /**
+     * Recomputes the totals of users whose data changed, on a background thread with its own connection.
+     */
+    @FXML
+    public void handleRefresh() {
+        refreshButton.setDisable(true);
+        statusLabel.setText(languageManager.getString("admin.refreshing"));
+
+        Thread thread = new Thread(() -> {
+            try (Connection conn = DBConnection.openConnection()) {
+                AdminDAO adminDAO = new AdminDAO(conn);
+                long start = System.nanoTime();
+                int refreshed = adminDAO.refreshUserStats();
+                List<UserStats> stats = adminDAO.getUserStats();
+                System.out.printf("Refreshed statistics of %d users in %.1f ms%n",
+                        refreshed, (System.nanoTime() - start) / 1e6);
+                Platform.runLater(() -> {
+                    statsTableView.getItems().setAll(stats);
+                    statusLabel.setText(languageManager.getString("admin.refreshed", refreshed));
+                    refreshButton.setDisable(false);
+                });
+            } catch (SQLException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    statusLabel.setText(languageManager.getString("admin.error.load", e.getMessage()));
+                    refreshButton.setDisable(false);
+                });
+            }
+        }, "admin-stats");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @FXML
+    public void handleBack() {
+        ViewLoader.load("view/DashboardView.fxml");
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    private void updateUILanguage() {
+        titleLabel.setText(languageManager.getString("admin.title"));
+        backButton.setText(languageManager.getString("admin.back"));
+        refreshButton.setText(languageManager.getString("admin.refresh"));
+        userColumn.setText(languageManager.getString("admin.user"));
+        entriesColumn.setText(languageManager.getString("admin.entries"));
+        archivedColumn.setText(languageManager.getString("admin.archived"));
+        sizeColumn.setText(languageManager.getString("admin.size"));
+        blocksColumn.setText(languageManager.getString("admin.blocks"));
+        lastActivityColumn.setText(languageManager.getString("admin.lastActivity"));
+        statsTableView.setPlaceholder(new Label(languageManager.getString("dashboard.noContent")));
+    }
+}
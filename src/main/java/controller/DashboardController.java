@@ -1,21 +1,36 @@
 package controller;
 
+import DAO.ArchiveDAO;
 import DAO.JournalDAO;
+import DAO.ToDoDAO;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableMap;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.FlowPane;
 import javafx.util.Callback;
+import model.Admin;
 import model.JournalEntry;
+import model.Tag;
+import model.TagList;
+import model.TodoProgress;
+import util.EntryEventBus;
 import util.SessionManager;
+import util.TagSuggestions;
 import util.ViewLoader;
 
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 
 import util.LanguageManager;
 import javafx.beans.binding.Bindings;
@@ -29,16 +44,24 @@ public class DashboardController {
     @FXML private Label welcomeLabel;
     @FXML private TableView<JournalEntry> journalTableView;
     @FXML private TableColumn<JournalEntry, String> titleColumn;
+    @FXML private TableColumn<JournalEntry, String> previewColumn;
+    @FXML private TableColumn<JournalEntry, Number> wordCountColumn;
+    @FXML private TableColumn<JournalEntry, TodoProgress> todoColumn;
     @FXML private TableColumn<JournalEntry, String> dateModifiedColumn;
     @FXML private TableColumn<JournalEntry, String> dateCreatedColumn;
     @FXML private TableColumn<JournalEntry, String> tagsColumn;
     @FXML private TableColumn<JournalEntry, Void> deleteColumn;
     @FXML private TextField searchField;
+    @FXML private CheckBox showArchivedCheckBox;
     @FXML private ToggleButton languageToggle;
     @FXML private MenuButton themeMenuButton;
     @FXML private Button newJournalButton;
+    @FXML private Button adminButton;
 
     private final ObservableList<JournalEntry> masterList = FXCollections.observableArrayList();
+    // To-do counts of the rows shown; a changed entry is updated in place and its cell follows
+    private final ObservableMap<Integer, TodoProgress> todoProgress = FXCollections.observableHashMap();
+    private Runnable stopTodoUpdates;
     private final LanguageManager languageManager = LanguageManager.getInstance();
     private final ThemeManager themeManager = ThemeManager.getInstance();
 
@@ -47,6 +70,11 @@ public class DashboardController {
         // Debug print to verify initialization
         System.out.println("DashboardController initializing...");
 
+        // Only admins can see every user's storage
+        boolean admin = SessionManager.getCurrentUser() instanceof Admin;
+        adminButton.setVisible(admin);
+        adminButton.setManaged(admin);
+
         // Set welcome message with current user's name
         if (SessionManager.getCurrentUser() != null) {
             welcomeLabel.setText("Welcome " + SessionManager.getCurrentUser().getName());
@@ -61,12 +89,37 @@ public class DashboardController {
         // Load journal entries
         loadAllEntries();
 
+        // Keep to-do counts current while this view is shown
+        stopTodoUpdates = EntryEventBus.onTodosChanged(entryId ->
+                Platform.runLater(() -> updateTodoProgress(entryId)));
+        journalTableView.sceneProperty().addListener((obs, oldScene, scene) -> {
+            if (scene == null && stopTodoUpdates != null) {
+                stopTodoUpdates.run();
+                stopTodoUpdates = null;
+            }
+        });
+
         // Configure search functionality
         searchField.textProperty().addListener((o, old, nw) -> filter(nw));
 
+        // Archived entries are only listed and searched on request
+        showArchivedCheckBox.setOnAction(event -> {
+            loadAllEntries();
+            filter(searchField.getText());
+        });
+
         // Double-click handler for opening a journal entry
         journalTableView.setRowFactory(tv -> {
-            TableRow<JournalEntry> row = new TableRow<>();
+            TableRow<JournalEntry> row = new TableRow<>() {
+                @Override
+                protected void updateItem(JournalEntry item, boolean empty) {
+                    super.updateItem(item, empty);
+                    getStyleClass().remove("archived-row");
+                    if (!empty && item != null && item.isArchived()) {
+                        getStyleClass().add("archived-row");
+                    }
+                }
+            };
             row.setOnMouseClicked(event -> {
                 if (event.getClickCount() == 2 && (!row.isEmpty())) {
                     JournalEntry selected = row.getItem();
@@ -113,6 +166,25 @@ public class DashboardController {
             return javafx.beans.binding.Bindings.createStringBinding(() -> entry.getTitle());
         });
 
+        // Derived columns come from the summary query; no content is loaded for them
+        previewColumn.setCellValueFactory(cellData -> {
+            String preview = cellData.getValue().getPreview();
+            return new ReadOnlyStringWrapper(preview == null ? "" : preview);
+        });
+        wordCountColumn.setCellValueFactory(cellData ->
+                new ReadOnlyIntegerWrapper(cellData.getValue().getWordCount()));
+        // Counts come from one grouped query per load (see loadTodoProgress)
+        todoColumn.setCellValueFactory(cellData ->
+                Bindings.valueAt(todoProgress, cellData.getValue().getEntryId()));
+        todoColumn.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(TodoProgress item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null || item.total() == 0 ? null
+                        : languageManager.getString("dashboard.todoProgress", item.done(), item.total()));
+            }
+        });
+
         // Format date columns to display readable dates
         dateModifiedColumn.setCellValueFactory(cellData -> {
             JournalEntry entry = cellData.getValue();
@@ -139,64 +211,78 @@ public class DashboardController {
         });
 
         // Setup tags column with colored tags
-        tagsColumn.setCellFactory(column -> {
-            return new TableCell<JournalEntry, String>() {
-                private final FlowPane flowPane = new FlowPane();
-
-                {
-                    flowPane.setHgap(5);
-                    flowPane.setVgap(5);
-                    flowPane.setPrefWidth(100);
-                    flowPane.setPadding(new Insets(2));
-                }
+        tagsColumn.setCellFactory(column -> new TagCell());
 
-                @Override
-                protected void updateItem(String item, boolean empty) {
-                    super.updateItem(item, empty);
+        // Add delete button to each row
+        setupDeleteColumn();
 
-                    if (empty || getTableRow() == null || getTableRow().getItem() == null) {
-                        setGraphic(null);
-                        setText(null);
-                        return;
-                    }
+        System.out.println("Table columns setup complete");
+    }
 
-                    JournalEntry entry = (JournalEntry) getTableRow().getItem();
-                    String tagString = entry.getTags();
-
-                    flowPane.getChildren().clear();
-
-                    if (tagString != null && !tagString.isEmpty()) {
-                        String[] tagParts = tagString.split(",");
-                        for (String tag : tagParts) {
-                            String[] parts = tag.split(":");
-                            if (parts.length == 2) {
-                                String name = parts[0].trim();
-                                String color = parts[1].trim();
-
-                                Label tagLabel = new Label(name);
-                                tagLabel.setStyle(String.format(
-                                        "-fx-background-color: %s; " +
-                                                "-fx-text-fill: white; " +
-                                                "-fx-background-radius: 10px; " +
-                                                "-fx-padding: 2px 5px;",
-                                        color
-                                ));
-
-                                flowPane.getChildren().add(tagLabel);
-                            }
-                        }
-                    }
+    /**
+     * Tags column cell. updateItem runs for every row that scrolls into view, so it allocates nothing
+     * in the common case: the entry's tags are parsed once (see {@link JournalEntry#getTagList()}),
+     * a row with the same tags as before is left alone, and chip labels are kept and reused.
+     * Colors come from CSS classes; only tags with a color outside the palette set an inline style.
+     */
+    private static final class TagCell extends TableCell<JournalEntry, String> {
+        private final FlowPane flowPane = new FlowPane();
+        private final List<Label> chips = new ArrayList<>();
+        private TagList shown;
+
+        TagCell() {
+            flowPane.setHgap(5);
+            flowPane.setVgap(5);
+            flowPane.setPrefWidth(100);
+            flowPane.setPadding(new Insets(2));
+            setText(null);
+        }
 
-                    setGraphic(flowPane);
-                    setText(null);
-                }
-            };
-        });
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
 
-        // Add delete button to each row
-        setupDeleteColumn();
+            if (empty || getTableRow() == null || getTableRow().getItem() == null) {
+                setGraphic(null);
+                return;
+            }
 
-        System.out.println("Table columns setup complete");
+            TagList tags = getTableRow().getItem().getTagList();
+            if (tags != shown) {
+                show(tags);
+                shown = tags;
+            }
+            if (getGraphic() != flowPane) {
+                setGraphic(flowPane);
+            }
+        }
+
+        /** Helper method to point the first n chips at the tags, creating chips only when there are too few */
+        private void show(TagList tags) {
+            while (chips.size() < tags.size()) {
+                Label chip = new Label();
+                // Second class is the color; it is replaced in place below
+                chip.getStyleClass().setAll("tag-chip", "tag-custom");
+                chips.add(chip);
+            }
+            for (int i = 0; i < tags.size(); i++) {
+                Tag tag = tags.get(i);
+                Label chip = chips.get(i);
+                chip.setText(tag.getName());
+                if (!chip.getStyleClass().get(1).equals(tag.getStyleClass())) {
+                    chip.getStyleClass().set(1, tag.getStyleClass());
+                }
+                chip.setStyle(tag.getStyle());
+            }
+
+            ObservableList<Node> children = flowPane.getChildren();
+            if (children.size() > tags.size()) {
+                children.remove(tags.size(), children.size());
+            }
+            for (int i = children.size(); i < tags.size(); i++) {
+                children.add(chips.get(i));
+            }
+        }
     }
 
     private void setupDeleteColumn() {
@@ -242,13 +328,17 @@ public class DashboardController {
             System.out.println("Loading entries for user: " + userId);
 
             JournalDAO journalDAO = new JournalDAO();
-            List<JournalEntry> entries = journalDAO.getEntriesByUserId(userId);
+            List<JournalEntry> entries = journalDAO.getEntrySummariesByUserId(userId);
+            if (showArchivedCheckBox.isSelected()) {
+                entries.addAll(new ArchiveDAO().getArchivedEntriesByUserId(userId));
+            }
 
             System.out.println("Loaded " + entries.size() + " entries from database");
 
             // Clear and add all entries to the master list
             masterList.clear();
             masterList.addAll(entries);
+            loadTodoProgress(entries);
 
             // Set items to the table view
             journalTableView.setItems(masterList);
@@ -261,6 +351,37 @@ public class DashboardController {
         }
     }
 
+    /**
+     * Loads the to-do counts of the rows about to be shown with a single grouped query.
+     * Archived entries have no blocks in the main database, so their stub's counts are used.
+     */
+    private void loadTodoProgress(List<JournalEntry> rows) throws SQLException {
+        List<Integer> liveIds = new ArrayList<>();
+        for (JournalEntry entry : rows) {
+            if (!entry.isArchived()) liveIds.add(entry.getEntryId());
+        }
+        Map<Integer, TodoProgress> counts = new ToDoDAO().getTodoProgress(liveIds);
+
+        Map<Integer, TodoProgress> shown = new HashMap<>();
+        for (JournalEntry entry : rows) {
+            shown.put(entry.getEntryId(), entry.isArchived()
+                    ? new TodoProgress(entry.getTodoOpen(), entry.getTodoDone())
+                    : counts.getOrDefault(entry.getEntryId(), TodoProgress.NONE));
+        }
+        todoProgress.putAll(shown);
+    }
+
+    /** Recounts one entry's to-dos after a change, if it is shown */
+    private void updateTodoProgress(int entryId) {
+        if (!todoProgress.containsKey(entryId)) return;
+        try {
+            todoProgress.put(entryId, new ToDoDAO().getTodoProgress(List.of(entryId))
+                    .getOrDefault(entryId, TodoProgress.NONE));
+        } catch (SQLException e) {
+            System.err.println("Could not update to-do counts: " + e.getMessage());
+        }
+    }
+
     /**
      * Refreshes the table data by reloading entries from the database.
      * This can be called from other controllers to ensure the dashboard is up-to-date.
@@ -276,9 +397,12 @@ public class DashboardController {
         } else {
             try {
                 String userId = SessionManager.getCurrentUser().getUserID();
-                journalTableView.setItems(FXCollections.observableArrayList(
-                        new JournalDAO().searchEntriesByKeyword(userId, keyword)
-                ));
+                List<JournalEntry> results = new JournalDAO().searchEntriesByKeyword(userId, keyword);
+                if (showArchivedCheckBox.isSelected()) {
+                    results.addAll(new ArchiveDAO().searchArchivedEntries(userId, keyword));
+                }
+                loadTodoProgress(results);
+                journalTableView.setItems(FXCollections.observableArrayList(results));
             } catch (SQLException e) {
                 e.printStackTrace();
                 showAlert("Error", "Search failed: " + e.getMessage());
@@ -297,6 +421,11 @@ public class DashboardController {
         ViewLoader.load("view/EditorView.fxml");
     }
 
+    @FXML
+    public void handleAdmin() {
+        ViewLoader.load("view/AdminView.fxml");
+    }
+
     @FXML
     public void handleLogout() {
         SessionManager.clear();
@@ -312,7 +441,10 @@ public class DashboardController {
             alert.setContentText("Are you sure you want to delete \"" + entry.getTitle() + "\"?");
 
             if (alert.showAndWait().get() == ButtonType.OK) {
+                // Archived entries are brought back first so their blocks and attachments are released too
+                new ArchiveDAO().restoreEntry(entry.getEntryId());
                 new JournalDAO().deleteEntry(entry.getEntryId());
+                TagSuggestions.tagsChanged(entry.getTags(), null);
                 masterList.remove(entry);
                 journalTableView.refresh();
             }
@@ -324,6 +456,17 @@ public class DashboardController {
 
     private void openJournalEntry(JournalEntry entry) {
         if (entry != null) {
+            try {
+                // Opening an archived entry moves it back; this also covers an entry the
+                // archive job moved after the list was loaded
+                if (new ArchiveDAO().restoreEntry(entry.getEntryId())) {
+                    entry = new JournalDAO().getEntryById(entry.getEntryId());
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                showAlert("Error", "Could not restore archived entry: " + e.getMessage());
+                return;
+            }
             SessionManager.setCurrentEntry(entry);
             ViewLoader.load("view/EditorView.fxml");
         }
@@ -390,10 +533,15 @@ public class DashboardController {
         welcomeLabel.setText(languageManager.getString("app.welcome",
                 SessionManager.getCurrentUser() != null ? SessionManager.getCurrentUser().getName() : ""));
         newJournalButton.setText(languageManager.getString("dashboard.newJournal"));
+        adminButton.setText(languageManager.getString("dashboard.admin"));
         searchField.setPromptText(languageManager.getString("dashboard.search"));
+        showArchivedCheckBox.setText(languageManager.getString("dashboard.showArchived"));
 
         // Update column headers
         titleColumn.setText(languageManager.getString("dashboard.journalTitle"));
+        previewColumn.setText(languageManager.getString("dashboard.preview"));
+        wordCountColumn.setText(languageManager.getString("dashboard.words"));
+        todoColumn.setText(languageManager.getString("dashboard.todos"));
         dateModifiedColumn.setText(languageManager.getString("dashboard.dateModified"));
         dateCreatedColumn.setText(languageManager.getString("dashboard.dateCreated"));
         tagsColumn.setText(languageManager.getString("dashboard.tags"));
@@ -1,24 +1,29 @@
 package controller;
 
+import DAO.BlockDAO;
 import DAO.JournalDAO;
-import DAO.ToDoDAO;
-import DAO.ToggleDAO;
+import DAO.QuotaExceededException;
+import DAO.StaleVersionException;
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
-import javafx.scene.Node;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
+import javafx.scene.layout.Region;
 import javafx.util.Duration;
+import model.BlockNode;
 import model.JournalEntry;
 import model.Tag;
-import model.ToDoItem;
-import model.ToggleBlock;
 import util.BlockFactory;
+import util.BlockListView;
+import util.MarkdownPreview;
+import util.PieceTable;
 import util.SessionManager;
+import util.TagSuggestions;
+import util.TagTrie;
 import util.ViewLoader;
 
 import java.sql.SQLException;
@@ -28,6 +33,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import util.LanguageManager;
 
@@ -37,7 +43,10 @@ public class EditorController {
     @FXML private ComboBox<String> tagColorComboBox;
     @FXML private Button addTagButton;
     @FXML private FlowPane tagContainer;
-    @FXML private VBox blockContainer;
+    @FXML private BlockListView blockList;
+    @FXML private SplitPane editorSplit;
+    @FXML private MarkdownPreview markdownPreview;
+    @FXML private ToggleButton previewButton;
     @FXML private TextField commandField;
     @FXML private TextArea mainTextArea;
     @FXML private Label saveStatusLabel;
@@ -53,16 +62,28 @@ public class EditorController {
 
     private JournalEntry entry;
     private JournalDAO journalDAO;
-    private ToDoDAO todoDAO;
-    private ToggleDAO toggleDAO;
+    private BlockDAO blockDAO;
     private final List<Tag> tags = new ArrayList<>();
     private final Map<String, String> colorMap = new HashMap<>();
+    private final ContextMenu tagSuggestionMenu = new ContextMenu();
     private final PauseTransition autoSaveDelay = new PauseTransition(Duration.seconds(2));
     private final LanguageManager languageManager = LanguageManager.getInstance();
 
-    // Lists to track the blocks to save to the database
-    private final List<ToDoItem> todoItems = new ArrayList<>();
-    private final List<ToggleBlock> toggleBlocks = new ArrayList<>();
+    // The entry's text. The text area shows it and sends it each edit as it is made, so nothing
+    // needs to copy or compare the whole text per keystroke
+    private final PieceTable document = new PieceTable();
+    // Set while an edit is passed between the text area and the document, so it isn't passed back
+    private boolean syncingText = false;
+
+    // The entry's block tree, and its state at the last load or save; saving writes only the difference
+    private final List<BlockNode> blockTree = new ArrayList<>();
+    private Map<Integer, BlockNode.Snapshot> persistedBlocks = new HashMap<>();
+
+    // Last persisted title/content/tags, used as the common base when merging concurrent edits
+    private String baseTitle = "";
+    private String baseContent = "";
+    private String baseTags = "";
+    private boolean applyingSavedVersion = false;
 
     @FXML
     public void initialize() {
@@ -71,8 +92,7 @@ public class EditorController {
         try {
             // Initialize DAOs
             journalDAO = new JournalDAO();
-            todoDAO = new ToDoDAO();
-            toggleDAO = new ToggleDAO();
+            blockDAO = new BlockDAO();
 
             // Initialize the color map
             setupColorMap();
@@ -87,15 +107,29 @@ public class EditorController {
             // Add tag button action
             addTagButton.setOnAction(e -> addTag());
 
+            // Suggest the user's existing tags while typing
+            setupTagAutocomplete();
+
+            // The main text is the first row of the block list, so both scroll together
+            blockList.show(mainTextArea, blockTree, this::triggerAutoSave);
+            setupDocument();
+            markdownPreview.attach(document);
+
             // Load existing entry if editing
             entry = SessionManager.getCurrentEntry();
+            if (entry != null && entry.getContent() == null) {
+                // Dashboard rows are summaries without the text; load the full entry
+                entry = journalDAO.getEntryById(entry.getEntryId());
+                SessionManager.setCurrentEntry(entry);
+            }
             if (entry != null) {
                 System.out.println("Editing existing entry: " + entry.getTitle());
                 titleField.setText(entry.getTitle());
-                mainTextArea.setText(entry.getContent());
+                document.load(storable(entry.getContent()));
                 loadTags(entry.getTags());
+                rememberBase();
 
-                // Load existing blocks (To-Dos & Toggles)
+                // Load existing blocks (To-Dos, Toggles, Headings...)
                 loadExistingBlocks();
             } else {
                 System.out.println("Creating new entry");
@@ -116,16 +150,7 @@ public class EditorController {
     }
 
     private void setupColorMap() {
-        colorMap.put("Red", "#ff5555");
-        colorMap.put("Blue", "#5599ff");
-        colorMap.put("Green", "#55cc55");
-        colorMap.put("Purple", "#9955dd");
-        colorMap.put("Orange", "#ff9955");
-        colorMap.put("Yellow", "#ffdd55");
-        colorMap.put("Pink", "#ff55aa");
-        colorMap.put("Cyan", "#55dddd");
-        colorMap.put("Gray", "#999999");
-        colorMap.put("Black", "#333333");
+        colorMap.putAll(Tag.PALETTE);
     }
 
     private void loadTags(String tagString) {
@@ -153,7 +178,13 @@ public class EditorController {
         String tagText = tagsField.getText().trim();
         if (tagText.isEmpty()) return;
 
-        String color = colorMap.get(tagColorComboBox.getValue());
+        String color = selectedColor();
+
+        // An existing tag with a color outside the palette keeps it
+        Tag existing = TagSuggestions.get().get(tagText);
+        if (existing != null && !colorMap.containsValue(existing.getColor())) {
+            color = existing.getColor();
+        }
 
         // Create new tag
         Tag newTag = new Tag(tagText, color);
@@ -166,6 +197,82 @@ public class EditorController {
         tagsField.clear();
     }
 
+    private void setupTagAutocomplete() {
+        tagSuggestionMenu.setAutoHide(true);
+        tagsField.textProperty().addListener((obs, oldText, newText) -> showTagSuggestions(newText));
+        tagsField.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (!focused) tagSuggestionMenu.hide();
+        });
+        // Enter adds the tag, like the button
+        tagsField.setOnAction(e -> addTag());
+    }
+
+    /**
+     * Shows the user's most used tags that start with what was typed, and pre-selects
+     * the color of a tag that already exists.
+     */
+    private void showTagSuggestions(String text) {
+        String prefix = text == null ? "" : text.trim();
+        if (prefix.isEmpty()) {
+            tagSuggestionMenu.hide();
+            return;
+        }
+
+        TagTrie trie = TagSuggestions.get();
+        Tag existing = trie.get(prefix);
+        if (existing != null) {
+            selectColor(existing.getColor());
+        }
+
+        List<MenuItem> items = new ArrayList<>();
+        for (Tag suggestion : trie.suggest(prefix, TagTrie.MAX_SUGGESTIONS)) {
+            // Skip tags the entry already has, and the one typed in full
+            if (tags.contains(suggestion) || suggestion.getName().equalsIgnoreCase(prefix)) continue;
+
+            Region swatch = new Region();
+            swatch.setPrefSize(10, 10);
+            swatch.setStyle("-fx-background-color: " + suggestion.getColor() + "; -fx-background-radius: 5;");
+            MenuItem item = new MenuItem(suggestion.getName(), swatch);
+            item.setMnemonicParsing(false);
+            item.setOnAction(e -> {
+                tagsField.setText(suggestion.getName());
+                tagsField.positionCaret(suggestion.getName().length());
+            });
+            items.add(item);
+        }
+
+        if (items.isEmpty()) {
+            tagSuggestionMenu.hide();
+            return;
+        }
+        tagSuggestionMenu.getItems().setAll(items);
+        if (!tagSuggestionMenu.isShowing()) {
+            tagSuggestionMenu.show(tagsField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /** The hex color chosen in the combo box, whose items are translated color names */
+    private String selectedColor() {
+        String value = tagColorComboBox.getValue();
+        for (Map.Entry<String, String> color : colorMap.entrySet()) {
+            if (color.getKey().equals(value)
+                    || languageManager.getString("color." + color.getKey().toLowerCase()).equals(value)) {
+                return color.getValue();
+            }
+        }
+        return colorMap.get("Blue");
+    }
+
+    /** Selects a palette color in the combo box; colors outside the palette leave it unchanged */
+    private void selectColor(String hex) {
+        for (Map.Entry<String, String> color : colorMap.entrySet()) {
+            if (color.getValue().equalsIgnoreCase(hex)) {
+                tagColorComboBox.setValue(languageManager.getString("color." + color.getKey().toLowerCase()));
+                return;
+            }
+        }
+    }
+
     private void createTagLabel(Tag tag) {
         Label tagLabel = new Label(tag.getName());
         tagLabel.getStyleClass().add("tag-label");
@@ -199,33 +306,14 @@ public class EditorController {
                 return;
             }
 
-            int entryId = entry.getEntryId();
-
-            // Load Todo items
-            List<ToDoItem> todos = todoDAO.getToDosByEntryId(entryId);
-            System.out.println("Loaded " + todos.size() + " todo items");
-
-            for (ToDoItem todo : todos) {
-                // Create a visual representation
-                Node todoNode = BlockFactory.create("todo", todo.getDescription());
-                blockContainer.getChildren().add(todoNode);
-
-                // Add to tracking list
-                todoItems.add(todo);
-            }
-
-            // Load Toggle blocks
-            List<ToggleBlock> toggles = toggleDAO.getTogglesByEntryId(entryId);
-            System.out.println("Loaded " + toggles.size() + " toggle blocks");
+            blockTree.clear();
 
-            for (ToggleBlock toggle : toggles) {
-                // Create a visual representation
-                Node toggleNode = BlockFactory.create("toggle", toggle.getContent());
-                blockContainer.getChildren().add(toggleNode);
+            // Load the whole tree in one query
+            blockTree.addAll(blockDAO.getBlockTree(entry.getEntryId()));
+            persistedBlocks = BlockDAO.snapshotOf(blockTree);
 
-                // Add to tracking list
-                toggleBlocks.add(toggle);
-            }
+            // Only the rows on screen get components
+            blockList.rebuild();
 
         } catch (SQLException e) {
             System.err.println("Failed to load existing blocks:");
@@ -237,17 +325,13 @@ public class EditorController {
     private void setupTextAreaListeners() {
         mainTextArea.setOnKeyPressed(event -> {
             if (event.getCode() == javafx.scene.input.KeyCode.ENTER) {
-                // Get current text and caret position
-                String text = mainTextArea.getText();
                 int caretPosition = mainTextArea.getCaretPosition();
 
-                // Find the start of the current line
-                int lineStart = text.lastIndexOf('\n', caretPosition - 1);
-                if (lineStart == -1) lineStart = 0;
-                else lineStart++; // Move past the newline character
+                // Find the start of the current line (just past its newline), looking back only that far
+                int lineStart = document.lastIndexOf('\n', caretPosition - 1) + 1;
 
                 // Get the current line content
-                String currentLine = text.substring(lineStart, caretPosition);
+                String currentLine = document.subSequence(lineStart, caretPosition);
 
                 // Check for ordered list pattern (e.g., "1. Some text")
                 if (currentLine.matches("^\\d+\\. .*")) {
@@ -280,23 +364,21 @@ public class EditorController {
             }
         });
 
-        // Setup auto-detection for list formatting
-        mainTextArea.textProperty().addListener((obs, oldText, newText) -> {
-            int caretPosition = mainTextArea.getCaretPosition();
-
-            // If the text is too short or no change, skip
-            if (newText == null || newText.isEmpty() || newText.equals(oldText)) {
+        // Setup auto-detection for list formatting; only the text around each edit is looked at
+        document.addListener(edit -> {
+            int end = edit.offset() + edit.inserted().length();
+            if (edit.inserted().isEmpty()) {
                 return;
             }
 
             // Check if the user just typed "1. " at start of line
-            if (newText.endsWith("1. ") && (newText.length() == 3 || newText.charAt(newText.length() - 4) == '\n')) {
+            if (startsLine(end, "1. ")) {
                 // This activates the first item in a numbered list
                 System.out.println("Numbered list detected");
             }
 
             // Check if the user just typed "- " at start of line
-            if (newText.endsWith("- ") && (newText.length() == 2 || newText.charAt(newText.length() - 3) == '\n')) {
+            if (startsLine(end, "- ")) {
                 // This activates bullet list with dash
                 System.out.println("Dash list detected");
             }
@@ -305,16 +387,78 @@ public class EditorController {
         System.out.println("Text area listeners set up");
     }
 
+    /** Whether the text just before a position is a marker at the start of a line */
+    private boolean startsLine(int end, String marker) {
+        int start = end - marker.length();
+        return start >= 0 && (start == 0 || document.charAt(start - 1) == '\n')
+                && document.subSequence(start, end).equals(marker);
+    }
+
+    /**
+     * Makes the document the text area's model: the area's edits go into the document as they are
+     * made, and the document's own changes (loading an entry) are shown in the area.
+     * Both only ever hold {@link #storable} text, so their offsets stay the same.
+     */
+    private void setupDocument() {
+        mainTextArea.setTextFormatter(new TextFormatter<>(change -> {
+            if (!syncingText && change.isContentChange()) {
+                // The area drops these characters only after the filter, so drop them here first
+                String text = storable(change.getText());
+                if (!text.equals(change.getText())) {
+                    change.setText(text);
+                }
+                syncingText = true;
+                try {
+                    document.replace(change.getRangeStart(), change.getRangeEnd(), text);
+                } finally {
+                    syncingText = false;
+                }
+            }
+            return change;
+        }));
+        document.addListener(edit -> {
+            if (syncingText) return;
+            syncingText = true;
+            try {
+                mainTextArea.replaceText(edit.offset(), edit.offset() + edit.removed(), edit.inserted());
+            } finally {
+                syncingText = false;
+            }
+        });
+    }
+
+    /**
+     * Text as a TextArea stores it: without control characters other than tab and newline
+     * (carriage returns included) and without DEL, which it silently leaves out.
+     */
+    private static String storable(String text) {
+        if (text == null) return "";
+        StringBuilder kept = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean dropped = c == 0x7F || (c < 0x20 && c != '\n' && c != '\t');
+            if (dropped && kept == null) {
+                kept = new StringBuilder(text.length()).append(text, 0, i);
+            } else if (!dropped && kept != null) {
+                kept.append(c);
+            }
+        }
+        return kept == null ? text : kept.toString();
+    }
+
     private void setupAutoSave() {
         // Set up the auto-save delay
         autoSaveDelay.setOnFinished(e -> saveEntry(true));
 
         // Listen for changes to trigger auto-save
         titleField.textProperty().addListener((obs, old, newVal) -> triggerAutoSave());
-        mainTextArea.textProperty().addListener((obs, old, newVal) -> triggerAutoSave());
+        document.addListener(edit -> triggerAutoSave());
     }
 
     private void triggerAutoSave() {
+        // Fields set programmatically from the saved version are already persisted
+        if (applyingSavedVersion) return;
+
         saveStatusLabel.setText(languageManager.getString("editor.saving"));
         autoSaveDelay.playFromStart();
     }
@@ -344,6 +488,19 @@ public class EditorController {
         insertBulletList();
     }
 
+    /** Shows or hides the Markdown preview; it keeps following the text while hidden */
+    @FXML
+    public void handlePreviewButton() {
+        if (previewButton.isSelected()) {
+            if (!editorSplit.getItems().contains(markdownPreview)) {
+                editorSplit.getItems().add(markdownPreview);
+                editorSplit.setDividerPositions(0.6);
+            }
+        } else {
+            editorSplit.getItems().remove(markdownPreview);
+        }
+    }
+
     private void applyFormatting(String format) {
         // Get the selected text
         TextArea textArea = mainTextArea;
@@ -407,29 +564,20 @@ public class EditorController {
 
     @FXML
     public void insertTodoBlock() {
-        Node todoBlock = BlockFactory.create("todo", "");
-        blockContainer.getChildren().add(todoBlock);
-
-        // Add a new ToDo item to track
-        if (entry != null && entry.getEntryId() != 0) {
-            ToDoItem newTodo = new ToDoItem(entry.getEntryId(), 0, "", false);
-            todoItems.add(newTodo);
-        }
-
-        // Trigger auto-save
-        triggerAutoSave();
+        insertBlock(BlockNode.TODO_LIST);
     }
 
     @FXML
     public void insertToggleBlock() {
-        Node toggleBlock = BlockFactory.create("toggle", "");
-        blockContainer.getChildren().add(toggleBlock);
+        insertBlock(BlockNode.TOGGLE);
+    }
 
-        // Add a new Toggle block to track
-        if (entry != null && entry.getEntryId() != 0) {
-            ToggleBlock newToggle = new ToggleBlock(entry.getEntryId(), 0, "Toggle Title", "", false);
-            toggleBlocks.add(newToggle);
-        }
+    /** Adds a new block at the end of the entry; it is saved with the entry */
+    private void insertBlock(String type) {
+        BlockNode node = BlockFactory.newBlock(type, "");
+        blockTree.add(node);
+        blockList.rebuild();
+        blockList.reveal(node);
 
         // Trigger auto-save
         triggerAutoSave();
@@ -447,11 +595,7 @@ public class EditorController {
 
     private void insertHeading() {
         // Insert heading block
-        Node headingBlock = BlockFactory.create("heading", "");
-        blockContainer.getChildren().add(headingBlock);
-
-        // Trigger auto-save
-        triggerAutoSave();
+        insertBlock(BlockNode.HEADING);
     }
 
     @FXML
@@ -474,7 +618,20 @@ public class EditorController {
 
             // Update entry fields
             entry.setTitle(title);
-            entry.setContent(mainTextArea.getText());
+            String content = document.toString();
+            if (!content.equals(mainTextArea.getText())) {
+                // Should never happen: the area is what the user sees, so save that and start the document over from it
+                System.err.println("Entry text out of step with the editor (" + content.length()
+                        + " vs " + mainTextArea.getLength() + " characters); saving the editor's text");
+                content = mainTextArea.getText();
+                syncingText = true;
+                try {
+                    document.load(content);
+                } finally {
+                    syncingText = false;
+                }
+            }
+            entry.setContent(content);
             entry.setDateModified(LocalDateTime.now());
 
             // Build tag string
@@ -493,29 +650,27 @@ public class EditorController {
                 journalDAO.saveEntry(entry);
                 System.out.println("New entry saved with ID: " + entry.getEntryId());
             } else {
-                journalDAO.updateEntry(entry);
-                System.out.println("Updated entry with ID: " + entry.getEntryId());
-            }
-
-            // Save ToDo items - simplified for now
-            // In a complete implementation, you'd gather data from UI
-            for (ToDoItem item : todoItems) {
-                item.setEntryId(entry.getEntryId());
-                if (item.getTodoId() == 0) {
-                    todoDAO.addToDo(item);
-                } else {
-                    todoDAO.updateToDo(item);
+                try {
+                    journalDAO.updateEntry(entry);
+                } catch (StaleVersionException conflict) {
+                    if (!resolveConflict(conflict, isAutoSave)) {
+                        return;
+                    }
                 }
+                System.out.println("Updated entry with ID: " + entry.getEntryId());
             }
-
-            // Save Toggle blocks - simplified for now
-            for (ToggleBlock toggle : toggleBlocks) {
-                toggle.setEntryId(entry.getEntryId());
-                if (toggle.getToggleId() == 0) {
-                    toggleDAO.addToggle(toggle);
-                } else {
-                    toggleDAO.updateToggle(toggle);
-                }
+            TagSuggestions.tagsChanged(baseTags, entry.getTags());
+            rememberBase();
+
+            // Save the blocks that changed since the last save
+            try {
+                persistedBlocks = blockDAO.saveBlockTree(entry.getEntryId(), blockTree, persistedBlocks);
+            } catch (StaleVersionException conflict) {
+                // Blocks are saved as they are edited, so the newer saved version wins
+                System.out.println("Blocks changed elsewhere: " + conflict.getMessage());
+                loadExistingBlocks();
+                saveStatusLabel.setText(languageManager.getString("editor.conflict.blocks"));
+                return;
             }
 
             // Update save status
@@ -542,6 +697,19 @@ public class EditorController {
                     e.printStackTrace();
                 }
             }
+        } catch (QuotaExceededException e) {
+            System.out.println(e.getMessage());
+            String messageKey = e.getKind() == QuotaExceededException.Kind.BYTES
+                    ? "editor.error.quota.bytes" : "editor.error.quota.entries";
+            Object[] params = e.getKind() == QuotaExceededException.Kind.BYTES
+                    ? new Object[] { formatMegabytes(e.getUsed()), formatMegabytes(e.getLimit()) }
+                    : new Object[] { e.getUsed(), e.getLimit() };
+            saveStatusLabel.setText(languageManager.getString(messageKey, params));
+
+            // Auto-save keeps trying quietly; a manual save explains why nothing was saved
+            if (!isAutoSave) {
+                showErrorAlert("editor.title", messageKey, params);
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             saveStatusLabel.setText(languageManager.getString("editor.saveFailed"));
@@ -551,12 +719,112 @@ public class EditorController {
         }
     }
 
+    /**
+     * Handles an update that lost the version check because the entry was saved elsewhere.
+     * Fields changed on only one side are merged automatically. If both sides changed the
+     * same field, a manual save asks the user which version to keep; auto-save just flags it.
+     *
+     * @return true if the entry is now saved and the caller can continue
+     */
+    private boolean resolveConflict(StaleVersionException conflict, boolean isAutoSave) throws SQLException {
+        System.out.println("Save conflict: " + conflict.getMessage());
+        JournalEntry saved = journalDAO.getEntryById(entry.getEntryId());
+        if (saved == null) {
+            throw conflict;
+        }
+
+        String title = merge(baseTitle, entry.getTitle(), saved.getTitle());
+        String content = merge(baseContent, entry.getContent(), saved.getContent());
+        String tagString = merge(baseTags, entry.getTags(), saved.getTags());
+
+        if (title != null && content != null && tagString != null) {
+            entry.setTitle(title);
+            entry.setContent(content);
+            entry.setTags(tagString);
+            entry.setVersion(saved.getVersion());
+            journalDAO.updateEntry(entry);
+            showEntryFields(entry);
+            saveStatusLabel.setText(languageManager.getString("editor.conflict.merged"));
+            return true;
+        }
+
+        if (isAutoSave) {
+            // Don't interrupt typing with a dialog; the next manual save asks
+            saveStatusLabel.setText(languageManager.getString("editor.conflict"));
+            return false;
+        }
+
+        ButtonType keepMine = new ButtonType(languageManager.getString("editor.conflict.keepMine"));
+        ButtonType loadSaved = new ButtonType(languageManager.getString("editor.conflict.loadTheirs"));
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "", keepMine, loadSaved, ButtonType.CANCEL);
+        alert.setTitle(languageManager.getString("editor.conflict.title"));
+        alert.setHeaderText(null);
+        alert.setContentText(languageManager.getString("editor.conflict.message"));
+        ButtonType choice = alert.showAndWait().orElse(ButtonType.CANCEL);
+
+        if (choice == keepMine) {
+            entry.setVersion(saved.getVersion());
+            journalDAO.updateEntry(entry);
+            return true;
+        }
+        if (choice == loadSaved) {
+            entry.setTitle(saved.getTitle());
+            entry.setContent(saved.getContent());
+            entry.setTags(saved.getTags());
+            entry.setVersion(saved.getVersion());
+            showEntryFields(entry);
+            rememberBase();
+            saveStatusLabel.setText(languageManager.getString("editor.saved"));
+        } else {
+            saveStatusLabel.setText(languageManager.getString("editor.conflict"));
+        }
+        return false;
+    }
+
+    /**
+     * Three-way merge of one field.
+     *
+     * @return the merged value, or null if both sides changed it differently
+     */
+    private static String merge(String base, String mine, String saved) {
+        mine = Objects.requireNonNullElse(mine, "");
+        saved = Objects.requireNonNullElse(saved, "");
+        if (mine.equals(saved) || saved.equals(base)) return mine;
+        if (mine.equals(base)) return saved;
+        return null;
+    }
+
+    /** Shows an entry's fields without treating them as new edits */
+    private void showEntryFields(JournalEntry source) {
+        applyingSavedVersion = true;
+        try {
+            titleField.setText(source.getTitle());
+            document.load(storable(source.getContent()));
+            tags.clear();
+            tagContainer.getChildren().clear();
+            loadTags(source.getTags());
+        } finally {
+            applyingSavedVersion = false;
+        }
+    }
+
+    /** Remembers the entry's persisted state as the base for the next merge */
+    private void rememberBase() {
+        baseTitle = Objects.requireNonNullElse(entry.getTitle(), "");
+        baseContent = Objects.requireNonNullElse(entry.getContent(), "");
+        baseTags = Objects.requireNonNullElse(entry.getTags(), "");
+    }
+
     @FXML
     public void handleBack() {
         // Save before going back
         saveEntry(false);
     }
 
+    private static String formatMegabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
     private void showErrorAlert(String titleKey, String messageKey, Object... params) {
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle(languageManager.getString(titleKey));
@@ -591,6 +859,7 @@ public class EditorController {
         bulletButton.setText(languageManager.getString("button.bullet"));
         todoButton.setText(languageManager.getString("button.todo"));
         toggleButton.setText(languageManager.getString("button.toggle"));
+        previewButton.setText(languageManager.getString("button.preview"));
         saveButton.setText(languageManager.getString("editor.save"));
 
         // Update command field placeholder
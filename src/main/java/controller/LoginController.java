@@ -7,8 +7,12 @@ import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 import model.User;
+import util.ContentCipher;
+import util.IndexingService;
+import util.KeyRing;
 import util.LanguageManager;
 import util.SessionManager;
+import util.TagSuggestions;
 import util.ViewLoader;
 
 import java.sql.SQLException;
@@ -80,12 +84,14 @@ public class LoginController {
             User user = userDAO.getUserById(userId);
 
             if (user != null && user.getPassword().equals(password)) {
+                unlockKey(userDAO, user, password);
                 loginSuccess(user);
             } else {
                 // If ID login fails, try username/password login
                 user = userDAO.authenticateUser(userId, password);
 
                 if (user != null) {
+                    unlockKey(userDAO, user, password);
                     loginSuccess(user);
                 } else {
                     loginFailed();
@@ -97,6 +103,19 @@ public class LoginController {
         }
     }
 
+    /**
+     * Derives the user's encryption key from their password and keeps it for the session.
+     * Key derivation is slow on purpose, so it runs once here rather than per entry.
+     *
+     * @param userDAO The DAO to read the user's key salt with
+     * @param user The authenticated user
+     * @param password The password they logged in with
+     */
+    private void unlockKey(UserDAO userDAO, User user, String password) throws SQLException {
+        String salt = userDAO.getOrCreateKeySalt(user.getUserID());
+        KeyRing.unlock(user.getUserID(), ContentCipher.derive(password, salt));
+    }
+
     /**
      * Handles successful login.
      * Sets the current user in session and navigates to dashboard.
@@ -107,6 +126,12 @@ public class LoginController {
         // Store user in session
         SessionManager.setCurrentUser(user);
 
+        // Build tag autocomplete while the dashboard loads
+        TagSuggestions.loadInBackground(user.getUserID());
+
+        // Keep the search index current in the background (built in full on the first login)
+        IndexingService.open(user.getUserID());
+
         // Show success message
         statusLabel.setText("✅ " + languageManager.getString("register.success"));
 
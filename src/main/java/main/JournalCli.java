@@ -0,0 +1,553 @@
+package main;
+
+import DAO.ArchiveDAO;
+import DAO.BlockDAO;
+import DAO.JournalDAO;
+import DAO.QuotaExceededException;
+import DAO.TagDAO;
+import DAO.UsageDAO;
+import DAO.UserDAO;
+import api.JsonReader;
+import api.JsonWriter;
+import model.BlockNode;
+import model.JournalEntry;
+import model.Tag;
+import model.User;
+import util.ContentCipher;
+import util.DBConnection;
+import util.IndexingService;
+import util.KeyRing;
+import util.SchemaManager;
+import util.SessionManager;
+import util.SyncEngine;
+import util.TagManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Console;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Headless entry point for scripts and cron jobs. Uses the DAOs directly and never touches JavaFX,
+ * so it starts in a fraction of the time the desktop app takes.
+ *
+ * Usage: JournalCli [--user name] [--password pw] command [args]
+ *
+ *   search text [--archived]   matching entries, one JSON object per line
+ *   list [--archived]          every entry of the user, one JSON object per line
+ *   stats                      counts, usage and tags of the user as one JSON object
+ *   index                      brings the user's search index up to date; prints entries indexed and the rate
+ *   tags rename old new        renames a tag in every entry, archived ones included
+ *   tags merge target tag...   merges tags into the target tag
+ *   tags recolor tag #rrggbb   gives a tag a new color in every entry
+ *   export [file]              every entry, archived ones included, with its content and block tree, one JSON object per line
+ *   import file                entries in the export format ("-" reads standard input); archived entries come back
+ *                              as regular ones, and the "todos" and "toggles" arrays of older exports are read too
+ *   vacuum                     compacts the database file
+ *   backup file                writes a consistent copy of the whole database to a new file
+ *   sync file                  exchanges the user's changes with another journal database, both ways
+ *
+ * The first seven commands and sync need a user (sync logs in to both databases with the same name and password); the password comes from --password, the JOURNAL_PASSWORD
+ * environment variable or a prompt. Results go to standard output, messages to standard error.
+ * Exit status: 0 on success, 1 on failure, 2 on wrong usage.
+ */
+public class JournalCli {
+    private static final String USAGE = "Usage: JournalCli [--user name] [--password pw] "
+            + "search text [--archived] | list [--archived] | stats | index | tags rename|merge|recolor args "
+            + "| export [file] | import file | vacuum | backup file | sync file";
+
+    private static final Set<String> BLOCK_TYPES = Set.of(BlockNode.TODO_LIST, BlockNode.TODO, BlockNode.TOGGLE,
+            BlockNode.HEADING, BlockNode.BULLET, BlockNode.TEXT);
+
+    private final Connection conn;
+    private final Writer out;
+
+    private JournalCli(Connection conn, Writer out) {
+        this.conn = conn;
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        // The DAOs log to standard output; keep it for results only
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+
+        String username = null;
+        String password = System.getenv("JOURNAL_PASSWORD");
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--user" -> username = i + 1 < args.length ? args[++i] : null;
+                case "--password" -> password = i + 1 < args.length ? args[++i] : null;
+                default -> rest.add(args[i]);
+            }
+        }
+        if (rest.isEmpty()) {
+            exit(2, USAGE);
+        }
+
+        String command = rest.get(0);
+        List<String> params = rest.subList(1, rest.size());
+        boolean archived = params.remove("--archived");
+
+        try (Connection conn = DBConnection.openConnection();
+             Writer out = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8))) {
+            SchemaManager.initialize(conn);
+            JournalCli cli = new JournalCli(conn, out);
+
+            switch (command) {
+                case "vacuum" -> cli.vacuum();
+                case "backup" -> cli.backup(single(params, "backup file"));
+                case "search", "list", "stats", "index", "tags", "export", "import", "sync" -> {
+                    User user = cli.login(username, password);
+                    try {
+                        switch (command) {
+                            case "search" -> cli.list(user, single(params, "search text"), archived);
+                            case "list" -> cli.list(user, null, archived);
+                            case "stats" -> cli.stats(user);
+                            case "index" -> cli.index(user);
+                            case "tags" -> cli.tags(user, params);
+                            case "export" -> cli.export(user, params.isEmpty() ? null : single(params, "export [file]"));
+                            case "sync" -> cli.sync(user, password, single(params, "sync file"));
+                            default -> cli.importEntries(user, single(params, "import file"));
+                        }
+                    } finally {
+                        SessionManager.clear();
+                    }
+                }
+                default -> exit(2, USAGE);
+            }
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            exit(1, "Error: " + e.getMessage());
+        }
+    }
+
+    /** Helper method to check and log in the user, and unlock their key like the login screen does */
+    private User login(String username, String password) throws SQLException {
+        if (username == null) {
+            exit(2, "This command needs --user");
+        }
+        if (password == null) {
+            Console console = System.console();
+            if (console == null) exit(2, "No password: use --password or JOURNAL_PASSWORD");
+            password = new String(console.readPassword("Password for %s: ", username));
+        }
+
+        UserDAO userDAO = new UserDAO(conn);
+        User user = userDAO.getUserById(username);
+        if (user == null || !user.getPassword().equals(password)) {
+            user = userDAO.authenticateUser(username, password);
+        }
+        if (user == null) {
+            exit(1, "Invalid credentials");
+        }
+
+        SessionManager.setCurrentUser(user);
+        KeyRing.unlock(user.getUserID(), ContentCipher.derive(password, userDAO.getOrCreateKeySalt(user.getUserID())));
+        return user;
+    }
+
+    /** search and list: entry summaries, newest first (archived ones last) */
+    private void list(User user, String keyword, boolean archived) throws SQLException, IOException {
+        String userId = user.getUserID();
+        List<JournalEntry> entries = keyword == null
+                ? new JournalDAO(conn).getEntrySummariesByUserId(userId)
+                : new JournalDAO(conn).searchEntriesByKeyword(userId, keyword);
+        if (archived) {
+            ArchiveDAO archiveDAO = new ArchiveDAO(conn);
+            entries.addAll(keyword == null
+                    ? archiveDAO.getArchivedEntriesByUserId(userId)
+                    : archiveDAO.searchArchivedEntries(userId, keyword));
+        }
+        for (JournalEntry entry : entries) {
+            JsonWriter json = new JsonWriter(out).beginObject();
+            entryFields(json, entry);
+            json.name("preview").value(entry.getPreview())
+                    .name("wordCount").value(entry.getWordCount())
+                    .name("todoOpen").value(entry.getTodoOpen())
+                    .name("todoDone").value(entry.getTodoDone())
+                    .name("archived").value(entry.isArchived())
+                    .endObject();
+            out.write('\n');
+        }
+    }
+
+    private void stats(User user) throws SQLException, IOException {
+        String userId = user.getUserID();
+        List<JournalEntry> entries = new JournalDAO(conn).getEntrySummariesByUserId(userId);
+        int archived = new ArchiveDAO(conn).getArchivedEntriesByUserId(userId).size();
+        long words = 0, chars = 0, todoOpen = 0, todoDone = 0;
+        for (JournalEntry entry : entries) {
+            words += entry.getWordCount();
+            chars += entry.getCharCount();
+            todoOpen += entry.getTodoOpen();
+            todoDone += entry.getTodoDone();
+        }
+        UsageDAO.Usage usage = new UsageDAO(conn).getUsage(userId);
+
+        JsonWriter json = new JsonWriter(out).beginObject()
+                .name("userId").value(userId)
+                .name("username").value(user.getName())
+                .name("entries").value(entries.size())
+                .name("archived").value(archived)
+                .name("words").value(words)
+                .name("chars").value(chars)
+                .name("todoOpen").value(todoOpen)
+                .name("todoDone").value(todoDone)
+                .name("usedBytes").value(usage.usedBytes())
+                .name("quotaBytes").value(usage.quotaBytes())
+                .name("quotaEntries").value(usage.quotaEntries())
+                .name("tags").beginObject();
+        for (Map.Entry<Tag, Integer> tag : new TagDAO(conn).getTagCounts(userId).entrySet()) {
+            json.name(tag.getKey().getName()).value(tag.getValue());
+        }
+        json.endObject().endObject();
+        out.write('\n');
+    }
+
+    /** index: one indexing pass on this thread (a full rebuild the first time), then the service's metrics */
+    private void index(User user) throws IOException {
+        if (!IndexingService.runOnce(user.getUserID())) {
+            throw new IOException("Indexing failed");
+        }
+        IndexingService.Metrics metrics = IndexingService.getMetrics();
+        new JsonWriter(out).beginObject()
+                .name("indexed").value(metrics.done())
+                .name("entriesPerSecond").value(Math.round(metrics.entriesPerSecond()))
+                .endObject();
+        out.write('\n');
+    }
+
+    /** tags: renames, merges or recolors a tag across the user's entries; prints how many entries changed */
+    private void tags(User user, List<String> params) throws SQLException, IOException {
+        String action = params.isEmpty() ? "" : params.get(0);
+        List<String> args = params.subList(Math.min(1, params.size()), params.size());
+        TagManager tagManager = new TagManager(new TagDAO(conn));
+        TagDAO.Progress progress = (done, total) -> System.err.println("Tags: " + done + "/" + total + " entries");
+
+        int changed = switch (action) {
+            case "rename" -> {
+                if (args.size() != 2) exit(2, "Usage: JournalCli tags rename old new");
+                yield tagManager.rename(user.getUserID(), args.get(0), args.get(1), progress);
+            }
+            case "merge" -> {
+                if (args.size() < 2) exit(2, "Usage: JournalCli tags merge target tag...");
+                yield tagManager.merge(user.getUserID(), new LinkedHashSet<>(args.subList(1, args.size())),
+                        args.get(0), null, progress);
+            }
+            case "recolor" -> {
+                if (args.size() != 2) exit(2, "Usage: JournalCli tags recolor tag #rrggbb");
+                yield tagManager.recolor(user.getUserID(), args.get(0), args.get(1), progress);
+            }
+            default -> {
+                exit(2, "Usage: JournalCli tags rename old new | merge target tag... | recolor tag #rrggbb");
+                yield 0;
+            }
+        };
+        new JsonWriter(out).beginObject().name("changed").value(changed).endObject();
+        out.write('\n');
+    }
+
+    /** export: one entry at a time, so memory stays flat however big the journal is; archived entries come last */
+    private void export(User user, String file) throws SQLException, IOException {
+        JournalDAO journalDAO = new JournalDAO(conn);
+        BlockDAO blockDAO = new BlockDAO(conn);
+        ArchiveDAO archiveDAO = new ArchiveDAO(conn);
+        Writer target = file == null ? out
+                : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        int count = 0;
+        try {
+            for (JournalEntry summary : journalDAO.getEntrySummariesByUserId(user.getUserID())) {
+                JournalEntry entry = journalDAO.getEntryById(summary.getEntryId());
+                if (entry == null) continue;
+                exportEntry(target, entry, blockDAO.getBlockTree(entry.getEntryId()));
+                count++;
+            }
+            for (JournalEntry stub : archiveDAO.getArchivedEntriesByUserId(user.getUserID())) {
+                ArchiveDAO.ArchivedEntry archived = archiveDAO.readArchivedEntry(stub.getEntryId());
+                if (archived == null) continue;
+                exportEntry(target, archived.entry(), archived.blocks());
+                count++;
+            }
+        } finally {
+            if (target != out) target.close();
+        }
+        if (file != null) {
+            new JsonWriter(out).beginObject().name("exported").value(count).endObject();
+            out.write('\n');
+        }
+    }
+
+    private static void exportEntry(Writer target, JournalEntry entry, List<BlockNode> blocks) throws IOException {
+        JsonWriter json = new JsonWriter(target).beginObject();
+        entryFields(json, entry);
+        json.name("archived").value(entry.isArchived())
+                .name("content").value(entry.getContent())
+                .name("blocks");
+        blockArray(json, blocks);
+        json.endObject();
+        target.write('\n');
+    }
+
+    /**
+     * import: each line is checked whole before anything is written, then the entry and its blocks are
+     * saved in one transaction, so a bad line leaves nothing behind and is reported and skipped
+     */
+    private void importEntries(User user, String file) throws SQLException, IOException {
+        JournalDAO journalDAO = new JournalDAO(conn);
+        BlockDAO blockDAO = new BlockDAO(conn);
+        int imported = 0, failed = 0, lineNumber = 0;
+
+        InputStream in = file.equals("-") ? System.in : new FileInputStream(file);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                try {
+                    Map<String, Object> json = JsonReader.parseObject(line);
+                    JournalEntry entry = entryOf(user, json);
+                    List<BlockNode> blocks = blocksOf(json);
+
+                    boolean autoCommit = conn.getAutoCommit();
+                    conn.setAutoCommit(false);
+                    try {
+                        journalDAO.saveEntry(entry);
+                        if (!blocks.isEmpty()) {
+                            blockDAO.saveBlockTree(entry.getEntryId(), blocks, Map.of());
+                        }
+                        conn.commit();
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    } finally {
+                        conn.setAutoCommit(autoCommit);
+                    }
+                    imported++;
+                } catch (QuotaExceededException e) {
+                    // Every further entry would fail the same way
+                    System.err.println("Line " + lineNumber + ": " + e.getMessage() + "; stopping");
+                    failed++;
+                    break;
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    System.err.println("Line " + lineNumber + ": " + e.getMessage());
+                    failed++;
+                }
+            }
+        }
+        new JsonWriter(out).beginObject().name("imported").value(imported).name("failed").value(failed).endObject();
+        out.write('\n');
+    }
+
+    /** sync: the other database must have a user with the same name and password */
+    private void sync(User user, String password, String file) throws SQLException, IOException {
+        File other = new File(file);
+        if (!other.isFile()) {
+            throw new IllegalArgumentException("No such database: " + other);
+        }
+        try (Connection remote = DBConnection.openConnection(other)) {
+            SchemaManager.initialize(remote);
+            UserDAO remoteUsers = new UserDAO(remote);
+            User remoteUser = remoteUsers.authenticateUser(user.getName(), password);
+            if (remoteUser == null) {
+                exit(1, "No user " + user.getName() + " with this password in " + other);
+            }
+            KeyRing.unlock(remoteUser.getUserID(),
+                    ContentCipher.derive(password, remoteUsers.getOrCreateKeySalt(remoteUser.getUserID())));
+            try {
+                SyncEngine.Result result = new SyncEngine(conn, remote).sync(user.getUserID(), remoteUser.getUserID());
+                new JsonWriter(out).beginObject()
+                        .name("sent").value(result.sent())
+                        .name("received").value(result.received())
+                        .name("conflicts").value(result.conflicts())
+                        .name("skipped").value(result.skipped())
+                        .name("millis").value(result.millis())
+                        .endObject();
+                out.write('\n');
+            } finally {
+                if (!remoteUser.getUserID().equals(user.getUserID())) {
+                    KeyRing.lock(remoteUser.getUserID());
+                }
+            }
+        }
+    }
+
+    /** vacuum: rebuilds the file without free pages */
+    private void vacuum() throws SQLException, IOException {
+        long before = databaseBytes();
+        long start = System.nanoTime();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("VACUUM");
+            stmt.execute("PRAGMA optimize");
+        }
+        new JsonWriter(out).beginObject()
+                .name("bytesBefore").value(before)
+                .name("bytesAfter").value(databaseBytes())
+                .name("millis").value((System.nanoTime() - start) / 1_000_000)
+                .endObject();
+        out.write('\n');
+    }
+
+    /** backup: VACUUM INTO reads one consistent snapshot, even while the app is writing */
+    private void backup(String file) throws SQLException, IOException {
+        File target = new File(file).getAbsoluteFile();
+        if (target.exists()) {
+            throw new IllegalArgumentException("Backup file already exists: " + target);
+        }
+        try (PreparedStatement ps = conn.prepareStatement("VACUUM INTO ?")) {
+            ps.setString(1, target.getPath());
+            ps.executeUpdate();
+        }
+        new JsonWriter(out).beginObject()
+                .name("path").value(target.getPath())
+                .name("bytes").value(target.length())
+                .endObject();
+        out.write('\n');
+    }
+
+    private long databaseBytes() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT page_count * page_size FROM pragma_page_count(), pragma_page_size()")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // ---- JSON helpers
+
+    private static void entryFields(JsonWriter json, JournalEntry entry) throws IOException {
+        json.name("entryId").value(entry.getEntryId())
+                .name("title").value(entry.getTitle())
+                .name("tags").beginArray();
+        for (Tag tag : Tag.parseList(entry.getTags())) {
+            json.beginObject().name("name").value(tag.getName()).name("color").value(tag.getColor()).endObject();
+        }
+        json.endArray()
+                .name("dateCreated").value(entry.getDateCreated() == null ? null : entry.getDateCreated().toString())
+                .name("dateModified").value(entry.getDateModified() == null ? null : entry.getDateModified().toString());
+    }
+
+    /** Helper method to build an entry from an exported line; entry IDs in the line are ignored */
+    private static JournalEntry entryOf(User user, Map<String, Object> json) {
+        JournalEntry entry = new JournalEntry();
+        entry.setUserId(user.getUserID());
+        entry.setTitle(text(json.get("title"), "Untitled"));
+        entry.setContent(text(json.get("content"), ""));
+
+        List<Tag> tags = new ArrayList<>();
+        for (Map<String, Object> tag : objects(json.get("tags"))) {
+            String name = text(tag.get("name"), "").trim();
+            if (name.isEmpty() || name.contains(",") || name.contains(":")) {
+                throw new IllegalArgumentException("Invalid tag name: " + name);
+            }
+            String color = text(tag.get("color"), "#5599ff");
+            if (!Tag.isValidColor(color)) {
+                throw new IllegalArgumentException("Invalid tag color: " + color + " (expected #rrggbb)");
+            }
+            tags.add(new Tag(name, color));
+        }
+        entry.setTags(Tag.formatList(tags));
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime created = json.get("dateCreated") == null ? now : LocalDateTime.parse(text(json.get("dateCreated"), ""));
+        entry.setDateCreated(created);
+        entry.setDateModified(json.get("dateModified") == null ? created : LocalDateTime.parse(text(json.get("dateModified"), "")));
+        return entry;
+    }
+
+    private static void blockArray(JsonWriter json, List<BlockNode> blocks) throws IOException {
+        json.beginArray();
+        for (BlockNode node : blocks) {
+            json.beginObject()
+                    .name("type").value(node.getType())
+                    .name("payload").value(node.getPayload())
+                    .name("detail").value(node.getDetail())
+                    .name("state").value(node.getState())
+                    .name("children");
+            blockArray(json, node.getChildren());
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    /** Helper method to build an exported line's block tree, plus the to-dos and toggles of older exports after it */
+    private static List<BlockNode> blocksOf(Map<String, Object> json) {
+        List<BlockNode> blocks = blockTree(objects(json.get("blocks")));
+        for (Map<String, Object> todo : objects(json.get("todos"))) {
+            BlockNode list = BlockNode.create(BlockNode.TODO_LIST, null);
+            list.getChildren().add(new BlockNode(0, 0, BlockNode.TODO, text(todo.get("description"), ""), null,
+                    Boolean.TRUE.equals(todo.get("done")) ? 1 : 0));
+            blocks.add(list);
+        }
+        for (Map<String, Object> toggle : objects(json.get("toggles"))) {
+            blocks.add(new BlockNode(0, 0, BlockNode.TOGGLE, text(toggle.get("title"), ""), text(toggle.get("content"), ""),
+                    Boolean.TRUE.equals(toggle.get("expanded")) ? 1 : 0));
+        }
+        return blocks;
+    }
+
+    private static List<BlockNode> blockTree(List<Map<String, Object>> objects) {
+        List<BlockNode> blocks = new ArrayList<>(objects.size());
+        for (Map<String, Object> object : objects) {
+            String type = text(object.get("type"), "");
+            if (!BLOCK_TYPES.contains(type)) {
+                throw new IllegalArgumentException("Invalid block type: " + type);
+            }
+            Object state = object.get("state");
+            if (state != null && !(state instanceof Long)) {
+                throw new IllegalArgumentException("Expected a number, got " + state);
+            }
+            BlockNode node = new BlockNode(0, 0, type, text(object.get("payload"), null), text(object.get("detail"), null),
+                    state == null ? 0 : ((Long) state).intValue());
+            node.getChildren().addAll(blockTree(objects(object.get("children"))));
+            blocks.add(node);
+        }
+        return blocks;
+    }
+
+    private static String text(Object value, String fallback) {
+        if (value == null) return fallback;
+        if (!(value instanceof String s)) throw new IllegalArgumentException("Expected a string, got " + value);
+        return s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> objects(Object value) {
+        if (value == null) return List.of();
+        if (!(value instanceof List<?> list)) throw new IllegalArgumentException("Expected an array, got " + value);
+        for (Object item : list) {
+            if (!(item instanceof Map)) throw new IllegalArgumentException("Expected objects in " + value);
+        }
+        return (List<Map<String, Object>>) list;
+    }
+
+    private static String single(List<String> params, String usage) {
+        if (params.size() != 1) exit(2, "Usage: JournalCli " + usage);
+        return params.get(0);
+    }
+
+    private static void exit(int status, String message) {
+        System.err.println(message);
+        System.exit(status);
+    }
+}
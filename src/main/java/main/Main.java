@@ -4,12 +4,15 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.stage.Stage;
+import util.ArchiveService;
 import util.DBConnection;
+import util.SchemaManager;
+import util.SortKeyRebalancer;
+import util.UsageReconciler;
 import util.ViewLoader;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 import util.LanguageManager;
 
 import util.ThemeManager;
@@ -32,6 +35,15 @@ public class Main extends Application {
                 return;
             }
 
+            // Move long-idle entries to the archive in the background
+            ArchiveService.start();
+
+            // Shorten block sort keys that grew long from repeated inserts
+            SortKeyRebalancer.start();
+
+            // Repair drift in the per-user usage counters that quotas are checked against
+            UsageReconciler.start();
+
             // Initialize language manager
             LanguageManager.getInstance();
             System.out.println("Language manager initialized with default locale: " +
@@ -65,6 +77,13 @@ public class Main extends Application {
         }
     }
 
+    @Override
+    public void stop() {
+        ArchiveService.stop();
+        SortKeyRebalancer.stop();
+        UsageReconciler.stop();
+    }
+
     /**
      * Initializes the database, creating tables if they don't exist.
      *
@@ -78,56 +97,9 @@ public class Main extends Application {
             // Get database connection
             conn = DBConnection.getInstance().getConnection();
 
-            // Create tables if they don't exist
-            try (Statement stmt = conn.createStatement()) {
-                // Create users table
-                stmt.execute(
-                        "CREATE TABLE IF NOT EXISTS users (" +
-                                "  user_id TEXT PRIMARY KEY," +
-                                "  username TEXT NOT NULL UNIQUE," +
-                                "  password TEXT NOT NULL" +
-                                ");"
-                );
-
-                // Create journal entries table
-                stmt.execute(
-                        "CREATE TABLE IF NOT EXISTS journal_entries (" +
-                                "  entry_id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                                "  user_id  TEXT NOT NULL," +
-                                "  title    TEXT," +
-                                "  content  TEXT," +
-                                "  date_created  TEXT," +
-                                "  date_modified TEXT," +
-                                "  tags     TEXT," +
-                                "  FOREIGN KEY(user_id) REFERENCES users(user_id)" +
-                                ");"
-                );
-
-                // Create to-do items table
-                stmt.execute(
-                        "CREATE TABLE IF NOT EXISTS todo_items (" +
-                                "  todo_id   INTEGER PRIMARY KEY AUTOINCREMENT," +
-                                "  entry_id  INTEGER NOT NULL," +
-                                "  description TEXT," +
-                                "  is_done   INTEGER," +
-                                "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE" +
-                                ");"
-                );
-
-                // Create toggle blocks table
-                stmt.execute(
-                        "CREATE TABLE IF NOT EXISTS toggle_blocks (" +
-                                "  toggle_id   INTEGER PRIMARY KEY AUTOINCREMENT," +
-                                "  entry_id    INTEGER NOT NULL," +
-                                "  title       TEXT," +
-                                "  content     TEXT," +
-                                "  is_expanded INTEGER," +
-                                "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE" +
-                                ");"
-                );
-
-                System.out.println("✅ Database tables created successfully.");
-            }
+            // Create tables if they don't exist and upgrade older databases
+            SchemaManager.initialize(conn);
+            System.out.println("✅ Database tables created successfully.");
 
             return true;
         } catch (SQLException e) {
@@ -1,14 +1,11 @@
 package model;
 
 /**
- * Example of a second subclass in the Person hierarchy.
+ * A user who can also see storage statistics of every user.
  */
-public class Admin extends Person {
-    private String email;
-
-    public Admin(String name, String email) {
-        super(name);
-        this.email = email;
+public class Admin extends User {
+    public Admin(String userID, String name, String password) {
+        super(userID, name, password);
     }
 
     @Override
@@ -16,15 +13,8 @@ public class Admin extends Person {
         return "Admin";
     }
 
-    public String getEmail() {
-        return email;
-    }
-    public void setEmail(String email) {
-        this.email = email;
-    }
-
     @Override
     public String toString() {
-        return "Admin: " + name + " <" + email + ">";
+        return "Admin[" + getUserID() + "] " + name;
     }
 }
@@ -0,0 +1,55 @@
+package model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A file attached to a journal entry.
+ * The bytes live in the attachment store under their SHA-256 hash;
+ * this class only holds the reference row that links a hash to an entry.
+ */
+public class Attachment {
+    private int attachmentId;
+    private int entryId;
+    private String hash;
+    private String fileName;
+    private String mimeType;
+    private long size;
+    private LocalDateTime dateAdded;
+
+    public Attachment(int attachmentId, int entryId, String hash, String fileName,
+                      String mimeType, long size, LocalDateTime dateAdded) {
+        this.attachmentId = attachmentId;
+        this.entryId = entryId;
+        this.hash = hash;
+        this.fileName = fileName;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.dateAdded = dateAdded;
+    }
+
+    public int getAttachmentId() { return attachmentId; }
+    public void setAttachmentId(int attachmentId) { this.attachmentId = attachmentId; }
+
+    public int getEntryId() { return entryId; }
+    public void setEntryId(int entryId) { this.entryId = entryId; }
+
+    public String getHash() { return hash; }
+    public void setHash(String hash) { this.hash = hash; }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public String getMimeType() { return mimeType; }
+    public void setMimeType(String mimeType) { this.mimeType = mimeType; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public LocalDateTime getDateAdded() { return dateAdded; }
+    public void setDateAdded(LocalDateTime dateAdded) { this.dateAdded = dateAdded; }
+
+    @Override
+    public String toString() {
+        return "Attachment [ID=" + attachmentId + ", file=\"" + fileName + "\", size=" + size + "]";
+    }
+}
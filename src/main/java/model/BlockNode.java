@@ -0,0 +1,105 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One block of an entry's block tree: a heading, bullet, text block, to-do list,
+ * to-do item or toggle, with its children in order.
+ * Every block type is stored in the same blocks table; what payload, detail and
+ * state mean depends on the type:
+ *
+ *   todo_list - no payload; children are todo blocks
+ *   todo      - payload = description, state = 1 when done
+ *   toggle    - payload = title, detail = body text, state = 1 when expanded; children are nested blocks
+ *   heading   - payload = text, detail = level ("H1".."H3")
+ *   bullet    - payload = text
+ *   text      - payload = text
+ */
+public class BlockNode extends Block {
+    public static final String TODO_LIST = "todo_list";
+    public static final String TODO = "todo";
+    public static final String TOGGLE = "toggle";
+    public static final String HEADING = "heading";
+    public static final String BULLET = "bullet";
+    public static final String TEXT = "text";
+
+    private int blockId;             // 0 until the block is first saved
+    private Integer parentId;        // null for top-level blocks
+    private String sortKey;          // orders siblings (see FractionalIndex); assigned on save
+    private final String type;
+    private String payload;
+    private String detail;
+    private int state;
+    private int version;
+    private final List<BlockNode> children = new ArrayList<>();
+
+    public BlockNode(int entryId, int blockId, String type, String payload, String detail, int state) {
+        super(entryId);
+        this.blockId = blockId;
+        this.type = type;
+        this.payload = payload;
+        this.detail = detail;
+        this.state = state;
+    }
+
+    /**
+     * Creates a new, unsaved block with the defaults the editor shows for that type.
+     */
+    public static BlockNode create(String type, String payload) {
+        return switch (type) {
+            case TOGGLE -> new BlockNode(0, 0, type, "Toggle Title", payload, 0);
+            case HEADING -> new BlockNode(0, 0, type, payload == null || payload.isEmpty() ? "Heading" : payload, "H1", 0);
+            default -> new BlockNode(0, 0, type, payload, null, 0);
+        };
+    }
+
+    /**
+     * The persisted fields of a block, without its children or version.
+     * Comparing a block's current snapshot with the one taken at its last save tells whether it changed.
+     */
+    public record Snapshot(Integer parentId, String sortKey, String type, String payload, String detail, int state) { }
+
+    public Snapshot snapshot() {
+        return new Snapshot(parentId, sortKey, type, payload, detail, state);
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    public void setEntryId(int entryId) {
+        this.entryId = entryId;
+    }
+
+    public int getBlockId() { return blockId; }
+    public void setBlockId(int blockId) { this.blockId = blockId; }
+
+    public Integer getParentId() { return parentId; }
+    public void setParentId(Integer parentId) { this.parentId = parentId; }
+
+    public String getSortKey() { return sortKey; }
+    public void setSortKey(String sortKey) { this.sortKey = sortKey; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public String getDetail() { return detail; }
+    public void setDetail(String detail) { this.detail = detail; }
+
+    public int getState() { return state; }
+    public void setState(int state) { this.state = state; }
+
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
+    public List<BlockNode> getChildren() { return children; }
+
+    @Override
+    public String toString() {
+        return "[" + type + " #" + blockId + "] " + Objects.requireNonNullElse(payload, "")
+                + (children.isEmpty() ? "" : " (" + children.size() + " children)");
+    }
+}
@@ -9,8 +9,19 @@ public class JournalEntry {
     private String title;
     private String content;
     private String tags;
+    private TagList tagList;         // tags parsed on first use, reset when they change
     private LocalDateTime dateCreated;
     private LocalDateTime dateModified;
+    private int version;             // bumped on every update, used for compare-and-swap
+    private boolean chunked;         // content stored in entry_chunks instead of the content column
+    private boolean archived;        // moved to an archive database; only the stub is loaded
+
+    // Derived when the entry or its to-dos are written, so lists don't need the content
+    private String preview;
+    private int wordCount;
+    private int charCount;
+    private int todoOpen;
+    private int todoDone;
 
     public JournalEntry() { }
 
@@ -46,7 +57,13 @@ public class JournalEntry {
     public void setContent(String content) { this.content = content; }
 
     public String getTags() { return tags; }
-    public void setTags(String tags) { this.tags = tags; }
+    public void setTags(String tags) { this.tags = tags; this.tagList = null; }
+
+    /** The tags parsed, cached until they change */
+    public TagList getTagList() {
+        if (tagList == null) tagList = TagList.parse(tags);
+        return tagList;
+    }
 
     public LocalDateTime getDateCreated() { return dateCreated; }
     public void setDateCreated(LocalDateTime dateCreated) { this.dateCreated = dateCreated; }
@@ -54,6 +71,30 @@ public class JournalEntry {
     public LocalDateTime getDateModified() { return dateModified; }
     public void setDateModified(LocalDateTime dateModified) { this.dateModified = dateModified; }
 
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
+    public boolean isChunked() { return chunked; }
+    public void setChunked(boolean chunked) { this.chunked = chunked; }
+
+    public boolean isArchived() { return archived; }
+    public void setArchived(boolean archived) { this.archived = archived; }
+
+    public String getPreview() { return preview; }
+    public void setPreview(String preview) { this.preview = preview; }
+
+    public int getWordCount() { return wordCount; }
+    public void setWordCount(int wordCount) { this.wordCount = wordCount; }
+
+    public int getCharCount() { return charCount; }
+    public void setCharCount(int charCount) { this.charCount = charCount; }
+
+    public int getTodoOpen() { return todoOpen; }
+    public void setTodoOpen(int todoOpen) { this.todoOpen = todoOpen; }
+
+    public int getTodoDone() { return todoDone; }
+    public void setTodoDone(int todoDone) { this.todoDone = todoDone; }
+
     @Override
     public String toString(){
         return "JournalEntry [ID=" + entryId + ", title=\"" + title + "\", tags=" + tags + "]";
@@ -1,12 +1,56 @@
 package model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
 /**
  * Represents a tag that can be attached to a journal entry.
- * Tags have a name and an associated color.
+ * Tags have a name and an associated color. They are immutable, so the instances from
+ * {@link #of} can be shared by every entry that carries the same tag.
  */
 public class Tag {
-    private String name;
-    private String color;
+    /** The colors offered in the editor, by display name; the dashboard has a CSS class for each */
+    public static final Map<String, String> PALETTE;
+
+    static {
+        Map<String, String> palette = new LinkedHashMap<>();
+        palette.put("Red", "#ff5555");
+        palette.put("Blue", "#5599ff");
+        palette.put("Green", "#55cc55");
+        palette.put("Purple", "#9955dd");
+        palette.put("Orange", "#ff9955");
+        palette.put("Yellow", "#ffdd55");
+        palette.put("Pink", "#ff55aa");
+        palette.put("Cyan", "#55dddd");
+        palette.put("Gray", "#999999");
+        palette.put("Black", "#333333");
+        PALETTE = Collections.unmodifiableMap(palette);
+    }
+
+    // Colors go into the stored tag string and into inline styles as-is, so only plain #rrggbb is allowed
+    private static final Pattern COLOR = Pattern.compile("#[0-9a-fA-F]{6}");
+
+    // Bounded, so tags that come and go (renames, typos) can't grow it forever
+    private static final int MAX_INTERNED = 10_000;
+    private static final Map<String, Tag> interned = new ConcurrentHashMap<>();
+    private static final Map<String, String> paletteClasses = new ConcurrentHashMap<>();
+
+    static {
+        for (Map.Entry<String, String> color : PALETTE.entrySet()) {
+            paletteClasses.put(color.getValue(), "tag-" + color.getKey().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private final String name;
+    private final String color;
+    private String styleClass;
+    private String style;
 
     /**
      * Constructor for creating a new Tag
@@ -20,21 +64,42 @@ public class Tag {
     }
 
     /**
-     * Gets the name of the tag
+     * Gets the shared instance of a tag, creating it the first time.
      *
-     * @return The tag name
+     * @param name The name/text of the tag
+     * @param color The color of the tag in hex format
+     * @return A tag equal to new Tag(name, color), with the same color
      */
-    public String getName() {
-        return name;
+    public static Tag of(String name, String color) {
+        String key = name + ":" + color;
+        Tag tag = interned.get(key);
+        if (tag == null) {
+            if (interned.size() >= MAX_INTERNED) {
+                interned.clear();
+            }
+            tag = interned.computeIfAbsent(key, k -> new Tag(name, color));
+        }
+        return tag;
     }
 
     /**
-     * Sets the name of the tag
+     * Checks a color before it is stored: anything but #rrggbb could add tags to the tag string
+     * or text to a chip's style.
      *
-     * @param name The new tag name
+     * @param color The color to check, may be null
+     * @return true if the color is #rrggbb
      */
-    public void setName(String name) {
-        this.name = name;
+    public static boolean isValidColor(String color) {
+        return color != null && COLOR.matcher(color).matches();
+    }
+
+    /**
+     * Gets the name of the tag
+     *
+     * @return The tag name
+     */
+    public String getName() {
+        return name;
     }
 
     /**
@@ -47,12 +112,62 @@ public class Tag {
     }
 
     /**
-     * Sets the color of the tag
+     * The CSS class that gives a chip this tag's color (see dashboard.css), or "tag-custom" for colors
+     * outside the palette, which then also need {@link #getStyle()}.
+     */
+    public String getStyleClass() {
+        String styleClass = this.styleClass;
+        if (styleClass == null) {
+            styleClass = color == null ? "tag-custom"
+                    : paletteClasses.getOrDefault(color.toLowerCase(Locale.ROOT), "tag-custom");
+            this.styleClass = styleClass;
+        }
+        return styleClass;
+    }
+
+    /** Inline style for a color outside the palette, or "" for palette colors. Computed once per tag. */
+    public String getStyle() {
+        String style = this.style;
+        if (style == null) {
+            style = getStyleClass().equals("tag-custom") && color != null ? "-fx-background-color: " + color + ";" : "";
+            this.style = style;
+        }
+        return style;
+    }
+
+    /**
+     * Parses an entry's tag string (format: name:color,name:color).
+     * Parts that don't have exactly one colon are skipped, as the editor does.
+     * The tags are the shared instances; see {@link TagList#parse} for a cached parse.
      *
-     * @param color The new tag color in hex format
+     * @param tagString The stored tags, may be null
+     * @return The tags in order
      */
-    public void setColor(String color) {
-        this.color = color;
+    public static List<Tag> parseList(String tagString) {
+        List<Tag> tags = new ArrayList<>();
+        if (tagString == null || tagString.isEmpty()) return tags;
+        for (String part : tagString.split(",")) {
+            String[] parts = part.split(":");
+            if (parts.length == 2) {
+                tags.add(of(parts[0].trim(), parts[1].trim()));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Builds the stored tag string for a list of tags.
+     *
+     * @param tags The tags in order
+     * @return The tag string (format: name:color,name:color)
+     */
+    public static String formatList(List<Tag> tags) {
+        StringBuilder sb = new StringBuilder();
+        for (Tag tag : tags) {
+            if (sb.length() > 0) sb.append(",");
+            sb.append(tag.getName()).append(":").append(tag.getColor());
+        }
+        return sb.toString();
     }
 
     @Override
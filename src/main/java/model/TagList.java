@@ -0,0 +1,67 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An entry's tags, parsed once from the stored tag string (format: name:color,name:color).
+ * Immutable and built from shared {@link Tag} instances, so entries with the same tag string
+ * share one instance and table cells can tell "same tags as before" by identity.
+ */
+public final class TagList {
+    public static final TagList EMPTY = new TagList("", List.of());
+
+    // Most journals use a handful of tag combinations; bounded all the same
+    private static final int MAX_CACHED = 10_000;
+    private static final Map<String, TagList> cache = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final List<Tag> tags;
+
+    private TagList(String source, List<Tag> tags) {
+        this.source = source;
+        this.tags = tags;
+    }
+
+    /**
+     * Gets the parsed form of a tag string, parsing it the first time it is seen.
+     *
+     * @param tagString The stored tags, may be null
+     * @return The tags in order
+     */
+    public static TagList parse(String tagString) {
+        if (tagString == null || tagString.isEmpty()) return EMPTY;
+        TagList list = cache.get(tagString);
+        if (list == null) {
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            list = cache.computeIfAbsent(tagString, s -> new TagList(s, List.copyOf(Tag.parseList(s))));
+        }
+        return list;
+    }
+
+    /** The tag string this was parsed from */
+    public String getSource() {
+        return source;
+    }
+
+    /** The tags in order, unmodifiable */
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    public int size() {
+        return tags.size();
+    }
+
+    public Tag get(int index) {
+        return tags.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -7,6 +7,7 @@ public class ToDoItem extends Block {
     private int todoId;
     private String description;
     private boolean isDone;
+    private int version;
 
     public ToDoItem(int entryId, int todoId, String description, boolean isDone) {
         super(entryId);
@@ -58,6 +59,15 @@ public class ToDoItem extends Block {
         isDone = done;
     }
 
+    // getter/setter for version (used to detect concurrent updates)
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return (isDone ? "[X] " : "[ ] ") + description;
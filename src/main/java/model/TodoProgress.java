@@ -0,0 +1,23 @@
+package model;
+
+/**
+ * Open and done to-do counts of one entry.
+ * Sorts by the share of to-dos done, then by how many there are.
+ *
+ * @param open Number of to-dos not done yet
+ * @param done Number of to-dos done
+ */
+public record TodoProgress(int open, int done) implements Comparable<TodoProgress> {
+    public static final TodoProgress NONE = new TodoProgress(0, 0);
+
+    public int total() {
+        return open + done;
+    }
+
+    @Override
+    public int compareTo(TodoProgress other) {
+        // done/total < other.done/other.total, without dividing by zero
+        int byShare = Long.compare((long) done * other.total(), (long) other.done * total());
+        return byShare != 0 ? byShare : Integer.compare(total(), other.total());
+    }
+}
@@ -8,6 +8,7 @@ public class ToggleBlock extends Block {
     private String title;
     private String content;
     private boolean isExpanded;
+    private int version;
 
     public ToggleBlock(int entryId, int toggleId, String title, String content, boolean isExpanded) {
         super(entryId);
@@ -69,6 +70,15 @@ public class ToggleBlock extends Block {
         isExpanded = expanded;
     }
 
+    // getter/setter for version (used to detect concurrent updates)
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public String toString(){
         return "[Toggle] " + title + (isExpanded? " (expanded)" : " (collapsed)");
@@ -0,0 +1,11 @@
+package model;
+
+/**
+ * Storage used by one user, as shown in the admin view.
+ *
+ * @param contentBytes Bytes of entry text as stored (encrypted and chunked content included), archived entries excluded
+ * @param blockCount Blocks of live entries
+ * @param lastActivity Latest modification date of any of the user's entries, null if they have none
+ */
+public record UserStats(String userId, String username, int entryCount, int archivedCount,
+                        long contentBytes, int blockCount, String lastActivity) { }
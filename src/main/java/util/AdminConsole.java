@@ -0,0 +1,66 @@
+package util;
+
+import DAO.AdminDAO;
+import DAO.UsageDAO;
+import DAO.UserDAO;
+import model.UserStats;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Command-line administration.
+ *
+ * Usage:
+ *   AdminConsole                  print storage statistics per user, largest first
+ *   AdminConsole grant username   let a user open the admin view
+ *   AdminConsole revoke username  take that right away again
+ *   AdminConsole quota username bytes entries
+ *                                 set a user's quotas ("default" for either restores the default)
+ */
+public class AdminConsole {
+    public static void main(String[] args) throws SQLException {
+        try (Connection conn = DBConnection.openConnection()) {
+            SchemaManager.initialize(conn);
+
+            if (args.length == 2 && (args[0].equals("grant") || args[0].equals("revoke"))) {
+                boolean admin = args[0].equals("grant");
+                if (new UserDAO(conn).setAdmin(args[1], admin)) {
+                    System.out.println((admin ? "Granted" : "Revoked") + " admin rights for " + args[1]);
+                } else {
+                    System.err.println("No user named " + args[1]);
+                    System.exit(1);
+                }
+                return;
+            }
+            if (args.length == 4 && args[0].equals("quota")) {
+                Long bytes = args[2].equals("default") ? null : Long.valueOf(args[2]);
+                Integer entries = args[3].equals("default") ? null : Integer.valueOf(args[3]);
+                if (new UsageDAO(conn).setQuota(args[1], bytes, entries)) {
+                    System.out.println("Quotas of " + args[1] + ": "
+                            + (bytes == null ? UsageDAO.DEFAULT_QUOTA_BYTES : bytes) + " bytes, "
+                            + (entries == null ? UsageDAO.DEFAULT_QUOTA_ENTRIES : entries) + " entries");
+                } else {
+                    System.err.println("No user named " + args[1]);
+                    System.exit(1);
+                }
+                return;
+            }
+            if (args.length != 0) {
+                System.err.println("Usage: AdminConsole [grant|revoke <username> | quota <username> <bytes> <entries>]");
+                System.exit(2);
+            }
+
+            AdminDAO adminDAO = new AdminDAO(conn);
+            long start = System.nanoTime();
+            int refreshed = adminDAO.refreshUserStats();
+            System.out.printf("Recounted %d users in %.1f ms%n%n", refreshed, (System.nanoTime() - start) / 1e6);
+            System.out.printf("%-24s %8s %8s %12s %8s  %s%n", "User", "Entries", "Archived", "Bytes", "Blocks", "Last activity");
+            for (UserStats stats : adminDAO.getUserStats()) {
+                System.out.printf("%-24s %8d %8d %12d %8d  %s%n", stats.username(), stats.entryCount(),
+                        stats.archivedCount(), stats.contentBytes(), stats.blockCount(),
+                        stats.lastActivity() == null ? "-" : stats.lastActivity());
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package util;
+
+import DAO.ArchiveDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that moves entries nobody has modified for a while into the archive.
+ * Runs shortly after start-up and then every few hours on its own daemon thread and
+ * its own database connection, so it never blocks the UI or shares its transactions.
+ *
+ * The age threshold defaults to 12 months and can be changed with -Djournal.archiveMonths=N.
+ */
+public class ArchiveService {
+    public static final int ARCHIVE_AFTER_MONTHS = Integer.getInteger("journal.archiveMonths", 12);
+    private static final long INITIAL_DELAY_MINUTES = 1;
+    private static final long INTERVAL_MINUTES = 6 * 60;
+
+    private static ScheduledExecutorService executor;
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private ArchiveService() { }
+
+    /**
+     * Starts the periodic archive job if it isn't running yet.
+     */
+    public static synchronized void start() {
+        if (executor != null) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "archive-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(ArchiveService::runOnce, INITIAL_DELAY_MINUTES, INTERVAL_MINUTES, TimeUnit.MINUTES);
+        System.out.println("Archive job scheduled (entries idle for " + ARCHIVE_AFTER_MONTHS + " months)");
+    }
+
+    /**
+     * Stops the archive job. A batch that is already running finishes its transaction.
+     */
+    public static synchronized void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        executor = null;
+    }
+
+    /**
+     * Archives idle entries once.
+     *
+     * @return The number of entries archived
+     */
+    public static int runOnce() {
+        // Leave entries that are open in the editor (or another session) where they are
+        try (Connection conn = DBConnection.openConnection()) {
+            return new ArchiveDAO(conn).archiveEntriesModifiedBefore(
+                    LocalDateTime.now().minusMonths(ARCHIVE_AFTER_MONTHS), SessionManager::getOpenEntryIds);
+        } catch (SQLException e) {
+            // Nothing is lost: the batch rolled back and the next run tries again
+            System.err.println("Archive job failed: " + e.getMessage());
+            return 0;
+        }
+    }
+}
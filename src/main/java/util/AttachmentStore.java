@@ -0,0 +1,216 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Content-addressed file store for entry attachments.
+ * Every blob is written once under its SHA-256 hash, so the same image pasted
+ * into several entries only takes disk space once. The database keeps the
+ * reference rows (see {@link DAO.AttachmentDAO}); this class only knows about bytes.
+ *
+ * A stored blob counts as pending until the caller has written its reference row and calls
+ * {@link #settle}; pending blobs are never deleted, so an upload that deduplicates against a
+ * blob can't lose it to a delete that ran just before the new reference was committed.
+ */
+public class AttachmentStore {
+    private static volatile AttachmentStore instance;
+
+    // Blobs live next to the database file
+    private static final String STORE_FOLDER = "src/main/resources/attachments";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path tmpDir;
+    // Guards moving blobs into place, deleting them and the pending counts
+    private final Object lock = new Object();
+    // Stored blobs whose reference rows aren't written yet, with how many uploads are waiting on each
+    private final Map<String, Integer> pending = new HashMap<>();
+
+    /** Tells whether the database still references a blob; asked by {@link #deleteUnreferenced} */
+    @FunctionalInterface
+    public interface References {
+        boolean isReferenced(String hash) throws IOException;
+    }
+
+    /**
+     * Result of storing a blob: its hash and size in bytes.
+     */
+    public record StoredBlob(String hash, long size) { }
+
+    public AttachmentStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.tmpDir = this.root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+    }
+
+    public static AttachmentStore getInstance() throws IOException {
+        if (instance == null) {
+            synchronized (AttachmentStore.class) {
+                if (instance == null) {
+                    instance = new AttachmentStore(new File(STORE_FOLDER).toPath());
+                    System.out.println("Attachment store at: " + instance.root);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Stores the contents of a file and returns its hash. The blob is pending until {@link #settle} is called.
+     *
+     * @param source The file to copy into the store
+     * @return The hash and size of the stored blob
+     */
+    public StoredBlob store(Path source) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            return store(in);
+        }
+    }
+
+    /**
+     * Streams a channel into the store, hashing while writing so the data is read only once.
+     * If a blob with the same hash already exists the new copy is discarded.
+     * The blob is pending until {@link #settle} is called.
+     *
+     * @param source The channel to read from (not closed by this method)
+     * @return The hash and size of the stored blob
+     */
+    public StoredBlob store(ReadableByteChannel source) throws IOException {
+        MessageDigest digest = newDigest();
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        long size = 0;
+
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        size += out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                out.force(false);
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = pathFor(hash);
+            synchronized (lock) {
+                if (Files.exists(target)) {
+                    // Deduplicated: the bytes are already in the store
+                    Files.deleteIfExists(tmp);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try {
+                        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        // Another writer stored the same blob first
+                        Files.deleteIfExists(tmp);
+                    }
+                }
+                pending.merge(hash, 1, Integer::sum);
+            }
+            return new StoredBlob(hash, size);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a blob into memory read-only. The mapping stays valid after the
+     * underlying channel is closed, so callers can hand the buffer straight to an image decoder.
+     *
+     * @param hash The blob hash
+     * @return A read-only buffer over the blob's bytes
+     */
+    public MappedByteBuffer map(String hash) throws IOException {
+        try (FileChannel ch = FileChannel.open(pathFor(hash), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    /**
+     * Copies a blob to a channel using {@link FileChannel#transferTo}, which lets
+     * the OS move the bytes without copying them through the Java heap.
+     *
+     * @param hash The blob hash
+     * @param target Where to write the bytes (not closed by this method)
+     * @return The number of bytes transferred
+     */
+    public long transferTo(String hash, WritableByteChannel target) throws IOException {
+        try (FileChannel ch = FileChannel.open(pathFor(hash), StandardOpenOption.READ)) {
+            long size = ch.size();
+            long position = 0;
+            while (position < size) {
+                position += ch.transferTo(position, size - position, target);
+            }
+            return size;
+        }
+    }
+
+    public boolean exists(String hash) {
+        return Files.exists(pathFor(hash));
+    }
+
+    /**
+     * Ends a blob's pending state once the upload that stored it has committed or given up on its reference row.
+     */
+    public void settle(String hash) {
+        synchronized (lock) {
+            pending.computeIfPresent(hash, (h, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Removes a blob from disk unless it is pending or still referenced. The reference check runs under
+     * the same lock as {@link #store}, so no upload can take the blob over while it is being deleted.
+     *
+     * @param hash The blob hash
+     * @param references Asked right before deleting whether the database references the blob again
+     * @return true if a file was deleted
+     */
+    public boolean deleteUnreferenced(String hash, References references) throws IOException {
+        synchronized (lock) {
+            if (pending.containsKey(hash) || references.isReferenced(hash)) {
+                return false;
+            }
+            return Files.deleteIfExists(pathFor(hash));
+        }
+    }
+
+    /**
+     * Blobs are fanned out into 256 folders by the first two hex digits of the hash.
+     */
+    public Path pathFor(String hash) {
+        if (hash == null || hash.length() != 64) {
+            throw new IllegalArgumentException("Invalid attachment hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,280 +1,417 @@
 package util;
 
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
-import javafx.scene.Node;
+import javafx.animation.PauseTransition;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
+import javafx.util.Duration;
+import model.BlockNode;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
- * Factory class for creating different types of content blocks.
- * Implements the Factory pattern to generate UI components for todos, toggles, etc.
+ * Factory class for the editor's content blocks: new {@link BlockNode}s, and the {@link BlockRenderer}
+ * that shows each kind of block list row (see {@link BlockListView}), registered here by row kind.
+ * Renderers are pooled: a row that scrolls away, a deleted block or the previous entry's rows hand
+ * theirs back, and the next row of that kind takes one from the pool.
  */
 public class BlockFactory {
+    /** How long an unused renderer, or an unused toggle body's text area, is kept before it is dropped */
+    static final Duration RELEASE_AFTER = Duration.minutes(5);
+
+    // Most renderers of one kind the pool keeps; enough for a screenful of rows
+    private static final int POOL_LIMIT = 64;
+
+    /** How a kind of renderer has been used; reused / (created + reused) is the pool's hit rate */
+    public record PoolStats(long created, long reused, int pooled, long dropped) { }
+
+    private static final class Pool {
+        final ArrayDeque<BlockRenderer> renderers = new ArrayDeque<>();
+        // When each pooled renderer came back, in the same order
+        final ArrayDeque<Long> returned = new ArrayDeque<>();
+        long created;
+        long reused;
+        long dropped;
+    }
+
+    // The block list's renderers by row kind, and the idle renderers of each kind. JavaFX thread only
+    private static final Map<BlockListView.Kind, Supplier<? extends BlockRenderer>> renderers =
+            new EnumMap<>(BlockListView.Kind.class);
+    private static final Map<BlockListView.Kind, Pool> pools = new EnumMap<>(BlockListView.Kind.class);
+
+    static {
+        register(BlockListView.Kind.TEXT, TextRenderer::new);
+        register(BlockListView.Kind.HEADING, HeadingRenderer::new);
+        register(BlockListView.Kind.BULLET, BulletRenderer::new);
+        register(BlockListView.Kind.TODO_ITEM, TodoItemRenderer::new);
+        register(BlockListView.Kind.TODO_ADD, TodoAddRenderer::new);
+        register(BlockListView.Kind.TOGGLE_HEADER, ToggleHeaderRenderer::new);
+        register(BlockListView.Kind.TOGGLE_BODY, ToggleBodyRenderer::new);
+        register(BlockListView.Kind.TOGGLE_ADD, ToggleAddRenderer::new);
+    }
 
     /**
-     * Creates a content block based on the specified type.
+     * Registers the renderer for a kind of block list row, replacing the built-in one.
      *
-     * @param type The type of block to create ("todo", "toggle", etc.)
+     * @param kind The row kind
+     * @param renderer Creates a new renderer; called only when the pool has none to reuse
+     */
+    public static void register(BlockListView.Kind kind, Supplier<? extends BlockRenderer> renderer) {
+        renderers.put(kind, renderer);
+        Pool pool = pools.get(kind);
+        if (pool != null) {
+            // Renderers of the old type can't be handed out any more
+            pool.dropped += pool.renderers.size();
+            pool.renderers.clear();
+            pool.returned.clear();
+        }
+    }
+
+    /**
+     * Takes a renderer for a kind of row from the pool, or creates one. It is unbound until the caller binds it.
+     *
+     * @throws IllegalArgumentException If no renderer is registered for the kind
+     */
+    public static BlockRenderer acquire(BlockListView.Kind kind) {
+        Supplier<? extends BlockRenderer> renderer = renderers.get(kind);
+        if (renderer == null) {
+            throw new IllegalArgumentException("No block renderer for " + kind);
+        }
+        Pool pool = pools.computeIfAbsent(kind, k -> new Pool());
+        BlockRenderer pooled = pool.renderers.pollFirst();
+        if (pooled != null) {
+            pool.returned.pollFirst();
+            pool.reused++;
+            return pooled;
+        }
+        pool.created++;
+        return renderer.get();
+    }
+
+    /**
+     * Unbinds and recycles a renderer and keeps it for the next {@link #acquire} of its kind.
+     * The pool keeps at most {@value #POOL_LIMIT} per kind, and none that went unused for {@link #RELEASE_AFTER}.
+     */
+    public static void release(BlockListView.Kind kind, BlockRenderer renderer) {
+        renderer.unbind();
+        renderer.recycle();
+        if (renderer.getRoot().getParent() instanceof Pane parent) {
+            parent.getChildren().remove(renderer.getRoot());
+        }
+
+        Pool pool = pools.computeIfAbsent(kind, k -> new Pool());
+        long now = System.currentTimeMillis();
+        // The oldest are at the end
+        long idleSince = now - (long) RELEASE_AFTER.toMillis();
+        while (!pool.returned.isEmpty() && pool.returned.peekLast() < idleSince) {
+            pool.returned.pollLast();
+            pool.renderers.pollLast();
+            pool.dropped++;
+        }
+        if (pool.renderers.size() < POOL_LIMIT) {
+            pool.renderers.addFirst(renderer);
+            pool.returned.addFirst(now);
+        } else {
+            pool.dropped++;
+        }
+    }
+
+    /** How each kind of renderer has been created, reused and dropped since the application started */
+    public static Map<BlockListView.Kind, PoolStats> getPoolStats() {
+        Map<BlockListView.Kind, PoolStats> stats = new EnumMap<>(BlockListView.Kind.class);
+        pools.forEach((kind, pool) ->
+                stats.put(kind, new PoolStats(pool.created, pool.reused, pool.renderers.size(), pool.dropped)));
+        return stats;
+    }
+
+    /**
+     * Creates a new, unsaved block of the given type; a to-do list starts with one empty item.
+     *
+     * @param type A {@link BlockNode} type, or "todo" for a to-do list
      * @param content Initial content for the block (can be empty)
-     * @return A JavaFX Node representing the requested block type
+     * @return The new block
      */
-    public static Node create(String type, String content) {
-        switch (type.toLowerCase()) {
-            case "todo":
-                return createTodoBlock(content);
-            case "toggle":
-                return createToggleBlock(content);
-            case "bullet":
-                return createBulletItem(content);
-            case "heading":
-                return createHeadingBlock(content);
-            default:
-                // Default to a simple text field
-                TextField defaultField = new TextField(content);
-                defaultField.setPromptText("Text block");
-                return defaultField;
+    public static BlockNode newBlock(String type, String content) {
+        if (BlockNode.TODO.equals(type) || BlockNode.TODO_LIST.equals(type)) {
+            BlockNode list = BlockNode.create(BlockNode.TODO_LIST, null);
+            list.getChildren().add(BlockNode.create(BlockNode.TODO, content));
+            return list;
         }
+        return BlockNode.create(type, content);
     }
 
     /**
-     * Creates a todo list item with a checkbox and text field.
+     * Shows the menu of blocks that can be added inside a toggle below a button.
+     * The menu is made on the first click and kept on the button.
      *
-     * @param content Initial content for the todo item
-     * @return A VBox containing the todo item
+     * @param addChild Called with the chosen {@link BlockNode} type
      */
-    private static Node createTodoBlock(String content) {
-        VBox todoBlock = new VBox(5);
-        todoBlock.getStyleClass().add("todo-block");
-        todoBlock.setPadding(new Insets(10));
-
-        // Create a HBox for the checkbox and text field
-        HBox todoItem = new HBox(10);
-        todoItem.setAlignment(Pos.CENTER_LEFT);
-
-        // Create checkbox
-        CheckBox checkbox = new CheckBox();
-        checkbox.getStyleClass().add("todo-checkbox");
-
-        // Create text field for the todo item
-        TextField textField = new TextField(content);
-        textField.setPromptText("Todo item");
-        textField.getStyleClass().add("todo-text");
-        HBox.setHgrow(textField, Priority.ALWAYS);
-
-        // Add delete button
-        Button deleteBtn = new Button("×");
-        deleteBtn.getStyleClass().add("delete-block-button");
-        deleteBtn.setOnAction(e -> {
-            // Get the parent of this todo block
-            VBox parent = (VBox) todoBlock.getParent();
-            if (parent != null) {
-                parent.getChildren().remove(todoBlock);
-            }
-        });
+    static void showBlockMenu(Button button, Consumer<String> addChild) {
+        ContextMenu blockMenu = (ContextMenu) button.getProperties().get(ContextMenu.class);
+        if (blockMenu == null) {
+            blockMenu = new ContextMenu();
+            MenuItem todoItem = new MenuItem("Todo List");
+            MenuItem bulletItem = new MenuItem("Bullet List");
+            MenuItem toggleItem = new MenuItem("Toggle Block");
+            todoItem.setOnAction(e -> addChild.accept(BlockNode.TODO_LIST));
+            bulletItem.setOnAction(e -> addChild.accept(BlockNode.BULLET));
+            toggleItem.setOnAction(e -> addChild.accept(BlockNode.TOGGLE));
+            blockMenu.getItems().addAll(todoItem, bulletItem, toggleItem);
+            button.getProperties().put(ContextMenu.class, blockMenu);
+        }
+        blockMenu.show(button, Side.BOTTOM, 0, 0);
+    }
+
+    private static final class TextRenderer extends BlockRenderer {
+        private final TextField field = textField("Text block", "text-block");
 
-        // Add components to the todo item
-        todoItem.getChildren().addAll(checkbox, textField, deleteBtn);
-        todoBlock.getChildren().add(todoItem);
+        TextRenderer() {
+            root.getChildren().add(field);
+        }
 
-        // Add a "Add Item" button
-        Button addItemBtn = new Button("+ Add Item");
-        addItemBtn.getStyleClass().add("add-item-button");
-        addItemBtn.setOnAction(e -> {
-            HBox newItem = new HBox(10);
-            newItem.setAlignment(Pos.CENTER_LEFT);
+        @Override
+        public Control getFocusTarget() {
+            return field;
+        }
 
-            CheckBox newCheckbox = new CheckBox();
-            newCheckbox.getStyleClass().add("todo-checkbox");
+        @Override
+        protected void update(BlockNode node) {
+            field.setText(node.getPayload());
+        }
+
+        @Override
+        protected void clear() {
+            field.clear();
+        }
+    }
 
-            TextField newTextField = new TextField();
-            newTextField.setPromptText("Todo item");
-            newTextField.getStyleClass().add("todo-text");
-            HBox.setHgrow(newTextField, Priority.ALWAYS);
+    private static final class HeadingRenderer extends BlockRenderer {
+        private final ComboBox<String> level = new ComboBox<>();
+        private final TextField field = textField(null, "heading-text");
+
+        HeadingRenderer() {
+            super("heading-block");
+            level.getItems().addAll("H1", "H2", "H3");
+            level.getStyleClass().add("heading-level");
+            level.setOnAction(e -> {
+                showLevel(level.getValue());
+                edit(() -> node.setDetail(level.getValue()));
+            });
+            root.getChildren().addAll(level, field, deleteButton(() -> actions.remove(node)));
+        }
 
-            Button newDeleteBtn = new Button("×");
-            newDeleteBtn.getStyleClass().add("delete-block-button");
-            newDeleteBtn.setOnAction(ev -> todoBlock.getChildren().remove(newItem));
+        @Override
+        public Control getFocusTarget() {
+            return field;
+        }
 
-            newItem.getChildren().addAll(newCheckbox, newTextField, newDeleteBtn);
-            todoBlock.getChildren().add(todoBlock.getChildren().size() - 1, newItem);
-        });
+        @Override
+        protected void update(BlockNode heading) {
+            String value = heading.getDetail() == null ? "H1" : heading.getDetail();
+            level.setValue(value);
+            showLevel(value);
+            field.setText(heading.getPayload());
+        }
 
-        todoBlock.getChildren().add(addItemBtn);
+        @Override
+        protected void clear() {
+            field.clear();
+        }
 
-        return todoBlock;
+        private void showLevel(String value) {
+            field.getStyleClass().removeAll("h1", "h2", "h3");
+            if (value != null) field.getStyleClass().add(value.toLowerCase());
+        }
     }
 
-    /**
-     * Creates a toggle (collapsible) block with title and content.
-     *
-     * @param content Initial content for the toggle block
-     * @return A VBox containing the toggle block
-     */
-    private static Node createToggleBlock(String content) {
-        VBox toggleBlock = new VBox(0);
-        toggleBlock.getStyleClass().add("toggle-block");
-
-        // Create title bar with toggle button
-        HBox titleBar = new HBox(10);
-        titleBar.getStyleClass().add("toggle-header");
-        titleBar.setPadding(new Insets(10));
-        titleBar.setAlignment(Pos.CENTER_LEFT);
-
-        // Toggle button/indicator
-        Button toggleBtn = new Button("▶");
-        toggleBtn.getStyleClass().add("toggle-button");
-
-        // Title field
-        TextField titleField = new TextField("Toggle Title");
-        titleField.getStyleClass().add("toggle-title");
-        HBox.setHgrow(titleField, Priority.ALWAYS);
-
-        // Delete button
-        Button deleteBtn = new Button("×");
-        deleteBtn.getStyleClass().add("delete-block-button");
-        deleteBtn.setOnAction(e -> {
-            // Get the parent of this toggle block
-            VBox parent = (VBox) toggleBlock.getParent();
-            if (parent != null) {
-                parent.getChildren().remove(toggleBlock);
-            }
-        });
+    private static final class BulletRenderer extends BlockRenderer {
+        private final TextField field = textField("Bullet item", "bullet-text");
 
-        titleBar.getChildren().addAll(toggleBtn, titleField, deleteBtn);
+        BulletRenderer() {
+            super("bullet-item");
+            Label bullet = new Label("•");
+            bullet.getStyleClass().add("bullet-point");
+            root.getChildren().addAll(bullet, field, deleteButton(() -> actions.remove(node)));
+        }
+
+        @Override
+        public Control getFocusTarget() {
+            return field;
+        }
+
+        @Override
+        protected void update(BlockNode node) {
+            field.setText(node.getPayload());
+        }
 
-        // Create content area
-        VBox contentArea = new VBox(10);
-        contentArea.getStyleClass().add("toggle-content");
-        contentArea.setPadding(new Insets(0, 10, 10, 20));
+        @Override
+        protected void clear() {
+            field.clear();
+        }
+    }
 
-        // Add a text area for content
-        TextArea contentField = new TextArea(content);
-        contentField.setPromptText("Toggle content");
-        contentField.getStyleClass().add("toggle-content-field");
-        contentField.setPrefRowCount(5);
-        contentField.setWrapText(true);
+    private static final class TodoItemRenderer extends BlockRenderer {
+        private final CheckBox checkbox = new CheckBox();
+        private final TextField field = textField("Todo item", "todo-text");
+
+        TodoItemRenderer() {
+            super("todo-block", "todo-item");
+            checkbox.getStyleClass().add("todo-checkbox");
+            checkbox.selectedProperty().addListener((obs, old, done) -> edit(() -> node.setState(done ? 1 : 0)));
+            // Enter starts the next item
+            field.setOnAction(e -> {
+                if (node != null) actions.addTodoItem(null, node);
+            });
+            root.getChildren().addAll(checkbox, field, deleteButton(() -> actions.removeTodoItem(node)));
+        }
 
-        // Add block insertion button
-        Button addBlockBtn = new Button("+ Add Block Inside");
-        addBlockBtn.getStyleClass().add("add-block-button");
+        @Override
+        public Control getFocusTarget() {
+            return field;
+        }
 
-        // Create a context menu for block types
-        ContextMenu blockMenu = new ContextMenu();
-        MenuItem todoItem = new MenuItem("Todo List");
-        MenuItem bulletItem = new MenuItem("Bullet List");
-        MenuItem toggleItem = new MenuItem("Toggle Block");
+        @Override
+        protected void update(BlockNode item) {
+            checkbox.setSelected(item.getState() == 1);
+            field.setText(item.getPayload());
+        }
 
-        todoItem.setOnAction(e -> contentArea.getChildren().add(createTodoBlock("")));
-        bulletItem.setOnAction(e -> contentArea.getChildren().add(createBulletItem("")));
-        toggleItem.setOnAction(e -> contentArea.getChildren().add(createToggleBlock("")));
+        @Override
+        protected void clear() {
+            checkbox.setSelected(false);
+            field.clear();
+        }
+    }
 
-        blockMenu.getItems().addAll(todoItem, bulletItem, toggleItem);
+    private static final class TodoAddRenderer extends BlockRenderer {
+        TodoAddRenderer() {
+            super("todo-block");
+            Button addItemBtn = new Button("+ Add Item");
+            addItemBtn.getStyleClass().add("add-item-button");
+            addItemBtn.setOnAction(e -> {
+                if (node != null) actions.addTodoItem(node, null);
+            });
+            root.getChildren().add(addItemBtn);
+        }
 
-        addBlockBtn.setOnAction(e -> blockMenu.show(addBlockBtn, javafx.geometry.Side.BOTTOM, 0, 0));
+        @Override
+        protected void update(BlockNode list) { }
 
-        contentArea.getChildren().addAll(contentField, addBlockBtn);
+        @Override
+        protected void clear() { }
+    }
 
-        // Initially collapsed
-        contentArea.setManaged(false);
-        contentArea.setVisible(false);
+    private static final class ToggleHeaderRenderer extends BlockRenderer {
+        private final Button toggleBtn = new Button();
+        private final TextField title = textField(null, "toggle-title");
+
+        ToggleHeaderRenderer() {
+            super("toggle-block", "toggle-header");
+            toggleBtn.getStyleClass().add("toggle-button");
+            toggleBtn.setOnAction(e -> {
+                if (node == null) return;
+                boolean expand = node.getState() != 1;
+                toggleBtn.setText(expand ? "▼" : "▶");
+                actions.setExpanded(node, expand);
+            });
+            root.getChildren().addAll(toggleBtn, title, deleteButton(() -> actions.remove(node)));
+        }
 
-        // Toggle button action
-        toggleBtn.setOnAction(e -> {
-            boolean isVisible = contentArea.isVisible();
-            contentArea.setManaged(!isVisible);
-            contentArea.setVisible(!isVisible);
-            toggleBtn.setText(isVisible ? "▶" : "▼");
-        });
+        @Override
+        public Control getFocusTarget() {
+            return title;
+        }
 
-        toggleBlock.getChildren().addAll(titleBar, contentArea);
+        @Override
+        protected void update(BlockNode toggle) {
+            toggleBtn.setText(toggle.getState() == 1 ? "▼" : "▶");
+            title.setText(toggle.getPayload());
+        }
 
-        return toggleBlock;
+        @Override
+        protected void clear() {
+            title.clear();
+        }
     }
 
     /**
-     * Creates a bullet list item.
-     *
-     * @param content Initial content for the bullet item
-     * @return A HBox containing the bullet item
+     * The body text of an expanded toggle. Collapsed toggles have no body row, so the text area is built
+     * when a body is first shown, and dropped again once the renderer has sat in the pool for
+     * {@link #RELEASE_AFTER}, e.g. because the toggles it showed stayed collapsed.
      */
-    private static Node createBulletItem(String content) {
-        HBox bulletItem = new HBox(10);
-        bulletItem.getStyleClass().add("bullet-item");
-        bulletItem.setPadding(new Insets(5, 10, 5, 10));
-        bulletItem.setAlignment(Pos.CENTER_LEFT);
-
-        // Bullet point
-        Label bullet = new Label("•");
-        bullet.getStyleClass().add("bullet-point");
-
-        // Text field
-        TextField textField = new TextField(content);
-        textField.setPromptText("Bullet item");
-        textField.getStyleClass().add("bullet-text");
-        HBox.setHgrow(textField, Priority.ALWAYS);
-
-        // Delete button
-        Button deleteBtn = new Button("×");
-        deleteBtn.getStyleClass().add("delete-block-button");
-        deleteBtn.setOnAction(e -> {
-            // Get the parent of this bullet item
-            VBox parent = (VBox) bulletItem.getParent();
-            if (parent != null) {
-                parent.getChildren().remove(bulletItem);
+    private static final class ToggleBodyRenderer extends BlockRenderer {
+        private final PauseTransition releaseDelay = new PauseTransition(RELEASE_AFTER);
+        private TextArea content;
+
+        ToggleBodyRenderer() {
+            super("toggle-content");
+            releaseDelay.setOnFinished(e -> {
+                if (node == null && content != null) {
+                    root.getChildren().remove(content);
+                    content = null;
+                }
+            });
+        }
+
+        @Override
+        public Control getFocusTarget() {
+            return content;
+        }
+
+        @Override
+        protected void update(BlockNode toggle) {
+            releaseDelay.stop();
+            if (content == null) {
+                content = build();
+                root.getChildren().add(content);
             }
-        });
+            content.setText(toggle.getDetail());
+        }
 
-        bulletItem.getChildren().addAll(bullet, textField, deleteBtn);
+        @Override
+        protected void clear() {
+            if (content != null) {
+                content.clear();
+                releaseDelay.playFromStart();
+            }
+        }
 
-        return bulletItem;
+        private TextArea build() {
+            TextArea area = new TextArea();
+            area.setPromptText("Toggle content");
+            area.getStyleClass().add("toggle-content-field");
+            area.setPrefRowCount(5);
+            area.setWrapText(true);
+            area.textProperty().addListener((obs, old, text) -> edit(() -> node.setDetail(text)));
+            HBox.setHgrow(area, Priority.ALWAYS);
+            return area;
+        }
     }
 
-    /**
-     * Creates a heading block with styled text.
-     *
-     * @param content Initial content for the heading
-     * @return A HBox containing the heading
-     */
-    private static Node createHeadingBlock(String content) {
-        HBox headingBlock = new HBox(10);
-        headingBlock.getStyleClass().add("heading-block");
-        headingBlock.setPadding(new Insets(10));
-        headingBlock.setAlignment(Pos.CENTER_LEFT);
-
-        // Heading dropdown
-        ComboBox<String> headingLevel = new ComboBox<>();
-        headingLevel.getItems().addAll("H1", "H2", "H3");
-        headingLevel.setValue("H1");
-        headingLevel.getStyleClass().add("heading-level");
-
-        // Text field
-        TextField textField = new TextField(content.isEmpty() ? "Heading" : content);
-        textField.getStyleClass().add("heading-text");
-        HBox.setHgrow(textField, Priority.ALWAYS);
-
-        // Update styling based on heading level
-        headingLevel.setOnAction(e -> {
-            textField.getStyleClass().removeAll("h1", "h2", "h3");
-            textField.getStyleClass().add(headingLevel.getValue().toLowerCase());
-        });
-
-        // Initially set H1 style
-        textField.getStyleClass().add("h1");
-
-        // Delete button
-        Button deleteBtn = new Button("×");
-        deleteBtn.getStyleClass().add("delete-block-button");
-        deleteBtn.setOnAction(e -> {
-            // Get the parent of this heading block
-            VBox parent = (VBox) headingBlock.getParent();
-            if (parent != null) {
-                parent.getChildren().remove(headingBlock);
-            }
-        });
+    private static final class ToggleAddRenderer extends BlockRenderer {
+        private final Button addBlockBtn = new Button("+ Add Block Inside");
+
+        ToggleAddRenderer() {
+            super("toggle-content");
+            addBlockBtn.getStyleClass().add("add-block-button");
+            addBlockBtn.setOnAction(e -> showBlockMenu(addBlockBtn, type -> {
+                if (node != null) actions.addChild(node, type);
+            }));
+            root.getChildren().add(addBlockBtn);
+        }
 
-        headingBlock.getChildren().addAll(headingLevel, textField, deleteBtn);
+        @Override
+        protected void update(BlockNode toggle) { }
 
-        return headingBlock;
+        @Override
+        protected void clear() {
+            if (addBlockBtn.getProperties().get(ContextMenu.class) instanceof ContextMenu blockMenu) {
+                blockMenu.hide();
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,417 @@
+package util;
+
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.TransferMode;
+import javafx.scene.layout.Region;
+import model.BlockNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Shows an entry's block tree as a virtualized list, so an entry with thousands of blocks
+ * only has nodes for the few rows on screen.
+ *
+ * The tree is flattened into rows: one per to-do item, toggle title, toggle body, heading, and so on.
+ * Nesting is shown by indenting rows, and the rows inside a collapsed toggle are left out.
+ * Cells are recycled as the list scrolls. Each cell shows its row with a {@link BlockRenderer} of the
+ * row's kind, bound to the row's block; when the kind changes it swaps it for one from the pool.
+ * The tree stays the model: edits write through to the bound {@link BlockNode}, and adding,
+ * deleting, moving or expanding blocks changes the tree and flattens it again.
+ */
+public final class BlockListView extends ListView<BlockListView.Row> {
+
+    public enum Kind { HEADER, HEADING, BULLET, TEXT, TODO_ITEM, TODO_ADD, TOGGLE_HEADER, TOGGLE_BODY, TOGGLE_ADD }
+
+    /**
+     * One line of the flattened tree. Rows are compared by value, so a row that is still there
+     * after flattening again keeps its cell, and with it the cursor.
+     *
+     * @param node The block the row edits; for TODO_ADD and TOGGLE_ADD the list or toggle added to
+     * @param depth How far the row is indented
+     */
+    public record Row(Kind kind, BlockNode node, int depth) { }
+
+    private static final double INDENT = 24;
+
+    private Region header;
+    private List<BlockNode> blocks = new ArrayList<>();
+    private Runnable onChange = () -> { };
+    // Each shown block's parent; top-level blocks have none. Rebuilt with the rows
+    private final Map<BlockNode, BlockNode> parents = new IdentityHashMap<>();
+    private BlockNode draggedBlock;
+
+    // The row being edited, so it gets the cursor back when its cell is re-used for it
+    private Row focusedRow;
+    private int focusedCaret;
+    private boolean recycling;
+    // The cells gave their renderers back when the list left the window
+    private boolean released;
+
+    private final BlockRenderer.Actions actions = new BlockRenderer.Actions() {
+        @Override
+        public void edited() {
+            onChange.run();
+        }
+
+        @Override
+        public void remove(BlockNode node) {
+            removeBlock(node);
+        }
+
+        @Override
+        public void removeTodoItem(BlockNode item) {
+            BlockListView.this.removeTodoItem(item);
+        }
+
+        @Override
+        public void addTodoItem(BlockNode list, BlockNode after) {
+            BlockListView.this.addTodoItem(list == null ? parents.get(after) : list, after);
+        }
+
+        @Override
+        public void addChild(BlockNode toggle, String type) {
+            BlockListView.this.addChild(toggle, type);
+        }
+
+        @Override
+        public void setExpanded(BlockNode toggle, boolean expanded) {
+            BlockListView.this.setExpanded(toggle, expanded);
+        }
+    };
+
+    public BlockListView() {
+        getStyleClass().add("block-list");
+        // Clicks go to the row editors; the list itself only takes the focus while a cell is recycled
+        setFocusTraversable(false);
+        setCellFactory(list -> new BlockCell());
+
+        ChangeListener<Node> focusTracker = (obs, old, owner) -> trackFocus(owner);
+        sceneProperty().addListener((obs, old, scene) -> {
+            if (old != null) old.focusOwnerProperty().removeListener(focusTracker);
+            if (scene != null) scene.focusOwnerProperty().addListener(focusTracker);
+            if (scene == null) {
+                releaseRenderers();
+            } else if (released) {
+                // Shown again: let every cell take a renderer again
+                released = false;
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Gives every cell's renderer back to the pool, so the next entry opened reuses them.
+     * Done when the list leaves the window, e.g. when going back to the dashboard.
+     */
+    private void releaseRenderers() {
+        for (Node node : lookupAll(".block-cell")) {
+            if (node instanceof BlockCell cell) {
+                cell.releaseRenderer();
+            }
+        }
+        released = true;
+        System.out.println("Block renderer pool: " + BlockFactory.getPoolStats());
+    }
+
+    /**
+     * Shows a block tree.
+     *
+     * @param header Shown as the first row, above the blocks (can be null)
+     * @param blocks The top-level blocks; the list edits this tree in place
+     * @param onChange Called after every edit
+     */
+    public void show(Region header, List<BlockNode> blocks, Runnable onChange) {
+        this.header = header;
+        this.blocks = blocks;
+        this.onChange = onChange;
+        rebuild();
+    }
+
+    /** Flattens the tree again, after blocks were added, removed or replaced outside the list */
+    public void rebuild() {
+        parents.clear();
+        List<Row> rows = new ArrayList<>();
+        if (header != null) {
+            rows.add(new Row(Kind.HEADER, null, 0));
+        }
+        flatten(blocks, null, 0, rows);
+        getItems().setAll(rows);
+    }
+
+    /** Scrolls to a block and puts the cursor in its first row */
+    public void reveal(BlockNode node) {
+        List<Row> rows = getItems();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (row.node() == node || (row.node() != null && parents.get(row.node()) == node)) {
+                focusedRow = row;
+                focusedCaret = 0;
+                // Lay the rows out first, so a row that lands on screen isn't scrolled to the top
+                layout();
+                BlockCell cell = cellShowing(row);
+                if (cell != null) {
+                    cell.restoreFocus();
+                } else {
+                    scrollTo(i);
+                }
+                return;
+            }
+        }
+    }
+
+    private void flatten(List<BlockNode> siblings, BlockNode parent, int depth, List<Row> rows) {
+        for (BlockNode node : siblings) {
+            if (parent != null) parents.put(node, parent);
+            switch (node.getType()) {
+                case BlockNode.TODO_LIST -> {
+                    for (BlockNode item : node.getChildren()) {
+                        parents.put(item, node);
+                        rows.add(new Row(Kind.TODO_ITEM, item, depth));
+                    }
+                    rows.add(new Row(Kind.TODO_ADD, node, depth));
+                }
+                case BlockNode.TOGGLE -> {
+                    rows.add(new Row(Kind.TOGGLE_HEADER, node, depth));
+                    if (isExpanded(node)) {
+                        rows.add(new Row(Kind.TOGGLE_BODY, node, depth + 1));
+                        flatten(node.getChildren(), node, depth + 1, rows);
+                        rows.add(new Row(Kind.TOGGLE_ADD, node, depth + 1));
+                    }
+                }
+                case BlockNode.HEADING -> rows.add(new Row(Kind.HEADING, node, depth));
+                case BlockNode.BULLET -> rows.add(new Row(Kind.BULLET, node, depth));
+                default -> rows.add(new Row(Kind.TEXT, node, depth));
+            }
+        }
+    }
+
+    private static boolean isExpanded(BlockNode toggle) {
+        return toggle.getState() == 1;
+    }
+
+    /** The list a shown block is in */
+    private List<BlockNode> siblingsOf(BlockNode node) {
+        BlockNode parent = parents.get(node);
+        return parent == null ? blocks : parent.getChildren();
+    }
+
+    /** The top-level block a shown block is part of */
+    private BlockNode topOf(BlockNode node) {
+        while (parents.containsKey(node)) {
+            node = parents.get(node);
+        }
+        return node;
+    }
+
+    private void changed() {
+        rebuild();
+        onChange.run();
+    }
+
+    private void addTodoItem(BlockNode list, BlockNode after) {
+        BlockNode item = BlockNode.create(BlockNode.TODO, "");
+        List<BlockNode> items = list.getChildren();
+        items.add(after == null ? items.size() : items.indexOf(after) + 1, item);
+        changed();
+        reveal(item);
+    }
+
+    /** Deletes a to-do item; deleting the last one deletes the list */
+    private void removeTodoItem(BlockNode item) {
+        BlockNode list = parents.get(item);
+        list.getChildren().remove(item);
+        if (list.getChildren().isEmpty()) {
+            siblingsOf(list).remove(list);
+        }
+        changed();
+    }
+
+    private void removeBlock(BlockNode node) {
+        siblingsOf(node).remove(node);
+        changed();
+    }
+
+    /** Adds a nested block at the end of a toggle */
+    private void addChild(BlockNode toggle, String type) {
+        BlockNode child = BlockFactory.newBlock(type, "");
+        toggle.getChildren().add(child);
+        changed();
+        reveal(child);
+    }
+
+    private void setExpanded(BlockNode toggle, boolean expanded) {
+        toggle.setState(expanded ? 1 : 0);
+        changed();
+    }
+
+    /**
+     * Moves a top-level block to the place of another one. Only the moved block gets a new sort key,
+     * so the next save writes a single row.
+     */
+    private boolean move(BlockNode moved, BlockNode target) {
+        int from = blocks.indexOf(moved);
+        int to = blocks.indexOf(target);
+        if (from < 0 || to < 0 || from == to) return false;
+
+        blocks.remove(from);
+        blocks.add(to, moved);
+        changed();
+        return true;
+    }
+
+    /** Remembers which row is being edited whenever the keyboard focus moves */
+    private void trackFocus(Node owner) {
+        if (recycling) return;
+        for (Node node = owner; node != null; node = node.getParent()) {
+            if (node instanceof BlockCell cell && cell.getListView() == this) {
+                focusedRow = cell.isEmpty() ? null : cell.getItem();
+                return;
+            }
+        }
+        focusedRow = null;
+    }
+
+    private BlockCell cellShowing(Row row) {
+        for (Node node : lookupAll(".block-cell")) {
+            if (node instanceof BlockCell cell && !cell.isEmpty() && row.equals(cell.getItem())) {
+                return cell;
+            }
+        }
+        return null;
+    }
+
+    /** A recycled cell, showing its row with a renderer from {@link BlockFactory}'s pool */
+    private class BlockCell extends ListCell<Row> {
+        private Kind kind;
+        private BlockRenderer renderer;
+        private final DoubleBinding contentWidth = Bindings.createDoubleBinding(
+                () -> Math.max(0, getWidth() - snappedLeftInset() - snappedRightInset()),
+                widthProperty(), paddingProperty());
+
+        BlockCell() {
+            getStyleClass().add("block-cell");
+            setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+            setupDragAndDrop();
+        }
+
+        @Override
+        protected void updateItem(Row row, boolean empty) {
+            releaseFocus();
+            super.updateItem(row, empty);
+            if (empty || row == null) {
+                releaseRenderer();
+                return;
+            }
+
+            setPadding(new Insets(4, 0, 4, row.depth() * INDENT));
+            if (row.kind() == Kind.HEADER) {
+                releaseRenderer();
+                header.prefWidthProperty().bind(contentWidth);
+                setGraphic(header);
+            } else {
+                // A renderer of the right kind is simply bound to the new block
+                if (row.kind() != kind) {
+                    releaseRenderer();
+                    kind = row.kind();
+                    renderer = BlockFactory.acquire(kind);
+                    renderer.getRoot().prefWidthProperty().bind(contentWidth);
+                }
+                renderer.bind(row.node(), actions);
+                setGraphic(renderer.getRoot());
+            }
+
+            if (row.equals(focusedRow)) {
+                // The cell may not be in the scene yet
+                Platform.runLater(this::restoreFocus);
+            }
+        }
+
+        /** Hands the renderer back to the pool */
+        void releaseRenderer() {
+            setGraphic(null);
+            if (renderer != null) {
+                BlockFactory.release(kind, renderer);
+                renderer = null;
+                kind = null;
+            }
+        }
+
+        /** Puts the cursor back in the row being edited, if this cell shows it */
+        void restoreFocus() {
+            Row row = getItem();
+            if (isEmpty() || row == null || !row.equals(focusedRow)) return;
+            Node target = row.kind() == Kind.HEADER ? header : renderer.getFocusTarget();
+            if (target == null) return;
+            target.requestFocus();
+            if (target instanceof TextInputControl text) {
+                text.positionCaret(Math.min(focusedCaret, text.getLength()));
+            }
+        }
+
+        /**
+         * Before the cell is re-used for another row, moves the focus out of it, so typing can't
+         * go to the wrong block. The row stays remembered as the one being edited.
+         */
+        private void releaseFocus() {
+            Scene scene = getScene();
+            Node owner = scene == null ? null : scene.getFocusOwner();
+            for (Node node = owner; node != null; node = node.getParent()) {
+                if (node == this) {
+                    if (owner instanceof TextInputControl text) {
+                        focusedCaret = text.getCaretPosition();
+                    }
+                    recycling = true;
+                    try {
+                        BlockListView.this.requestFocus();
+                    } finally {
+                        recycling = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        /** Dragging any row of a top-level block moves the whole block */
+        private void setupDragAndDrop() {
+            setOnDragDetected(e -> {
+                if (isEmpty() || getItem() == null || getItem().kind() == Kind.HEADER) return;
+                draggedBlock = topOf(getItem().node());
+                ClipboardContent content = new ClipboardContent();
+                content.putString(Objects.requireNonNullElse(draggedBlock.getPayload(), draggedBlock.getType()));
+                startDragAndDrop(TransferMode.MOVE).setContent(content);
+                e.consume();
+            });
+            setOnDragOver(e -> {
+                BlockNode target = dropTarget();
+                if (draggedBlock != null && target != null && target != draggedBlock) {
+                    e.acceptTransferModes(TransferMode.MOVE);
+                }
+                e.consume();
+            });
+            setOnDragDropped(e -> {
+                BlockNode target = dropTarget();
+                boolean moved = draggedBlock != null && target != null && move(draggedBlock, target);
+                e.setDropCompleted(moved);
+                e.consume();
+            });
+            setOnDragDone(e -> draggedBlock = null);
+        }
+
+        private BlockNode dropTarget() {
+            if (isEmpty() || getItem() == null || getItem().kind() == Kind.HEADER) return null;
+            return topOf(getItem().node());
+        }
+    }
+}
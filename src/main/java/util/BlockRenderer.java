@@ -0,0 +1,121 @@
+package util;
+
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Control;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import model.BlockNode;
+
+/**
+ * Shows one kind of row of the block list (see {@link BlockListView}) and edits its block.
+ * Renderers are registered and pooled by {@link BlockFactory}, so one renderer goes through
+ * these phases many times, for blocks of any entry:
+ *
+ *   create  - the constructor builds the controls, once
+ *   bind    - fills the controls in from a block and starts writing edits to it
+ *   unbind  - stops editing the block and forgets it and the list
+ *   recycle - clears what the last block left in the controls, before the renderer is pooled
+ */
+public abstract class BlockRenderer {
+
+    /** What a row's controls can do to the tree around their block; supplied by the list showing the row */
+    public interface Actions {
+        /** Called after a control wrote an edit to the block */
+        void edited();
+
+        void remove(BlockNode node);
+
+        /** Deletes a to-do item; deleting the last one deletes the list */
+        void removeTodoItem(BlockNode item);
+
+        /**
+         * Adds an empty to-do item and puts the cursor in it.
+         *
+         * @param list The to-do list, or null for the list after is in
+         * @param after The item to add it after, or null to add it at the end
+         */
+        void addTodoItem(BlockNode list, BlockNode after);
+
+        /** Adds a new block of a {@link BlockNode} type at the end of a toggle */
+        void addChild(BlockNode toggle, String type);
+
+        void setExpanded(BlockNode toggle, boolean expanded);
+    }
+
+    protected final HBox root = new HBox(10);
+    protected BlockNode node;
+    protected Actions actions;
+    private boolean binding;
+
+    protected BlockRenderer(String... styleClasses) {
+        root.getStyleClass().addAll(styleClasses);
+        root.setAlignment(Pos.CENTER_LEFT);
+        root.setMinWidth(0);
+    }
+
+    public Region getRoot() {
+        return root;
+    }
+
+    /** The control that takes the cursor when the row is revealed, or null if there is none */
+    public Control getFocusTarget() {
+        return null;
+    }
+
+    public final void bind(BlockNode node, Actions actions) {
+        this.node = node;
+        this.actions = actions;
+        binding = true;
+        try {
+            update(node);
+        } finally {
+            binding = false;
+        }
+    }
+
+    public final void unbind() {
+        node = null;
+        actions = null;
+    }
+
+    /** Clears the controls; only called while unbound, so nothing is written back */
+    public void recycle() {
+        root.prefWidthProperty().unbind();
+        clear();
+    }
+
+    /** Fills the controls in from a block */
+    protected abstract void update(BlockNode node);
+
+    /** Empties the controls, so a pooled renderer keeps no text of the entry it showed */
+    protected abstract void clear();
+
+    /** Applies an edit made in a control, unless the control is only being filled in or cleared */
+    protected void edit(Runnable change) {
+        if (binding || node == null) return;
+        change.run();
+        actions.edited();
+    }
+
+    /** A text field that grows with the row and writes to the block's payload */
+    protected TextField textField(String promptText, String styleClass) {
+        TextField field = new TextField();
+        field.setPromptText(promptText);
+        field.getStyleClass().add(styleClass);
+        HBox.setHgrow(field, Priority.ALWAYS);
+        field.textProperty().addListener((obs, old, text) -> edit(() -> node.setPayload(text)));
+        return field;
+    }
+
+    protected Button deleteButton(Runnable delete) {
+        Button deleteBtn = new Button("×");
+        deleteBtn.getStyleClass().add("delete-block-button");
+        deleteBtn.setOnAction(e -> {
+            if (node != null) delete.run();
+        });
+        return deleteBtn;
+    }
+}
@@ -0,0 +1,63 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Set of strings that answers "definitely not present" or "probably present" in a few bits per item.
+ * Used to skip database lookups for values that can't exist; a positive still has to be confirmed.
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final int size;
+    private final int hashes;
+
+    /**
+     * @param expectedItems How many strings will be added
+     * @param falsePositiveRate The acceptable chance that an absent string is reported as present
+     */
+    public BloomFilter(int expectedItems, double falsePositiveRate) {
+        int n = Math.max(1, expectedItems);
+        // Standard sizing: m = -n ln p / (ln 2)^2 bits, k = m/n ln 2 hash functions
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.size = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        this.bits = new long[(size + 63) / 64];
+    }
+
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, size);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /** @return false if the value was never added; true if it probably was */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, size);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Helper method: 64-bit FNV-1a of the UTF-8 bytes, finished with a mixing step so both halves are usable */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,90 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Splits large entry content into content-defined chunks.
+ * Boundaries are picked by a rolling "gear" hash over the text rather than at fixed
+ * offsets, so typing in the middle of a big entry only changes the chunk around the
+ * edit: the chunks before and after keep the same text and the same hash.
+ */
+public class ContentChunker {
+    /** Entries at least this many characters long are stored in chunks */
+    public static final int CHUNK_THRESHOLD = 256 * 1024;
+
+    private static final int MIN_CHUNK = 16 * 1024;
+    private static final int MAX_CHUNK = 128 * 1024;
+    // Top 15 bits of the hash (they depend on the last 64 characters): a boundary
+    // every ~32K characters past the minimum on average
+    private static final long BOUNDARY_MASK = ((1L << 15) - 1) << 49;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: chunk boundaries must be identical across runs and machines
+        Random random = new Random(0x5EED_C0DEL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private ContentChunker() { }
+
+    /**
+     * Checks whether content is large enough to be chunked.
+     */
+    public static boolean shouldChunk(String content) {
+        return content != null && content.length() >= CHUNK_THRESHOLD;
+    }
+
+    /**
+     * Splits text into chunks. Concatenating the result gives back the input.
+     *
+     * @param content The text to split
+     * @return The chunks in order
+     */
+    public static List<String> split(String content) {
+        List<String> chunks = new ArrayList<>();
+        int length = content.length();
+        int start = 0;
+        long hash = 0;
+
+        for (int i = 0; i < length; i++) {
+            hash = (hash << 1) + GEAR[content.charAt(i) & 0xff];
+            int size = i - start + 1;
+            boolean boundary = size >= MAX_CHUNK || (size >= MIN_CHUNK && (hash & BOUNDARY_MASK) == 0);
+            // Never split a surrogate pair
+            if (boundary && !Character.isHighSurrogate(content.charAt(i))) {
+                chunks.add(content.substring(start, i + 1));
+                start = i + 1;
+                hash = 0;
+            }
+        }
+        if (start < length) {
+            chunks.add(content.substring(start));
+        }
+        return chunks;
+    }
+
+    /**
+     * Hashes a chunk so unchanged chunks can be recognized without reading them back.
+     *
+     * @param chunk The chunk text
+     * @return The SHA-256 of the chunk as hex
+     */
+    public static String hash(String chunk) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(chunk.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package util;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * AES-GCM encryption of entry content and block text for one user.
+ * The key is derived from the user's password once at login (PBKDF2) and the
+ * instance is cached in {@link KeyRing} for the rest of the session.
+ *
+ * Encrypted values are stored as text: "enc1:" followed by base64 of IV + ciphertext + tag.
+ * Values without the prefix are legacy plaintext and are returned unchanged by {@link #decrypt}.
+ *
+ * The Cipher, Mac and byte buffers are kept per thread and only grow, so
+ * encrypting or decrypting a row allocates little more than the resulting String.
+ */
+public class ContentCipher {
+    public static final String PREFIX = "enc1:";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int SALT_LENGTH = 16;
+    private static final int ITERATIONS = 120_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = i;
+        }
+    }
+
+    private final SecretKeySpec encryptionKey;
+    private final SecretKeySpec macKey;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * Per-thread working state, reused across calls.
+     */
+    private final class Buffers {
+        final Cipher cipher;
+        final Mac mac;
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        final byte[] iv = new byte[IV_LENGTH];
+        byte[] plain = new byte[16 * 1024];
+        byte[] sealed = new byte[16 * 1024];
+        byte[] text = new byte[24 * 1024];
+
+        Buffers() {
+            try {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(macKey);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES-GCM not available", e);
+            }
+        }
+    }
+
+    private ContentCipher(byte[] keyMaterial) {
+        this.encryptionKey = new SecretKeySpec(keyMaterial, 0, 32, "AES");
+        this.macKey = new SecretKeySpec(keyMaterial, 32, 32, "HmacSHA256");
+    }
+
+    /**
+     * Derives a user's keys from their password. This is deliberately slow,
+     * so call it once per login and keep the result.
+     *
+     * @param password The user's password
+     * @param salt The user's key salt (see {@link #newSalt()})
+     * @return A cipher for that user's data
+     */
+    public static ContentCipher derive(String password, String salt) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), Base64.getDecoder().decode(salt), ITERATIONS, 512);
+            byte[] keyMaterial = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            spec.clearPassword();
+            return new ContentCipher(keyMaterial);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Key derivation failed", e);
+        }
+    }
+
+    /**
+     * Generates a random salt for a new user key.
+     */
+    public static String newSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+
+    /**
+     * Checks whether a stored value was written by {@link #encrypt}.
+     */
+    public static boolean isEncrypted(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Encrypts a value for storage.
+     *
+     * @param plaintext The text to encrypt (null stays null)
+     * @return The encrypted value as text
+     */
+    public String encrypt(String plaintext) {
+        if (plaintext == null) return null;
+        Buffers b = buffers.get();
+        try {
+            int plainLength = encodeUtf8(b, plaintext);
+
+            RANDOM.nextBytes(b.iv);
+            b.cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, b.iv));
+            b.sealed = ensureCapacity(b.sealed, IV_LENGTH + b.cipher.getOutputSize(plainLength));
+            System.arraycopy(b.iv, 0, b.sealed, 0, IV_LENGTH);
+            int sealedLength = IV_LENGTH + b.cipher.doFinal(b.plain, 0, plainLength, b.sealed, IV_LENGTH);
+
+            int textLength = encodeBase64(b, sealedLength);
+            return PREFIX + new String(b.text, 0, textLength, StandardCharsets.ISO_8859_1);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Encryption failed", e);
+        }
+    }
+
+    /**
+     * Decrypts a stored value. Plaintext written before encryption was enabled is returned as is.
+     *
+     * @param stored The value read from the database
+     * @return The plaintext
+     * @throws IllegalStateException if the value was encrypted with a different key or was tampered with
+     */
+    public String decrypt(String stored) {
+        if (!isEncrypted(stored)) return stored;
+        Buffers b = buffers.get();
+        try {
+            int sealedLength = decodeBase64(b, stored, PREFIX.length());
+            if (sealedLength < IV_LENGTH) {
+                throw new IllegalStateException("Encrypted value is truncated");
+            }
+            b.cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, b.sealed, 0, IV_LENGTH));
+            b.plain = ensureCapacity(b.plain, b.cipher.getOutputSize(sealedLength - IV_LENGTH));
+            int plainLength = b.cipher.doFinal(b.sealed, IV_LENGTH, sealedLength - IV_LENGTH, b.plain, 0);
+            return new String(b.plain, 0, plainLength, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Decryption failed: wrong key or corrupted data", e);
+        }
+    }
+
+    /**
+     * Keyed hash of a value, for change detection on encrypted data without exposing a plain SHA-256 of it.
+     *
+     * @param value The plaintext
+     * @return HMAC-SHA256 of the value as hex
+     */
+    public String fingerprint(String value) {
+        Buffers b = buffers.get();
+        int length = encodeUtf8(b, value);
+        b.mac.update(b.plain, 0, length);
+        return HexFormat.of().formatHex(b.mac.doFinal());
+    }
+
+    /** UTF-8 encodes into the reusable plain buffer and returns the byte count */
+    private static int encodeUtf8(Buffers b, String value) {
+        b.plain = ensureCapacity(b.plain, value.length() * 3);
+        ByteBuffer out = ByteBuffer.wrap(b.plain);
+        b.encoder.reset();
+        CoderResult result = b.encoder.encode(CharBuffer.wrap(value), out, true);
+        if (result.isError()) {
+            // Unpaired surrogates: fall back to the lenient String encoder
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, b.plain, 0, bytes.length);
+            return bytes.length;
+        }
+        b.encoder.flush(out);
+        return out.position();
+    }
+
+    /** Base64-encodes the sealed buffer into the reusable text buffer */
+    private static int encodeBase64(Buffers b, int length) {
+        b.text = ensureCapacity(b.text, (length + 2) / 3 * 4);
+        byte[] src = b.sealed;
+        byte[] dst = b.text;
+        int d = 0;
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[d++] = BASE64[bits >>> 18];
+            dst[d++] = BASE64[(bits >>> 12) & 0x3f];
+            dst[d++] = BASE64[(bits >>> 6) & 0x3f];
+            dst[d++] = BASE64[bits & 0x3f];
+        }
+        int remaining = length - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+            dst[d++] = BASE64[bits >>> 18];
+            dst[d++] = BASE64[(bits >>> 12) & 0x3f];
+            dst[d++] = remaining == 2 ? BASE64[(bits >>> 6) & 0x3f] : (byte) '=';
+            dst[d++] = '=';
+        }
+        return d;
+    }
+
+    /** Base64-decodes text (from an offset) into the reusable sealed buffer */
+    private static int decodeBase64(Buffers b, String text, int offset) {
+        b.sealed = ensureCapacity(b.sealed, (text.length() - offset) / 4 * 3 + 3);
+        byte[] dst = b.sealed;
+        int d = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = offset; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '=') break;
+            int value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalStateException("Invalid character in encrypted value");
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                dst[d++] = (byte) (bits >>> 16);
+                dst[d++] = (byte) (bits >>> 8);
+                dst[d++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 3) {
+            dst[d++] = (byte) (bits >>> 10);
+            dst[d++] = (byte) (bits >>> 2);
+        } else if (count == 2) {
+            dst[d++] = (byte) (bits >>> 4);
+        }
+        return d;
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int size) {
+        return buffer.length >= size ? buffer : new byte[Math.max(size, buffer.length * 2)];
+    }
+}
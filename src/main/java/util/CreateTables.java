@@ -13,56 +13,27 @@ public class CreateTables {
              Statement stmt = conn.createStatement()) {
 
             // Drop old tables if they exist (to avoid conflicts)
+            stmt.execute("DROP TABLE IF EXISTS search_grams;");
+            stmt.execute("DROP TABLE IF EXISTS search_docs;");
+            stmt.execute("DROP TABLE IF EXISTS index_state;");
+            stmt.execute("DROP TABLE IF EXISTS sync_peers;");
+            stmt.execute("DROP TABLE IF EXISTS sync_clock;");
+            stmt.execute("DROP TABLE IF EXISTS sync_rows;");
+            stmt.execute("DROP TABLE IF EXISTS user_usage;");
+            stmt.execute("DROP TABLE IF EXISTS user_stats;");
+            stmt.execute("DROP TABLE IF EXISTS archived_entries;");
+            stmt.execute("DROP TABLE IF EXISTS chunk_data;");
+            stmt.execute("DROP TABLE IF EXISTS entry_chunks;");
+            stmt.execute("DROP TABLE IF EXISTS entry_attachments;");
+            stmt.execute("DROP TABLE IF EXISTS attachment_blobs;");
+            stmt.execute("DROP TABLE IF EXISTS blocks;");
             stmt.execute("DROP TABLE IF EXISTS toggle_blocks;");
             stmt.execute("DROP TABLE IF EXISTS todo_items;");
             stmt.execute("DROP TABLE IF EXISTS journal_entries;");
             stmt.execute("DROP TABLE IF EXISTS users;");
 
-            // 1) Users table (user_id as TEXT primary key)
-            stmt.execute(
-                    "CREATE TABLE users (" +
-                            "  user_id TEXT PRIMARY KEY," +
-                            "  username TEXT NOT NULL UNIQUE," +
-                            "  password TEXT NOT NULL" +
-                            ");"
-            );
-
-            // 2) Journal entries (user_id TEXT FK → users.user_id)
-            stmt.execute(
-                    "CREATE TABLE journal_entries (" +
-                            "  entry_id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "  user_id  TEXT NOT NULL," +
-                            "  title    TEXT," +
-                            "  content  TEXT," +
-                            "  date_created  TEXT," +
-                            "  date_modified TEXT," +
-                            "  tags     TEXT," +
-                            "  FOREIGN KEY(user_id) REFERENCES users(user_id)" +
-                            ");"
-            );
-
-            // 3) To‑do items
-            stmt.execute(
-                    "CREATE TABLE todo_items (" +
-                            "  todo_id   INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "  entry_id  INTEGER NOT NULL," +
-                            "  description TEXT," +
-                            "  is_done   INTEGER," +
-                            "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id)" +
-                            ");"
-            );
-
-            // 4) Toggle blocks
-            stmt.execute(
-                    "CREATE TABLE toggle_blocks (" +
-                            "  toggle_id   INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "  entry_id    INTEGER NOT NULL," +
-                            "  title       TEXT," +
-                            "  content     TEXT," +
-                            "  is_expanded INTEGER," +
-                            "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id)" +
-                            ");"
-            );
+            // Recreate every table with the current schema
+            SchemaManager.initialize(conn);
 
             System.out.println("✅ All tables dropped & recreated.");
         } catch (SQLException e) {
@@ -3,6 +3,7 @@ package util;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.io.File;
 
 public class DBConnection {
@@ -13,6 +14,8 @@ public class DBConnection {
     // Use an absolute path that will work regardless of how the application is run
     private static final String DB_FOLDER = "src/main/resources";
     private static final String DB_NAME = "journal.db";
+    // How long a connection waits for another connection's write lock before failing
+    private static final int BUSY_TIMEOUT_MS = 5000;
 
     private DBConnection() throws SQLException {
         try {
@@ -37,6 +40,7 @@ public class DBConnection {
 
             // Connect to the database
             this.connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+            setBusyTimeout(connection);
             System.out.println("Successfully connected to the database");
 
         } catch (ClassNotFoundException e) {
@@ -69,6 +73,36 @@ public class DBConnection {
         return connection;
     }
 
+    /**
+     * Opens a separate connection to the same database, for work that runs off the UI thread.
+     * The shared connection's transactions toggle auto-commit, so background jobs must not use it.
+     * The caller closes the returned connection.
+     *
+     * @return A new connection
+     */
+    public static Connection openConnection() throws SQLException {
+        return openConnection(new File(DB_FOLDER, DB_NAME));
+    }
+
+    /**
+     * Opens a connection to another journal database, e.g. one to sync with.
+     * The caller closes the returned connection.
+     *
+     * @param dbFile The database file; it is created if it doesn't exist
+     * @return A new connection
+     */
+    public static Connection openConnection(File dbFile) throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        setBusyTimeout(conn);
+        return conn;
+    }
+
+    private static void setBusyTimeout(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+        }
+    }
+
     public void closeConnection() {
         try {
             if (connection != null && !connection.isClosed()) {
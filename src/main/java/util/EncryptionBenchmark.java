@@ -0,0 +1,93 @@
+package util;
+
+import DAO.JournalDAO;
+import model.JournalEntry;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Standalone utility to measure what encryption at rest costs per entry.
+ * Saves and reloads a 100 KB entry through {@link JournalDAO} in an in-memory database,
+ * once as plaintext and once with the owner unlocked, and compares the averages.
+ * Run this class directly after changing {@link ContentCipher}.
+ */
+public class EncryptionBenchmark {
+    private static final int CONTENT_SIZE = 100 * 1024;
+    private static final int WARMUP = 300;
+    private static final int ITERATIONS = 1000;
+    private static final double TARGET_OVERHEAD_MS = 1.0;
+
+    public static void main(String[] args) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            SchemaManager.initialize(conn);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO users(user_id,username,password) VALUES(?,?,?)")) {
+                ps.setString(1, "bench");
+                ps.setString(2, "bench");
+                ps.setString(3, "bench");
+                ps.executeUpdate();
+            }
+
+            JournalDAO dao = new JournalDAO(conn);
+            String content = sampleContent();
+            ContentCipher cipher = ContentCipher.derive("bench-password", ContentCipher.newSalt());
+
+            PrintStream out = System.out;
+            double plainMs;
+            double encryptedMs;
+            // The DAOs log every save; keep that out of the timings
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                KeyRing.lock("bench");
+                run(dao, content, WARMUP);
+                plainMs = run(dao, content, ITERATIONS);
+
+                KeyRing.unlock("bench", cipher);
+                run(dao, content, WARMUP);
+                encryptedMs = run(dao, content, ITERATIONS);
+                KeyRing.lock("bench");
+            } finally {
+                System.setOut(out);
+            }
+
+            double overhead = encryptedMs - plainMs;
+            System.out.printf("Save + load of a %d KB entry, %d iterations%n", CONTENT_SIZE / 1024, ITERATIONS);
+            System.out.printf("  plaintext: %.3f ms%n", plainMs);
+            System.out.printf("  encrypted: %.3f ms%n", encryptedMs);
+            System.out.printf("  overhead:  %.3f ms (target <= %.1f ms) %s%n",
+                    overhead, TARGET_OVERHEAD_MS, overhead <= TARGET_OVERHEAD_MS ? "PASS" : "FAIL");
+        }
+    }
+
+    /** Saves, reloads and deletes an entry repeatedly; returns the average time per round trip in ms */
+    private static double run(JournalDAO dao, String content, int iterations) throws SQLException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JournalEntry entry = new JournalEntry(0, "bench", "Benchmark", content, "bench",
+                    LocalDateTime.now(), LocalDateTime.now());
+            dao.saveEntry(entry);
+            JournalEntry loaded = dao.getEntryById(entry.getEntryId());
+            if (!content.equals(loaded.getContent())) {
+                throw new IllegalStateException("Round trip changed the content of entry " + entry.getEntryId());
+            }
+            dao.deleteEntry(entry.getEntryId());
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / iterations;
+    }
+
+    /** Mixed-language text so the UTF-8 path sees multi-byte characters too */
+    private static String sampleContent() {
+        String line = "Today I wrote about the café on the corner — ça valait le détour. ";
+        StringBuilder sb = new StringBuilder(CONTENT_SIZE + line.length());
+        while (sb.length() < CONTENT_SIZE) {
+            sb.append(line);
+        }
+        sb.setLength(CONTENT_SIZE);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
+
+/**
+ * Tells open views that something about an entry changed, so they can update that entry
+ * instead of reloading everything. Listeners are called on the thread that made the change.
+ */
+public class EntryEventBus {
+    private static final List<IntConsumer> todoListeners = new CopyOnWriteArrayList<>();
+    private static final List<IntConsumer> entryListeners = new CopyOnWriteArrayList<>();
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private EntryEventBus() { }
+
+    /**
+     * Registers a listener for to-do changes.
+     *
+     * @param listener Receives the ID of the entry whose to-dos were added, checked, edited or deleted
+     * @return Call this to unregister the listener
+     */
+    public static Runnable onTodosChanged(IntConsumer listener) {
+        todoListeners.add(listener);
+        return () -> todoListeners.remove(listener);
+    }
+
+    /**
+     * Notifies listeners that an entry's to-dos changed. Call this after the change is committed.
+     *
+     * @param entryId The entry
+     */
+    public static void todosChanged(int entryId) {
+        notify(todoListeners, entryId, "To-do");
+    }
+
+    /**
+     * Registers a listener for entries that were created, saved or deleted.
+     *
+     * @param listener Receives the ID of the entry
+     * @return Call this to unregister the listener
+     */
+    public static Runnable onEntryChanged(IntConsumer listener) {
+        entryListeners.add(listener);
+        return () -> entryListeners.remove(listener);
+    }
+
+    /**
+     * Notifies listeners that an entry was created, saved or deleted. Call this after the change is committed.
+     *
+     * @param entryId The entry
+     */
+    public static void entryChanged(int entryId) {
+        notify(entryListeners, entryId, "Entry");
+    }
+
+    private static void notify(List<IntConsumer> listeners, int entryId, String kind) {
+        for (IntConsumer listener : listeners) {
+            try {
+                listener.accept(entryId);
+            } catch (RuntimeException e) {
+                // One broken view must not stop the change or the other views
+                System.err.println(kind + " listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
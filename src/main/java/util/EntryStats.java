@@ -0,0 +1,70 @@
+package util;
+
+/**
+ * Fields derived from an entry's text when it is written, so list views can show
+ * them without loading the content.
+ *
+ * @param preview The first words of the entry on one line, or "" if it is empty
+ * @param wordCount Number of words
+ * @param charCount Number of characters (code points, so emoji count once)
+ */
+public record EntryStats(String preview, int wordCount, int charCount) {
+    /** Maximum preview length in characters, before the ellipsis */
+    public static final int PREVIEW_LENGTH = 140;
+
+    /**
+     * Derives the stats of an entry's text in a single pass.
+     *
+     * @param content The text (null counts as empty)
+     * @return The derived fields
+     */
+    public static EntryStats of(String content) {
+        if (content == null || content.isEmpty()) {
+            return new EntryStats("", 0, 0);
+        }
+
+        StringBuilder preview = new StringBuilder(PREVIEW_LENGTH + 1);
+        boolean previewFull = false;
+        boolean inWord = false;
+        boolean pendingSpace = false;
+        int words = 0;
+        int chars = 0;
+
+        for (int i = 0; i < content.length(); ) {
+            int cp = content.codePointAt(i);
+            i += Character.charCount(cp);
+            chars++;
+
+            if (Character.isWhitespace(cp)) {
+                inWord = false;
+                pendingSpace = preview.length() > 0;
+                continue;
+            }
+            if (!inWord && Character.isLetterOrDigit(cp)) {
+                inWord = true;
+                words++;
+            }
+
+            if (!previewFull) {
+                // Newlines and runs of spaces collapse to one space
+                if (pendingSpace) {
+                    preview.append(' ');
+                    pendingSpace = false;
+                }
+                if (preview.length() + Character.charCount(cp) > PREVIEW_LENGTH) {
+                    previewFull = true;
+                } else {
+                    preview.appendCodePoint(cp);
+                }
+            }
+        }
+
+        return new EntryStats(previewFull ? trimToWord(preview) + "…" : preview.toString(), words, chars);
+    }
+
+    /** Cuts a truncated preview back to the last whole word, unless that would leave too little */
+    private static String trimToWord(StringBuilder preview) {
+        int space = preview.lastIndexOf(" ");
+        return space > PREVIEW_LENGTH / 2 ? preview.substring(0, space) : preview.toString();
+    }
+}
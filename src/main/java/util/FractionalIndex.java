@@ -0,0 +1,199 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sort keys that order siblings by plain string comparison and always leave room between
+ * two keys, so a block can be inserted or moved by writing only its own key.
+ *
+ * A key is a base-62 fraction: "V" is 0.5, "F" is about 0.25, "V7" is a little more than "V".
+ * Keys never end in the zero digit, otherwise there would be no key just before them.
+ * Repeated inserts at the same spot make keys longer (about one character per six inserts);
+ * appending after the last key stays short.
+ * {@link #spread} hands out fresh short keys when a list is rebalanced.
+ */
+public class FractionalIndex {
+    /** Digits in ASCII order, so String.compareTo and SQLite's default collation agree */
+    public static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = DIGITS.length();
+    private static final char ZERO = DIGITS.charAt(0);
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private FractionalIndex() { }
+
+    /**
+     * Returns a key that sorts strictly between two keys.
+     *
+     * @param before The key to sort after, or null for the start of the list
+     * @param after The key to sort before, or null for the end of the list
+     * @return The new key
+     * @throws IllegalArgumentException if before is not less than after, or a key is malformed
+     */
+    public static String between(String before, String after) {
+        String a = before == null ? "" : before;
+        if (after != null && a.compareTo(after) >= 0) {
+            throw new IllegalArgumentException("Sort keys out of order: " + before + " >= " + after);
+        }
+        validate(a);
+        if (after == null) {
+            return increment(a);
+        }
+        validate(after);
+        return midpoint(a, after);
+    }
+
+    /**
+     * Returns keys for every position of a list, reusing as many of the current keys as possible.
+     * The longest run of keys that is already in order is kept; every other position gets a new key
+     * between its kept neighbours. After moving one item, only that item's key changes.
+     *
+     * @param current The current keys in the desired order; null for items that have none yet
+     * @return Keys in strictly increasing order, the same size as the input
+     */
+    public static List<String> reorder(List<String> current) {
+        int n = current.size();
+        boolean[] keep = longestIncreasingRun(current);
+
+        List<String> keys = new ArrayList<>(current);
+        String previous = null;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                previous = keys.get(i);
+                continue;
+            }
+            String next = null;
+            for (int j = i + 1; j < n; j++) {
+                if (keep[j]) {
+                    next = keys.get(j);
+                    break;
+                }
+            }
+            previous = between(previous, next);
+            keys.set(i, previous);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns n evenly spaced keys, all of the same short length.
+     *
+     * @param n The number of keys
+     * @return Keys in strictly increasing order
+     */
+    public static List<String> spread(int n) {
+        int length = 1;
+        long slots = BASE;
+        while (slots <= n) {
+            length++;
+            slots *= BASE;
+        }
+
+        List<String> keys = new ArrayList<>(n);
+        char[] digits = new char[length];
+        for (int i = 0; i < n; i++) {
+            long value = (i + 1) * slots / (n + 1);
+            for (int d = length - 1; d >= 0; d--) {
+                digits[d] = DIGITS.charAt((int) (value % BASE));
+                value /= BASE;
+            }
+            int end = length;
+            while (end > 1 && digits[end - 1] == ZERO) end--;
+            keys.add(new String(digits, 0, end));
+        }
+        return keys;
+    }
+
+    /**
+     * Helper method for {@link #between}: a key after a, with nothing to stay below.
+     * Adding one to the first digit that isn't the largest keeps keys short when blocks are
+     * appended one after another (halving the remaining space would add a digit every few appends).
+     */
+    private static String increment(String a) {
+        for (int i = 0; i < a.length(); i++) {
+            int digit = DIGITS.indexOf(a.charAt(i));
+            if (digit < BASE - 1) {
+                return a.substring(0, i) + DIGITS.charAt(digit + 1);
+            }
+        }
+        return a + midpoint("", null);
+    }
+
+    /** Helper method for {@link #between}: a and b have no trailing zeros and a < b (b null means 1.0) */
+    private static String midpoint(String a, String b) {
+        if (b != null) {
+            // Skip the common prefix, reading a missing digit of a as zero
+            int n = 0;
+            while (n < b.length() && (n < a.length() ? a.charAt(n) : ZERO) == b.charAt(n)) {
+                n++;
+            }
+            if (n > 0) {
+                return b.substring(0, n) + midpoint(n < a.length() ? a.substring(n) : "", b.substring(n));
+            }
+        }
+
+        int digitA = a.isEmpty() ? 0 : DIGITS.indexOf(a.charAt(0));
+        int digitB = b == null ? BASE : DIGITS.indexOf(b.charAt(0));
+        if (digitB - digitA > 1) {
+            return String.valueOf(DIGITS.charAt(Math.round(0.5f * (digitA + digitB))));
+        }
+        // The first digits are adjacent
+        if (b != null && b.length() > 1) {
+            return b.substring(0, 1);
+        }
+        return DIGITS.charAt(digitA) + midpoint(a.isEmpty() ? "" : a.substring(1), null);
+    }
+
+    private static void validate(String key) {
+        if (!key.isEmpty() && key.charAt(key.length() - 1) == ZERO) {
+            throw new IllegalArgumentException("Sort key ends in zero: " + key);
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (DIGITS.indexOf(key.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Invalid sort key: " + key);
+            }
+        }
+    }
+
+    /**
+     * Helper method for {@link #reorder}: marks a longest strictly increasing subsequence of the
+     * non-null, well-formed keys (patience sorting, O(n log n)).
+     */
+    private static boolean[] longestIncreasingRun(List<String> keys) {
+        int n = keys.size();
+        int[] tails = new int[n];      // tails[k] = index of the smallest tail of a run of length k + 1
+        int[] previous = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            String key = keys.get(i);
+            if (!isValid(key)) continue;
+
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys.get(tails[mid]).compareTo(key) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) length++;
+        }
+
+        boolean[] keep = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            keep[i] = true;
+        }
+        return keep;
+    }
+
+    private static boolean isValid(String key) {
+        if (key == null || key.isEmpty()) return false;
+        try {
+            validate(key);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package util;
+
+import model.JournalEntry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A structure derived from entries that {@link IndexingService} keeps up to date, e.g. a search index.
+ *
+ * Work is split in two so a rebuild can use every core while SQLite sees a single writer:
+ * {@link #analyze} runs on any pool thread without touching the database, and
+ * {@link #store}, {@link #remove} and {@link #clear} run on the service's connection inside its transaction.
+ *
+ * @param <T> What analysing one entry produces
+ */
+public interface Indexer<T> {
+
+    /** Unique name, the key of the indexer's progress in index_state */
+    String name();
+
+    /** Format of the stored data; change it and every user's data is cleared and rebuilt */
+    int version();
+
+    /**
+     * Computes an entry's index data. Called concurrently for different entries.
+     *
+     * @param entry The entry with its full, decrypted content
+     * @return The data to store, or null to leave the entry out of the index
+     */
+    T analyze(JournalEntry entry);
+
+    /**
+     * Writes an entry's data, replacing what was stored for it before.
+     *
+     * @param seq The change feed position the entry was read at
+     * @param data What {@link #analyze} returned, possibly null
+     */
+    void store(Connection conn, int entryId, long seq, T data) throws SQLException;
+
+    /** Forgets a deleted entry */
+    void remove(Connection conn, int entryId) throws SQLException;
+
+    /** Forgets every entry of a user, before a rebuild */
+    void clear(Connection conn, String userId) throws SQLException;
+}
@@ -0,0 +1,416 @@
+package util;
+
+import DAO.IndexDAO;
+import DAO.JournalDAO;
+import DAO.SyncDAO;
+import DAO.SyncDAO.Change;
+import model.JournalEntry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the registered {@link Indexer}s up to date for the users who are logged in, off the UI thread.
+ *
+ * Each indexer's progress per user is a position in the change feed (sync_rows, see SyncDAO), which
+ * triggers keep current whoever makes the change: this app, the API server, the CLI or a sync. A pass
+ * indexes the user's entries that changed since that position. The first pass for a user, and the first
+ * after an indexer's version changed, clears the indexer's data and indexes every entry instead.
+ *
+ * Passes run on the "indexer" thread after an entry is saved or deleted (see {@link EntryEventBus}),
+ * and every minute to pick up changes made by other processes. Entries are read and analysed in
+ * parallel on a fork-join pool, one connection per task, while the pass thread writes the results
+ * in one transaction per batch, so SQLite only ever sees one indexing writer.
+ */
+public class IndexingService {
+    private static final int BATCH_SIZE = 64;
+    private static final long POLL_SECONDS = 60;
+
+    /**
+     * What the service is doing and how fast.
+     *
+     * @param rebuilding A full rebuild is running
+     * @param done Entries processed by the current (or last) pass
+     * @param total Entries the current (or last) pass has to process
+     * @param indexed Entries processed since start-up
+     * @param entriesPerSecond Entries processed per second of pass time since start-up
+     * @param pendingEvents Saves and deletes not yet covered by a finished pass
+     * @param lagMillis Age of the oldest of those, or 0 when there are none
+     */
+    public record Metrics(boolean rebuilding, long done, long total, long indexed, double entriesPerSecond,
+                          long pendingEvents, long lagMillis) { }
+
+    /** An entry read and analysed by every indexer of a pass; data is null for a deleted entry */
+    private record Analyzed(int entryId, long seq, Object[] data) { }
+
+    private static final List<Indexer<?>> indexers = new CopyOnWriteArrayList<>();
+    private static final Set<String> users = ConcurrentHashMap.newKeySet();
+    private static final Object passLock = new Object();
+    private static final AtomicBoolean scheduled = new AtomicBoolean();
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), p -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        thread.setName("index-worker-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    private static ScheduledExecutorService executor;
+    private static Runnable unsubscribe;
+
+    private static volatile boolean rebuilding;
+    private static final AtomicLong done = new AtomicLong();
+    private static volatile long total;
+    private static final AtomicLong indexed = new AtomicLong();
+    private static final AtomicLong busyNanos = new AtomicLong();
+    private static final AtomicLong pendingEvents = new AtomicLong();
+    private static final AtomicLong pendingSince = new AtomicLong();
+
+    static {
+        register(new SearchIndexer());
+    }
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private IndexingService() { }
+
+    /**
+     * Adds an indexer. Its data is built on the next pass for each logged-in user.
+     */
+    public static void register(Indexer<?> indexer) {
+        indexers.add(indexer);
+        schedule();
+    }
+
+    /**
+     * Starts keeping a user's indexes up to date, e.g. after login. Their key must be unlocked.
+     *
+     * @param userId The user
+     */
+    public static synchronized void open(String userId) {
+        users.add(userId);
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "indexer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(IndexingService::schedule, POLL_SECONDS, POLL_SECONDS, TimeUnit.SECONDS);
+            unsubscribe = EntryEventBus.onEntryChanged(entryId -> {
+                pendingEvents.incrementAndGet();
+                pendingSince.compareAndSet(0, System.nanoTime());
+                schedule();
+            });
+        }
+        schedule();
+    }
+
+    /**
+     * Stops updating a user's indexes, e.g. when their key is locked; the service stops with the last user.
+     * What is indexed stays, and the next {@link #open} continues from there.
+     */
+    public static synchronized void close(String userId) {
+        users.remove(userId);
+        if (users.isEmpty() && executor != null) {
+            unsubscribe.run();
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /** Helper method to queue one pass over all open users, unless one is already queued */
+    private static synchronized void schedule() {
+        if (executor == null || !scheduled.compareAndSet(false, true)) return;
+        executor.execute(() -> {
+            scheduled.set(false);
+            long covers = pendingEvents.get();
+            long since = pendingSince.getAndSet(0);
+            boolean ok = true;
+            for (String userId : users) {
+                ok &= runOnce(userId);
+            }
+            if (ok) {
+                pendingEvents.addAndGet(-covers);
+            } else {
+                pendingSince.compareAndSet(0, since);
+            }
+        });
+    }
+
+    /**
+     * Brings every indexer up to date for one user, on the calling thread.
+     *
+     * @param userId The user; their key must be unlocked for their encrypted entries to be read
+     * @return false if the pass failed and will be repeated
+     */
+    public static boolean runOnce(String userId) {
+        synchronized (passLock) {
+            long start = System.nanoTime();
+            try (Connection conn = DBConnection.openConnection()) {
+                return runPass(conn, userId);
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Indexing failed for " + userId + ": " + e.getMessage());
+                return false;
+            } finally {
+                rebuilding = false;
+                // Passes that found nothing to do don't count towards throughput
+                if (done.get() > 0) {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    /** The current state of the service */
+    public static Metrics getMetrics() {
+        long busy = busyNanos.get();
+        long since = pendingSince.get();
+        return new Metrics(rebuilding, done.get(), total, indexed.get(),
+                busy == 0 ? 0 : indexed.get() * 1e9 / busy, pendingEvents.get(),
+                since == 0 ? 0 : (System.nanoTime() - since) / 1_000_000);
+    }
+
+    /** Helper method for {@link #runOnce}: one pass, rebuilding indexers that are new or changed version */
+    private static boolean runPass(Connection conn, String userId) throws SQLException {
+        IndexDAO indexDAO = new IndexDAO(conn);
+        long upTo = new SyncDAO(conn).getSeq();
+
+        // Indexers that are at the same position are brought forward together; 0 means rebuild
+        Map<Long, List<Indexer<?>>> byPosition = new LinkedHashMap<>();
+        for (Indexer<?> indexer : indexers) {
+            IndexDAO.State state = indexDAO.getState(indexer.name(), userId);
+            boolean rebuild = state == null || state.version() != indexer.version();
+            if (rebuild) {
+                inTransaction(conn, () -> indexer.clear(conn, userId));
+            }
+            long after = rebuild ? 0 : state.seq();
+            if (after < upTo) {
+                byPosition.computeIfAbsent(after, k -> new ArrayList<>()).add(indexer);
+            }
+        }
+
+        done.set(0);
+        total = 0;
+        List<List<Change>> work = new ArrayList<>();
+        for (Map.Entry<Long, List<Indexer<?>>> group : byPosition.entrySet()) {
+            boolean rebuild = group.getKey() == 0;
+            List<Change> changes = indexDAO.getEntryChanges(userId, group.getKey(), upTo, rebuild);
+            rebuilding |= rebuild;
+            total += changes.size();
+            work.add(changes);
+        }
+
+        int g = 0;
+        for (Map.Entry<Long, List<Indexer<?>>> group : byPosition.entrySet()) {
+            List<Indexer<?>> members = group.getValue();
+            boolean complete = process(conn, work.get(g++), members);
+            // If the user was locked meanwhile, their entries couldn't be read; the next pass repeats this
+            if (!complete || KeyRing.forUser(userId) == null) return false;
+            for (Indexer<?> indexer : members) {
+                indexDAO.setState(indexer.name(), userId, indexer.version(), upTo);
+            }
+        }
+        if (total > 0) {
+            System.out.println("Indexed " + total + " changed entries for " + userId);
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to analyse entries on the pool while writing finished batches here.
+     *
+     * @return false if a worker couldn't open the database
+     */
+    private static boolean process(Connection conn, List<Change> changes, List<Indexer<?>> group) throws SQLException {
+        if (changes.isEmpty()) return true;
+        BlockingQueue<List<Analyzed>> batches = new ArrayBlockingQueue<>(4);
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ForkJoinTask<Void> task = pool.submit(new AnalyzeTask(changes, 0, changes.size(), group, batches, failed, cancelled));
+
+        try {
+            while (true) {
+                List<Analyzed> batch = batches.poll(100, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    inTransaction(conn, () -> write(conn, batch, group));
+                    done.addAndGet(batch.size());
+                    indexed.addAndGet(batch.size());
+                } else if (task.isDone() && batches.isEmpty()) {
+                    break;
+                }
+            }
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Indexing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Indexing failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Let the workers finish without anyone taking their batches
+            cancelled.set(true);
+            batches.clear();
+        }
+        return !failed.get();
+    }
+
+    /** Helper method to write one batch through every indexer of the group */
+    private static void write(Connection conn, List<Analyzed> batch, List<Indexer<?>> group) throws SQLException {
+        for (Analyzed analyzed : batch) {
+            for (int i = 0; i < group.size(); i++) {
+                if (analyzed.data() == null) {
+                    group.get(i).remove(conn, analyzed.entryId());
+                } else {
+                    store(group.get(i), conn, analyzed, analyzed.data()[i]);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void store(Indexer<T> indexer, Connection conn, Analyzed analyzed, Object data) throws SQLException {
+        indexer.store(conn, analyzed.entryId(), analyzed.seq(), (T) data);
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /** Helper method: the usual commit-or-rollback around some writes */
+    private static void inTransaction(Connection conn, SqlWork work) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            work.run();
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Splits a list of changes until a piece fits in one batch, then reads and analyses that piece
+     * on its own connection and hands the result to the writer.
+     * Tasks only live inside the pool and are never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static final class AnalyzeTask extends RecursiveAction {
+        private final List<Change> changes;
+        private final int from;
+        private final int to;
+        private final List<Indexer<?>> group;
+        private final BlockingQueue<List<Analyzed>> batches;
+        private final AtomicBoolean failed;
+        private final AtomicBoolean cancelled;
+
+        AnalyzeTask(List<Change> changes, int from, int to, List<Indexer<?>> group,
+                    BlockingQueue<List<Analyzed>> batches, AtomicBoolean failed, AtomicBoolean cancelled) {
+            this.changes = changes;
+            this.from = from;
+            this.to = to;
+            this.group = group;
+            this.batches = batches;
+            this.failed = failed;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.get()) return;
+            if (to - from > BATCH_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new AnalyzeTask(changes, from, mid, group, batches, failed, cancelled),
+                        new AnalyzeTask(changes, mid, to, group, batches, failed, cancelled));
+                return;
+            }
+
+            List<Analyzed> batch = new ArrayList<>(to - from);
+            try (Connection conn = DBConnection.openConnection()) {
+                JournalDAO journalDAO = new JournalDAO(conn);
+                for (Change change : changes.subList(from, to)) {
+                    batch.add(analyze(journalDAO, change));
+                }
+            } catch (SQLException e) {
+                System.err.println("Index worker could not open the database: " + e.getMessage());
+                failed.set(true);
+                return;
+            }
+
+            // The writer is slower than the readers; wait for room rather than piling up results,
+            // telling the pool this worker is blocked so it can keep the others busy meanwhile
+            try {
+                ForkJoinPool.managedBlock(new QueueBlocker(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Waits until a batch is in the writer's queue or the pass is cancelled */
+        private final class QueueBlocker implements ForkJoinPool.ManagedBlocker {
+            private final List<Analyzed> batch;
+            private boolean queued;
+
+            QueueBlocker(List<Analyzed> batch) {
+                this.batch = batch;
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!isReleasable()) {
+                    queued = batches.offer(batch, 100, TimeUnit.MILLISECONDS);
+                }
+                return isReleasable();
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!queued && !cancelled.get()) {
+                    queued = batches.offer(batch);
+                }
+                return queued || cancelled.get();
+            }
+        }
+
+        private Analyzed analyze(JournalDAO journalDAO, Change change) {
+            int entryId = change.localId();
+            if (change.deleted()) {
+                return new Analyzed(entryId, change.seq(), null);
+            }
+            try {
+                JournalEntry entry = journalDAO.getEntryById(entryId);
+                if (entry == null) {
+                    // Archived since: the restore puts it back into the feed
+                    return new Analyzed(entryId, change.seq(), null);
+                }
+                Object[] data = new Object[group.size()];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = group.get(i).analyze(entry);
+                }
+                return new Analyzed(entryId, change.seq(), data);
+            } catch (SQLException | RuntimeException e) {
+                // Leave it out of the index; searches then read it the slow way
+                System.err.println("Could not index entry " + entryId + ": " + e.getMessage());
+                return new Analyzed(entryId, change.seq(), null);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the unlocked {@link ContentCipher} of each logged-in user.
+ * DAOs ask the key ring for the cipher of the row's owner: when the owner is
+ * unlocked their text is encrypted on write and decrypted on read, otherwise
+ * rows are written as plaintext, as before encryption existed.
+ */
+public class KeyRing {
+    private static final Map<String, ContentCipher> ciphers = new ConcurrentHashMap<>();
+
+    // Entry owners never change, so block DAOs can resolve them once per entry.
+    // Keyed by database as well, since a sync has two journals open whose entry IDs overlap
+    private static final Map<String, Map<Integer, String>> entryOwners = new ConcurrentHashMap<>();
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private KeyRing() { }
+
+    /**
+     * Caches a user's cipher after login.
+     *
+     * @param userId The user the cipher belongs to
+     * @param cipher The derived cipher
+     */
+    public static void unlock(String userId, ContentCipher cipher) {
+        ciphers.put(userId, cipher);
+    }
+
+    /**
+     * Forgets a user's cipher, e.g. on logout.
+     *
+     * @param userId The user to lock
+     */
+    public static void lock(String userId) {
+        ciphers.remove(userId);
+    }
+
+    /**
+     * Gets a user's cipher.
+     *
+     * @param userId The user
+     * @return The cipher, or null if the user is not unlocked
+     */
+    public static ContentCipher forUser(String userId) {
+        return userId == null ? null : ciphers.get(userId);
+    }
+
+    /**
+     * Gets the cipher of the user who owns an entry.
+     *
+     * @param conn The connection to look the owner up with
+     * @param entryId The entry
+     * @return The owner's cipher, or null if they are not unlocked
+     */
+    public static ContentCipher forEntry(Connection conn, int entryId) throws SQLException {
+        if (ciphers.isEmpty()) return null;
+        Map<Integer, String> owners = entryOwners.computeIfAbsent(conn.getMetaData().getURL(), url -> new ConcurrentHashMap<>());
+        String owner = owners.get(entryId);
+        if (owner == null) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT user_id FROM journal_entries WHERE entry_id=?")) {
+                ps.setInt(1, entryId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return null;
+                    owner = rs.getString(1);
+                }
+            }
+            owners.put(entryId, owner);
+        }
+        return forUser(owner);
+    }
+
+    /**
+     * Encrypts with the cipher if there is one.
+     */
+    public static String seal(ContentCipher cipher, String value) {
+        return cipher == null ? value : cipher.encrypt(value);
+    }
+
+    /**
+     * Decrypts with the cipher if the value is encrypted.
+     *
+     * @throws SQLException if the value is encrypted but the owner is not unlocked
+     */
+    public static String open(ContentCipher cipher, String stored) throws SQLException {
+        if (!ContentCipher.isEncrypted(stored)) return stored;
+        if (cipher == null) {
+            throw new SQLException("Content is encrypted; log in as its owner to read it");
+        }
+        try {
+            return cipher.decrypt(stored);
+        } catch (IllegalStateException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entry text parsed as the editor's light Markdown, kept up to date edit by edit.
+ *
+ * Each line is one block: a heading ("# ".."### "), a bullet ("• ", "- ", "* "), a numbered
+ * item ("1. "), a blank line or a paragraph line. Inside a block, text between ** is bold,
+ * between * italic and between _ underlined, the markers the editor's format buttons insert.
+ * {@link #apply} re-parses only the lines an edit touched and returns what changed as a
+ * {@link Patch}, so the preview can be updated without looking at the rest of the text.
+ *
+ * Not thread-safe; {@link MarkdownPreview} uses it on its own background thread.
+ */
+public class MarkdownDocument {
+
+    public enum Kind { PARAGRAPH, HEADING, BULLET, NUMBERED, BLANK }
+
+    /** A run of text with one style */
+    public record Span(String text, boolean bold, boolean italic, boolean underline) { }
+
+    /**
+     * One parsed line. Blocks are compared by value, so an unchanged line keeps its place in the preview.
+     *
+     * @param marker "h1".."h3" for a heading, the number and dot of a numbered item, "•" for a bullet, else ""
+     */
+    public record Block(Kind kind, String marker, List<Span> spans) { }
+
+    /** Replace removed blocks from index on with blocks */
+    public record Patch(int index, int removed, List<Block> blocks) { }
+
+    private static final Block BLANK = new Block(Kind.BLANK, "", List.of());
+
+    private final List<String> lines = new ArrayList<>();
+    private final List<Block> blocks = new ArrayList<>();
+
+    // The line the last edit was on, and its offset in the text; edits are usually near the last one
+    private int cachedLine;
+    private int cachedStart;
+
+    public MarkdownDocument() {
+        lines.add("");
+        blocks.add(BLANK);
+    }
+
+    /** The parsed blocks, one per line */
+    public List<Block> getBlocks() {
+        return List.copyOf(blocks);
+    }
+
+    /**
+     * Applies one edit of the text and re-parses the lines it touched.
+     *
+     * @return What changed in the block list, or null if no block changed
+     * @throws IndexOutOfBoundsException If the edit doesn't fit the text as edited so far
+     */
+    public Patch apply(PieceTable.Edit edit) {
+        int first = lineAt(edit.offset());
+        int firstStart = cachedStart;
+        int last = first;
+        int lastStart = firstStart;
+        int end = edit.offset() + edit.removed();
+        while (end > lastStart + lines.get(last).length()) {
+            lastStart += lines.get(last).length() + 1;
+            last++;
+        }
+
+        String joined = lines.get(first).substring(0, edit.offset() - firstStart)
+                + edit.inserted() + lines.get(last).substring(end - lastStart);
+        List<String> newLines = split(joined);
+        List<Block> newBlocks = new ArrayList<>(newLines.size());
+        for (String line : newLines) {
+            newBlocks.add(parse(line));
+        }
+
+        // Leave out the blocks that came out the same at both ends, e.g. the lines around a pasted one
+        int oldCount = last - first + 1;
+        int newCount = newBlocks.size();
+        int prefix = 0;
+        while (prefix < Math.min(oldCount, newCount) && blocks.get(first + prefix).equals(newBlocks.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < Math.min(oldCount, newCount) - prefix
+                && blocks.get(last - suffix).equals(newBlocks.get(newCount - 1 - suffix))) {
+            suffix++;
+        }
+
+        lines.subList(first, last + 1).clear();
+        lines.addAll(first, newLines);
+        blocks.subList(first, last + 1).clear();
+        blocks.addAll(first, newBlocks);
+        cachedLine = first;
+        cachedStart = firstStart;
+
+        if (oldCount == newCount && prefix + suffix == oldCount) return null;
+        return new Patch(first + prefix, oldCount - prefix - suffix,
+                List.copyOf(newBlocks.subList(prefix, newCount - suffix)));
+    }
+
+    /** Finds the line an offset is on, moving from the last one found, and caches it with its start */
+    private int lineAt(int offset) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException("Offset " + offset);
+        }
+        while (cachedLine > 0 && cachedStart > offset) {
+            cachedLine--;
+            cachedStart -= lines.get(cachedLine).length() + 1;
+        }
+        while (offset > cachedStart + lines.get(cachedLine).length()) {
+            cachedStart += lines.get(cachedLine).length() + 1;
+            cachedLine++;
+        }
+        return cachedLine;
+    }
+
+    private static List<String> split(String text) {
+        List<String> split = new ArrayList<>();
+        int start = 0;
+        for (int newline = text.indexOf('\n'); newline >= 0; newline = text.indexOf('\n', start)) {
+            split.add(text.substring(start, newline));
+            start = newline + 1;
+        }
+        split.add(text.substring(start));
+        return split;
+    }
+
+    /** Parses one line */
+    public static Block parse(String line) {
+        if (line.isBlank()) return BLANK;
+
+        int level = 0;
+        while (level < 3 && level < line.length() && line.charAt(level) == '#') level++;
+        if (level > 0 && line.startsWith(" ", level)) {
+            return new Block(Kind.HEADING, "h" + level, spans(line.substring(level + 1)));
+        }
+
+        if (line.startsWith("• ") || line.startsWith("- ") || line.startsWith("* ")) {
+            return new Block(Kind.BULLET, "•", spans(line.substring(2)));
+        }
+
+        int digits = 0;
+        while (digits < line.length() && Character.isDigit(line.charAt(digits))) digits++;
+        if (digits > 0 && line.startsWith(". ", digits)) {
+            return new Block(Kind.NUMBERED, line.substring(0, digits + 1), spans(line.substring(digits + 2)));
+        }
+
+        return new Block(Kind.PARAGRAPH, "", spans(line));
+    }
+
+    /** Splits a line's text into styled runs; a marker only opens a style if it is closed later on the line */
+    private static List<Span> spans(String text) {
+        List<Span> spans = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        boolean bold = false;
+        boolean italic = false;
+        boolean underline = false;
+
+        int i = 0;
+        while (i < text.length()) {
+            String marker = text.startsWith("**", i) ? "**"
+                    : text.charAt(i) == '*' ? "*"
+                    : text.charAt(i) == '_' ? "_" : null;
+            if (marker != null) {
+                boolean open = marker.equals("**") ? bold : marker.equals("*") ? italic : underline;
+                if (open || text.indexOf(marker, i + marker.length()) > i + marker.length()) {
+                    if (run.length() > 0) {
+                        spans.add(new Span(run.toString(), bold, italic, underline));
+                        run.setLength(0);
+                    }
+                    switch (marker) {
+                        case "**" -> bold = !bold;
+                        case "*" -> italic = !italic;
+                        default -> underline = !underline;
+                    }
+                    i += marker.length();
+                    continue;
+                }
+            }
+            run.append(text.charAt(i));
+            i++;
+        }
+        if (run.length() > 0) {
+            spans.add(new Span(run.toString(), bold, italic, underline));
+        }
+        return spans;
+    }
+}
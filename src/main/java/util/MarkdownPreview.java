@@ -0,0 +1,139 @@
+package util;
+
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import util.MarkdownDocument.Block;
+import util.MarkdownDocument.Patch;
+import util.MarkdownDocument.Span;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Live preview of the entry text's Markdown (see {@link MarkdownDocument}), one list row per line.
+ *
+ * Typing only queues the edit: a background thread applies queued edits to its {@link MarkdownDocument},
+ * which re-parses just the touched lines, and hands the changed blocks back to the JavaFX thread. There
+ * the list's items are patched in place, so unchanged lines keep their cells, and like any ListView
+ * only the rows on screen have nodes.
+ */
+public final class MarkdownPreview extends ListView<Block> {
+    private final MarkdownDocument markdown = new MarkdownDocument();
+    private final ConcurrentLinkedQueue<PieceTable.Edit> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private ExecutorService worker;
+
+    public MarkdownPreview() {
+        getStyleClass().add("markdown-preview");
+        setFocusTraversable(false);
+        setCellFactory(list -> new PreviewCell());
+        getItems().setAll(markdown.getBlocks());
+
+        // The thread stops when the editor is left and starts again with the next edit
+        sceneProperty().addListener((obs, old, scene) -> {
+            if (scene == null && worker != null) {
+                worker.shutdown();
+                worker = null;
+            }
+        });
+    }
+
+    /** Follows a document's edits from now on; attach before the text is loaded */
+    public void attach(PieceTable document) {
+        document.addListener(this::queue);
+    }
+
+    private void queue(PieceTable.Edit edit) {
+        pending.add(edit);
+        if (scheduled.compareAndSet(false, true)) {
+            if (worker == null) {
+                worker = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "markdown-preview");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            worker.execute(this::render);
+        }
+    }
+
+    /** Background thread: parses every queued edit and sends the changes to the list in one go */
+    private void render() {
+        scheduled.set(false);
+        List<Patch> patches = new ArrayList<>();
+        for (PieceTable.Edit edit = pending.poll(); edit != null; edit = pending.poll()) {
+            try {
+                Patch patch = markdown.apply(edit);
+                if (patch != null) patches.add(patch);
+            } catch (RuntimeException e) {
+                System.err.println("Markdown preview out of step with the text: " + e.getMessage());
+            }
+        }
+        if (!patches.isEmpty()) {
+            Platform.runLater(() -> patches.forEach(this::patch));
+        }
+    }
+
+    /** Replaces the changed blocks, reusing the rows that stay */
+    private void patch(Patch patch) {
+        List<Block> items = getItems();
+        int same = Math.min(patch.removed(), patch.blocks().size());
+        for (int i = 0; i < same; i++) {
+            items.set(patch.index() + i, patch.blocks().get(i));
+        }
+        if (patch.removed() > same) {
+            getItems().remove(patch.index() + same, patch.index() + patch.removed());
+        } else if (patch.blocks().size() > same) {
+            items.addAll(patch.index() + same, patch.blocks().subList(same, patch.blocks().size()));
+        }
+    }
+
+    /** Shows a block as wrapped, styled text */
+    private static class PreviewCell extends ListCell<Block> {
+        private final TextFlow flow = new TextFlow();
+
+        PreviewCell() {
+            setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+            flow.setMinWidth(0);
+            flow.prefWidthProperty().bind(Bindings.createDoubleBinding(
+                    () -> Math.max(0, getWidth() - snappedLeftInset() - snappedRightInset()),
+                    widthProperty(), paddingProperty()));
+        }
+
+        @Override
+        protected void updateItem(Block block, boolean empty) {
+            super.updateItem(block, empty);
+            if (empty || block == null) {
+                setGraphic(null);
+                return;
+            }
+
+            flow.getStyleClass().setAll("md-" + block.kind().name().toLowerCase());
+            if (block.kind() == MarkdownDocument.Kind.HEADING) {
+                flow.getStyleClass().add("md-" + block.marker());
+            }
+            List<Text> texts = new ArrayList<>(block.spans().size() + 1);
+            if (!block.marker().isEmpty() && block.kind() != MarkdownDocument.Kind.HEADING) {
+                texts.add(new Text(block.marker() + " "));
+            }
+            for (Span span : block.spans()) {
+                Text text = new Text(span.text());
+                if (span.bold()) text.getStyleClass().add("md-bold");
+                if (span.italic()) text.getStyleClass().add("md-italic");
+                if (span.underline()) text.getStyleClass().add("md-underline");
+                texts.add(text);
+            }
+            flow.getChildren().setAll(texts);
+            setGraphic(flow);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An editable text stored as a piece table: the text it was loaded with, an append-only buffer of
+ * everything typed since, and a list of pieces, each a run of one of the two. Typing appends to the
+ * buffer and splits or extends a piece, so an edit costs about the length of the edit whatever the
+ * size of the text; only {@link #toString} copies the whole text.
+ *
+ * Every change is reported to the listeners as an {@link Edit}, so they can work on what changed
+ * instead of comparing whole texts. Not thread-safe; the editor uses it on the JavaFX thread.
+ */
+public class PieceTable implements CharSequence {
+
+    /**
+     * One change: removed characters were replaced by inserted ones.
+     *
+     * @param offset Where the change starts
+     * @param removed How many characters were there before
+     * @param inserted What is there now
+     */
+    public record Edit(int offset, int removed, String inserted) { }
+
+    /** A run of characters from the original text or from the buffer */
+    private record Piece(boolean added, int start, int length) { }
+
+    // Beyond this many pieces, or when the buffer is mostly deleted text, the text is copied into a single piece
+    private static final int MAX_PIECES = 4096;
+    private static final int MIN_COMPACT_BUFFER = 1 << 20;
+
+    private String original = "";
+    private final StringBuilder buffer = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private int length;
+    private final List<Consumer<Edit>> listeners = new ArrayList<>();
+
+    // The piece the last edit or read was in, and its offset in the text; edits and reads are usually near the last
+    private int cachedIndex;
+    private int cachedStart;
+
+    public PieceTable() { }
+
+    public PieceTable(String text) {
+        reset(text);
+    }
+
+    public void addListener(Consumer<Edit> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Edit> listener) {
+        listeners.remove(listener);
+    }
+
+    /** Replaces the whole text, e.g. with another entry's */
+    public void load(String text) {
+        int removed = length;
+        reset(text);
+        fire(new Edit(0, removed, original));
+    }
+
+    public void insert(int offset, String text) {
+        replace(offset, offset, text);
+    }
+
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * Replaces a range of the text.
+     *
+     * @param start The first character replaced
+     * @param end The character after the last one replaced; equal to start for a plain insert
+     * @param text The new text (can be empty)
+     * @throws IndexOutOfBoundsException If the range is not within the text
+     */
+    public void replace(int start, int end, String text) {
+        if (start < 0 || end < start || end > length) {
+            throw new IndexOutOfBoundsException("Range " + start + ".." + end + " outside 0.." + length);
+        }
+        String inserted = text == null ? "" : text;
+        if (start == end && inserted.isEmpty()) return;
+
+        remove(start, end - start);
+        add(start, inserted);
+        if (pieces.size() > MAX_PIECES || buffer.length() > Math.max(MIN_COMPACT_BUFFER, 2 * length)) {
+            reset(toString());
+        }
+        fire(new Edit(start, end - start, inserted));
+    }
+
+    /**
+     * The last occurrence of a character at or before an offset, looking backwards only as far as needed.
+     *
+     * @return Its offset, or -1 if there is none
+     */
+    public int lastIndexOf(char c, int from) {
+        if (from >= length) from = length - 1;
+        if (from < 0) return -1;
+        int i = find(from);
+        int pieceStart = cachedStart;
+        int within = from - pieceStart;
+        for (; i >= 0; i--) {
+            Piece piece = pieces.get(i);
+            CharSequence source = sourceOf(piece);
+            for (int j = within; j >= 0; j--) {
+                if (source.charAt(piece.start() + j) == c) {
+                    return pieceStart + j;
+                }
+            }
+            if (i > 0) {
+                pieceStart -= pieces.get(i - 1).length();
+                within = pieces.get(i - 1).length() - 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside 0.." + length);
+        }
+        Piece piece = pieces.get(find(index));
+        return sourceOf(piece).charAt(piece.start() + index - cachedStart);
+    }
+
+    /** Copies a range of the text; costs the length of the range */
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end < start || end > length) {
+            throw new IndexOutOfBoundsException("Range " + start + ".." + end + " outside 0.." + length);
+        }
+        StringBuilder text = new StringBuilder(end - start);
+        int offset = start;
+        int i = find(start);
+        int pieceStart = cachedStart;
+        while (offset < end) {
+            Piece piece = pieces.get(i);
+            int from = offset - pieceStart;
+            int to = Math.min(piece.length(), end - pieceStart);
+            text.append(sourceOf(piece), piece.start() + from, piece.start() + to);
+            offset = pieceStart + to;
+            pieceStart += piece.length();
+            i++;
+        }
+        return text.toString();
+    }
+
+    /** The whole text; costs its length */
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+    private void reset(String text) {
+        original = text == null ? "" : text;
+        buffer.setLength(0);
+        pieces.clear();
+        if (!original.isEmpty()) {
+            pieces.add(new Piece(false, 0, original.length()));
+        }
+        length = original.length();
+        cachedIndex = 0;
+        cachedStart = 0;
+    }
+
+    private void fire(Edit edit) {
+        for (Consumer<Edit> listener : List.copyOf(listeners)) {
+            listener.accept(edit);
+        }
+    }
+
+    private CharSequence sourceOf(Piece piece) {
+        return piece.added() ? buffer : original;
+    }
+
+    /**
+     * Finds the piece an offset is in, starting from the last one found, and caches it with its start.
+     *
+     * @return Its index, or the number of pieces if the offset is the end of the text
+     */
+    private int find(int offset) {
+        int i = Math.min(cachedIndex, pieces.size());
+        int start = i == cachedIndex ? cachedStart : length;
+        while (i > 0 && start > offset) {
+            i--;
+            start -= pieces.get(i).length();
+        }
+        while (i < pieces.size() && start + pieces.get(i).length() <= offset) {
+            start += pieces.get(i).length();
+            i++;
+        }
+        cachedIndex = i;
+        cachedStart = start;
+        return i;
+    }
+
+    private void add(int offset, String text) {
+        if (text.isEmpty()) return;
+        int bufferStart = buffer.length();
+        buffer.append(text);
+
+        int i = find(offset);
+        int within = offset - cachedStart;
+        if (within == 0 && i > 0) {
+            Piece previous = pieces.get(i - 1);
+            if (previous.added() && previous.start() + previous.length() == bufferStart) {
+                // Typing on at the end of the last insert: the piece grows
+                pieces.set(i - 1, new Piece(true, previous.start(), previous.length() + text.length()));
+                cachedStart += text.length();
+                length += text.length();
+                return;
+            }
+        }
+
+        Piece inserted = new Piece(true, bufferStart, text.length());
+        if (within == 0) {
+            pieces.add(i, inserted);
+        } else {
+            Piece piece = pieces.get(i);
+            pieces.set(i, new Piece(piece.added(), piece.start(), within));
+            pieces.add(i + 1, inserted);
+            pieces.add(i + 2, new Piece(piece.added(), piece.start() + within, piece.length() - within));
+        }
+        length += text.length();
+    }
+
+    private void remove(int offset, int count) {
+        if (count == 0) return;
+
+        int i = find(offset);
+        int within = offset - cachedStart;
+        if (within > 0) {
+            // Keep the part of the first piece before the range as a piece of its own
+            Piece piece = pieces.get(i);
+            pieces.set(i, new Piece(piece.added(), piece.start(), within));
+            pieces.add(i + 1, new Piece(piece.added(), piece.start() + within, piece.length() - within));
+            i++;
+        }
+
+        // Pieces wholly inside the range go; the last one may lose its beginning
+        int end = i;
+        int remaining = count;
+        while (remaining > 0 && pieces.get(end).length() <= remaining) {
+            remaining -= pieces.get(end).length();
+            end++;
+        }
+        if (remaining > 0) {
+            Piece piece = pieces.get(end);
+            pieces.set(end, new Piece(piece.added(), piece.start() + remaining, piece.length() - remaining));
+        }
+        pieces.subList(i, end).clear();
+
+        length -= count;
+        cachedIndex = i;
+        cachedStart = offset;
+    }
+}
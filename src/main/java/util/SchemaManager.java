@@ -0,0 +1,545 @@
+package util;
+
+import DAO.BlockDAO;
+import DAO.SyncDAO;
+import DAO.UsageDAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Creates the database tables and upgrades databases created by older versions of the app.
+ * Table creation is idempotent, and new columns are added to existing tables with ALTER TABLE,
+ * so this is safe to run on every start.
+ */
+public class SchemaManager {
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private SchemaManager() { }
+
+    /**
+     * Creates any missing tables and columns.
+     *
+     * @param conn The connection to initialize
+     */
+    public static void initialize(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            createTables(stmt);
+            migrate(conn, stmt);
+            createStatsTriggers(stmt);
+            createUsageTriggers(stmt);
+            createSyncTriggers(stmt);
+
+            // First start with usage counters: count everything once
+            boolean counted;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM user_usage LIMIT 1")) {
+                counted = rs.next();
+            }
+            if (!counted) {
+                new UsageDAO(conn).reconcile();
+            }
+
+            // First start with sync: put everything that exists into the change feed
+            boolean clockStarted;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sync_clock")) {
+                clockStarted = rs.next();
+            }
+            if (!clockStarted) {
+                new SyncDAO(conn).backfill();
+            }
+        }
+    }
+
+    /**
+     * Creates the tables if they don't exist.
+     */
+    private static void createTables(Statement stmt) throws SQLException {
+        // Create users table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS users (" +
+                        "  user_id TEXT PRIMARY KEY," +
+                        "  username TEXT NOT NULL UNIQUE," +
+                        "  password TEXT NOT NULL," +
+                        "  key_salt TEXT," +
+                        "  is_admin INTEGER NOT NULL DEFAULT 0," +
+                        "  quota_bytes   INTEGER," +
+                        "  quota_entries INTEGER" +
+                        ");"
+        );
+
+        // Create journal entries table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS journal_entries (" +
+                        "  entry_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "  user_id  TEXT NOT NULL," +
+                        "  title    TEXT," +
+                        "  content  TEXT," +
+                        "  date_created  TEXT," +
+                        "  date_modified TEXT," +
+                        "  tags     TEXT," +
+                        "  version  INTEGER NOT NULL DEFAULT 0," +
+                        "  chunked  INTEGER NOT NULL DEFAULT 0," +
+                        "  preview    TEXT," +
+                        "  word_count INTEGER NOT NULL DEFAULT 0," +
+                        "  char_count INTEGER NOT NULL DEFAULT 0," +
+                        "  todo_open  INTEGER NOT NULL DEFAULT 0," +
+                        "  todo_done  INTEGER NOT NULL DEFAULT 0," +
+                        "  FOREIGN KEY(user_id) REFERENCES users(user_id)" +
+                        ");"
+        );
+
+        // Create to-do items table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS todo_items (" +
+                        "  todo_id   INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "  entry_id  INTEGER NOT NULL," +
+                        "  description TEXT," +
+                        "  is_done   INTEGER," +
+                        "  version   INTEGER NOT NULL DEFAULT 0," +
+                        "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE" +
+                        ");"
+        );
+
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_todo_items_entry ON todo_items(entry_id);");
+
+        // Create toggle blocks table
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS toggle_blocks (" +
+                        "  toggle_id   INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "  entry_id    INTEGER NOT NULL," +
+                        "  title       TEXT," +
+                        "  content     TEXT," +
+                        "  is_expanded INTEGER," +
+                        "  version     INTEGER NOT NULL DEFAULT 0," +
+                        "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE" +
+                        ");"
+        );
+
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_toggle_blocks_entry ON toggle_blocks(entry_id);");
+
+        // Create blocks table: every block of an entry as one tree (to-do and toggle rows above are moved here)
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS blocks (" +
+                        "  block_id  INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "  entry_id  INTEGER NOT NULL," +
+                        "  parent_id INTEGER," +
+                        "  sort_key  TEXT," +
+                        "  type      TEXT NOT NULL," +
+                        "  payload   TEXT," +
+                        "  detail    TEXT," +
+                        "  state     INTEGER NOT NULL DEFAULT 0," +
+                        "  version   INTEGER NOT NULL DEFAULT 0," +
+                        "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE," +
+                        "  FOREIGN KEY(parent_id) REFERENCES blocks(block_id) ON DELETE CASCADE" +
+                        ");"
+        );
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_blocks_parent ON blocks(parent_id);");
+
+        // Create attachment tables (blobs are stored on disk by hash)
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS attachment_blobs (" +
+                        "  hash      TEXT PRIMARY KEY," +
+                        "  size      INTEGER NOT NULL," +
+                        "  ref_count INTEGER NOT NULL DEFAULT 0" +
+                        ");"
+        );
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS entry_attachments (" +
+                        "  attachment_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "  entry_id  INTEGER NOT NULL," +
+                        "  hash      TEXT NOT NULL," +
+                        "  file_name TEXT," +
+                        "  mime_type TEXT," +
+                        "  date_added TEXT," +
+                        "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE," +
+                        "  FOREIGN KEY(hash) REFERENCES attachment_blobs(hash)" +
+                        ");"
+        );
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_entry_attachments_entry ON entry_attachments(entry_id);");
+
+        // Chunked storage for very large entries: ordered index rows plus text stored once per hash
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS entry_chunks (" +
+                        "  entry_id    INTEGER NOT NULL," +
+                        "  chunk_index INTEGER NOT NULL," +
+                        "  chunk_hash  TEXT NOT NULL," +
+                        "  length      INTEGER NOT NULL," +
+                        "  PRIMARY KEY(entry_id, chunk_index)," +
+                        "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE" +
+                        ");"
+        );
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS chunk_data (" +
+                        "  entry_id   INTEGER NOT NULL," +
+                        "  chunk_hash TEXT NOT NULL," +
+                        "  content    TEXT," +
+                        "  PRIMARY KEY(entry_id, chunk_hash)," +
+                        "  FOREIGN KEY(entry_id) REFERENCES journal_entries(entry_id) ON DELETE CASCADE" +
+                        ");"
+        );
+
+        // Stubs for entries moved to the per-year archive databases, so they stay listable and searchable
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS archived_entries (" +
+                        "  entry_id      INTEGER PRIMARY KEY," +
+                        "  user_id       TEXT NOT NULL," +
+                        "  title         TEXT," +
+                        "  tags          TEXT," +
+                        "  date_created  TEXT," +
+                        "  date_modified TEXT," +
+                        "  archive_year  INTEGER NOT NULL," +
+                        "  archived_at   TEXT," +
+                        "  preview       TEXT," +
+                        "  word_count    INTEGER NOT NULL DEFAULT 0," +
+                        "  char_count    INTEGER NOT NULL DEFAULT 0," +
+                        "  todo_open     INTEGER NOT NULL DEFAULT 0," +
+                        "  todo_done     INTEGER NOT NULL DEFAULT 0" +
+                        ");"
+        );
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_archived_entries_user ON archived_entries(user_id, date_modified);");
+
+        // Per-user storage totals for the admin view; rows are marked dirty by triggers and recomputed on refresh
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS user_stats (" +
+                        "  user_id        TEXT PRIMARY KEY," +
+                        "  entry_count    INTEGER NOT NULL DEFAULT 0," +
+                        "  archived_count INTEGER NOT NULL DEFAULT 0," +
+                        "  content_bytes  INTEGER NOT NULL DEFAULT 0," +
+                        "  block_count    INTEGER NOT NULL DEFAULT 0," +
+                        "  last_activity  TEXT," +
+                        "  refreshed_at   TEXT," +
+                        "  dirty          INTEGER NOT NULL DEFAULT 1" +
+                        ");"
+        );
+
+        // Running usage counters checked against the quotas; kept current by triggers, see UsageDAO
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS user_usage (" +
+                        "  user_id       TEXT PRIMARY KEY," +
+                        "  used_bytes    INTEGER NOT NULL DEFAULT 0," +
+                        "  entry_count   INTEGER NOT NULL DEFAULT 0," +
+                        "  reconciled_at TEXT" +
+                        ");"
+        );
+
+        // Change feed for syncing with other databases; kept current by triggers, see SyncDAO
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS sync_rows (" +
+                        "  uid      TEXT PRIMARY KEY," +
+                        "  kind     TEXT NOT NULL," +
+                        "  local_id INTEGER," +
+                        "  user_id  TEXT," +
+                        "  seq      INTEGER NOT NULL," +
+                        "  stamp    TEXT NOT NULL," +
+                        "  deleted  INTEGER NOT NULL DEFAULT 0," +
+                        "  origin   TEXT" +
+                        ");"
+        );
+        stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_sync_rows_local ON sync_rows(kind, local_id);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_sync_rows_user_seq ON sync_rows(user_id, seq);");
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS sync_clock (" +
+                        "  id      INTEGER PRIMARY KEY CHECK (id = 1)," +
+                        "  site    TEXT NOT NULL," +
+                        "  seq     INTEGER NOT NULL," +
+                        "  ms      INTEGER NOT NULL," +
+                        "  counter INTEGER NOT NULL" +
+                        ");"
+        );
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS sync_peers (" +
+                        "  site      TEXT NOT NULL," +
+                        "  user_id   TEXT NOT NULL," +
+                        "  sent_seq  INTEGER NOT NULL," +
+                        "  synced_at TEXT," +
+                        "  PRIMARY KEY(site, user_id)" +
+                        ");"
+        );
+
+        // How far each background indexer has got per user, see IndexingService
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS index_state (" +
+                        "  indexer  TEXT NOT NULL," +
+                        "  user_id  TEXT NOT NULL," +
+                        "  version  INTEGER NOT NULL," +
+                        "  seq      INTEGER NOT NULL," +
+                        "  built_at TEXT," +
+                        "  PRIMARY KEY(indexer, user_id)" +
+                        ");"
+        );
+
+        // Keyword search index: keyed trigram hashes per entry, see SearchIndexDAO
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS search_docs (" +
+                        "  entry_id INTEGER PRIMARY KEY," +
+                        "  seq      INTEGER NOT NULL" +
+                        ");"
+        );
+        stmt.execute(
+                "CREATE TABLE IF NOT EXISTS search_grams (" +
+                        "  gram     INTEGER NOT NULL," +
+                        "  entry_id INTEGER NOT NULL," +
+                        "  PRIMARY KEY(gram, entry_id)" +
+                        ") WITHOUT ROWID;"
+        );
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_search_grams_entry ON search_grams(entry_id);");
+    }
+
+    /**
+     * Creates the triggers that mark a user's statistics as out of date whenever something they count changes.
+     * Runs after migrate, as some of the watched columns are added there.
+     */
+    private static void createStatsTriggers(Statement stmt) throws SQLException {
+        String markNew = "INSERT INTO user_stats(user_id) VALUES(NEW.user_id) ON CONFLICT(user_id) DO UPDATE SET dirty=1;";
+        String markOld = "INSERT INTO user_stats(user_id) VALUES(OLD.user_id) ON CONFLICT(user_id) DO UPDATE SET dirty=1;";
+        // Blocks only know their entry; blocks of an entry deleted first find no user, and the entry's own trigger covers them
+        String markBlockNew = "INSERT INTO user_stats(user_id) SELECT user_id FROM journal_entries WHERE entry_id=NEW.entry_id " +
+                "ON CONFLICT(user_id) DO UPDATE SET dirty=1;";
+        String markBlockOld = "INSERT INTO user_stats(user_id) SELECT user_id FROM journal_entries WHERE entry_id=OLD.entry_id " +
+                "ON CONFLICT(user_id) DO UPDATE SET dirty=1;";
+
+        createTrigger(stmt, "stats_users_insert", "AFTER INSERT ON users", markNew);
+        createTrigger(stmt, "stats_users_delete", "AFTER DELETE ON users", "DELETE FROM user_stats WHERE user_id=OLD.user_id;");
+        createTrigger(stmt, "stats_entries_insert", "AFTER INSERT ON journal_entries", markNew);
+        createTrigger(stmt, "stats_entries_delete", "AFTER DELETE ON journal_entries", markOld);
+        createTrigger(stmt, "stats_entries_update", "AFTER UPDATE OF content, chunked, date_modified ON journal_entries", markNew);
+        createTrigger(stmt, "stats_archived_insert", "AFTER INSERT ON archived_entries", markNew);
+        createTrigger(stmt, "stats_archived_delete", "AFTER DELETE ON archived_entries", markOld);
+        createTrigger(stmt, "stats_blocks_insert", "AFTER INSERT ON blocks", markBlockNew);
+        createTrigger(stmt, "stats_blocks_delete", "AFTER DELETE ON blocks", markBlockOld);
+    }
+
+    /**
+     * Creates the triggers that keep user_usage current: every row written to or removed from
+     * journal_entries, chunk_data and blocks adds or subtracts its stored bytes.
+     */
+    private static void createUsageTriggers(Statement stmt) throws SQLException {
+        String newEntry = String.format(UsageDAO.ENTRY_BYTES, "NEW");
+        String oldEntry = String.format(UsageDAO.ENTRY_BYTES, "OLD");
+        createTrigger(stmt, "usage_entries_insert", "AFTER INSERT ON journal_entries",
+                "INSERT INTO user_usage(user_id, used_bytes, entry_count) VALUES(NEW.user_id, " + newEntry + ", 1) " +
+                        "ON CONFLICT(user_id) DO UPDATE SET used_bytes=used_bytes+excluded.used_bytes, entry_count=entry_count+1;");
+        createTrigger(stmt, "usage_entries_delete", "AFTER DELETE ON journal_entries",
+                "UPDATE user_usage SET used_bytes=used_bytes-(" + oldEntry + "), entry_count=entry_count-1 WHERE user_id=OLD.user_id;");
+        createTrigger(stmt, "usage_entries_update", "AFTER UPDATE OF title, content ON journal_entries",
+                "UPDATE user_usage SET used_bytes=used_bytes+(" + newEntry + ")-(" + oldEntry + ") WHERE user_id=NEW.user_id;");
+
+        // Chunks and blocks find their user through the entry, so they must be written after it and removed before it
+        String owner = "(SELECT user_id FROM journal_entries WHERE entry_id=%s.entry_id)";
+        createTrigger(stmt, "usage_chunks_insert", "AFTER INSERT ON chunk_data",
+                "UPDATE user_usage SET used_bytes=used_bytes+(" + String.format(UsageDAO.CHUNK_BYTES, "NEW") + ") " +
+                        "WHERE user_id=" + String.format(owner, "NEW") + ";");
+        createTrigger(stmt, "usage_chunks_delete", "AFTER DELETE ON chunk_data",
+                "UPDATE user_usage SET used_bytes=used_bytes-(" + String.format(UsageDAO.CHUNK_BYTES, "OLD") + ") " +
+                        "WHERE user_id=" + String.format(owner, "OLD") + ";");
+        createTrigger(stmt, "usage_blocks_insert", "AFTER INSERT ON blocks",
+                "UPDATE user_usage SET used_bytes=used_bytes+(" + String.format(UsageDAO.BLOCK_BYTES, "NEW") + ") " +
+                        "WHERE user_id=" + String.format(owner, "NEW") + ";");
+        createTrigger(stmt, "usage_blocks_delete", "AFTER DELETE ON blocks",
+                "UPDATE user_usage SET used_bytes=used_bytes-(" + String.format(UsageDAO.BLOCK_BYTES, "OLD") + ") " +
+                        "WHERE user_id=" + String.format(owner, "OLD") + ";");
+        createTrigger(stmt, "usage_blocks_update", "AFTER UPDATE OF payload, detail ON blocks",
+                "UPDATE user_usage SET used_bytes=used_bytes+(" + String.format(UsageDAO.BLOCK_BYTES, "NEW") + ")" +
+                        "-(" + String.format(UsageDAO.BLOCK_BYTES, "OLD") + ") WHERE user_id=" + String.format(owner, "NEW") + ";");
+    }
+
+    /**
+     * Creates the triggers that feed every change to an entry or block into sync_rows, with a new
+     * seq and stamp. Rows moved to or from the archive keep their feed row: leaving for the archive isn't
+     * a deletion, and coming back only moves the row to the end of the feed so it is sent again.
+     */
+    private static void createSyncTriggers(Statement stmt) throws SQLException {
+        String clock = "FROM sync_clock WHERE id=1";
+        String notArchiving = " WHEN NOT EXISTS (SELECT 1 FROM archived_entries WHERE entry_id=OLD.entry_id)";
+
+        createTrigger(stmt, "sync_entries_insert", "AFTER INSERT ON journal_entries", SyncDAO.TICK +
+                "INSERT INTO sync_rows(uid,kind,local_id,user_id,seq,stamp) " +
+                "SELECT lower(hex(randomblob(16))), '" + SyncDAO.ENTRY + "', NEW.entry_id, NEW.user_id, seq, " + SyncDAO.STAMP + " " + clock +
+                " ON CONFLICT(kind, local_id) DO UPDATE SET seq=excluded.seq;");
+        createTrigger(stmt, "sync_entries_update", "AFTER UPDATE OF title, content, tags, date_created, date_modified, chunked ON journal_entries",
+                SyncDAO.TICK + touchSyncRow(SyncDAO.ENTRY, "NEW.entry_id", false));
+        createTrigger(stmt, "sync_entries_delete", "AFTER DELETE ON journal_entries" + notArchiving,
+                SyncDAO.TICK + touchSyncRow(SyncDAO.ENTRY, "OLD.entry_id", true));
+
+        // Blocks of entries archived before sync existed come back without a feed row; they get the legacy uid
+        String blockUid = "CASE WHEN EXISTS (SELECT 1 FROM archived_entries WHERE entry_id=NEW.entry_id) " +
+                "THEN " + String.format(SyncDAO.LEGACY_UID, "e") + " || '-' || NEW.block_id ELSE lower(hex(randomblob(16))) END";
+        createTrigger(stmt, "sync_blocks_insert", "AFTER INSERT ON blocks", SyncDAO.TICK +
+                "INSERT INTO sync_rows(uid,kind,local_id,user_id,seq,stamp) " +
+                "SELECT " + blockUid + ", '" + SyncDAO.BLOCK + "', NEW.block_id, e.user_id, c.seq, " + SyncDAO.STAMP + " " +
+                "FROM sync_clock c JOIN journal_entries e ON e.entry_id=NEW.entry_id WHERE c.id=1" +
+                " ON CONFLICT(kind, local_id) DO UPDATE SET seq=excluded.seq;");
+        createTrigger(stmt, "sync_blocks_update", "AFTER UPDATE OF entry_id, parent_id, sort_key, type, payload, detail, state ON blocks",
+                SyncDAO.TICK + touchSyncRow(SyncDAO.BLOCK, "NEW.block_id", false));
+        createTrigger(stmt, "sync_blocks_delete", "AFTER DELETE ON blocks" + notArchiving,
+                SyncDAO.TICK + touchSyncRow(SyncDAO.BLOCK, "OLD.block_id", true));
+    }
+
+    /**
+     * Helper method for the sync triggers: moves a row's feed entry to the clock's current seq and stamp,
+     * as a change made here (with no origin)
+     */
+    private static String touchSyncRow(String kind, String localId, boolean deleted) {
+        String clock = "FROM sync_clock WHERE id=1";
+        return "UPDATE sync_rows SET seq=(SELECT seq " + clock + "), stamp=(SELECT " + SyncDAO.STAMP + " " + clock + "), origin=NULL" +
+                (deleted ? ", deleted=1" : "") + " WHERE kind='" + kind + "' AND local_id=" + localId + ";";
+    }
+
+    private static void createTrigger(Statement stmt, String name, String event, String body) throws SQLException {
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS " + name + " " + event + " BEGIN " + body + " END;");
+    }
+
+    /**
+     * Brings tables created by older versions up to date.
+     */
+    private static void migrate(Connection conn, Statement stmt) throws SQLException {
+        // Row versions for optimistic concurrency control
+        addColumnIfMissing(conn, stmt, "journal_entries", "version", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(conn, stmt, "todo_items", "version", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(conn, stmt, "toggle_blocks", "version", "INTEGER NOT NULL DEFAULT 0");
+
+        // Salt for deriving each user's encryption key
+        addColumnIfMissing(conn, stmt, "users", "key_salt", "TEXT");
+
+        // Admins can open the storage statistics
+        addColumnIfMissing(conn, stmt, "users", "is_admin", "INTEGER NOT NULL DEFAULT 0");
+
+        // Per-user quotas; NULL means the default
+        addColumnIfMissing(conn, stmt, "users", "quota_bytes", "INTEGER");
+        addColumnIfMissing(conn, stmt, "users", "quota_entries", "INTEGER");
+
+        // Flag for entries whose content lives in entry_chunks
+        addColumnIfMissing(conn, stmt, "journal_entries", "chunked", "INTEGER NOT NULL DEFAULT 0");
+
+        // Fields derived on write for the dashboard
+        boolean backfill = !hasColumn(conn, "journal_entries", "preview");
+        for (String table : new String[] { "journal_entries", "archived_entries" }) {
+            addColumnIfMissing(conn, stmt, table, "preview", "TEXT");
+            addColumnIfMissing(conn, stmt, table, "word_count", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(conn, stmt, table, "char_count", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(conn, stmt, table, "todo_open", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(conn, stmt, table, "todo_done", "INTEGER NOT NULL DEFAULT 0");
+        }
+
+        // The peer a synced row's version came from; the feed triggers are recreated so local changes clear it
+        if (!hasColumn(conn, "sync_rows", "origin")) {
+            addColumnIfMissing(conn, stmt, "sync_rows", "origin", "TEXT");
+            for (String trigger : new String[] { "sync_entries_update", "sync_entries_delete", "sync_blocks_update", "sync_blocks_delete" }) {
+                stmt.execute("DROP TRIGGER IF EXISTS " + trigger + ";");
+            }
+        }
+
+        // Blocks are ordered by fractional sort keys instead of integer positions
+        if (!hasColumn(conn, "blocks", "sort_key")) {
+            convertBlockPositions(conn, stmt);
+        }
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_blocks_sort ON blocks(entry_id, parent_id, sort_key);");
+
+        // To-dos and toggles from the old per-type tables become blocks
+        moveLegacyBlocks(conn);
+
+        if (backfill) {
+            backfillDerivedFields(conn, stmt);
+        }
+
+        // Summary queries filter by user and sort by these
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_journal_entries_user_modified ON journal_entries(user_id, date_modified);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_journal_entries_user_words ON journal_entries(user_id, word_count);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_journal_entries_user_todo ON journal_entries(user_id, todo_open);");
+
+        // Users from before the statistics table start out dirty, so the first refresh counts them
+        stmt.executeUpdate("INSERT INTO user_stats(user_id) SELECT user_id FROM users WHERE true ON CONFLICT(user_id) DO NOTHING");
+    }
+
+    /**
+     * Replaces the position column of blocks with sort keys that keep the same order.
+     */
+    private static void convertBlockPositions(Connection conn, Statement stmt) throws SQLException {
+        addColumnIfMissing(conn, stmt, "blocks", "sort_key", "TEXT");
+        // Zero-padded positions (with a trailing 1, as keys can't end in zero) already sort correctly;
+        // rebalancing then turns them into short keys
+        stmt.executeUpdate("UPDATE blocks SET sort_key=printf('%010d1', position)");
+        new BlockDAO(conn).rebalanceSortKeys(0, Set.of());
+        stmt.execute("DROP INDEX IF EXISTS idx_blocks_entry;");
+        stmt.execute("ALTER TABLE blocks DROP COLUMN position;");
+    }
+
+    /**
+     * Moves rows left in todo_items and toggle_blocks into the blocks table, in one transaction.
+     */
+    private static void moveLegacyBlocks(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            new BlockDAO(conn).migrateLegacyRows();
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Computes the derived fields of entries written before they existed.
+     * Encrypted and chunked content can't be read here; those entries get their fields on their next save.
+     */
+    private static void backfillDerivedFields(Connection conn, Statement stmt) throws SQLException {
+        stmt.executeUpdate("UPDATE journal_entries SET " +
+                "todo_open=(SELECT COUNT(*) FROM blocks b WHERE b.entry_id=journal_entries.entry_id AND b.type='todo' AND b.state=0), " +
+                "todo_done=(SELECT COUNT(*) FROM blocks b WHERE b.entry_id=journal_entries.entry_id AND b.type='todo' AND b.state=1)");
+
+        String select = "SELECT entry_id, content FROM journal_entries WHERE chunked=0 AND content NOT LIKE '" + ContentCipher.PREFIX + "%'";
+        String update = "UPDATE journal_entries SET preview=?, word_count=?, char_count=? WHERE entry_id=?";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(update);
+             ResultSet rs = stmt.executeQuery(select)) {
+            int count = 0;
+            while (rs.next()) {
+                EntryStats stats = EntryStats.of(rs.getString(2));
+                ps.setString(1, stats.preview());
+                ps.setInt(2, stats.wordCount());
+                ps.setInt(3, stats.charCount());
+                ps.setInt(4, rs.getInt(1));
+                ps.addBatch();
+                count++;
+            }
+            ps.executeBatch();
+            conn.commit();
+            System.out.println("Derived fields computed for " + count + " existing entries");
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Helper method to add a column unless the table already has it.
+     */
+    private static void addColumnIfMissing(Connection conn, Statement stmt, String table,
+                                           String column, String definition) throws SQLException {
+        if (hasColumn(conn, table, column)) return;
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition + ";");
+        System.out.println("Added column " + table + "." + column);
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
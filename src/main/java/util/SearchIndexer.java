@@ -0,0 +1,123 @@
+package util;
+
+import DAO.SearchIndexDAO;
+import model.JournalEntry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Keyword search index over the lowercased title, tags and content of each entry (see {@link SearchIndexDAO}).
+ * A keyword of three or more characters can then skip every encrypted or chunked entry that lacks one of
+ * its three-character pieces, instead of decrypting them all.
+ *
+ * Pieces are stored as a keyed hash (the owner's {@link ContentCipher#fingerprint}), so the index reveals no
+ * text. That also means only entries of unlocked users are indexed, and only unlocked users' searches use it.
+ */
+public class SearchIndexer implements Indexer<long[]> {
+    public static final String NAME = "search";
+    private static final int GRAM = 3;
+    // A keyword's first pieces already narrow the candidates well; more only make the query longer
+    private static final int MAX_QUERY_GRAMS = 16;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public long[] analyze(JournalEntry entry) {
+        ContentCipher cipher = KeyRing.forUser(entry.getUserId());
+        if (cipher == null) return null;
+        long[] packed = new long[0];
+        for (String field : new String[] { entry.getTitle(), entry.getTags(), entry.getContent() }) {
+            packed = append(packed, pack(field));
+        }
+        return hash(cipher, distinct(packed));
+    }
+
+    @Override
+    public void store(Connection conn, int entryId, long seq, long[] grams) throws SQLException {
+        if (grams == null) {
+            remove(conn, entryId);
+        } else {
+            new SearchIndexDAO(conn).replace(entryId, seq, grams);
+        }
+    }
+
+    @Override
+    public void remove(Connection conn, int entryId) throws SQLException {
+        new SearchIndexDAO(conn).remove(entryId);
+    }
+
+    @Override
+    public void clear(Connection conn, String userId) throws SQLException {
+        new SearchIndexDAO(conn).clear(userId);
+    }
+
+    /**
+     * The grams to look a keyword up with.
+     *
+     * @param userId Whose entries are searched
+     * @param keyword The keyword as typed
+     * @return Distinct gram hashes, or null if the index can't help (short keyword, or the user is locked)
+     */
+    public static long[] queryGrams(String userId, String keyword) {
+        ContentCipher cipher = KeyRing.forUser(userId);
+        if (cipher == null || keyword == null) return null;
+        long[] packed = distinct(pack(keyword));
+        if (packed.length == 0) return null;
+        return distinct(hash(cipher, Arrays.copyOf(packed, Math.min(packed.length, MAX_QUERY_GRAMS))));
+    }
+
+    /** Helper method: every three-character piece of the lowercased text, three UTF-16 units packed into a long */
+    private static long[] pack(String text) {
+        if (text == null) return new long[0];
+        String lower = text.toLowerCase(Locale.ROOT);
+        int count = lower.length() - GRAM + 1;
+        if (count <= 0) return new long[0];
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = (long) lower.charAt(i) << 32 | (long) lower.charAt(i + 1) << 16 | lower.charAt(i + 2);
+        }
+        return packed;
+    }
+
+    private static long[] append(long[] a, long[] b) {
+        if (a.length == 0) return b;
+        long[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    /** Helper method: sorts and removes duplicates, so each piece is hashed once */
+    private static long[] distinct(long[] packed) {
+        Arrays.sort(packed);
+        int n = 0;
+        for (int i = 0; i < packed.length; i++) {
+            if (i == 0 || packed[i] != packed[i - 1]) packed[n++] = packed[i];
+        }
+        return Arrays.copyOf(packed, n);
+    }
+
+    /** Helper method: the first 64 bits of the keyed hash of each piece */
+    private static long[] hash(ContentCipher cipher, long[] packed) {
+        long[] grams = new long[packed.length];
+        char[] chars = new char[GRAM];
+        for (int i = 0; i < packed.length; i++) {
+            chars[0] = (char) (packed[i] >>> 32);
+            chars[1] = (char) (packed[i] >>> 16);
+            chars[2] = (char) packed[i];
+            grams[i] = HexFormat.fromHexDigitsToLong(cipher.fingerprint(new String(chars)), 0, 16);
+        }
+        return grams;
+    }
+}
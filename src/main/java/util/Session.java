@@ -0,0 +1,62 @@
+package util;
+
+import model.JournalEntry;
+import model.User;
+
+/**
+ * One logged-in user's state: who they are and which entry they have open.
+ * Created and looked up through {@link SessionManager}; the token is what a client holds on to.
+ * Fields are volatile because background jobs read them from their own threads.
+ */
+public class Session {
+    private final String token;
+    private final boolean expiring;
+    private volatile User user;
+    private volatile JournalEntry currentEntry;
+    private volatile long lastUsed = System.nanoTime();
+
+    Session(String token, User user, boolean expiring) {
+        this.token = token;
+        this.user = user;
+        this.expiring = expiring;
+    }
+
+    /** The opaque token that identifies this session */
+    public String getToken() {
+        return token;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    void setUser(User user) {
+        this.user = user;
+    }
+
+    /**
+     * Gets the entry open in this session.
+     *
+     * @return The entry, or null if none is open
+     */
+    public JournalEntry getCurrentEntry() {
+        return currentEntry;
+    }
+
+    public void setCurrentEntry(JournalEntry entry) {
+        this.currentEntry = entry;
+    }
+
+    /** Whether the session ends after a while without use (the desktop session doesn't) */
+    public boolean isExpiring() {
+        return expiring;
+    }
+
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    boolean isIdleLongerThan(long nanos) {
+        return expiring && System.nanoTime() - lastUsed > nanos;
+    }
+}
@@ -3,25 +3,143 @@ package util;
 import model.JournalEntry;
 import model.User;
 
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Manages user session information across the application.
- * Implements the Singleton pattern to maintain a single, consistent session state.
+ *
+ * Sessions are kept by opaque token, so several users can be logged in at once (e.g. through
+ * the local API). The desktop UI uses one default session that never expires; the static
+ * getCurrentUser/getCurrentEntry methods read and write that one. Other sessions end when
+ * closed or after {@link #IDLE_TIMEOUT} without use, and a background sweep removes idle ones.
+ * A user's encryption key is locked when their last session ends.
  */
 public class SessionManager {
-    // Private static fields to hold session data
-    private static User currentUser;
-    private static JournalEntry currentEntry;
+    public static final Duration IDLE_TIMEOUT = Duration.ofMinutes(30);
+    private static final long SWEEP_INTERVAL_MINUTES = 5;
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private static final Session desktop = new Session(newToken(), null, false);
+    private static ScheduledExecutorService sweeper;
+
+    static {
+        sessions.put(desktop.getToken(), desktop);
+    }
 
     // Prevent instantiation - this is a utility class with static methods only
     private SessionManager() { }
 
+    /**
+     * Gets the desktop UI's session.
+     *
+     * @return The default session; its user is null while nobody is logged in
+     */
+    public static Session getDefault() {
+        return desktop;
+    }
+
+    /**
+     * Starts a new expiring session for a user.
+     * Unlock the user's key after this call: a session of theirs that ends meanwhile then can't lock it.
+     *
+     * @param user The logged-in user
+     * @return The session, with a fresh random token
+     */
+    public static Session open(User user) {
+        Session session = new Session(newToken(), user, true);
+        synchronized (sessions) {
+            sessions.put(session.getToken(), session);
+        }
+        startSweeper();
+        return session;
+    }
+
+    /**
+     * Looks up a session and marks it as used.
+     *
+     * @param token The session's token
+     * @return The session, or null if the token is unknown or the session has expired
+     */
+    public static Session get(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        if (session.isIdleLongerThan(IDLE_TIMEOUT.toNanos())) {
+            close(token);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Ends a session. Closing the default session only logs its user out.
+     *
+     * @param token The session's token
+     */
+    public static void close(String token) {
+        if (desktop.getToken().equals(token)) {
+            clear();
+            return;
+        }
+        Session session = sessions.remove(token);
+        if (session != null) {
+            lockIfUnused(session.getUser());
+        }
+    }
+
+    /**
+     * Ends every session that has been idle too long.
+     *
+     * @return The number of sessions ended
+     */
+    public static int sweep() {
+        int ended = 0;
+        for (Session session : sessions.values()) {
+            if (session.isIdleLongerThan(IDLE_TIMEOUT.toNanos()) && sessions.remove(session.getToken(), session)) {
+                lockIfUnused(session.getUser());
+                ended++;
+            }
+        }
+        return ended;
+    }
+
+    /** The number of live sessions, including the desktop one */
+    public static int count() {
+        return sessions.size();
+    }
+
+    /**
+     * Gets the entries open in any session, which background jobs leave alone.
+     *
+     * @return Entry IDs
+     */
+    public static Set<Integer> getOpenEntryIds() {
+        Set<Integer> open = new HashSet<>();
+        for (Session session : sessions.values()) {
+            JournalEntry entry = session.getCurrentEntry();
+            if (entry != null) open.add(entry.getEntryId());
+        }
+        return open;
+    }
+
     /**
      * Gets the currently logged-in user.
      *
      * @return The current User object, or null if no user is logged in
      */
     public static User getCurrentUser() {
-        return currentUser;
+        return desktop.getUser();
     }
 
     /**
@@ -30,7 +148,7 @@ public class SessionManager {
      * @param user The User to set as current
      */
     public static void setCurrentUser(User user) {
-        currentUser = user;
+        desktop.setUser(user);
     }
 
     /**
@@ -39,7 +157,7 @@ public class SessionManager {
      * @return The current JournalEntry object, or null if no entry is selected
      */
     public static JournalEntry getCurrentEntry() {
-        return currentEntry;
+        return desktop.getCurrentEntry();
     }
 
     /**
@@ -48,7 +166,7 @@ public class SessionManager {
      * @param entry The JournalEntry to set as current
      */
     public static void setCurrentEntry(JournalEntry entry) {
-        currentEntry = entry;
+        desktop.setCurrentEntry(entry);
     }
 
     /**
@@ -57,14 +175,48 @@ public class SessionManager {
      * @return true if a user is logged in, false otherwise
      */
     public static boolean isLoggedIn() {
-        return currentUser != null;
+        return desktop.getUser() != null;
     }
 
     /**
      * Clears all session data, effectively logging out the user.
      */
     public static void clear() {
-        currentUser = null;
-        currentEntry = null;
+        User user = desktop.getUser();
+        TagSuggestions.clear();
+        desktop.setUser(null);
+        desktop.setCurrentEntry(null);
+        lockIfUnused(user);
+    }
+
+    /** Helper method to lock a user's key once no session of theirs is left */
+    private static void lockIfUnused(User user) {
+        if (user == null) return;
+        String userId = user.getUserID();
+        // Atomic with open(), so a session that is just starting keeps its key
+        synchronized (sessions) {
+            boolean inUse = sessions.values().stream()
+                    .anyMatch(s -> s.getUser() != null && s.getUser().getUserID().equals(userId));
+            if (!inUse) {
+                KeyRing.lock(userId);
+                IndexingService.close(userId);
+            }
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static synchronized void startSweeper() {
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(SessionManager::sweep, SWEEP_INTERVAL_MINUTES, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package util;
+
+import DAO.BlockDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that shortens block sort keys.
+ * Inserting again and again at the same spot of a list makes its keys a little longer each time;
+ * once a key passes {@link #MAX_KEY_LENGTH} characters, the whole list gets fresh evenly spaced keys.
+ * Runs a few minutes after start-up and then once a day on its own daemon thread and connection.
+ */
+public class SortKeyRebalancer {
+    public static final int MAX_KEY_LENGTH = 8;
+    private static final long INITIAL_DELAY_MINUTES = 3;
+    private static final long INTERVAL_MINUTES = 24 * 60;
+
+    private static ScheduledExecutorService executor;
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private SortKeyRebalancer() { }
+
+    /**
+     * Starts the periodic rebalancing job if it isn't running yet.
+     */
+    public static synchronized void start() {
+        if (executor != null) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sort-key-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(SortKeyRebalancer::runOnce, INITIAL_DELAY_MINUTES, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the rebalancing job. A list that is being rewritten finishes its transaction.
+     */
+    public static synchronized void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        executor = null;
+    }
+
+    /**
+     * Rebalances every list with overlong keys once.
+     *
+     * @return The number of lists rebalanced
+     */
+    public static int runOnce() {
+        // The editor holds the open entry's keys in memory; leave open entries for the next run
+        Set<Integer> skip = SessionManager.getOpenEntryIds();
+
+        try (Connection conn = DBConnection.openConnection()) {
+            return new BlockDAO(conn).rebalanceSortKeys(MAX_KEY_LENGTH, skip);
+        } catch (SQLException e) {
+            // Long keys still sort correctly, so this only waits for the next run
+            System.err.println("Sort key rebalancing failed: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package util;
+
+import DAO.ArchiveDAO;
+import DAO.BlockDAO;
+import DAO.JournalDAO;
+import DAO.SyncDAO;
+import DAO.SyncDAO.Change;
+import model.BlockNode;
+import model.JournalEntry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Two-way sync of one user's entries and blocks (to-dos, toggles and the rest of the block tree)
+ * between two journal databases, e.g. the laptop's and the desktop's.
+ *
+ * Each side sends only its feed rows changed since the other side's watermark (see {@link SyncDAO}),
+ * leaving out rows it received from that side, so a sync costs time in proportion to the changes,
+ * not to the journal, and nothing comes straight back. A change is applied on the
+ * other side if that side has never seen the row or has an older stamp; for a row changed on both
+ * sides, the later stamp wins on both (ties are broken by site ID), so both sides end up equal.
+ * Deletions travel as tombstones and win or lose the same way.
+ *
+ * Changes are applied through the DAOs, so content is re-encrypted with the receiving user's key:
+ * both users must be unlocked in the {@link KeyRing} while syncing. Entry saves commit one by one;
+ * if a sync fails halfway the watermarks stay where they were and the next sync sends everything again,
+ * which is harmless because applying a change twice does nothing the second time.
+ */
+public class SyncEngine {
+    /**
+     * What a sync did.
+     *
+     * @param sent Changes applied on the remote side
+     * @param received Changes applied on the local side
+     * @param conflicts Rows changed on both sides since the last sync
+     * @param skipped Changes that couldn't be applied, e.g. blocks of an entry deleted on the other side
+     */
+    public record Result(int sent, int received, int conflicts, int skipped, long millis) { }
+
+    /** One database taking part in a sync */
+    private static final class Side {
+        final Connection conn;
+        final SyncDAO sync;
+        final JournalDAO journal;
+        final String userId;
+        String site;
+        long upTo;
+        List<Change> changes;
+        final Set<Integer> touchedEntries = new HashSet<>();
+        int skipped;
+
+        Side(Connection conn, String userId) {
+            this.conn = conn;
+            this.sync = new SyncDAO(conn);
+            this.journal = new JournalDAO(conn);
+            this.userId = userId;
+        }
+    }
+
+    private final Connection local;
+    private final Connection remote;
+
+    public SyncEngine(Connection local, Connection remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    /**
+     * Syncs one user's journal in both directions.
+     *
+     * @param localUserId The user in the local database
+     * @param remoteUserId The same person's user in the remote database
+     * @return Counts of what was exchanged
+     */
+    public Result sync(String localUserId, String remoteUserId) throws SQLException {
+        long start = System.nanoTime();
+        Side a = new Side(local, localUserId);
+        Side b = new Side(remote, remoteUserId);
+
+        a.site = a.sync.getSite();
+        b.site = b.sync.getSite();
+        if (a.site.equals(b.site)) {
+            // One file is a copy of the other; from now on they are separate sites
+            b.site = b.sync.resetSite();
+        }
+
+        for (Side[] pair : new Side[][] { { a, b }, { b, a } }) {
+            Side side = pair[0];
+            side.upTo = side.sync.getSeq();
+            side.changes = side.sync.getChanges(side.userId, pair[1].site,
+                    side.sync.getSentSeq(pair[1].site, side.userId), side.upTo);
+        }
+
+        // Decide everything before writing anything, so both directions compare against the same state
+        List<Change> toB = winners(a, b);
+        List<Change> toA = winners(b, a);
+        // Rows both sides hold with the same stamp (e.g. in a copied file) are one change, not a conflict
+        Map<String, String> changedOnA = new HashMap<>();
+        for (Change change : a.changes) changedOnA.put(change.uid(), change.stamp());
+        int conflicts = 0;
+        for (Change change : b.changes) {
+            String stampOnA = changedOnA.get(change.uid());
+            if (stampOnA != null && !stampOnA.equals(change.stamp())) conflicts++;
+        }
+
+        apply(a, b, toB);
+        apply(b, a, toA);
+
+        a.sync.setSentSeq(b.site, a.userId, a.upTo);
+        b.sync.setSentSeq(a.site, b.userId, b.upTo);
+        return new Result(toB.size() - b.skipped, toA.size() - a.skipped, conflicts, a.skipped + b.skipped,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Helper method to pick the changes of one side that are newer than what the other side has */
+    private static List<Change> winners(Side from, Side to) throws SQLException {
+        List<Change> winners = new ArrayList<>();
+        for (Change change : from.changes) {
+            Change theirs = to.sync.getByUid(change.uid());
+            if (theirs == null ? !change.deleted() : change.stamp().compareTo(theirs.stamp()) > 0) {
+                winners.add(change);
+            }
+        }
+        return winners;
+    }
+
+    /** Helper method to write one side's winning changes into the other */
+    private static void apply(Side from, Side to, List<Change> changes) throws SQLException {
+        List<Change> entries = new ArrayList<>();
+        List<Change> blocks = new ArrayList<>();
+        List<Change> deletions = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.deleted()) deletions.add(change);
+            else if (change.kind().equals(SyncDAO.ENTRY)) entries.add(change);
+            else blocks.add(change);
+        }
+
+        String latest = null;
+        for (Change change : changes) {
+            if (latest == null || change.stamp().compareTo(latest) > 0) latest = change.stamp();
+        }
+
+        for (Change change : entries) {
+            applyEntry(from, to, change);
+        }
+        applyBlocks(from, to, blocks);
+        // Blocks before entries, which delete their remaining blocks themselves
+        deletions.sort((x, y) -> x.kind().equals(y.kind()) ? 0 : x.kind().equals(SyncDAO.BLOCK) ? -1 : 1);
+        for (Change change : deletions) {
+            applyDeletion(from, to, change);
+        }
+
+        BlockDAO blockDAO = new BlockDAO(to.conn);
+        for (int entryId : to.touchedEntries) {
+            blockDAO.refreshTodoCounts(entryId);
+            EntryEventBus.todosChanged(entryId);
+        }
+        if (latest != null) {
+            to.sync.observe(latest);
+        }
+    }
+
+    private static void applyEntry(Side from, Side to, Change change) throws SQLException {
+        JournalEntry source = from.journal.getEntryById(change.localId());
+        if (source == null) {
+            // Archived on the sending side; restoring it there sends it again
+            to.skipped++;
+            return;
+        }
+
+        Integer targetId = liveId(to, change.uid());
+        JournalEntry target;
+        if (targetId != null) {
+            target = to.journal.getEntryById(targetId);
+            target.setTitle(source.getTitle());
+            target.setContent(source.getContent());
+            target.setTags(source.getTags());
+            to.journal.updateEntry(target);
+        } else {
+            target = new JournalEntry();
+            target.setUserId(to.userId);
+            target.setTitle(source.getTitle());
+            target.setContent(source.getContent());
+            target.setTags(source.getTags());
+            target.setDateCreated(source.getDateCreated());
+            target.setDateModified(source.getDateModified());
+            to.journal.saveEntry(target);
+        }
+        to.sync.setDates(target.getEntryId(), source.getDateCreated().toString(), source.getDateModified().toString());
+        to.sync.adopt(SyncDAO.ENTRY, target.getEntryId(), change.uid(), change.stamp(), false, from.site);
+    }
+
+    /**
+     * Helper method to write blocks parents first: a block whose parent is among the pending ones waits
+     * for a later pass. Runs in one transaction on the receiving side.
+     */
+    private static void applyBlocks(Side from, Side to, List<Change> changes) throws SQLException {
+        // Entries in the archive are restored first; ATTACH can't run inside the transaction below
+        Map<Change, BlockNode> sources = new HashMap<>();
+        for (Change change : changes) {
+            BlockNode node = from.sync.getBlock(change.localId());
+            String entryUid = node == null ? null : from.sync.getUid(SyncDAO.ENTRY, node.getEntryId());
+            if (entryUid != null) liveId(to, entryUid);
+            sources.put(change, node);
+        }
+
+        boolean autoCommit = to.conn.getAutoCommit();
+        to.conn.setAutoCommit(false);
+        try {
+            List<Change> pending = new ArrayList<>(changes);
+            boolean progress = true;
+            while (!pending.isEmpty() && progress) {
+                progress = false;
+                for (Iterator<Change> it = pending.iterator(); it.hasNext(); ) {
+                    Change change = it.next();
+                    Boolean done = applyBlock(from, to, change, sources.get(change));
+                    if (done != null) {
+                        it.remove();
+                        progress = true;
+                        if (!done) to.skipped++;
+                    }
+                }
+            }
+            // Parents that never arrived
+            to.skipped += pending.size();
+            to.conn.commit();
+        } catch (SQLException ex) {
+            to.conn.rollback();
+            System.err.println("Error applying synced blocks: " + ex.getMessage());
+            throw ex;
+        } finally {
+            to.conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Helper method for {@link #applyBlocks}.
+     *
+     * @return true if written, false if it can't be written, null if its parent has to be written first
+     */
+    private static Boolean applyBlock(Side from, Side to, Change change, BlockNode node) throws SQLException {
+        if (node == null) return false;
+        String entryUid = from.sync.getUid(SyncDAO.ENTRY, node.getEntryId());
+        Integer entryId = entryUid == null ? null : liveId(to, entryUid);
+        if (entryId == null) return false;
+
+        Integer parentId = null;
+        if (node.getParentId() != null) {
+            String parentUid = from.sync.getUid(SyncDAO.BLOCK, node.getParentId());
+            parentId = parentUid == null ? null : liveId(to, parentUid);
+            if (parentId == null) return null;
+        }
+
+        Integer blockId = liveId(to, change.uid());
+        BlockNode copy = new BlockNode(entryId, blockId == null ? 0 : blockId, node.getType(),
+                node.getPayload(), node.getDetail(), node.getState());
+        copy.setParentId(parentId);
+        copy.setSortKey(node.getSortKey());
+        to.sync.writeBlock(copy);
+        to.sync.adopt(SyncDAO.BLOCK, copy.getBlockId(), change.uid(), change.stamp(), false, from.site);
+        to.touchedEntries.add(entryId);
+        return true;
+    }
+
+    private static void applyDeletion(Side from, Side to, Change change) throws SQLException {
+        Change mine = to.sync.getByUid(change.uid());
+        if (mine == null || mine.deleted() || mine.localId() == null) {
+            to.sync.recordTombstone(change.uid(), change.kind(), to.userId, change.stamp(), from.site);
+            return;
+        }
+
+        int localId = mine.localId();
+        if (change.kind().equals(SyncDAO.ENTRY)) {
+            if (to.sync.isArchived(localId)) {
+                new ArchiveDAO(to.conn).restoreEntry(localId);
+            }
+            to.journal.deleteEntry(localId);
+            to.touchedEntries.remove(localId);
+        } else {
+            BlockNode block = to.sync.getBlock(localId);
+            if (block != null) {
+                new BlockDAO(to.conn).deleteSubtree(localId);
+                to.touchedEntries.add(block.getEntryId());
+            }
+        }
+        to.sync.adopt(change.kind(), localId, change.uid(), change.stamp(), true, from.site);
+    }
+
+    /**
+     * Helper method to find the local row of a uid, restoring its entry from the archive if needed.
+     *
+     * @return The local ID, or null if the row doesn't exist here or was deleted
+     */
+    private static Integer liveId(Side side, String uid) throws SQLException {
+        Change row = side.sync.getByUid(uid);
+        if (row == null || row.deleted() || row.localId() == null) return null;
+        if (row.kind().equals(SyncDAO.ENTRY) && side.sync.isArchived(row.localId())) {
+            new ArchiveDAO(side.conn).restoreEntry(row.localId());
+        }
+        return row.localId();
+    }
+}
@@ -0,0 +1,108 @@
+package util;
+
+import DAO.TagDAO;
+import model.Tag;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renames, merges and recolors a user's tags across all of their entries, archived ones included.
+ * Tags live inside each entry's tag string, so every operation rewrites the affected entries
+ * in batched transactions (see {@link TagDAO#rewriteTags}) without touching modification dates.
+ */
+public class TagManager {
+    private final TagDAO tagDAO;
+
+    public TagManager() throws SQLException {
+        this(new TagDAO());
+    }
+
+    public TagManager(TagDAO tagDAO) {
+        this.tagDAO = tagDAO;
+    }
+
+    /**
+     * Renames a tag. Renaming to a tag the entry already has merges the two.
+     *
+     * @return The number of entries changed
+     */
+    public int rename(String userId, String from, String to, TagDAO.Progress progress) throws SQLException {
+        return merge(userId, Set.of(from), to, null, progress);
+    }
+
+    /**
+     * Merges several tags into one. Each entry ends up with the target tag once, where the first
+     * of the merged tags was.
+     *
+     * @param sources The tags to merge; the target may be one of them
+     * @param target The name of the merged tag
+     * @param color The merged tag's color as #rrggbb, or null to keep the color each entry already uses
+     * @return The number of entries changed
+     * @throws IllegalArgumentException If the target name or the color is invalid
+     */
+    public int merge(String userId, Set<String> sources, String target, String color,
+                     TagDAO.Progress progress) throws SQLException {
+        String name = target.trim();
+        if (name.isEmpty() || name.contains(",") || name.contains(":")) {
+            throw new IllegalArgumentException("Invalid tag name: " + target);
+        }
+        if (color != null) {
+            checkColor(color);
+        }
+        Set<String> names = new HashSet<>(sources);
+        if (color != null) {
+            names.add(name);
+        }
+
+        int changed = tagDAO.rewriteTags(userId, names, tags -> {
+            Map<String, Tag> merged = new LinkedHashMap<>();
+            for (Tag tag : tags) {
+                String newName = sources.contains(tag.getName()) ? name : tag.getName();
+                String newColor = color != null && newName.equals(name) ? color : tag.getColor();
+                merged.putIfAbsent(newName, new Tag(newName, newColor));
+            }
+            return new ArrayList<>(merged.values());
+        }, progress);
+        return refreshed(userId, changed);
+    }
+
+    /**
+     * Gives a tag a new color in every entry.
+     *
+     * @param color The new color as #rrggbb
+     * @return The number of entries changed
+     * @throws IllegalArgumentException If the color isn't #rrggbb
+     */
+    public int recolor(String userId, String name, String color, TagDAO.Progress progress) throws SQLException {
+        checkColor(color);
+        int changed = tagDAO.rewriteTags(userId, Set.of(name), tags -> {
+            List<Tag> recolored = new ArrayList<>(tags.size());
+            for (Tag tag : tags) {
+                recolored.add(tag.getName().equals(name) ? new Tag(name, color) : tag);
+            }
+            return recolored;
+        }, progress);
+        return refreshed(userId, changed);
+    }
+
+    /** Helper method to reject colors that aren't #rrggbb */
+    private static void checkColor(String color) {
+        if (!Tag.isValidColor(color)) {
+            throw new IllegalArgumentException("Invalid tag color: " + color + " (expected #rrggbb)");
+        }
+    }
+
+    /** Helper method to rebuild the autocomplete suggestions after tags changed */
+    private static int refreshed(String userId, int changed) {
+        if (changed > 0) {
+            TagSuggestions.reloadIfLoaded(userId);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,91 @@
+package util;
+
+import DAO.TagDAO;
+import model.Tag;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Holds the tag autocomplete trie of the logged-in user.
+ * It is built on a background thread at login, so login isn't slowed down by reading every
+ * entry's tags, and updated in place whenever an entry's tags are saved.
+ * Until it is ready, suggestions are simply empty.
+ */
+public class TagSuggestions {
+    private static volatile TagTrie trie = new TagTrie();
+    private static volatile String loadedUserId;
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private TagSuggestions() { }
+
+    /**
+     * Starts building a user's trie in the background.
+     *
+     * @param userId The user who just logged in
+     */
+    public static void loadInBackground(String userId) {
+        loadedUserId = userId;
+        trie = new TagTrie();
+        Thread thread = new Thread(() -> load(userId), "tag-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rebuilds the trie if it belongs to this user, e.g. after tags were renamed or merged.
+     */
+    public static void reloadIfLoaded(String userId) {
+        if (userId.equals(loadedUserId)) {
+            loadInBackground(userId);
+        }
+    }
+
+    private static void load(String userId) {
+        long start = System.nanoTime();
+        try (Connection conn = DBConnection.openConnection()) {
+            TagTrie built = TagTrie.of(new TagDAO(conn).getTagCounts(userId));
+            // The user may have logged out while this was running
+            if (userId.equals(loadedUserId)) {
+                trie = built;
+                System.out.printf("Tag index ready in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not build tag index: " + e.getMessage());
+        }
+    }
+
+    /** The current user's trie (empty while it is being built) */
+    public static TagTrie get() {
+        return trie;
+    }
+
+    /**
+     * Updates the trie after an entry's tags were saved or the entry was deleted.
+     *
+     * @param before The tag string as previously saved (null or empty for a new entry)
+     * @param after The tag string as saved now (null or empty for a deleted entry)
+     */
+    public static void tagsChanged(String before, String after) {
+        List<Tag> old = Tag.parseList(before);
+        List<Tag> now = Tag.parseList(after);
+        TagTrie current = trie;
+        for (Tag tag : old) {
+            if (!now.contains(tag)) current.remove(tag);
+        }
+        for (Tag tag : now) {
+            if (old.contains(tag)) {
+                current.setColor(tag);
+            } else {
+                current.add(tag);
+            }
+        }
+    }
+
+    /** Forgets the trie when the user logs out */
+    public static void clear() {
+        loadedUserId = null;
+        trie = new TagTrie();
+    }
+}
@@ -0,0 +1,171 @@
+package util;
+
+import model.Tag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prefix trie of a user's tags for autocomplete, ranked by how many entries use each tag.
+ * Matching ignores case. Every node keeps the best few tags of its subtree, so a lookup
+ * only walks the prefix and copies that list; adding or removing a use of a tag updates
+ * the lists along one path.
+ *
+ * Methods are synchronized: the trie is built on a background thread and updated from the UI.
+ */
+public class TagTrie {
+    public static final int MAX_SUGGESTIONS = 8;
+
+    private static final Comparator<Entry> BY_USE = Comparator
+            .comparingInt((Entry e) -> -e.count)
+            .thenComparing(e -> e.key);
+
+    private static final class Entry {
+        final String key;
+        String name;
+        String color;
+        int count;
+
+        Entry(String key, String name, String color) {
+            this.key = key;
+            this.name = name;
+            this.color = color;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>(4);
+        Entry entry;                        // the tag that ends here, if any
+        List<Entry> top = List.of();        // most used tags in this subtree, best first
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Builds a trie from usage counts.
+     *
+     * @param counts Number of entries using each tag; the tag's color is the one to suggest
+     */
+    public static TagTrie of(Map<Tag, Integer> counts) {
+        TagTrie trie = new TagTrie();
+        for (Map.Entry<Tag, Integer> e : counts.entrySet()) {
+            trie.adjust(e.getKey().getName(), e.getKey().getColor(), e.getValue());
+        }
+        return trie;
+    }
+
+    /** Records one more entry using a tag, and remembers its color as the one to suggest */
+    public synchronized void add(Tag tag) {
+        adjust(tag.getName(), tag.getColor(), 1);
+    }
+
+    /** Records one entry fewer using a tag; the tag disappears when nothing uses it */
+    public synchronized void remove(Tag tag) {
+        adjust(tag.getName(), null, -1);
+    }
+
+    /** Remembers the color a tag was saved with, without counting another use */
+    public synchronized void setColor(Tag tag) {
+        adjust(tag.getName(), tag.getColor(), 0);
+    }
+
+    /**
+     * Returns the most used tags starting with a prefix.
+     *
+     * @param prefix What the user typed so far (case is ignored)
+     * @param limit Maximum number of suggestions, at most {@link #MAX_SUGGESTIONS}
+     * @return The tags, most used first
+     */
+    public synchronized List<Tag> suggest(String prefix, int limit) {
+        Node node = find(key(prefix));
+        List<Tag> suggestions = new ArrayList<>();
+        if (node == null) return suggestions;
+        for (Entry e : node.top) {
+            if (suggestions.size() == limit) break;
+            suggestions.add(new Tag(e.name, e.color));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Looks up a tag by its exact name (case is ignored).
+     *
+     * @return The tag with its name and color as last used, or null if no entry uses it
+     */
+    public synchronized Tag get(String name) {
+        Node node = find(key(name));
+        return node == null || node.entry == null ? null : new Tag(node.entry.name, node.entry.color);
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        return node;
+    }
+
+    /** Helper method to change a tag's count, then refresh the ranked lists from its node up to the root */
+    private synchronized void adjust(String name, String color, int delta) {
+        String key = key(name);
+        if (key.isEmpty()) return;
+
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            Node next = path[i].children.get(key.charAt(i));
+            if (next == null) {
+                // Not a known tag
+                if (delta <= 0) return;
+                next = new Node();
+                path[i].children.put(key.charAt(i), next);
+            }
+            path[i + 1] = next;
+        }
+
+        Node last = path[key.length()];
+        if (last.entry == null) {
+            if (delta <= 0) return;
+            last.entry = new Entry(key, name.trim(), color);
+        }
+        last.entry.count += delta;
+        if (delta >= 0) {
+            last.entry.name = name.trim();
+            if (color != null) last.entry.color = color;
+        }
+        if (last.entry.count <= 0) {
+            last.entry = null;
+        }
+
+        for (int depth = key.length(); depth >= 0; depth--) {
+            Node node = path[depth];
+            // Drop branches nothing ends in any more
+            if (depth > 0 && node.entry == null && node.children.isEmpty()) {
+                path[depth - 1].children.remove(key.charAt(depth - 1));
+                continue;
+            }
+            node.top = rank(node);
+        }
+    }
+
+    /** Helper method to merge a node's own tag with its children's lists */
+    private static List<Entry> rank(Node node) {
+        List<Entry> candidates = new ArrayList<>();
+        if (node.entry != null) candidates.add(node.entry);
+        for (Node child : node.children.values()) {
+            candidates.addAll(child.top);
+        }
+        candidates.sort(BY_USE);
+        return candidates.size() > MAX_SUGGESTIONS
+                ? List.copyOf(candidates.subList(0, MAX_SUGGESTIONS))
+                : List.copyOf(candidates);
+    }
+}
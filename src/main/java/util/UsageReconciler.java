@@ -0,0 +1,62 @@
+package util;
+
+import DAO.UsageDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that recomputes every user's usage counters from the tables.
+ * The counters are kept current by triggers on each write; this repairs drift from writes the
+ * triggers can't attribute, such as chunks removed after their entry.
+ * Runs a few minutes after start-up and then every six hours on its own daemon thread and connection.
+ */
+public class UsageReconciler {
+    private static final long INITIAL_DELAY_MINUTES = 5;
+    private static final long INTERVAL_MINUTES = 6 * 60;
+
+    private static ScheduledExecutorService executor;
+
+    // Prevent instantiation - this is a utility class with static methods only
+    private UsageReconciler() { }
+
+    /**
+     * Starts the periodic reconciliation job if it isn't running yet.
+     */
+    public static synchronized void start() {
+        if (executor != null) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "usage-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(UsageReconciler::runOnce, INITIAL_DELAY_MINUTES, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the reconciliation job. A running pass finishes its transaction.
+     */
+    public static synchronized void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        executor = null;
+    }
+
+    /**
+     * Reconciles all counters once.
+     *
+     * @return The number of users whose counters were corrected
+     */
+    public static int runOnce() {
+        try (Connection conn = DBConnection.openConnection()) {
+            return new UsageDAO(conn).reconcile();
+        } catch (SQLException e) {
+            // The triggers keep counting; this only waits for the next run
+            System.err.println("Usage reconciliation failed: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package util;
+
+import DAO.UserDAO;
+import model.User;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Creates many user accounts from a CSV file, e.g. a whole class or team at once.
+ *
+ * The input has one "username,password" row per user (a header row is optional).
+ * The file is streamed, and users are inserted in transactions of {@link #BATCH_SIZE}.
+ * Usernames that are already taken are recognised through a Bloom filter of the usernames that
+ * existed before the run, so only the few names it flags are looked up in the database.
+ *
+ * The output has one "username,user_id,status" row per input row, in the same order;
+ * status is created, exists (the username is taken, also by an earlier row) or invalid.
+ *
+ * Usage: UserProvisioner users.csv ids.csv
+ */
+public class UserProvisioner {
+    public static final int BATCH_SIZE = 500;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_PASSWORD_LENGTH = 4;
+
+    /** The number of rows that ended in each status */
+    public record Result(int created, int existing, int invalid) { }
+
+    private record Row(String username, String password, String userId, String status) { }
+
+    private final UserDAO userDAO;
+
+    public UserProvisioner(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length != 2) {
+            System.err.println("Usage: UserProvisioner <users.csv> <ids.csv>");
+            System.exit(2);
+        }
+        try (Connection conn = DBConnection.openConnection();
+             Reader in = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            SchemaManager.initialize(conn);
+            long start = System.nanoTime();
+            Result result = new UserProvisioner(new UserDAO(conn)).provision(in, out);
+            System.out.printf("Created %d users (%d already existed, %d invalid rows) in %.1f s%n",
+                    result.created(), result.existing(), result.invalid(), (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * Reads users from a CSV, creates those that don't exist yet and writes their ids.
+     *
+     * @param in "username,password" rows
+     * @param out Receives "username,user_id,status" rows; written after each batch commits
+     */
+    public Result provision(Reader in, Writer out) throws IOException, SQLException {
+        BloomFilter taken = new BloomFilter(userDAO.countUsers() + 10_000, FALSE_POSITIVE_RATE);
+        userDAO.forEachUsername(taken::add);
+
+        BufferedReader reader = new BufferedReader(in);
+        BufferedWriter writer = new BufferedWriter(out);
+        writer.write("username,user_id,status");
+        writer.newLine();
+
+        List<Row> batch = new ArrayList<>();
+        Set<String> batchNames = new HashSet<>();
+        int[] counts = new int[3];
+        boolean firstRow = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            List<String> fields = parseCsvLine(line);
+            if (firstRow && fields.get(0).trim().equalsIgnoreCase("username")) {
+                firstRow = false;
+                continue;
+            }
+            firstRow = false;
+
+            String username = fields.get(0).trim();
+            String password = fields.size() > 1 ? fields.get(1) : "";
+            if (username.isEmpty() || fields.size() != 2 || password.length() < MIN_PASSWORD_LENGTH) {
+                batch.add(new Row(username, null, "", "invalid"));
+            } else if (batchNames.contains(username)
+                    || (taken.mightContain(username) && userDAO.usernameExists(username))) {
+                batch.add(new Row(username, null, "", "exists"));
+            } else {
+                // Not added to the filter, which is sized for the existing names only: a repeat in a
+                // later batch is caught by the insert, and one in this batch by batchNames
+                batchNames.add(username);
+                batch.add(new Row(username, password, UUID.randomUUID().toString(), null));
+            }
+
+            // Invalid and existing rows count too, so a file of mostly those can't grow the batch without limit
+            if (batch.size() == BATCH_SIZE) {
+                flush(batch, writer, counts);
+                batchNames.clear();
+            }
+        }
+        flush(batch, writer, counts);
+        writer.flush();
+        return new Result(counts[0], counts[1], counts[2]);
+    }
+
+    /** Helper method to insert a batch's new users and write the whole batch out */
+    private void flush(List<Row> batch, BufferedWriter writer, int[] counts) throws IOException, SQLException {
+        List<User> users = new ArrayList<>();
+        for (Row row : batch) {
+            if (row.status() == null) {
+                users.add(new User(row.userId(), row.username(), row.password()));
+            }
+        }
+        boolean[] inserted = users.isEmpty() ? new boolean[0] : userDAO.createUsers(users);
+
+        int next = 0;
+        for (Row row : batch) {
+            String userId = row.userId();
+            String status = row.status();
+            if (status == null) {
+                // Registered by someone else since the check
+                status = inserted[next++] ? "created" : "exists";
+                if (!status.equals("created")) userId = "";
+            }
+            switch (status) {
+                case "created" -> counts[0]++;
+                case "exists" -> counts[1]++;
+                default -> counts[2]++;
+            }
+            writer.write(csvField(row.username()) + "," + userId + "," + status);
+            writer.newLine();
+        }
+        writer.flush();
+        batch.clear();
+    }
+
+    /** Helper method to split a CSV line, honouring double-quoted fields with "" escapes */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String csvField(String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -168,6 +168,8 @@ public class ViewLoader {
             mainStage.setTitle("Daily Journal - Dashboard");
         } else if (fxmlPath.contains("EditorView")) {
             mainStage.setTitle("Daily Journal - Editor");
+        } else if (fxmlPath.contains("AdminView")) {
+            mainStage.setTitle("Daily Journal - Admin");
         } else {
             mainStage.setTitle("Daily Journal");
         }